@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.swt.dnd;
 
+import java.nio.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import org.eclipse.swt.internal.*;
@@ -67,7 +69,15 @@ public void javaToNative(Object object, TransferData transferData) {
 	ImageData imgData = (ImageData)object;
 	if (imgData == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 
-	int imageSize = imgData.data.length;
+	byte[] data = imgData.data;
+	if (imgData.buffer != null) {
+		/* The pixels of the image data must be on the heap */
+		data = new byte[imgData.bytesPerLine * imgData.height];
+		ByteBuffer buffer = imgData.buffer.duplicate();
+		buffer.position(0);
+		buffer.get(data);
+	}
+	int imageSize = data.length;
 	int imageHeight = imgData.height;
 	int bytesPerLine = imgData.bytesPerLine;
 
@@ -103,13 +113,13 @@ public void javaToNative(Object object, TransferData transferData) {
 	long /*int*/ pBitDest = newPtr + BITMAPINFOHEADER.sizeof + colorSize;
 
 	if (imageHeight <= 0) {
-		OS.MoveMemory(pBitDest, imgData.data, imageSize);
+		OS.MoveMemory(pBitDest, data, imageSize);
 	} else {
 		int offset = 0;
 		pBitDest += bytesPerLine * (imageHeight - 1);
 		byte[] scanline = new byte[bytesPerLine];
 		for (int i = 0; i < imageHeight; i++) {
-			System.arraycopy(imgData.data, offset, scanline, 0, bytesPerLine);
+			System.arraycopy(data, offset, scanline, 0, bytesPerLine);
 			OS.MoveMemory(pBitDest, scanline, bytesPerLine);
 			offset += bytesPerLine;
 			pBitDest -= bytesPerLine;
@@ -41,6 +41,9 @@ public abstract class Device implements Drawable {
 	/* System Font */
 	Font systemFont;
 
+	/* Shared images */
+	ImagePool imagePool;
+
 	NSMutableParagraphStyle paragraphStyle;
 
 	/* Device DPI */
@@ -735,6 +738,10 @@ void printErrors () {
  * @see #destroy
  */
 protected void release () {
+	/* Dispose the shared images */
+	if (imagePool != null) imagePool.dispose();
+	imagePool = null;
+
 	if (paragraphStyle != null) paragraphStyle.release();
 	paragraphStyle = null;
 
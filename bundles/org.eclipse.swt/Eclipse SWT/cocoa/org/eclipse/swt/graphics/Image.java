@@ -599,6 +599,8 @@ public Image(Device device, ImageData source, ImageData mask) {
 	if (!NSThread.isMainThread()) pool = (NSAutoreleasePool) new NSAutoreleasePool().alloc().init();
 	try {
 		mask = ImageData.convertMask(mask);
+		/* The pixels of the image data must be on the heap */
+		if (source.buffer != null) source = source.getBand(0, source.height);
 		ImageData image = new ImageData(source.width, source.height, source.depth, source.palette, source.scanlinePad, source.data);
 		image.maskPad = mask.scanlinePad;
 		image.maskData = mask.data;
@@ -975,6 +977,8 @@ void createAlpha () {
 }
 
 private NSBitmapImageRep createRepresentation(ImageData imageData, AlphaInfo alphaInfo) {
+	/* The pixels of the image data must be on the heap */
+	if (imageData.buffer != null) imageData = imageData.getBand(0, imageData.height);
 	NSBitmapImageRep rep = (NSBitmapImageRep)new NSBitmapImageRep().alloc();
 
 	PaletteData palette = imageData.palette;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.swt.graphics;
 
 
 import java.io.*;
+import java.nio.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.*;
@@ -86,6 +87,22 @@ public final class ImageData implements Cloneable {
 	 */
 	public byte[] data;
 
+	/**
+	 * The pixel data of an image that is not stored on the Java heap,
+	 * for example in a direct or memory mapped <code>ByteBuffer</code>.
+	 * <p>
+	 * The pixels start at index 0 of the buffer and have the same
+	 * layout as in <code>data</code>, which is <code>null</code> when
+	 * this field is set. The pixel accessors, <code>scaledTo()</code>
+	 * and <code>clone()</code> work on the buffer one band of rows at
+	 * a time. The mask and alpha data are not affected and are still
+	 * stored in <code>maskData</code> and <code>alphaData</code>.
+	 * </p>
+	 *
+	 * @since 3.107
+	 */
+	public ByteBuffer buffer;
+
 	/**
 	 * The color table for the image.
 	 */
@@ -285,6 +302,40 @@ public ImageData(int width, int height, int depth, PaletteData palette, int scan
 		0, 0, 0, 0);
 }
 
+/**
+ * Constructs a new ImageData with the given width, height, depth,
+ * palette and scanlinePad, whose pixel data is stored in the given
+ * buffer rather than in a <code>byte[]</code>. The buffer is shared,
+ * not copied, so that a direct or memory mapped buffer can hold an
+ * image that is too large for the Java heap.
+ *
+ * @param width the width of the image
+ * @param height the height of the image
+ * @param depth the depth of the image
+ * @param palette the palette of the image
+ * @param scanlinePad the padding of each line, in bytes
+ * @param buffer the buffer that contains the pixel data of the image
+ * @param offset the index of the pixel data in the buffer
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is zero or negative, or if the depth is not
+ *        	one of 1, 2, 4, 8, 16, 24 or 32, or the offset is out of range, or the buffer is too small
+ *        	to contain the image data</li>
+ *    <li>ERROR_NULL_ARGUMENT - if the palette or buffer is null</li>
+ *    <li>ERROR_CANNOT_BE_ZERO - if the scanlinePad is zero</li>
+ * </ul>
+ *
+ * @see #buffer
+ *
+ * @since 3.107
+ */
+public ImageData(int width, int height, int depth, PaletteData palette, int scanlinePad, ByteBuffer buffer, int offset) {
+	this(width, height, depth, palette,
+		scanlinePad, null, sliceBuffer(buffer, offset), 0, null,
+		null, -1, -1, SWT.IMAGE_UNDEFINED,
+		0, 0, 0, 0);
+}
+
 /**
  * Constructs an <code>ImageData</code> loaded from the specified
  * input stream. Throws an error if an error occurs while loading
@@ -339,6 +390,7 @@ public ImageData(InputStream stream) {
 		i.scanlinePad,
 		i.bytesPerLine,
 		i.data,
+		i.buffer,
 		i.palette,
 		i.transparentPixel,
 		i.maskData,
@@ -385,6 +437,7 @@ public ImageData(String filename) {
 		i.scanlinePad,
 		i.bytesPerLine,
 		i.data,
+		i.buffer,
 		i.palette,
 		i.transparentPixel,
 		i.maskData,
@@ -416,6 +469,23 @@ ImageData(
 	byte[] alphaData, int alpha, int transparentPixel, int type,
 	int x, int y, int disposalMethod, int delayTime)
 {
+	this(width, height, depth, palette, scanlinePad, data, null, maskPad, maskData,
+		alphaData, alpha, transparentPixel, type, x, y, disposalMethod, delayTime);
+}
+
+/**
+ * Constructs an image data by giving values for all non-computable fields,
+ * with the pixels either in data or in buffer.
+ * <p>
+ * This method is for internal use, and is not described further.
+ * </p>
+ */
+ImageData(
+	int width, int height, int depth, PaletteData palette,
+	int scanlinePad, byte[] data, ByteBuffer buffer, int maskPad, byte[] maskData,
+	byte[] alphaData, int alpha, int transparentPixel, int type,
+	int x, int y, int disposalMethod, int delayTime)
+{
 
 	if (palette == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	if (!(depth == 1 || depth == 2 || depth == 4 || depth == 8
@@ -427,8 +497,7 @@ ImageData(
 	}
 	if (scanlinePad == 0) SWT.error (SWT.ERROR_CANNOT_BE_ZERO);
 
-	int bytesPerLine = (((width * depth + 7) / 8) + (scanlinePad - 1))
-		/ scanlinePad * scanlinePad;
+	int bytesPerLine = getBytesPerLine(width, depth, scanlinePad);
 
 	/*
 	 * When the image is being loaded from a PNG, we need to use the theoretical minimum
@@ -440,13 +509,17 @@ ImageData(
 	if (data != null && data.length < minBytesPerLine * height) {
 		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	}
+	if (buffer != null && buffer.limit() < (long) bytesPerLine * height) {
+		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
 	setAllFields(
 		width,
 		height,
 		depth,
 		scanlinePad,
 		bytesPerLine,
-		data != null ? data : new byte[bytesPerLine * height],
+		data != null || buffer != null ? data : new byte[bytesPerLine * height],
+		buffer,
 		palette,
 		transparentPixel,
 		maskData,
@@ -470,7 +543,7 @@ ImageData(
  * </p>
  */
 void setAllFields(int width, int height, int depth, int scanlinePad,
-	int bytesPerLine, byte[] data, PaletteData palette, int transparentPixel,
+	int bytesPerLine, byte[] data, ByteBuffer buffer, PaletteData palette, int transparentPixel,
 	byte[] maskData, int maskPad, byte[] alphaData, int alpha,
 	int type, int x, int y, int disposalMethod, int delayTime) {
 
@@ -480,6 +553,7 @@ void setAllFields(int width, int height, int depth, int scanlinePad,
 	this.scanlinePad = scanlinePad;
 	this.bytesPerLine = bytesPerLine;
 	this.data = data;
+	this.buffer = buffer;
 	this.palette = palette;
 	this.transparentPixel = transparentPixel;
 	this.maskData = maskData;
@@ -544,6 +618,147 @@ static byte[] checkData(byte [] data) {
 	return data;
 }
 
+static ByteBuffer sliceBuffer(ByteBuffer buffer, int offset) {
+	if (buffer == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (offset < 0 || offset > buffer.limit()) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	ByteBuffer slice = buffer.duplicate();
+	slice.position(offset);
+	return slice.slice();
+}
+
+static int getBytesPerLine(int width, int depth, int scanlinePad) {
+	return (((width * depth + 7) / 8) + (scanlinePad - 1)) / scanlinePad * scanlinePad;
+}
+
+/**
+ * Answer a new buffer of the given size, which is direct when the
+ * buffer of the receiver is direct.
+ */
+ByteBuffer allocateBuffer(int size) {
+	return buffer.isDirect() ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+}
+
+/**
+ * Answer a copy of the given rows of the receiver, with its pixels
+ * in <code>data</code>, and the matching rows of the mask and alpha
+ * data.
+ */
+ImageData getBand(int y, int rows) {
+	byte[] bandData = new byte[bytesPerLine * rows];
+	if (buffer != null) {
+		ByteBuffer source = buffer.duplicate();
+		source.position(bytesPerLine * y);
+		source.get(bandData);
+	} else {
+		System.arraycopy(data, bytesPerLine * y, bandData, 0, bandData.length);
+	}
+	byte[] bandMaskData = null;
+	if (maskData != null) {
+		int maskBytesPerLine = (((width + 7) / 8) + (maskPad - 1)) / maskPad * maskPad;
+		bandMaskData = new byte[maskBytesPerLine * rows];
+		System.arraycopy(maskData, maskBytesPerLine * y, bandMaskData, 0, bandMaskData.length);
+	}
+	byte[] bandAlphaData = null;
+	if (alphaData != null) {
+		bandAlphaData = new byte[width * rows];
+		System.arraycopy(alphaData, width * y, bandAlphaData, 0, bandAlphaData.length);
+	}
+	return new ImageData(
+		width, rows, depth, palette, scanlinePad, bandData, maskPad, bandMaskData,
+		bandAlphaData, alpha, transparentPixel, type, x, this.y, disposalMethod, delayTime);
+}
+
+/**
+ * Store the pixels of a band that was answered by <code>getBand()</code>
+ * back into the buffer of the receiver.
+ */
+void putBand(ImageData band, int y) {
+	ByteBuffer dest = buffer.duplicate();
+	dest.position(bytesPerLine * y);
+	dest.put(band.data, 0, bytesPerLine * band.height);
+}
+
+/**
+ * Answer the pixel at the given coordinates in the buffer of the
+ * receiver, reading only its bytes.
+ */
+int getBufferPixel(int x, int y) {
+	ByteBuffer buffer = this.buffer;
+	int index = y * bytesPerLine;
+	switch (depth) {
+		case 32:
+			index += x * 4;
+			return ((buffer.get(index) & 0xFF) << 24) + ((buffer.get(index+1) & 0xFF) << 16) +
+				((buffer.get(index+2) & 0xFF) << 8) + (buffer.get(index+3) & 0xFF);
+		case 24:
+			index += x * 3;
+			return ((buffer.get(index) & 0xFF) << 16) + ((buffer.get(index+1) & 0xFF) << 8) +
+				(buffer.get(index+2) & 0xFF);
+		case 16:
+			index += x * 2;
+			return ((buffer.get(index+1) & 0xFF) << 8) + (buffer.get(index) & 0xFF);
+		case 8:
+			return buffer.get(index + x) & 0xFF;
+		case 4:
+		case 2:
+		case 1:
+			/* The first pixel of a byte is in its most significant bits */
+			int shift = 8 - depth - ((x * depth) & 7);
+			return ((buffer.get(index + ((x * depth) >> 3)) & 0xFF) >> shift) & ((1 << depth) - 1);
+	}
+	SWT.error(SWT.ERROR_UNSUPPORTED_DEPTH);
+	return 0;
+}
+
+/**
+ * Set the pixel at the given coordinates in the buffer of the
+ * receiver, writing only its bytes.
+ */
+void setBufferPixel(int x, int y, int pixelValue) {
+	ByteBuffer buffer = this.buffer;
+	int index = y * bytesPerLine;
+	switch (depth) {
+		case 32:
+			index += x * 4;
+			buffer.put(index, (byte)(pixelValue >> 24));
+			buffer.put(index + 1, (byte)(pixelValue >> 16));
+			buffer.put(index + 2, (byte)(pixelValue >> 8));
+			buffer.put(index + 3, (byte)pixelValue);
+			return;
+		case 24:
+			index += x * 3;
+			buffer.put(index, (byte)(pixelValue >> 16));
+			buffer.put(index + 1, (byte)(pixelValue >> 8));
+			buffer.put(index + 2, (byte)pixelValue);
+			return;
+		case 16:
+			index += x * 2;
+			buffer.put(index + 1, (byte)(pixelValue >> 8));
+			buffer.put(index, (byte)pixelValue);
+			return;
+		case 8:
+			buffer.put(index + x, (byte)pixelValue);
+			return;
+		case 4:
+		case 2:
+		case 1:
+			int shift = 8 - depth - ((x * depth) & 7);
+			int mask = ((1 << depth) - 1) << shift;
+			index += (x * depth) >> 3;
+			buffer.put(index, (byte)((buffer.get(index) & ~mask) | ((pixelValue << shift) & mask)));
+			return;
+	}
+	SWT.error(SWT.ERROR_UNSUPPORTED_DEPTH);
+}
+
+/**
+ * Answer the number of rows touched by a run of pixels, which
+ * continues on the next row when it reaches the end of a row.
+ */
+int getBandHeight(int x, int y, int count) {
+	return (int) Math.min(height - y, ((long) x + count - 1) / width + 1);
+}
+
 /**
  * Returns a new instance of the same class as the receiver,
  * whose slots have been filled in with <em>copies</em> of
@@ -554,8 +769,19 @@ static byte[] checkData(byte [] data) {
  */
 @Override
 public Object clone() {
-	byte[] cloneData = new byte[data.length];
-	System.arraycopy(data, 0, cloneData, 0, data.length);
+	byte[] cloneData = null;
+	ByteBuffer cloneBuffer = null;
+	if (buffer != null) {
+		ByteBuffer source = buffer.duplicate();
+		source.position(0);
+		source.limit(bytesPerLine * height);
+		cloneBuffer = allocateBuffer(source.remaining());
+		cloneBuffer.put(source);
+		cloneBuffer.clear();
+	} else {
+		cloneData = new byte[data.length];
+		System.arraycopy(data, 0, cloneData, 0, data.length);
+	}
 	byte[] cloneMaskData = null;
 	if (maskData != null) {
 		cloneMaskData = new byte[maskData.length];
@@ -573,6 +799,7 @@ public Object clone() {
 		palette,
 		scanlinePad,
 		cloneData,
+		cloneBuffer,
 		maskPad,
 		cloneMaskData,
 		cloneAlphaData,
@@ -659,6 +886,7 @@ public void getAlphas(int x, int y, int getWidth, byte[] alphas, int startIndex)
  */
 public int getPixel(int x, int y) {
 	if (x >= width || y >= height || x < 0 || y < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (buffer != null) return getBufferPixel(x, y);
 	int index;
 	int theByte;
 	int mask;
@@ -731,6 +959,10 @@ public void getPixels(int x, int y, int getWidth, byte[] pixels, int startIndex)
 	if (pixels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	if (getWidth < 0 || x >= width || y >= height || x < 0 || y < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	if (getWidth == 0) return;
+	if (buffer != null) {
+		getBand(y, getBandHeight(x, y, getWidth)).getPixels(x, 0, getWidth, pixels, startIndex);
+		return;
+	}
 	int index;
 	int theByte;
 	int mask = 0;
@@ -877,6 +1109,10 @@ public void getPixels(int x, int y, int getWidth, int[] pixels, int startIndex)
 	if (pixels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	if (getWidth < 0 || x >= width || y >= height || x < 0 || y < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	if (getWidth == 0) return;
+	if (buffer != null) {
+		getBand(y, getBandHeight(x, y, getWidth)).getPixels(x, 0, getWidth, pixels, startIndex);
+		return;
+	}
 	int index;
 	int theByte;
 	int mask;
@@ -1115,14 +1351,17 @@ public ImageData scaledTo(int width, int height) {
 	final boolean flipY = (height < 0);
 	if (flipY) height = - height;
 
+	ByteBuffer destBuffer = null;
+	if (buffer != null) destBuffer = allocateBuffer(getBytesPerLine(width, depth, scanlinePad) * height);
 	ImageData dest = new ImageData(
 		width, height, depth, palette,
-		scanlinePad, null, 0, null,
+		scanlinePad, null, destBuffer, 0, null,
 		null, -1, transparentPixel, type,
 		x, y, disposalMethod, delayTime);
 
 	/* Scale the image contents */
-	if (palette.isDirect) blit(BLIT_SRC,
+	if (buffer != null) scaleBufferTo(dest, flipX, flipY);
+	else if (palette.isDirect) blit(BLIT_SRC,
 		this.data, this.depth, this.bytesPerLine, this.getByteOrder(), 0, 0, this.width, this.height, 0, 0, 0,
 		ALPHA_OPAQUE, null, 0, 0, 0,
 		dest.data, dest.depth, dest.bytesPerLine, dest.getByteOrder(), 0, 0, dest.width, dest.height, 0, 0, 0,
@@ -1159,6 +1398,39 @@ public ImageData scaledTo(int width, int height) {
 	return dest;
 }
 
+/**
+ * Scale the pixels in the buffer of the receiver into the buffer of
+ * the destination, one row at a time. The rows are visited with the
+ * same steps as <code>blit()</code>, so that the result is the same as
+ * when the pixels are in <code>data</code>.
+ */
+void scaleBufferTo(ImageData dest, boolean flipX, boolean flipY) {
+	ByteBuffer source = buffer.duplicate(), target = dest.buffer.duplicate();
+	byte[] srcRow = new byte[bytesPerLine], destRow = new byte[dest.bytesPerLine];
+	final int dhm1 = dest.height - 1;
+	final int sfyi = (dhm1 != 0) ? (int)((((long)height << 16) - 1) / dhm1) : 0;
+	int rowY = -1;
+	for (int dy = 0, sy = 0, sfy = sfyi; dy < dest.height; dy++, sy += sfy >>> 16, sfy = (sfy & 0xffff) + sfyi) {
+		if (sy != rowY) {
+			source.position(sy * bytesPerLine);
+			source.get(srcRow);
+			rowY = sy;
+			if (palette.isDirect) blit(BLIT_SRC,
+				srcRow, depth, bytesPerLine, getByteOrder(), 0, 0, width, 1, 0, 0, 0,
+				ALPHA_OPAQUE, null, 0, 0, 0,
+				destRow, dest.depth, dest.bytesPerLine, dest.getByteOrder(), 0, 0, dest.width, 1, 0, 0, 0,
+				flipX, false);
+			else blit(BLIT_SRC,
+				srcRow, depth, bytesPerLine, getByteOrder(), 0, 0, width, 1, null, null, null,
+				ALPHA_OPAQUE, null, 0, 0, 0,
+				destRow, dest.depth, dest.bytesPerLine, dest.getByteOrder(), 0, 0, dest.width, 1, null, null, null,
+				flipX, false);
+		}
+		target.position((flipY ? dhm1 - dy : dy) * dest.bytesPerLine);
+		target.put(destRow);
+	}
+}
+
 /**
  * Sets the alpha value at offset <code>x</code> in
  * scanline <code>y</code> in the receiver's alpha data.
@@ -1228,6 +1500,10 @@ public void setAlphas(int x, int y, int putWidth, byte[] alphas, int startIndex)
  */
 public void setPixel(int x, int y, int pixelValue) {
 	if (x >= width || y >= height || x < 0 || y < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (buffer != null) {
+		setBufferPixel(x, y, pixelValue);
+		return;
+	}
 	int index;
 	byte theByte;
 	int mask;
@@ -1310,6 +1586,12 @@ public void setPixels(int x, int y, int putWidth, byte[] pixels, int startIndex)
 	if (pixels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	if (putWidth < 0 || x >= width || y >= height || x < 0 || y < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	if (putWidth == 0) return;
+	if (buffer != null) {
+		ImageData band = getBand(y, getBandHeight(x, y, putWidth));
+		band.setPixels(x, 0, putWidth, pixels, startIndex);
+		putBand(band, y);
+		return;
+	}
 	int index;
 	int theByte;
 	int mask;
@@ -1434,6 +1716,12 @@ public void setPixels(int x, int y, int putWidth, int[] pixels, int startIndex)
 	if (pixels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	if (putWidth < 0 || x >= width || y >= height || x < 0 || y < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	if (putWidth == 0) return;
+	if (buffer != null) {
+		ImageData band = getBand(y, getBandHeight(x, y, putWidth));
+		band.setPixels(x, 0, putWidth, pixels, startIndex);
+		putBand(band, y);
+		return;
+	}
 	int index;
 	int theByte;
 	int mask;
@@ -1636,7 +1924,7 @@ static int closestMatch(int depth, byte red, byte green, byte blue, int redMask,
 }
 
 static final ImageData convertMask(ImageData mask) {
-	if (mask.depth == 1) return mask;
+	if (mask.depth == 1 && mask.buffer == null) return mask;
 	PaletteData palette = new PaletteData(new RGB(0, 0, 0), new RGB(255,255,255));
 	ImageData newMask = new ImageData(mask.width, mask.height, 1, palette);
 	/* Find index of black in mask palette */
@@ -1881,6 +2169,12 @@ static void blit(int op,
 		(srcRedMask == destRedMask) && (srcGreenMask == destGreenMask) &&
 		(srcBlueMask == destBlueMask) && (srcAlphaMask == destAlphaMask)) {
 		/*** Fast blit (straight copy) ***/
+		if (srcWidth == destWidth && srcHeight == destHeight && !flipX) {
+			for (int dy = destHeight; dy > 0; --dy, sp = spr += srcStride, dp = dpr += dpryi) {
+				System.arraycopy(srcData, sp, destData, dp, destWidth * sbpp);
+			}
+			return;
+		}
 		switch (sbpp) {
 			case 1:
 				for (int dy = destHeight, sfy = sfyi; dy > 0; --dy, sp = spr += (sfy >>> 16) * srcStride, sfy = (sfy & 0xffff) + sfyi, dp = dpr += dpryi) {
@@ -1954,6 +2248,18 @@ static void blit(int op,
 		}
 	}
 
+	/*** Byte channel blit ***/
+	if (sbpp >= 3 && dbpp >= 3) {
+		final int sr = getByteOffset(stype, srcRedMask), sg = getByteOffset(stype, srcGreenMask), sb = getByteOffset(stype, srcBlueMask);
+		final int dr = getByteOffset(dtype, destRedMask), dg = getByteOffset(dtype, destGreenMask), db = getByteOffset(dtype, destBlueMask);
+		if (sr != -1 && sg != -1 && sb != -1 && dr != -1 && dg != -1 && db != -1 && dr != dg && dr != db && dg != db) {
+			if (blitBytes(srcData, spr, srcStride, sbpp, sr, sg, sb, null, null, null,
+				alphaMode, alphaData, apr, alphaStride,
+				destData, dpr, dprxi, dpryi, dbpp, dr, dg, db,
+				destWidth, destHeight, sfxi, sfyi)) return;
+		}
+	}
+
 	/*** Comprehensive blit (apply transformations) ***/
 	final int srcRedShift = getChannelShift(srcRedMask);
 	final byte[] srcReds = ANY_TO_EIGHT[getChannelWidth(srcRedMask, srcRedShift)];
@@ -2880,6 +3186,17 @@ static void blit(int op,
 		apr = 0;
 	}
 
+	/*** Byte channel blit ***/
+	if (stype == TYPE_INDEX_8 && dbpp >= 3) {
+		final int dr = getByteOffset(dtype, destRedMask), dg = getByteOffset(dtype, destGreenMask), db = getByteOffset(dtype, destBlueMask);
+		if (dr != -1 && dg != -1 && db != -1 && dr != dg && dr != db && dg != db) {
+			if (blitBytes(srcData, spr, srcStride, 1, 0, 0, 0, srcReds, srcGreens, srcBlues,
+				alphaMode, alphaData, apr, alphaStride,
+				destData, dpr, dprxi, dpryi, dbpp, dr, dg, db,
+				destWidth, destHeight, sfxi, sfyi)) return;
+		}
+	}
+
 	/*** Comprehensive blit (apply transformations) ***/
 	final int destRedShift = getChannelShift(destRedMask);
 	final int destRedWidth = getChannelWidth(destRedMask, destRedShift);
@@ -3466,6 +3783,118 @@ static int getChannelWidth(int mask, int shift) {
 	return i - shift;
 }
 
+/**
+ * Computes the offset of the byte of a pixel that holds the channel
+ * selected by a mask, or -1 if the channel is not exactly one byte of
+ * a 24 or 32-bit pixel.
+ */
+static int getByteOffset(int type, int mask) {
+	if (mask == 0) return -1;
+	int shift = Integer.numberOfTrailingZeros(mask);
+	if ((shift & 7) != 0 || (mask >>> shift) != 0xff) return -1;
+	int index = shift >> 3;
+	switch (type) {
+		case TYPE_GENERIC_24: return index < 3 ? 2 - index : -1;
+		case TYPE_GENERIC_32_MSB: return 3 - index;
+		case TYPE_GENERIC_32_LSB: return index;
+	}
+	return -1;
+}
+
+/**
+ * The alpha of the blitter for each alpha value from 0 to 255,
+ * (alpha << 16) / 255, so that it is not divided for every pixel.
+ */
+static final int[] ALPHA_SCALE = new int[256];
+static {
+	for (int i = 0; i < ALPHA_SCALE.length; i++) {
+		ALPHA_SCALE[i] = (i << 16) / 255;
+	}
+}
+
+/**
+ * Blits the pixels of a direct or 8-bit index palette image into a
+ * direct palette image whose channels are whole bytes of a 24 or 32-bit
+ * pixel. This covers the conversions between the pixel layouts used by
+ * the platforms, with or without blending, and gives the same result as
+ * the comprehensive blit, but the channels are moved as bytes instead of
+ * assembling and splitting every pixel through the channel tables.
+ * <p>
+ * The source is either given by the byte offsets of its channels, or by
+ * its palette, in which case the source pixels are 8-bit indices. Answers
+ * false, without blitting, when the alpha mode is not supported.
+ * </p>
+ */
+static boolean blitBytes(
+	byte[] srcData, int spr, int srcStride, int sbpp, int sr, int sg, int sb,
+	byte[] srcReds, byte[] srcGreens, byte[] srcBlues,
+	int alphaMode, byte[] alphaData, int apr, int alphaStride,
+	byte[] destData, int dpr, int dprxi, int dpryi, int dbpp, int dr, int dg, int db,
+	int destWidth, int destHeight, int sfxi, int sfyi) {
+	switch (alphaMode) {
+		case ALPHA_CHANNEL_SEPARATE:
+		case ALPHA_MASK_UNPACKED:
+		case ALPHA_MASK_PACKED:
+			break;
+		default:
+			if (alphaMode < 0) return false;
+	}
+	final int du = (dbpp == 4) ? 6 - dr - dg - db : -1;
+	final boolean indexed = srcReds != null;
+	int sp = spr, dp = dpr, ap = apr;
+	for (int dy = destHeight, sfy = sfyi; dy > 0; --dy,
+			sp = spr += (sfy >>> 16) * srcStride,
+			ap = apr += (sfy >>> 16) * alphaStride,
+			sfy = (sfy & 0xffff) + sfyi,
+			dp = dpr += dpryi) {
+		for (int dx = destWidth, sfx = sfxi; dx > 0; --dx,
+				dp += dprxi,
+				sfx = (sfx & 0xffff) + sfxi) {
+			int r, g, b;
+			if (indexed) {
+				final int index = srcData[sp] & 0xff;
+				r = srcReds[index] & 0xff;
+				g = srcGreens[index] & 0xff;
+				b = srcBlues[index] & 0xff;
+			} else {
+				r = srcData[sp + sr] & 0xff;
+				g = srcData[sp + sg] & 0xff;
+				b = srcData[sp + sb] & 0xff;
+			}
+			sp += (sfx >>> 16) * sbpp;
+			int alpha = alphaMode;
+			switch (alphaMode) {
+				case ALPHA_CHANNEL_SEPARATE:
+					alpha = ALPHA_SCALE[alphaData[ap] & 0xff];
+					ap += (sfx >> 16);
+					break;
+				case ALPHA_MASK_UNPACKED:
+					alpha = (alphaData[ap] != 0) ? 0x10000 : 0;
+					ap += (sfx >> 16);
+					break;
+				case ALPHA_MASK_PACKED:
+					alpha = (alphaData[ap >> 3] << ((ap & 7) + 9)) & 0x10000;
+					ap += (sfx >> 16);
+					break;
+			}
+			if (alpha != 0x10000) {
+				if (alpha == 0x0000) continue;
+				final int rq = destData[dp + dr] & 0xff;
+				final int gq = destData[dp + dg] & 0xff;
+				final int bq = destData[dp + db] & 0xff;
+				r = rq + ((r - rq) * alpha >> 16);
+				g = gq + ((g - gq) * alpha >> 16);
+				b = bq + ((b - bq) * alpha >> 16);
+			}
+			if (du != -1) destData[dp + du] = 0;
+			destData[dp + dr] = (byte) r;
+			destData[dp + dg] = (byte) g;
+			destData[dp + db] = (byte) b;
+		}
+	}
+	return true;
+}
+
 /**
  * Extracts a field from packed RGB data given a mask for that field.
  */
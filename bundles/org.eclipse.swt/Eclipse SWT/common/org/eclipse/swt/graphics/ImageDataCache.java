@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.*;
+
+import org.eclipse.swt.*;
+
+/**
+ * Instances of this class keep the image data that images decode from
+ * files and obtain from image data providers, so that images created
+ * from the same source, or created again when the zoom level changes,
+ * do not decode and scale the same image data again.
+ * <p>
+ * The image data is kept for a source, which is the name of an image file
+ * or an <code>ImageDataProvider</code>, and the zoom level at which it is
+ * used. When the total size of the image data exceeds the maximum size of
+ * the cache, the image data that was used least recently is discarded.
+ * </p><p>
+ * Images use the cache only when it has been installed by calling
+ * <code>setDefault</code>. The image data of a source must be invalidated
+ * when the source changes. Instances of this class may be used from any
+ * thread.
+ * </p>
+ *
+ * @see Image#Image(Device, String)
+ * @see Image#Image(Device, ImageFileNameProvider)
+ * @see Image#Image(Device, ImageDataProvider)
+ * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
+ *
+ * @since 3.107
+ */
+public final class ImageDataCache {
+	final long maximumSize;
+	long size, hitCount, missCount;
+	final LinkedHashMap<Key, ImageData> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	static ImageDataCache defaultCache;
+
+	/*
+	 * The source of the image data, the zoom level of the source,
+	 * and the zoom level at which the image data is used.
+	 */
+	static final class Key {
+		final Object source;
+		final int sourceZoom, zoom;
+
+		Key(Object source, int sourceZoom, int zoom) {
+			this.source = source;
+			this.sourceZoom = sourceZoom;
+			this.zoom = zoom;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) return false;
+			Key key = (Key) object;
+			return source.equals(key.source) && sourceZoom == key.sourceZoom && zoom == key.zoom;
+		}
+
+		@Override
+		public int hashCode() {
+			return (source.hashCode() * 31 + sourceZoom) * 31 + zoom;
+		}
+	}
+
+/**
+ * Constructs a new cache that keeps image data up to the given
+ * total size.
+ *
+ * @param maximumSize the maximum total size of the image data, in bytes
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the maximum size is negative</li>
+ * </ul>
+ */
+public ImageDataCache(long maximumSize) {
+	if (maximumSize < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	this.maximumSize = maximumSize;
+}
+
+/**
+ * Returns the cache that is used by images, or <code>null</code> if
+ * images do not use a cache.
+ *
+ * @return the cache used by images, or <code>null</code>
+ */
+public static synchronized ImageDataCache getDefault() {
+	return defaultCache;
+}
+
+/**
+ * Sets the cache that is used by images created from now on, or
+ * stops images from using a cache when the argument is <code>null</code>.
+ *
+ * @param cache the cache to be used by images, or <code>null</code>
+ */
+public static synchronized void setDefault(ImageDataCache cache) {
+	defaultCache = cache;
+}
+
+/**
+ * Answer the number of bytes used by the pixels, alpha and mask of
+ * the image data.
+ */
+static long sizeOf(ImageData data) {
+	long size = data.buffer != null ? data.buffer.capacity() : data.data != null ? data.data.length : 0;
+	if (data.alphaData != null) size += data.alphaData.length;
+	if (data.maskData != null) size += data.maskData.length;
+	return size;
+}
+
+/**
+ * Answer the image data of the source at the given zoom level, scaled
+ * from the given zoom level of the source, or null if the cache does
+ * not have it. The image data is shared and must not be modified.
+ */
+synchronized ImageData get(Object source, int sourceZoom, int zoom) {
+	ImageData data = entries.get(new Key(source, sourceZoom, zoom));
+	if (data != null) {
+		hitCount++;
+	} else {
+		missCount++;
+	}
+	return data;
+}
+
+/**
+ * Keep the image data of the source at the given zoom level, scaled
+ * from the given zoom level of the source, and discard the image data
+ * that was used least recently until the cache is no longer too large.
+ * The image data must not be modified afterwards.
+ */
+synchronized void put(Object source, int sourceZoom, int zoom, ImageData data) {
+	long dataSize = sizeOf(data);
+	if (dataSize > maximumSize) return;
+	ImageData previous = entries.put(new Key(source, sourceZoom, zoom), data);
+	if (previous != null) size -= sizeOf(previous);
+	size += dataSize;
+	Iterator<ImageData> iterator = entries.values().iterator();
+	while (size > maximumSize) {
+		size -= sizeOf(iterator.next());
+		iterator.remove();
+	}
+}
+
+/**
+ * Returns the number of times that images found their image data
+ * in the receiver.
+ *
+ * @return the number of cache hits
+ */
+public synchronized long getHitCount() {
+	return hitCount;
+}
+
+/**
+ * Returns the number of times that images did not find their image
+ * data in the receiver, and had to decode or scale it.
+ *
+ * @return the number of cache misses
+ */
+public synchronized long getMissCount() {
+	return missCount;
+}
+
+/**
+ * Returns the total size of the image data in the receiver, in bytes.
+ *
+ * @return the size of the cached image data
+ */
+public synchronized long getSize() {
+	return size;
+}
+
+/**
+ * Returns the maximum total size of the image data in the receiver,
+ * in bytes.
+ *
+ * @return the maximum size of the cached image data
+ */
+public long getMaximumSize() {
+	return maximumSize;
+}
+
+/**
+ * Discards the image data of the given source at all zoom levels.
+ * The source is the name of an image file, or an <code>ImageDataProvider</code>.
+ *
+ * @param source the source of the image data
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the source is null</li>
+ * </ul>
+ */
+public synchronized void invalidate(Object source) {
+	if (source == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	Iterator<Map.Entry<Key, ImageData>> iterator = entries.entrySet().iterator();
+	while (iterator.hasNext()) {
+		Map.Entry<Key, ImageData> entry = iterator.next();
+		if (entry.getKey().source.equals(source)) {
+			size -= sizeOf(entry.getValue());
+			iterator.remove();
+		}
+	}
+}
+
+/**
+ * Discards all the image data in the receiver. The hit and miss
+ * counts are not reset.
+ */
+public synchronized void invalidateAll() {
+	entries.clear();
+	size = 0;
+}
+
+/**
+ * Returns a string containing a concise, human-readable
+ * description of the receiver.
+ *
+ * @return a string representation of the cache
+ */
+@Override
+public synchronized String toString() {
+	return "ImageDataCache {" + entries.size() + " entries, " + size + " of " + maximumSize + " bytes, " + hitCount + " hits, " + missCount + " misses}"; //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$//$NON-NLS-4$//$NON-NLS-5$//$NON-NLS-6$
+}
+}
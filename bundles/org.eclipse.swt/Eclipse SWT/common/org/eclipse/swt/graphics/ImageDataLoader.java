@@ -26,4 +26,20 @@ class ImageDataLoader {
 		return new ImageLoader().load(filename);
 	}
 
+	/**
+	 * Load the images, storing direct color images as 32-bit images
+	 * with the specified palette when the file format supports it.
+	 */
+	public static ImageData[] load(InputStream stream, PaletteData directPalette) {
+		ImageLoader loader = new ImageLoader();
+		loader.directPalette = directPalette;
+		return loader.load(stream);
+	}
+
+	public static ImageData[] load(String filename, PaletteData directPalette) {
+		ImageLoader loader = new ImageLoader();
+		loader.directPalette = directPalette;
+		return loader.load(filename);
+	}
+
 }
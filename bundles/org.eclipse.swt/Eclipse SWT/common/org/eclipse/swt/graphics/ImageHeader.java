@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+/**
+ * Instances of this class describe an image in an image file or
+ * stream, as read from the headers of the file without decoding
+ * its pixels.
+ * <p>
+ * Application code does <em>not</em> need to explicitly release the
+ * resources managed by each instance when those instances are no longer
+ * required, and thus no <code>dispose()</code> method is provided.
+ * </p>
+ *
+ * @see ImageLoader#probe(java.io.InputStream)
+ * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
+ *
+ * @since 3.107
+ */
+public final class ImageHeader {
+
+	/**
+	 * The width of the image, in pixels.
+	 */
+	public int width;
+
+	/**
+	 * The height of the image, in pixels.
+	 */
+	public int height;
+
+	/**
+	 * The color depth of the image, in bits per pixel, as recorded
+	 * in the headers of the file.
+	 */
+	public int depth;
+
+	/**
+	 * The type of file from which the image was read, one of the
+	 * <code>SWT.IMAGE_*</code> constants.
+	 */
+	public int type;
+
+	/**
+	 * The x coordinate of the top left corner of the image
+	 * within the logical screen.
+	 */
+	public int x;
+
+	/**
+	 * The y coordinate of the top left corner of the image
+	 * within the logical screen.
+	 */
+	public int y;
+
+/**
+ * Constructs a new image header given the size, depth and type
+ * of the image.
+ *
+ * @param width the width of the image
+ * @param height the height of the image
+ * @param depth the color depth of the image
+ * @param type the file type of the image, one of the <code>SWT.IMAGE_*</code> constants
+ */
+public ImageHeader(int width, int height, int depth, int type) {
+	this.width = width;
+	this.height = height;
+	this.depth = depth;
+	this.type = type;
+}
+
+/**
+ * Returns a string containing a concise, human-readable
+ * description of the receiver.
+ *
+ * @return a string representation of the image header
+ */
+@Override
+public String toString() {
+	return "ImageHeader {" + width + "x" + height + ", depth " + depth + ", type " + type + ", at " + x + ", " + y + "}"; //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$//$NON-NLS-4$//$NON-NLS-5$//$NON-NLS-6$//$NON-NLS-7$
+}
+}
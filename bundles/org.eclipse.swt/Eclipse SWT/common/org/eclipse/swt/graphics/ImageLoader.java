@@ -82,7 +82,7 @@ public class ImageLoader {
 	public int repeatCount;
 
 	/**
-	 * This is the compression used when saving jpeg and png files.
+	 * This is the compression used when saving jpeg, png and tiff files.
 	 * <p>
 	 * When saving jpeg files, the value is from 1 to 100,
 	 * where 1 is very high compression but low quality, and 100 is
@@ -90,18 +90,129 @@ public class ImageLoader {
 	 * </p><p>
 	 * When saving png files, the value is from 0 to 3, but they do not impact the quality
 	 * because PNG is lossless compression. 0 is uncompressed, 1 is low compression and fast,
-	 * 2 is default compression, and 3 is high compression but slow.
+	 * 2 is default compression, and 3 is high compression but slow. Unless the value is 0,
+	 * the rows of true color images are filtered with the PNG filter that suits each row best.
+	 * </p>
+	 * <p>
+	 * When saving tiff files, the value is the TIFF compression scheme: 5 is LZW and
+	 * 8 is Deflate compression, and the rows of true color images are then encoded with
+	 * the horizontal differencing predictor. Any other value saves uncompressed strips.
 	 * </p>
 	 *
 	 * @since 3.8
 	 */
 	public int compression;
 
+	/**
+	 * A hint for the width, in pixels, of the images to load.
+	 * <p>
+	 * When either <code>targetWidth</code> or <code>targetHeight</code> is
+	 * positive, decoders that are able to produce a reduced image while
+	 * decoding may do so. The loaded image is never smaller than the
+	 * requested size (a value of 0 leaves that dimension unconstrained),
+	 * but it may be larger, so callers that need an exact size should
+	 * still scale the result with <code>ImageData.scaledTo()</code>.
+	 * Currently only JPEG images are reduced, by a factor of 2, 4 or 8.
+	 * </p><p>
+	 * The hint is not reset by the load methods. The default is 0,
+	 * which means the images are loaded at full size.
+	 * </p>
+	 *
+	 * @see #targetHeight
+	 * @since 3.107
+	 */
+	public int targetWidth;
+
+	/**
+	 * A hint for the height, in pixels, of the images to load.
+	 * The default is 0, which means the images are loaded at full size.
+	 *
+	 * @see #targetWidth
+	 * @since 3.107
+	 */
+	public int targetHeight;
+
+	/**
+	 * The part of the images to load, in pixels, or <code>null</code>
+	 * to load complete images.
+	 * <p>
+	 * When set, the load methods return only the part of each image
+	 * that is inside this rectangle, clipped to the bounds of the image.
+	 * PNG, JPEG and TIFF images decode little more than the requested
+	 * region, which is much faster than decoding and cropping a large
+	 * image; the other formats are decoded completely and cropped. The
+	 * region is given in the coordinates of the full size image, even
+	 * when <code>targetWidth</code> or <code>targetHeight</code> reduce
+	 * the image, and the target size then applies to the region.
+	 * </p><p>
+	 * The region is not reset by the load methods and is ignored by
+	 * <code>loadBands()</code>. The default is <code>null</code>.
+	 * </p>
+	 *
+	 * @since 3.107
+	 */
+	public Rectangle sourceRegion;
+
+	/**
+	 * Whether the load and save methods may use several threads.
+	 * <p>
+	 * When <code>true</code>, the work is split into independent tasks
+	 * that run on the common fork-join pool. Currently this applies to:
+	 * </p><ul>
+	 * <li>loading GIF files with more than one image, when there are no
+	 * <code>ImageLoaderListener</code>s: the file is read once to collect
+	 * the compressed data of every image, and the images are then
+	 * decompressed concurrently</li>
+	 * <li>loading baseline JPEG files with restart markers, when no source
+	 * region is set: bands of rows that start at a restart marker are
+	 * decoded concurrently, into the same pixels as on a single thread</li>
+	 * <li>saving GIF files with direct color images: the images are reduced
+	 * to palettes concurrently</li>
+	 * <li>saving PNG files: segments of rows are filtered and compressed
+	 * concurrently, and joined into a single compressed stream. The size
+	 * of the file differs slightly from the one saved on a single thread</li>
+	 * </ul><p>
+	 * This field is not reset by the load methods. The default is
+	 * <code>false</code>.
+	 * </p>
+	 *
+	 * @since 3.107
+	 */
+	public boolean parallel;
+
+	/**
+	 * Whether the colors of direct color images are dithered when the
+	 * images are reduced to a palette of 256 colors to be saved in a
+	 * format that requires a palette, such as GIF.
+	 * <p>
+	 * When <code>true</code>, the difference between the color of each
+	 * pixel and the nearest color of the palette is spread over the pixels
+	 * that follow it, which shows smooth gradients as a fine pattern rather
+	 * than as bands of color. Images that have no more colors than the
+	 * palette can hold are never dithered. This field is not reset by the
+	 * load methods. The default is <code>false</code>.
+	 * </p>
+	 *
+	 * @since 3.107
+	 */
+	public boolean dither;
+
 	/*
 	 * the set of ImageLoader event listeners, created on demand
 	 */
 	List<ImageLoaderListener> imageLoaderListeners;
 
+	/*
+	 * the frames composited by getCompositedFrame(), created on demand
+	 */
+	FrameCompositor compositor;
+
+	/*
+	 * the palette of 32-bit direct color images in the pixel layout
+	 * preferred by the platform, or null for the layout of the file
+	 */
+	PaletteData directPalette;
+
 /**
  * Construct a new empty ImageLoader.
  */
@@ -111,10 +222,13 @@ public ImageLoader() {
 
 /**
  * Resets the fields of the ImageLoader, except for the
- * <code>imageLoaderListeners</code> field.
+ * <code>imageLoaderListeners</code>, <code>targetWidth</code>,
+ * <code>targetHeight</code>, <code>sourceRegion</code>,
+ * <code>parallel</code>, <code>dither</code> and <code>directPalette</code> fields.
  */
 void reset() {
 	data = null;
+	compositor = null;
 	logicalScreenWidth = 0;
 	logicalScreenHeight = 0;
 	backgroundPixel = -1;
@@ -122,6 +236,44 @@ void reset() {
 	compression = -1;
 }
 
+/**
+ * Returns the image at the given index in the <code>data</code> array
+ * drawn onto the logical screen over the images that precede it, as it
+ * appears when the images are played as an animation. The disposal
+ * method of each preceding image is applied before the next image is
+ * drawn; <code>SWT.DM_FILL_BACKGROUND</code> makes the area of the image
+ * transparent.
+ * <p>
+ * The result is a direct 24-bit image with alpha data, the size of the
+ * logical screen, or of the area covered by the images when the logical
+ * screen size is not set. Areas that are not covered by any image are
+ * transparent, and the delay time is the one of the image at the given
+ * index.
+ * </p><p>
+ * A small number of the most recently requested frames are cached, so
+ * that playing the animation composites each image once, and the frame
+ * is composited starting from the nearest cached frame that precedes it.
+ * The cache is discarded when the images are loaded again or when the
+ * <code>data</code> array or the logical screen size change.
+ * </p>
+ *
+ * @param index the index of the image in the <code>data</code> array
+ * @return the composited frame
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_RANGE - if the index is not between 0 and the number of images minus 1</li>
+ * </ul>
+ *
+ * @since 3.107
+ */
+public ImageData getCompositedFrame(int index) {
+	if (data == null || index < 0 || index >= data.length) SWT.error(SWT.ERROR_INVALID_RANGE);
+	if (compositor == null || !compositor.isValid(data, logicalScreenWidth, logicalScreenHeight)) {
+		compositor = new FrameCompositor(data, logicalScreenWidth, logicalScreenHeight);
+	}
+	return compositor.getFrame(index);
+}
+
 /**
  * Loads an array of <code>ImageData</code> objects from the
  * specified input stream. Throws an error if either an error
@@ -133,17 +285,21 @@ void reset() {
  *
  * @exception IllegalArgumentException <ul>
  *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the source region is empty or does not intersect an image</li>
  * </ul>
  * @exception SWTException <ul>
  *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
  *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
  *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
  * </ul>
+ *
+ * @see #sourceRegion
  */
 public ImageData[] load(InputStream stream) {
 	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (sourceRegion != null && sourceRegion.isEmpty()) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	reset();
-	data = FileFormat.load(stream, this);
+	data = FileFormat.load(stream, this, directPalette);
 	return data;
 }
 
@@ -158,18 +314,21 @@ public ImageData[] load(InputStream stream) {
  *
  * @exception IllegalArgumentException <ul>
  *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the source region is empty or does not intersect an image</li>
  * </ul>
  * @exception SWTException <ul>
  *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
  *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
  *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
  * </ul>
+ *
+ * @see #sourceRegion
  */
 public ImageData[] load(String filename) {
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	InputStream stream = null;
 	try {
-		stream = new FileInputStream(filename);
+		stream = FileFormat.open(filename);
 		return load(stream);
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_IO, e);
@@ -183,6 +342,262 @@ public ImageData[] load(String filename) {
 	return null;
 }
 
+/**
+ * Loads the image with the specified index from the specified input
+ * stream. The data of the other images in the stream is skipped without
+ * being decoded when the format allows it, as is the case for GIF and
+ * ICO files. Throws an error if either an error occurs while loading the
+ * image, or if the image is not of a supported type. Returns an array
+ * containing the loaded image data, which is also stored in
+ * <code>data</code>.
+ * <p>
+ * The index is the position of the image in the array that would be
+ * returned by <code>load(InputStream)</code>, and in the array returned
+ * by <code>probe(InputStream)</code>.
+ * </p>
+ *
+ * @param stream the input stream to load the image from
+ * @param index the index of the image to load
+ * @return an array containing the <code>ImageData</code> loaded from the specified input stream
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the source region is empty or does not intersect the image</li>
+ *    <li>ERROR_INVALID_RANGE - if the index is negative, or the stream contains fewer images</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #probe(InputStream)
+ * @since 3.107
+ */
+public ImageData[] load(InputStream stream, int index) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (index < 0) SWT.error(SWT.ERROR_INVALID_RANGE);
+	if (sourceRegion != null && sourceRegion.isEmpty()) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	reset();
+	data = FileFormat.load(stream, this, directPalette, index);
+	return data;
+}
+
+/**
+ * Loads the image with the specified index from the file with the
+ * specified name. Throws an error if either an error occurs while
+ * loading the image, or if the image is not of a supported type.
+ * Returns an array containing the loaded image data, which is also
+ * stored in <code>data</code>.
+ *
+ * @param filename the name of the file to load the image from
+ * @param index the index of the image to load
+ * @return an array containing the <code>ImageData</code> loaded from the specified file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the source region is empty or does not intersect the image</li>
+ *    <li>ERROR_INVALID_RANGE - if the index is negative, or the file contains fewer images</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #load(InputStream, int)
+ * @since 3.107
+ */
+public ImageData[] load(String filename, int index) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = FileFormat.open(filename);
+		return load(stream, index);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+	return null;
+}
+
+/**
+ * Reads the headers of the images contained in the specified input
+ * stream, and returns their sizes, depths and positions, without
+ * decoding their pixels. Only the file header and the image headers
+ * are read for the BMP, GIF, ICO, JPEG, PNG and TIFF formats, which
+ * is much faster than loading the images and needs no memory for the
+ * pixels. Throws an error if either an error occurs while reading the
+ * headers, or if the images are not of a supported type.
+ * <p>
+ * The logical screen, background pixel and repeat count of the
+ * receiver are set when the headers contain them. The <code>data</code>
+ * field is set to <code>null</code>.
+ * </p>
+ *
+ * @param stream the input stream to read the headers from
+ * @return the headers of the images in the specified input stream
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #load(InputStream, int)
+ * @since 3.107
+ */
+public ImageHeader[] probe(InputStream stream) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	reset();
+	return FileFormat.probe(stream, this);
+}
+
+/**
+ * Reads the headers of the images contained in the file with the
+ * specified name, and returns their sizes, depths and positions,
+ * without decoding their pixels. Throws an error if either an error
+ * occurs while reading the headers, or if the images are not of a
+ * supported type.
+ *
+ * @param filename the name of the file to read the headers from
+ * @return the headers of the images in the specified file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #probe(InputStream)
+ * @since 3.107
+ */
+public ImageHeader[] probe(String filename) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = FileFormat.open(filename);
+		return probe(stream);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+	return null;
+}
+
+/**
+ * Loads the images contained in the specified input stream in bands
+ * of at most <code>bandHeight</code> scanlines, without building
+ * complete <code>ImageData</code> objects. Throws an error if either
+ * an error occurs while loading the images, or if the images are not
+ * of a supported type.
+ * <p>
+ * Every band is sent to the receiver's image loader listeners as soon
+ * as it has been decoded, and is not referenced by the receiver
+ * afterwards, so the memory needed to load an image is bounded by the
+ * band size rather than by the image size. The fields of the
+ * <code>ImageLoaderEvent</code> are used as follows:
+ * </p>
+ * <ul>
+ * <li><code>imageData</code> - the pixels of the band. Its width is the
+ * width of the image, its height is the number of scanlines in the band
+ * and its <code>x</code> and <code>y</code> fields are the position of
+ * the band within the logical screen</li>
+ * <li><code>incrementCount</code> - the zero-based index of the band
+ * within the current image</li>
+ * <li><code>endOfImage</code> - true for the last band of each image</li>
+ * </ul>
+ * <p>
+ * The <code>logicalScreenWidth</code> and <code>logicalScreenHeight</code>
+ * fields are set before the first band of each image is sent. For
+ * formats that have no notion of a logical screen, they are the size
+ * of the image.
+ * </p><p>
+ * PNG, JPEG, uncompressed BMP and TIFF images are streamed. Interlaced
+ * PNG and progressive JPEG images need to keep their coefficients or
+ * pixels for the later passes, and BMP images are usually stored bottom-up,
+ * in which case their bands are sent from the bottom of the image to the
+ * top. Images in other formats are decoded completely before they are sent
+ * in bands.
+ * </p>
+ *
+ * @param stream the input stream to load the images from
+ * @param bandHeight the maximum number of scanlines in each band
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the band height is not positive</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #addImageLoaderListener(ImageLoaderListener)
+ * @since 3.107
+ */
+public void loadBands(InputStream stream, int bandHeight) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (bandHeight <= 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	reset();
+	FileFormat.loadBands(stream, this, bandHeight);
+}
+
+/**
+ * Loads the images contained in the file with the specified name in
+ * bands of at most <code>bandHeight</code> scanlines, without building
+ * complete <code>ImageData</code> objects.
+ *
+ * @param filename the name of the file to load the images from
+ * @param bandHeight the maximum number of scanlines in each band
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the band height is not positive</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #loadBands(InputStream, int)
+ * @since 3.107
+ */
+public void loadBands(String filename, int bandHeight) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = FileFormat.open(filename);
+		loadBands(stream, bandHeight);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+}
+
 /**
  * Saves the image data in this ImageLoader to the specified stream.
  * The format parameter can have one of the following values:
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.lang.ref.*;
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.*;
+
+/**
+ * Instances of this class share the images of a device among all the
+ * users of the same image, so that the native resources of an image are
+ * allocated once for each image file or provider rather than once for
+ * each user.
+ * <p>
+ * Images are acquired from the pool of a device for a source, which is
+ * the name of an image file, an <code>ImageFileNameProvider</code> or an
+ * <code>ImageDataProvider</code>, and the zoom level of the device. The
+ * same image is answered to every user of the source at that zoom level,
+ * and it counts its users. Each user must release the image when it no
+ * longer needs it, and must not dispose it. An image that has been
+ * released by all its users stays in the pool until the next garbage
+ * collection, so that it can be acquired again without being loaded
+ * again, and is then disposed. The images of the pool are disposed
+ * when the device is disposed.
+ * </p><p>
+ * The pool of a device may be used from any thread.
+ * </p>
+ *
+ * @see Image
+ * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
+ *
+ * @since 3.107
+ */
+public final class ImagePool {
+	final Device device;
+	final HashMap<Key, Entry> entries = new HashMap<>();
+	final IdentityHashMap<Image, Entry> images = new IdentityHashMap<>();
+
+	/* The references of the images without users, enqueued when cleared */
+	final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+	/*
+	 * The source of an image and the zoom level at which it was created.
+	 */
+	static final class Key {
+		final Object source;
+		final int zoom;
+
+		Key(Object source, int zoom) {
+			this.source = source;
+			this.zoom = zoom;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) return false;
+			Key key = (Key) object;
+			return source.equals(key.source) && zoom == key.zoom;
+		}
+
+		@Override
+		public int hashCode() {
+			return source.hashCode() * 31 + zoom;
+		}
+	}
+
+	/*
+	 * An image of the pool and the number of its users. When the image
+	 * has no users, the reference is cleared by the next garbage collection.
+	 */
+	static final class Entry {
+		final Key key;
+		final Image image;
+		int references;
+		Unused unused;
+
+		Entry(Key key, Image image) {
+			this.key = key;
+			this.image = image;
+		}
+	}
+
+	/*
+	 * The weak reference of an image without users. Its referent is
+	 * only reachable through it, so the next collection clears it.
+	 */
+	static final class Unused extends WeakReference<Object> {
+		final Entry entry;
+
+		Unused(Entry entry, ReferenceQueue<Object> queue) {
+			super(new Object(), queue);
+			this.entry = entry;
+		}
+	}
+
+ImagePool(Device device) {
+	this.device = device;
+}
+
+/**
+ * Returns the image pool of the given device.
+ *
+ * @param device the device whose images are shared
+ * @return the image pool of the device
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the device is null and there is no current device</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device has been disposed</li>
+ * </ul>
+ */
+public static ImagePool getPool(Device device) {
+	if (device == null) device = Device.getDevice();
+	if (device == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	synchronized (ImagePool.class) {
+		if (device.isDisposed()) SWT.error(SWT.ERROR_DEVICE_DISPOSED);
+		if (device.imagePool == null) device.imagePool = new ImagePool(device);
+		return device.imagePool;
+	}
+}
+
+/**
+ * Returns the shared image of the given image file at the current
+ * zoom level, and counts the caller as one of its users. The image
+ * is created as by <code>new Image(device, filename)</code> when the
+ * pool does not have it.
+ *
+ * @param filename the name of the file to load the image from
+ * @return the shared image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device of the pool has been disposed</li>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data </li>
+ *    <li>ERROR_UNSUPPORTED_DEPTH - if the image file describes an image with an unsupported depth</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #release(Image)
+ */
+public Image acquire(String filename) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	return acquire((Object) filename);
+}
+
+/**
+ * Returns the shared image of the given file name provider at the
+ * current zoom level, and counts the caller as one of its users. The
+ * image is created as by <code>new Image(device, imageFileNameProvider)</code>
+ * when the pool does not have it.
+ *
+ * @param imageFileNameProvider the provider of the image file names
+ * @return the shared image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the provider is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the provider answers null at 100% zoom</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device of the pool has been disposed</li>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data </li>
+ *    <li>ERROR_UNSUPPORTED_DEPTH - if the image file describes an image with an unsupported depth</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #release(Image)
+ */
+public Image acquireFile(ImageFileNameProvider imageFileNameProvider) {
+	if (imageFileNameProvider == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	return acquire((Object) imageFileNameProvider);
+}
+
+/**
+ * Returns the shared image of the given image data provider at the
+ * current zoom level, and counts the caller as one of its users. The
+ * image is created as by <code>new Image(device, imageDataProvider)</code>
+ * when the pool does not have it.
+ *
+ * @param imageDataProvider the provider of the image data
+ * @return the shared image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the provider is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the provider answers null at 100% zoom</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device of the pool has been disposed</li>
+ * </ul>
+ *
+ * @see #release(Image)
+ */
+public Image acquireData(ImageDataProvider imageDataProvider) {
+	if (imageDataProvider == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	return acquire((Object) imageDataProvider);
+}
+
+synchronized Image acquire(Object source) {
+	if (device.isDisposed()) SWT.error(SWT.ERROR_DEVICE_DISPOSED);
+	expunge();
+	Key key = new Key(source, DPIUtil.getDeviceZoom());
+	Entry entry = entries.get(key);
+	if (entry != null && entry.image.isDisposed()) {
+		/* A user disposed the shared image, create it again */
+		remove(entry);
+		entry = null;
+	}
+	if (entry == null) {
+		Image image;
+		if (source instanceof String) {
+			image = new Image(device, (String) source);
+		} else if (source instanceof ImageFileNameProvider) {
+			image = new Image(device, (ImageFileNameProvider) source);
+		} else {
+			image = new Image(device, (ImageDataProvider) source);
+		}
+		entry = new Entry(key, image);
+		entries.put(key, entry);
+		images.put(image, entry);
+	}
+	entry.references++;
+	entry.unused = null;
+	return entry.image;
+}
+
+/**
+ * Stops counting the caller as one of the users of the given shared
+ * image. When the image has no users left, it is disposed after the
+ * next garbage collection, unless it is acquired again before.
+ *
+ * @param image the image that was acquired from the receiver
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the image is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the image was not acquired from the receiver, or has no users</li>
+ * </ul>
+ */
+public synchronized void release(Image image) {
+	if (image == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	Entry entry = images.get(image);
+	if (entry == null || entry.references == 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (--entry.references == 0) entry.unused = new Unused(entry, queue);
+	expunge();
+}
+
+/**
+ * Dispose the images that have no users and whose references have
+ * been cleared by the garbage collector.
+ */
+void expunge() {
+	Unused unused;
+	while ((unused = (Unused) queue.poll()) != null) {
+		Entry entry = unused.entry;
+		/* Ignore the images that were acquired again or removed since */
+		if (entry.unused == unused && images.get(entry.image) == entry) {
+			remove(entry);
+			entry.image.dispose();
+		}
+	}
+}
+
+void remove(Entry entry) {
+	entries.remove(entry.key);
+	images.remove(entry.image);
+}
+
+/**
+ * Disposes the images of the receiver that have no users now, without
+ * waiting for the garbage collector.
+ */
+public synchronized void evictUnused() {
+	for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+		Entry entry = iterator.next();
+		if (entry.references == 0) {
+			iterator.remove();
+			images.remove(entry.image);
+			entry.image.dispose();
+		}
+	}
+	/* The references of the disposed images are no longer needed */
+	while (queue.poll() != null) {}
+}
+
+/**
+ * Returns the number of images in the receiver, including the images
+ * that have no users but have not been disposed yet.
+ *
+ * @return the number of images
+ */
+public synchronized int getImageCount() {
+	expunge();
+	return entries.size();
+}
+
+/**
+ * Returns the number of users of the given shared image, or 0 if it
+ * was not acquired from the receiver.
+ *
+ * @param image the image
+ * @return the number of users of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the image is null</li>
+ * </ul>
+ */
+public synchronized int getReferenceCount(Image image) {
+	if (image == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	Entry entry = images.get(image);
+	return entry != null ? entry.references : 0;
+}
+
+/**
+ * Returns an estimate of the native memory that is used by the images
+ * in the receiver, in bytes, counting four bytes for each pixel.
+ *
+ * @return the memory used by the images
+ */
+public synchronized long getFootprint() {
+	expunge();
+	long footprint = 0;
+	for (Entry entry : entries.values()) {
+		if (entry.image.isDisposed()) continue;
+		Rectangle bounds = DPIUtil.autoScaleUp(entry.image.getBounds());
+		footprint += (long) bounds.width * bounds.height * 4;
+	}
+	return footprint;
+}
+
+/**
+ * Dispose all the images of the receiver, when its device is disposed.
+ */
+synchronized void dispose() {
+	for (Entry entry : entries.values()) {
+		if (!entry.image.isDisposed()) entry.image.dispose();
+	}
+	entries.clear();
+	images.clear();
+	while (queue.poll() != null) {}
+}
+
+/**
+ * Returns a string containing a concise, human-readable
+ * description of the receiver.
+ *
+ * @return a string representation of the pool
+ */
+@Override
+public synchronized String toString() {
+	return "ImagePool {" + entries.size() + " images}"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
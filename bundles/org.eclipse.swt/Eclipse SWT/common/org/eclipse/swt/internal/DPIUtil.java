@@ -12,6 +12,7 @@ package org.eclipse.swt.internal;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.internal.image.*;
 
 /**
  * This class hold common constants and utility functions w.r.t. to SWT high DPI
@@ -35,7 +36,7 @@ public class DPIUtil {
 	private static int deviceZoom = 100;
 	private static int nativeDeviceZoom = 100;
 
-	private static enum AutoScaleMethod { AUTO, NEAREST, SMOOTH }
+	private static enum AutoScaleMethod { AUTO, NEAREST, SMOOTH, BILINEAR, BICUBIC, LANCZOS }
 	private static AutoScaleMethod autoScaleMethodSetting = AutoScaleMethod.AUTO;
 	private static AutoScaleMethod autoScaleMethod = AutoScaleMethod.NEAREST;
 
@@ -64,21 +65,24 @@ public class DPIUtil {
 	 * System property that controls the method for scaling images:
 	 * <ul>
 	 * <li>"nearest": nearest-neighbor interpolation, may look jagged</li>
-	 * <li>"smooth": smooth edges, may look blurry</li>
+	 * <li>"smooth": smooth edges, may look blurry (same as "bilinear")</li>
+	 * <li>"bilinear": bilinear interpolation</li>
+	 * <li>"bicubic": bicubic interpolation, sharper than "bilinear"</li>
+	 * <li>"lanczos": Lanczos interpolation, sharpest, slowest</li>
 	 * </ul>
 	 * The current default is to use "nearest", except on
 	 * GTK when the deviceZoom is not an integer multiple of 100%.
-	 * The smooth strategy currently doesn't work on Win32 and Cocoa, see
-	 * <a href="https://bugs.eclipse.org/493455">bug 493455</a>.
+	 * The interpolating methods scale the image data without a device,
+	 * see {@link ImageResampler}.
 	 */
 	private static final String SWT_AUTOSCALE_METHOD = "swt.autoScale.method";
 	static {
 		String value = System.getProperty (SWT_AUTOSCALE_METHOD);
 		if (value != null) {
-			if (AutoScaleMethod.NEAREST.name().equalsIgnoreCase(value)) {
-				autoScaleMethod = autoScaleMethodSetting = AutoScaleMethod.NEAREST;
-			} else if (AutoScaleMethod.SMOOTH.name().equalsIgnoreCase(value)) {
-				autoScaleMethod = autoScaleMethodSetting = AutoScaleMethod.SMOOTH;
+			for (AutoScaleMethod method : AutoScaleMethod.values()) {
+				if (method != AutoScaleMethod.AUTO && method.name().equalsIgnoreCase(value)) {
+					autoScaleMethod = autoScaleMethodSetting = method;
+				}
 			}
 		}
 	}
@@ -221,25 +225,12 @@ private static ImageData autoScaleImageData (Device device, final ImageData imag
 	int scaledHeight = Math.round ((float) height * scaleFactor);
 	switch (autoScaleMethod) {
 	case SMOOTH:
-		Image original = new Image (device, (ImageDataProvider) zoom -> imageData);
-
-		/* Create a 24 bit image data with alpha channel */
-		final ImageData resultData = new ImageData (scaledWidth, scaledHeight, 24, new PaletteData (0xFF, 0xFF00, 0xFF0000));
-		resultData.alphaData = new byte [scaledWidth * scaledHeight];
-
-		Image resultImage = new Image (device, (ImageDataProvider) zoom -> resultData);
-		GC gc = new GC (resultImage);
-		gc.setAntialias (SWT.ON);
-		gc.drawImage (original, 0, 0, DPIUtil.autoScaleDown (width), DPIUtil.autoScaleDown (height),
-				/* E.g. destWidth here is effectively DPIUtil.autoScaleDown (scaledWidth), but avoiding rounding errors.
-				 * Nevertheless, we still have some rounding errors due to the point-based API GC#drawImage(..).
-				 */
-				0, 0, Math.round (DPIUtil.autoScaleDown ((float) width * scaleFactor)), Math.round (DPIUtil.autoScaleDown ((float) height * scaleFactor)));
-		gc.dispose ();
-		original.dispose ();
-		ImageData result = resultImage.getImageData (DPIUtil.getDeviceZoom ());
-		resultImage.dispose ();
-		return result;
+	case BILINEAR:
+		return ImageResampler.resample (imageData, scaledWidth, scaledHeight, ImageResampler.BILINEAR, true);
+	case BICUBIC:
+		return ImageResampler.resample (imageData, scaledWidth, scaledHeight, ImageResampler.BICUBIC, true);
+	case LANCZOS:
+		return ImageResampler.resample (imageData, scaledWidth, scaledHeight, ImageResampler.LANCZOS, true);
 	case NEAREST:
 	default:
 		return imageData.scaledTo (scaledWidth, scaledHeight);
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal;
+
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A first-in first-out queue that any thread may add elements to, and
+ * that only one thread, the consumer, removes elements from. Adding and
+ * removing take constant time and never lock.
+ * <p>
+ * The elements are kept in a linked list of nodes. A producer exchanges
+ * its node with the tail and then links it after the previous tail, the
+ * consumer follows the links from the head. A node that has been
+ * exchanged but not linked yet hides the nodes that are added after it,
+ * so <code>poll</code> may answer <code>null</code> for a moment while
+ * <code>size</code> is not zero.
+ * </p><p>
+ * The size counts an element as soon as it starts to be added. A consumer
+ * that does not wait while the size is not zero therefore never misses an
+ * element, and a producer whose element makes the size leave zero is the
+ * one that has to wake the consumer.
+ * </p>
+ */
+public final class SingleConsumerQueue<E> {
+	final AtomicReference<Node<E>> tail;
+	final AtomicInteger size = new AtomicInteger ();
+
+	/* The node of the last removed element, only used by the consumer */
+	Node<E> head;
+
+	/* The elements added to the front by the consumer, removed before the linked nodes */
+	Object [] front;
+	int frontIndex;
+
+	static final class Node<E> {
+		E element;
+		volatile Node<E> next;
+
+		Node (E element) {
+			this.element = element;
+		}
+	}
+
+public SingleConsumerQueue () {
+	head = new Node<> (null);
+	tail = new AtomicReference<> (head);
+}
+
+/**
+ * Adds the element to the end of the receiver. May be called from any thread.
+ *
+ * @param element the element, not null
+ * @return <code>true</code> if the receiver was empty, <code>false</code> otherwise
+ */
+public boolean add (E element) {
+	Node<E> node = new Node<> (element);
+	boolean wasEmpty = size.getAndIncrement () == 0;
+	tail.getAndSet (node).next = node;
+	return wasEmpty;
+}
+
+/**
+ * Adds the first <code>count</code> elements of the array to the front of
+ * the receiver, in order. Must only be called by the consumer.
+ *
+ * @param elements the elements, not null
+ * @param count the number of elements to add
+ * @return <code>true</code> if the receiver was empty, <code>false</code> otherwise
+ */
+public boolean addFirst (E [] elements, int count) {
+	if (count <= 0) return false;
+	int frontCount = front != null ? front.length - frontIndex : 0;
+	Object [] newFront = new Object [count + frontCount];
+	System.arraycopy (elements, 0, newFront, 0, count);
+	if (frontCount > 0) System.arraycopy (front, frontIndex, newFront, count, frontCount);
+	front = newFront;
+	frontIndex = 0;
+	return size.getAndAdd (count) == 0;
+}
+
+/**
+ * Removes the first element of the receiver. Must only be called by the consumer.
+ *
+ * @return the first element, or <code>null</code> if there is no element
+ * or the first element is still being added
+ */
+@SuppressWarnings("unchecked")
+public E poll () {
+	E element;
+	if (front != null) {
+		element = (E) front [frontIndex];
+		front [frontIndex++] = null;
+		if (frontIndex == front.length) front = null;
+	} else {
+		Node<E> next = head.next;
+		if (next == null) return null;
+		element = next.element;
+		next.element = null;
+		head = next;
+	}
+	size.decrementAndGet ();
+	return element;
+}
+
+/**
+ * Returns the number of elements in the receiver, including the elements
+ * that are being added. May be called from any thread.
+ *
+ * @return the number of elements
+ */
+public int size () {
+	return size.get ();
+}
+
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal;
+
+
+import java.util.*;
+
+/**
+ * A hierarchical timing wheel of runnables, which schedules and cancels
+ * a runnable in constant time, so that a display can keep thousands of
+ * timers behind a single native timeout.
+ * <p>
+ * Times are in milliseconds and must not be negative. Each level of the
+ * wheel has 64 slots, and a slot of a level spans all the slots of the
+ * level below it. A runnable is kept in the lowest level in which its
+ * deadline is in a slot after the current time. When the time reaches a
+ * slot of a higher level, the runnables of the slot are moved down, and
+ * when it reaches a slot of the lowest level, its runnables are due. A
+ * bit mask of the slots that are not empty is kept for each level, so
+ * the time of the next slot to process is found without scanning the
+ * slots.
+ * </p><p>
+ * Runnables are compared by identity. A runnable that is scheduled while
+ * the due runnables are being run is never due before the time is
+ * advanced again, so a runnable that schedules itself with no delay runs
+ * once for each advance.
+ * </p>
+ */
+public final class TimerWheel {
+	static final int SLOT_BITS = 6;
+	static final int SLOTS = 1 << SLOT_BITS;
+	static final int LEVELS = 7;
+
+	/* The time up to which the wheel has been advanced */
+	long current;
+
+	/* The first and last timers of each slot, and the slots that are not empty */
+	final Timer [][] heads = new Timer [LEVELS][SLOTS];
+	final Timer [][] tails = new Timer [LEVELS][SLOTS];
+	final long [] occupied = new long [LEVELS];
+
+	/* The timers that are due, in order */
+	Timer dueHead, dueTail;
+
+	final IdentityHashMap<Runnable, Timer> timers = new IdentityHashMap<> ();
+
+	static final class Timer {
+		final Runnable runnable;
+		long deadline;
+		/* The level and slot of the timer, or -1 when it is due */
+		int level, slot;
+		Timer previous, next;
+
+		Timer (Runnable runnable) {
+			this.runnable = runnable;
+		}
+	}
+
+/**
+ * Constructs a new wheel at the given time.
+ *
+ * @param time the current time
+ */
+public TimerWheel (long time) {
+	current = time;
+}
+
+/**
+ * Schedules the runnable to be due at the given time, replacing the time
+ * at which it was scheduled before. A time that is not after the time to
+ * which the receiver has been advanced is moved to the next millisecond.
+ *
+ * @param runnable the runnable
+ * @param deadline the time at which the runnable is due
+ * @return the time at which the runnable is due
+ */
+public long schedule (Runnable runnable, long deadline) {
+	Timer timer = timers.get (runnable);
+	if (timer == null) {
+		timer = new Timer (runnable);
+		timers.put (runnable, timer);
+	} else {
+		unlink (timer);
+	}
+	timer.deadline = Math.max (deadline, current + 1);
+	link (timer);
+	return timer.deadline;
+}
+
+/**
+ * Cancels the runnable if it is scheduled or due.
+ *
+ * @param runnable the runnable
+ * @return <code>true</code> if the runnable was scheduled, <code>false</code> otherwise
+ */
+public boolean cancel (Runnable runnable) {
+	Timer timer = timers.remove (runnable);
+	if (timer == null) return false;
+	unlink (timer);
+	return true;
+}
+
+/**
+ * Advances the receiver to the given time, making the runnables whose
+ * time has come due. Does nothing if the time is before the time to
+ * which the receiver has been advanced.
+ *
+ * @param time the current time
+ */
+public void advance (long time) {
+	int level;
+	while ((level = nextLevel ()) != -1) {
+		long start = slotTime (level);
+		if (start > time) break;
+		current = start;
+		/* Move the timers of the slot down, or to the due timers */
+		int slot = (int) (start >>> (level * SLOT_BITS)) & (SLOTS - 1);
+		Timer timer = heads [level][slot];
+		heads [level][slot] = tails [level][slot] = null;
+		occupied [level] &= ~(1L << slot);
+		while (timer != null) {
+			Timer next = timer.next;
+			link (timer);
+			timer = next;
+		}
+	}
+	if (time > current) current = time;
+}
+
+/**
+ * Removes the first due runnable of the receiver.
+ *
+ * @return the runnable, or <code>null</code> if no runnable is due
+ */
+public Runnable poll () {
+	Timer timer = dueHead;
+	if (timer == null) return null;
+	timers.remove (timer.runnable);
+	unlink (timer);
+	return timer.runnable;
+}
+
+/**
+ * Returns the time at which the receiver has to be advanced next, which
+ * is not after the earliest time at which a runnable is due. Returns
+ * the time to which the receiver has been advanced when a runnable is
+ * due, and <code>Long.MAX_VALUE</code> when the receiver is empty.
+ *
+ * @return the time of the next advance
+ */
+public long nextTime () {
+	if (dueHead != null) return current;
+	int level = nextLevel ();
+	return level != -1 ? slotTime (level) : Long.MAX_VALUE;
+}
+
+/**
+ * Returns whether the receiver has no runnables.
+ *
+ * @return <code>true</code> if no runnable is scheduled or due, <code>false</code> otherwise
+ */
+public boolean isEmpty () {
+	return timers.isEmpty ();
+}
+
+/**
+ * Returns the number of runnables in the receiver.
+ *
+ * @return the number of scheduled and due runnables
+ */
+public int size () {
+	return timers.size ();
+}
+
+/**
+ * Removes all the runnables of the receiver.
+ */
+public void clear () {
+	for (int level = 0; level < LEVELS; level++) {
+		Arrays.fill (heads [level], null);
+		Arrays.fill (tails [level], null);
+		occupied [level] = 0;
+	}
+	dueHead = dueTail = null;
+	timers.clear ();
+}
+
+/*
+ * Answer the lowest level that has a slot to process, whose timers are
+ * due before the timers of all the levels above it, or -1 if there is none.
+ */
+int nextLevel () {
+	for (int level = 0; level < LEVELS; level++) {
+		if (occupied [level] != 0) return level;
+	}
+	return -1;
+}
+
+/*
+ * Answer the start time of the first slot of the level that is not empty.
+ */
+long slotTime (int level) {
+	int shift = level * SLOT_BITS;
+	long slots = occupied [level] & (-1L << ((int) (current >>> shift) & (SLOTS - 1)));
+	long start = (current >>> (shift + SLOT_BITS)) << (shift + SLOT_BITS);
+	return start | ((long) Long.numberOfTrailingZeros (slots) << shift);
+}
+
+void link (Timer timer) {
+	long deadline = timer.deadline;
+	Timer tail;
+	if (deadline <= current) {
+		timer.level = timer.slot = -1;
+		tail = dueTail;
+		if (tail == null) dueHead = timer; else tail.next = timer;
+		dueTail = timer;
+	} else {
+		int level = Math.min ((63 - Long.numberOfLeadingZeros (deadline ^ current)) / SLOT_BITS, LEVELS - 1);
+		int slot = (int) (deadline >>> (level * SLOT_BITS)) & (SLOTS - 1);
+		timer.level = level;
+		timer.slot = slot;
+		tail = tails [level][slot];
+		if (tail == null) heads [level][slot] = timer; else tail.next = timer;
+		tails [level][slot] = timer;
+		occupied [level] |= 1L << slot;
+	}
+	timer.previous = tail;
+	timer.next = null;
+}
+
+void unlink (Timer timer) {
+	Timer previous = timer.previous, next = timer.next;
+	int level = timer.level, slot = timer.slot;
+	if (level == -1) {
+		if (previous == null) dueHead = next; else previous.next = next;
+		if (next == null) dueTail = previous; else next.previous = previous;
+	} else {
+		if (previous == null) heads [level][slot] = next; else previous.next = next;
+		if (next == null) tails [level][slot] = previous; else next.previous = previous;
+		if (heads [level][slot] == null) occupied [level] &= ~(1L << slot);
+	}
+	timer.previous = timer.next = null;
+}
+
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.util.*;
+
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Reduces the colors of an image to a palette of at most 256 colors.
+ * <p>
+ * When the image has no more colors than the palette can hold, its colors
+ * are kept exactly. Otherwise the palette is chosen by median cut: the
+ * box of 15-bit colors that holds the most pixels is split at the median
+ * of its longest side until there are enough boxes, and each box gives
+ * the average of its pixels. The pixels are mapped to the nearest color
+ * of the palette, optionally with Floyd-Steinberg error diffusion.
+ * </p><p>
+ * The pixels are given as 0xAARRGGBB values, and pixels whose alpha is
+ * 0 are mapped to a transparent index that follows the colors.
+ * </p>
+ */
+final class ColorQuantizer {
+	final int[] pixels;
+	final int width, height;
+	int[] colors;
+	int colorCount;
+	int transparentIndex = -1;
+
+	/* exact colors, as a hash table of colors and indices */
+	int[] exactKeys, exactIndices;
+
+	/* the nearest color of each 15-bit color, or -1 */
+	int[] nearest;
+
+	static final int HISTOGRAM_SIZE = 1 << 15;
+
+ColorQuantizer(int[] pixels, int width, int height) {
+	this.pixels = pixels;
+	this.width = width;
+	this.height = height;
+}
+
+/**
+ * Choose a palette of at most the given number of colors, one of
+ * which is kept for the transparent pixels if there are any.
+ */
+void choosePalette(int maxColors) {
+	boolean transparent = false;
+	for (int i = 0; i < pixels.length; i++) {
+		if ((pixels[i] >>> 24) == 0) {
+			transparent = true;
+			break;
+		}
+	}
+	if (transparent) maxColors--;
+	if (!findExactColors(maxColors)) medianCut(maxColors);
+	if (transparent) transparentIndex = colorCount;
+}
+
+/**
+ * Collect the colors of the image, and answer whether there are
+ * no more than the given number.
+ */
+boolean findExactColors(int maxColors) {
+	int size = Integer.highestOneBit(maxColors * 4);
+	int[] keys = new int[size];
+	int[] indices = new int[size];
+	Arrays.fill(keys, -1);
+	int[] colors = new int[maxColors];
+	int count = 0;
+	for (int i = 0; i < pixels.length; i++) {
+		int pixel = pixels[i];
+		if ((pixel >>> 24) == 0) continue;
+		int rgb = pixel & 0xFFFFFF;
+		int hash = (rgb * 0x9E3779B1) >>> 16 & (size - 1);
+		while (keys[hash] != -1 && keys[hash] != rgb) hash = (hash + 1) & (size - 1);
+		if (keys[hash] == rgb) continue;
+		if (count == maxColors) return false;
+		keys[hash] = rgb;
+		indices[hash] = count;
+		colors[count++] = rgb;
+	}
+	this.colors = colors;
+	colorCount = count;
+	exactKeys = keys;
+	exactIndices = indices;
+	return true;
+}
+
+/**
+ * Choose the palette by median cut of the histogram of 15-bit colors.
+ */
+void medianCut(int maxColors) {
+	int[] counts = new int[HISTOGRAM_SIZE];
+	long[] sums = new long[HISTOGRAM_SIZE * 3];
+	for (int i = 0; i < pixels.length; i++) {
+		int pixel = pixels[i];
+		if ((pixel >>> 24) == 0) continue;
+		int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+		int key = key(r, g, b);
+		counts[key]++;
+		sums[key * 3] += r;
+		sums[key * 3 + 1] += g;
+		sums[key * 3 + 2] += b;
+	}
+	/* Each box is the range of its red, green and blue levels, and its pixel count */
+	int[][] boxes = new int[maxColors][];
+	int boxCount = 1;
+	boxes[0] = shrink(counts, new int[] {0, 31, 0, 31, 0, 31, 0});
+	while (boxCount < maxColors) {
+		int best = -1;
+		for (int i = 0; i < boxCount; i++) {
+			int[] box = boxes[i];
+			if (box[0] == box[1] && box[2] == box[3] && box[4] == box[5]) continue;
+			if (best == -1 || box[6] > boxes[best][6]) best = i;
+		}
+		if (best == -1) break;
+		int[] box = boxes[best];
+		/* Split the longest side at the median of the pixels */
+		int side = 0;
+		if (box[3] - box[2] > box[1] - box[0]) side = 2;
+		if (box[5] - box[4] > box[side + 1] - box[side]) side = 4;
+		int[] levels = new int[32];
+		for (int r = box[0]; r <= box[1]; r++) {
+			for (int g = box[2]; g <= box[3]; g++) {
+				for (int b = box[4]; b <= box[5]; b++) {
+					int level = side == 0 ? r : side == 2 ? g : b;
+					levels[level] += counts[(r << 10) | (g << 5) | b];
+				}
+			}
+		}
+		int split = box[side], sum = levels[split];
+		while (split < box[side + 1] - 1 && sum + levels[split + 1] <= box[6] / 2) {
+			sum += levels[++split];
+		}
+		int[] low = box.clone(), high = box.clone();
+		low[side + 1] = split;
+		high[side] = split + 1;
+		boxes[best] = shrink(counts, low);
+		boxes[boxCount++] = shrink(counts, high);
+	}
+	colors = new int[boxCount];
+	for (int i = 0; i < boxCount; i++) {
+		int[] box = boxes[i];
+		long r = 0, g = 0, b = 0, n = 0;
+		for (int red = box[0]; red <= box[1]; red++) {
+			for (int green = box[2]; green <= box[3]; green++) {
+				for (int blue = box[4]; blue <= box[5]; blue++) {
+					int key = (red << 10) | (green << 5) | blue;
+					n += counts[key];
+					r += sums[key * 3];
+					g += sums[key * 3 + 1];
+					b += sums[key * 3 + 2];
+				}
+			}
+		}
+		if (n > 0) {
+			colors[i] = (int) ((r + n / 2) / n) << 16 | (int) ((g + n / 2) / n) << 8 | (int) ((b + n / 2) / n);
+		}
+	}
+	colorCount = boxCount;
+	nearest = new int[HISTOGRAM_SIZE];
+	Arrays.fill(nearest, -1);
+}
+
+/**
+ * Reduce the box to the levels that hold pixels, and count its pixels.
+ */
+static int[] shrink(int[] counts, int[] box) {
+	int r0 = 31, r1 = 0, g0 = 31, g1 = 0, b0 = 31, b1 = 0, n = 0;
+	for (int r = box[0]; r <= box[1]; r++) {
+		for (int g = box[2]; g <= box[3]; g++) {
+			for (int b = box[4]; b <= box[5]; b++) {
+				int count = counts[(r << 10) | (g << 5) | b];
+				if (count == 0) continue;
+				n += count;
+				r0 = Math.min(r0, r); r1 = Math.max(r1, r);
+				g0 = Math.min(g0, g); g1 = Math.max(g1, g);
+				b0 = Math.min(b0, b); b1 = Math.max(b1, b);
+			}
+		}
+	}
+	if (n == 0) return new int[] {box[0], box[0], box[2], box[2], box[4], box[4], 0};
+	return new int[] {r0, r1, g0, g1, b0, b1, n};
+}
+
+static int key(int r, int g, int b) {
+	return ((r >> 3) << 10) | ((g >> 3) << 5) | (b >> 3);
+}
+
+/**
+ * Answer the palette, including the transparent color if there is one.
+ */
+PaletteData getPalette() {
+	int count = colorCount + (transparentIndex != -1 ? 1 : 0);
+	RGB[] rgbs = new RGB[Math.max(1, count)];
+	for (int i = 0; i < rgbs.length; i++) {
+		int rgb = i < colorCount ? colors[i] : 0;
+		rgbs[i] = new RGB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+	}
+	return new PaletteData(rgbs);
+}
+
+/**
+ * Answer the index of the palette color that is nearest to the given color.
+ */
+int indexOf(int r, int g, int b) {
+	if (exactKeys != null) {
+		int rgb = (r << 16) | (g << 8) | b;
+		int size = exactKeys.length;
+		int hash = (rgb * 0x9E3779B1) >>> 16 & (size - 1);
+		while (exactKeys[hash] != -1) {
+			if (exactKeys[hash] == rgb) return exactIndices[hash];
+			hash = (hash + 1) & (size - 1);
+		}
+	}
+	int key = key(r, g, b);
+	if (nearest == null) {
+		nearest = new int[HISTOGRAM_SIZE];
+		Arrays.fill(nearest, -1);
+	}
+	int index = nearest[key];
+	if (index == -1) {
+		/* Search from the center of the 15-bit color */
+		int red = (r & 0xF8) | 4, green = (g & 0xF8) | 4, blue = (b & 0xF8) | 4;
+		int best = Integer.MAX_VALUE;
+		for (int i = 0; i < colorCount; i++) {
+			int color = colors[i];
+			int dr = ((color >> 16) & 0xFF) - red, dg = ((color >> 8) & 0xFF) - green, db = (color & 0xFF) - blue;
+			int distance = dr * dr + dg * dg + db * db;
+			if (distance < best) {
+				best = distance;
+				index = i;
+			}
+		}
+		nearest[key] = index;
+	}
+	return index;
+}
+
+/**
+ * Map the pixels to the indices of the palette, one byte per pixel.
+ */
+byte[] map(boolean dither) {
+	byte[] indices = new byte[width * height];
+	if (colorCount == 0) {
+		if (transparentIndex != -1) Arrays.fill(indices, (byte) transparentIndex);
+		return indices;
+	}
+	if (!dither || exactKeys != null) {
+		for (int i = 0; i < indices.length; i++) {
+			int pixel = pixels[i];
+			if ((pixel >>> 24) == 0) {
+				indices[i] = (byte) transparentIndex;
+			} else {
+				indices[i] = (byte) indexOf((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+			}
+		}
+		return indices;
+	}
+	/*
+	* Floyd-Steinberg error diffusion, with the errors of the current
+	* and the next row, in 1/16 units, for each of the three channels.
+	*/
+	int[] errors = new int[(width + 2) * 3];
+	int[] nextErrors = new int[(width + 2) * 3];
+	for (int y = 0; y < height; y++) {
+		Arrays.fill(nextErrors, 0);
+		for (int x = 0; x < width; x++) {
+			int i = y * width + x;
+			int pixel = pixels[i];
+			if ((pixel >>> 24) == 0) {
+				indices[i] = (byte) transparentIndex;
+				continue;
+			}
+			int e = (x + 1) * 3;
+			int r = clamp(((pixel >> 16) & 0xFF) + errors[e] / 16);
+			int g = clamp(((pixel >> 8) & 0xFF) + errors[e + 1] / 16);
+			int b = clamp((pixel & 0xFF) + errors[e + 2] / 16);
+			int index = indexOf(r, g, b);
+			indices[i] = (byte) index;
+			int color = colors[index];
+			int dr = r - ((color >> 16) & 0xFF), dg = g - ((color >> 8) & 0xFF), db = b - (color & 0xFF);
+			errors[e + 3] += dr * 7; errors[e + 4] += dg * 7; errors[e + 5] += db * 7;
+			nextErrors[e - 3] += dr * 3; nextErrors[e - 2] += dg * 3; nextErrors[e - 1] += db * 3;
+			nextErrors[e] += dr * 5; nextErrors[e + 1] += dg * 5; nextErrors[e + 2] += db * 5;
+			nextErrors[e + 3] += dr; nextErrors[e + 4] += dg; nextErrors[e + 5] += db;
+		}
+		int[] swap = errors;
+		errors = nextErrors;
+		nextErrors = swap;
+	}
+	return indices;
+}
+
+static int clamp(int value) {
+	return value < 0 ? 0 : value > 255 ? 255 : value;
+}
+
+}
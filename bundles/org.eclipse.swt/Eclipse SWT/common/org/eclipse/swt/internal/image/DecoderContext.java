@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * The scratch structures that the decoders reuse from one image to the
+ * next, so that loading many small images, such as icons, does not
+ * allocate the same tables and buffers again for every image.
+ * <p>
+ * Each thread keeps one context. A decoder takes the context of its
+ * thread with <code>acquire</code> and gives it back with <code>release</code>
+ * when it is done. A decoder that runs while the context of its thread is
+ * taken, for example when a listener of a loader loads another image, gets
+ * a new context. A decoder that fails before it gives its context back
+ * leaves the thread without one, and the next decoder creates a new one.
+ * </p><p>
+ * The contents of the arrays are undefined when a context is acquired.
+ * The structures are of fixed size, so that a context never holds on to
+ * the memory of a large image.
+ * </p>
+ */
+final class DecoderContext {
+
+	/* The contexts that are not in use, one for each thread */
+	static final ThreadLocal<DecoderContext> CONTEXTS = new ThreadLocal<>();
+
+	/* GIF: the string table and output stack of the LZW decoder, and a data sub-block */
+	int[] lzwStack, lzwSuffix, lzwPrefix;
+	byte[] lzwBlock;
+
+	/* JPEG: the input buffer, and the code sizes and codes of a Huffman table */
+	byte[] jpegInput;
+	byte[] huffsize;
+	int[] huffcode;
+
+	/* PNG: the inflater of the image data, and the buffer of the inflated bytes */
+	Inflater inflater;
+	byte[] inflatedBuffer;
+
+	static final int INFLATED_BUFFER_SIZE = 8192;
+
+	/*
+	 * A buffered stream whose buffer is given instead of allocated.
+	 */
+	static final class ReusedBufferInputStream extends BufferedInputStream {
+		ReusedBufferInputStream(InputStream in, byte[] buffer) {
+			super(in, 1);
+			buf = buffer;
+		}
+	}
+
+/**
+ * Answer the context of the current thread, and take it from the thread
+ * until it is released. Answer a new context if the thread has none.
+ */
+static DecoderContext acquire() {
+	DecoderContext context = CONTEXTS.get();
+	if (context == null) return new DecoderContext();
+	CONTEXTS.set(null);
+	return context;
+}
+
+/**
+ * Give the receiver to the current thread, to be used by the next decoder.
+ */
+void release() {
+	CONTEXTS.set(this);
+}
+
+/**
+ * Answer a buffered stream of the inflated bytes of the given stream of
+ * zlib data, which uses the inflater and buffer of the receiver. Closing
+ * the stream does not end the inflater.
+ */
+InputStream inflate(InputStream stream) {
+	if (inflater == null) {
+		inflater = new Inflater();
+		inflatedBuffer = new byte[INFLATED_BUFFER_SIZE];
+	} else {
+		inflater.reset();
+	}
+	return new ReusedBufferInputStream(new InflaterInputStream(stream, inflater), inflatedBuffer);
+}
+
+}
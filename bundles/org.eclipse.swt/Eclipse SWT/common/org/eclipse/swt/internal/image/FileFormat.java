@@ -12,6 +12,9 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 
@@ -23,6 +26,15 @@ import org.eclipse.swt.graphics.*;
 public abstract class FileFormat {
 	static final String FORMAT_PACKAGE = "org.eclipse.swt.internal.image"; //$NON-NLS-1$
 	static final String FORMAT_SUFFIX = "FileFormat"; //$NON-NLS-1$
+	/*
+	 * Files of at least this size are mapped into memory, rather than
+	 * read into the heap, when they are opened
+	 */
+	static final int MAP_THRESHOLD = 1 << 20;
+
+	/* The classes of the formats that have been looked up, by format name */
+	static final ConcurrentHashMap<String, Class<?>> FORMAT_CLASSES = new ConcurrentHashMap<>();
+
 	static final String[] FORMATS = {"WinBMP", "WinBMP", "GIF", "WinICO", "JPEG", "PNG", "TIFF", "OS2BMP"}; //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$//$NON-NLS-5$ //$NON-NLS-6$//$NON-NLS-7$//$NON-NLS-8$
 
 	LEDataInputStream inputStream;
@@ -30,9 +42,47 @@ public abstract class FileFormat {
 	ImageLoader loader;
 	int compression;
 
+	/*
+	 * The maximum number of scanlines per band when the image is streamed
+	 * to the loader's listeners, or 0 when complete images are built
+	 */
+	int bandHeight;
+
+	/*
+	 * The part of each image to decode, or null to decode complete images.
+	 * The region is not clipped to the bounds of the images.
+	 */
+	Rectangle region;
+	boolean regionOutside;
+
+	/*
+	 * The palette of 32-bit direct color images in the pixel layout
+	 * preferred by the caller, or null. Decoders that support it store
+	 * true color pixels in this layout, which the caller then uses
+	 * without converting them. The unused byte of each pixel is 0.
+	 */
+	PaletteData directPalette;
+
+	/*
+	 * The index of the only image to decode, or -1 to decode all the
+	 * images. Formats that cannot select an image ignore it.
+	 */
+	int imageIndex = -1;
+
+/**
+ * Answer the class of the named format, which is looked up only once.
+ */
+static Class<?> getFormatClass(String format) throws ClassNotFoundException {
+	Class<?> clazz = FORMAT_CLASSES.get(format);
+	if (clazz == null) {
+		clazz = Class.forName(FORMAT_PACKAGE + '.' + format + FORMAT_SUFFIX);
+		FORMAT_CLASSES.put(format, clazz);
+	}
+	return clazz;
+}
+
 static FileFormat getFileFormat (LEDataInputStream stream, String format) throws Exception {
-	Class<?> clazz = Class.forName(FORMAT_PACKAGE + '.' + format + FORMAT_SUFFIX);
-	FileFormat fileFormat = (FileFormat) clazz.newInstance();
+	FileFormat fileFormat = (FileFormat) getFormatClass(format).newInstance();
 	if (fileFormat.isFileFormat(stream)) return fileFormat;
 	return null;
 }
@@ -45,6 +95,138 @@ abstract boolean isFileFormat(LEDataInputStream stream);
 
 abstract ImageData[] loadFromByteStream();
 
+/**
+ * Return whether or not the receiver is able to deliver the bands
+ * of an image to the loader's listeners while it is being decoded,
+ * without building the complete image first.
+ */
+boolean canStreamBands() {
+	return false;
+}
+
+/**
+ * Return whether or not the receiver decodes only the image selected
+ * by <code>imageIndex</code>. The images of the other formats are all
+ * decoded and the selected one is picked afterwards.
+ */
+boolean canSelectImage() {
+	return false;
+}
+
+/**
+ * Read the headers of the images in the input stream and answer
+ * their sizes and depths, without decoding the pixels when the
+ * format allows it. The default implementation decodes the images
+ * into a loader that has no listeners.
+ */
+ImageHeader[] probeFromByteStream() {
+	ImageLoader probeLoader = loader;
+	ImageLoader decoder = new ImageLoader();
+	loader = decoder;
+	ImageData[] images;
+	try {
+		images = loadFromByteStream();
+	} finally {
+		loader = probeLoader;
+	}
+	probeLoader.logicalScreenWidth = decoder.logicalScreenWidth;
+	probeLoader.logicalScreenHeight = decoder.logicalScreenHeight;
+	probeLoader.backgroundPixel = decoder.backgroundPixel;
+	probeLoader.repeatCount = decoder.repeatCount;
+	ImageHeader[] headers = new ImageHeader[images.length];
+	for (int i = 0; i < images.length; i++) {
+		ImageData image = images[i];
+		headers[i] = new ImageHeader(image.width, image.height, image.depth, image.type);
+		headers[i].x = image.x;
+		headers[i].y = image.y;
+	}
+	return headers;
+}
+
+/**
+ * Return whether or not the receiver decodes only the source region
+ * of the images it reads. The images of the other formats are decoded
+ * completely and cropped afterwards.
+ */
+boolean canDecodeRegion() {
+	return false;
+}
+
+/**
+ * Answer the part of an image of the given size that is covered by
+ * the source region, or null if the complete image is decoded. Throws
+ * an error if the region lies outside the image.
+ */
+Rectangle clipRegion(int width, int height) {
+	if (region == null) return null;
+	Rectangle bounds = region.intersection(new Rectangle(0, 0, width, height));
+	if (bounds.isEmpty()) {
+		regionOutside = true;
+		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
+	return bounds;
+}
+
+/**
+ * Answer the part of the specified image that is covered by the
+ * source region. The pixels, mask and alpha values are copied.
+ */
+ImageData crop(ImageData image) {
+	Rectangle bounds = clipRegion(image.width, image.height);
+	return crop(image, bounds.x, bounds.y, bounds.width, bounds.height);
+}
+
+static ImageData crop(ImageData image, int x, int y, int width, int height) {
+	if (x == 0 && y == 0 && width == image.width && height == image.height) return image;
+	ImageData result = ImageData.internal_new(
+		width,
+		height,
+		image.depth,
+		image.palette,
+		image.scanlinePad,
+		null,
+		image.maskPad,
+		null,
+		null,
+		image.alpha,
+		image.transparentPixel,
+		image.type,
+		image.x,
+		image.y,
+		image.disposalMethod,
+		image.delayTime);
+	copyPixels(image, result, x, y);
+	if (image.maskData != null) {
+		PaletteData palette = new PaletteData(new RGB(0, 0, 0), new RGB(255, 255, 255));
+		ImageData srcMask = ImageData.internal_new(image.width, image.height, 1, palette, image.maskPad, image.maskData, 0, null, null, -1, -1, SWT.IMAGE_UNDEFINED, 0, 0, 0, 0);
+		ImageData destMask = ImageData.internal_new(width, height, 1, palette, image.maskPad, null, 0, null, null, -1, -1, SWT.IMAGE_UNDEFINED, 0, 0, 0, 0);
+		copyPixels(srcMask, destMask, x, y);
+		result.maskData = destMask.data;
+	}
+	if (image.alphaData != null) {
+		result.alphaData = new byte[width * height];
+		for (int row = 0; row < height; row++) {
+			System.arraycopy(image.alphaData, (y + row) * image.width + x, result.alphaData, row * width, width);
+		}
+	}
+	return result;
+}
+
+static void copyPixels(ImageData src, ImageData dest, int x, int y) {
+	if (src.depth % 8 == 0) {
+		int bytesPerPixel = src.depth / 8;
+		for (int row = 0; row < dest.height; row++) {
+			System.arraycopy(src.data, (y + row) * src.bytesPerLine + x * bytesPerPixel, dest.data, row * dest.bytesPerLine, dest.width * bytesPerPixel);
+		}
+	} else {
+		byte[] pixels = new byte[dest.width];
+		for (int row = 0; row < dest.height; row++) {
+			src.getPixels(x, y + row, dest.width, pixels, 0);
+			dest.setPixels(0, row, dest.width, pixels, 0);
+		}
+	}
+}
+
 /**
  * Read the specified input stream, and return the
  * device independent image array represented by the stream.
@@ -53,6 +235,26 @@ public ImageData[] loadFromStream(LEDataInputStream stream) {
 	try {
 		inputStream = stream;
 		return loadFromByteStream();
+	} catch (Exception e) {
+		if (regionOutside) {
+			SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+		} else if (e instanceof IOException) {
+			SWT.error(SWT.ERROR_IO, e);
+		} else {
+			SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+		}
+		return null;
+	}
+}
+
+/**
+ * Read the headers of the specified input stream, and return the
+ * descriptions of the images contained in the stream.
+ */
+ImageHeader[] probeFromStream(LEDataInputStream stream) {
+	try {
+		inputStream = stream;
+		return probeFromByteStream();
 	} catch (Exception e) {
 		if (e instanceof IOException) {
 			SWT.error(SWT.ERROR_IO, e);
@@ -64,12 +266,47 @@ public ImageData[] loadFromStream(LEDataInputStream stream) {
 }
 
 /**
- * Read the specified input stream using the specified loader, and
- * return the device independent image array represented by the stream.
+ * Open the file with the specified name for reading images. Small files
+ * are read into memory in one operation, and large files are mapped into
+ * memory, so that the decoders read the bytes in place rather than one
+ * buffer at a time. The stream must be closed by the caller.
  */
-public static ImageData[] load(InputStream is, ImageLoader loader) {
+public static InputStream open(String filename) throws IOException {
+	try (RandomAccessFile file = new RandomAccessFile(filename, "r")) { //$NON-NLS-1$
+		FileChannel channel = file.getChannel();
+		long size = channel.size();
+		if (size < MAP_THRESHOLD) {
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+			buffer.flip();
+			return new LEDataInputStream(buffer);
+		}
+		/*
+		* Windows keeps a mapped file locked until the buffer is garbage
+		* collected, so large files are streamed there instead.
+		*/
+		if (size <= Integer.MAX_VALUE && !"win32".equals(SWT.getPlatform())) { //$NON-NLS-1$
+			return new LEDataInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+	return new FileInputStream(filename);
+}
+
+/**
+ * Answer a stream that reads the specified input stream, which
+ * is used as is when it has been returned by <code>open</code>.
+ */
+static LEDataInputStream getStream(InputStream is) {
+	if (is instanceof LEDataInputStream) return (LEDataInputStream) is;
+	return new LEDataInputStream(is);
+}
+
+/**
+ * Answer the file format of the specified input stream, or
+ * throw an error if the format is not supported.
+ */
+static FileFormat getFileFormat(LEDataInputStream stream) {
 	FileFormat fileFormat = null;
-	LEDataInputStream stream = new LEDataInputStream(is);
 	for (int i = 1; i < FORMATS.length; i++) {
 		if (FORMATS[i] != null) {
 			try {
@@ -82,8 +319,176 @@ public static ImageData[] load(InputStream is, ImageLoader loader) {
 		}
 	}
 	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	return fileFormat;
+}
+
+/**
+ * Read the specified input stream using the specified loader, and
+ * return the device independent image array represented by the stream.
+ */
+public static ImageData[] load(InputStream is, ImageLoader loader) {
+	return load(is, loader, null);
+}
+
+/**
+ * Read the specified input stream using the specified loader, and
+ * return the device independent image array represented by the stream.
+ * Direct color images are returned as 32-bit images with the specified
+ * palette, when the format supports it.
+ */
+public static ImageData[] load(InputStream is, ImageLoader loader, PaletteData directPalette) {
+	return load(is, loader, directPalette, -1);
+}
+
+/**
+ * Read the specified input stream using the specified loader, and
+ * return the image with the specified index in the stream, or all
+ * the images when the index is -1. Throws an error if the stream
+ * does not contain an image with that index.
+ */
+public static ImageData[] load(InputStream is, ImageLoader loader, PaletteData directPalette, int index) {
+	LEDataInputStream stream = getStream(is);
+	FileFormat fileFormat = getFileFormat(stream);
 	fileFormat.loader = loader;
-	return fileFormat.loadFromStream(stream);
+	fileFormat.directPalette = directPalette;
+	fileFormat.imageIndex = index;
+	Rectangle region = loader.sourceRegion;
+	if (region != null) fileFormat.region = new Rectangle(region.x, region.y, region.width, region.height);
+	ImageData[] images = fileFormat.loadFromStream(stream);
+	if (index >= 0) {
+		if (!fileFormat.canSelectImage()) {
+			if (index >= images.length) SWT.error(SWT.ERROR_INVALID_RANGE);
+			images = new ImageData[] {images[index]};
+		}
+		if (images.length == 0) SWT.error(SWT.ERROR_INVALID_RANGE);
+	}
+	if (region == null) return images;
+	if (!fileFormat.canDecodeRegion()) {
+		for (int i = 0; i < images.length; i++) {
+			images[i] = fileFormat.crop(images[i]);
+		}
+	}
+	return images;
+}
+
+/**
+ * Read the headers of the specified input stream using the specified
+ * loader, and return the descriptions of the images contained in the
+ * stream, without decoding their pixels when the format allows it.
+ */
+public static ImageHeader[] probe(InputStream is, ImageLoader loader) {
+	LEDataInputStream stream = getStream(is);
+	FileFormat fileFormat = getFileFormat(stream);
+	fileFormat.loader = loader;
+	return fileFormat.probeFromStream(stream);
+}
+
+/**
+ * Answer the offset of the byte of a 32-bit pixel that is selected by
+ * the specified mask of a direct palette.
+ */
+static int getByteOffset(int mask) {
+	return 3 - Integer.numberOfTrailingZeros(mask) / 8;
+}
+
+/**
+ * Read the specified input stream and deliver the images it contains
+ * to the listeners of the specified loader in bands of at most
+ * <code>bandHeight</code> scanlines.
+ * <p>
+ * Formats that can stream bands never build the complete image. The
+ * other formats are decoded completely into a loader that has no
+ * listeners, so that their incremental events are not mixed with the
+ * bands, and the resulting images are then cut into bands.
+ * </p>
+ */
+public static void loadBands(InputStream is, ImageLoader loader, int bandHeight) {
+	LEDataInputStream stream = getStream(is);
+	FileFormat fileFormat = getFileFormat(stream);
+	if (fileFormat.canStreamBands()) {
+		fileFormat.loader = loader;
+		fileFormat.bandHeight = bandHeight;
+		fileFormat.loadFromStream(stream);
+		return;
+	}
+	ImageLoader decoder = new ImageLoader();
+	fileFormat.loader = decoder;
+	ImageData[] images = fileFormat.loadFromStream(stream);
+	loader.logicalScreenWidth = decoder.logicalScreenWidth;
+	loader.logicalScreenHeight = decoder.logicalScreenHeight;
+	loader.backgroundPixel = decoder.backgroundPixel;
+	loader.repeatCount = decoder.repeatCount;
+	fileFormat.loader = loader;
+	fileFormat.bandHeight = bandHeight;
+	boolean logicalScreen = loader.logicalScreenWidth > 0 && loader.logicalScreenHeight > 0;
+	for (int i = 0; i < images.length; i++) {
+		if (!logicalScreen) startBands(loader, images[i].width, images[i].height);
+		fileFormat.fireBands(images[i]);
+	}
+}
+
+/**
+ * Set the logical screen of the specified loader to the size of
+ * the image whose bands are about to be delivered.
+ */
+static void startBands(ImageLoader loader, int width, int height) {
+	loader.logicalScreenWidth = width;
+	loader.logicalScreenHeight = height;
+}
+
+/**
+ * Notify the loader's listeners that a band of scanlines has been
+ * decoded. The y coordinate of the band is the position of its
+ * first scanline in the image.
+ */
+static void fireBand(ImageLoader loader, ImageData band, int bandIndex, boolean endOfImage) {
+	loader.notifyListeners(new ImageLoaderEvent(loader, band, bandIndex, endOfImage));
+}
+
+/**
+ * Cut the specified completely decoded image into bands of at most
+ * <code>bandHeight</code> scanlines and deliver them to the loader's
+ * listeners, from the top of the image to the bottom.
+ */
+void fireBands(ImageData image) {
+	int maskBytesPerLine = 0;
+	if (image.maskData != null) {
+		maskBytesPerLine = (((image.width + 7) / 8) + (image.maskPad - 1)) / image.maskPad * image.maskPad;
+	}
+	int bandIndex = 0;
+	for (int y = 0; y < image.height; y += bandHeight) {
+		int rows = Math.min(bandHeight, image.height - y);
+		byte[] data = new byte[image.bytesPerLine * rows];
+		System.arraycopy(image.data, image.bytesPerLine * y, data, 0, data.length);
+		byte[] maskData = null;
+		if (image.maskData != null) {
+			maskData = new byte[maskBytesPerLine * rows];
+			System.arraycopy(image.maskData, maskBytesPerLine * y, maskData, 0, maskData.length);
+		}
+		byte[] alphaData = null;
+		if (image.alphaData != null) {
+			alphaData = new byte[image.width * rows];
+			System.arraycopy(image.alphaData, image.width * y, alphaData, 0, alphaData.length);
+		}
+		ImageData band = ImageData.internal_new(
+			image.width,
+			rows,
+			image.depth,
+			image.palette,
+			image.scanlinePad,
+			data,
+			image.maskPad,
+			maskData,
+			alphaData,
+			image.alpha,
+			image.transparentPixel,
+			image.type,
+			image.x,
+			image.y + y,
+			image.disposalMethod,
+			image.delayTime);
+		fireBand(loader, band, bandIndex++, y + rows == image.height);
+	}
 }
 
 /**
@@ -98,8 +503,7 @@ public static void save(OutputStream os, int format, ImageLoader loader) {
 	LEDataOutputStream stream = new LEDataOutputStream(os);
 	FileFormat fileFormat = null;
 	try {
-		Class<?> clazz = Class.forName(FORMAT_PACKAGE + '.' + FORMATS[format] + FORMAT_SUFFIX);
-		fileFormat = (FileFormat) clazz.newInstance();
+		fileFormat = (FileFormat) getFormatClass(FORMATS[format]).newInstance();
 	} catch (Exception e) {
 		SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 	}
@@ -109,7 +513,52 @@ public static void save(OutputStream os, int format, ImageLoader loader) {
 			case 4: fileFormat.compression = 2; break;
 		}
 	}
-	fileFormat.unloadIntoStream(loader, stream);
+	/* The encoders need the pixels of the images in data */
+	ImageData[] data = loader.data;
+	boolean buffered = false;
+	for (int i = 0; i < data.length; i++) {
+		if (data[i] != null && data[i].buffer != null) buffered = true;
+	}
+	if (buffered) {
+		ImageData[] heapData = new ImageData[data.length];
+		for (int i = 0; i < data.length; i++) {
+			heapData[i] = data[i] != null && data[i].buffer != null ? copyBuffer(data[i]) : data[i];
+		}
+		loader.data = heapData;
+	}
+	try {
+		fileFormat.unloadIntoStream(loader, stream);
+	} finally {
+		loader.data = data;
+	}
+}
+
+/**
+ * Answer a copy of the image whose pixels are in <code>data</code>
+ * rather than in <code>buffer</code>.
+ */
+static ImageData copyBuffer(ImageData image) {
+	byte[] data = new byte[image.bytesPerLine * image.height];
+	ByteBuffer source = image.buffer.duplicate();
+	source.position(0);
+	source.get(data);
+	return ImageData.internal_new(
+		image.width,
+		image.height,
+		image.depth,
+		image.palette,
+		image.scanlinePad,
+		data,
+		image.maskPad,
+		image.maskData,
+		image.alphaData,
+		image.alpha,
+		image.transparentPixel,
+		image.type,
+		image.x,
+		image.y,
+		image.disposalMethod,
+		image.delayTime);
 }
 
 abstract void unloadIntoByteStream(ImageLoader loader);
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Draws the images of an animation onto the logical screen in the order
+ * in which they are played, applying the disposal method of each image
+ * before the next one is drawn. The most recently composited frames are
+ * kept in a bounded cache, so that playing the animation composites each
+ * image only once, and any other frame is composited starting from the
+ * nearest cached frame that precedes it.
+ */
+public final class FrameCompositor {
+	final ImageData[] images;
+	final int width, height;
+	final Map<Integer, ImageData> cache;
+
+	static final int CACHE_SIZE = 8;
+	static final PaletteData PALETTE = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+
+public FrameCompositor(ImageData[] images, int logicalScreenWidth, int logicalScreenHeight) {
+	this.images = images.clone();
+	int width = logicalScreenWidth, height = logicalScreenHeight;
+	if (width <= 0 || height <= 0) {
+		for (int i = 0; i < images.length; i++) {
+			width = Math.max(width, images[i].x + images[i].width);
+			height = Math.max(height, images[i].y + images[i].height);
+		}
+	}
+	this.width = width;
+	this.height = height;
+	cache = new LinkedHashMap<Integer, ImageData>(CACHE_SIZE * 2, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, ImageData> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+}
+
+/**
+ * Answer whether the receiver composites the given images onto a
+ * logical screen of the given size.
+ */
+public boolean isValid(ImageData[] images, int logicalScreenWidth, int logicalScreenHeight) {
+	if (images.length != this.images.length) return false;
+	for (int i = 0; i < images.length; i++) {
+		if (images[i] != this.images[i]) return false;
+	}
+	if (logicalScreenWidth > 0 && logicalScreenHeight > 0) {
+		return logicalScreenWidth == width && logicalScreenHeight == height;
+	}
+	return true;
+}
+
+/**
+ * Answer a copy of the frame that shows the image at the given index
+ * together with the images that precede it.
+ */
+public ImageData getFrame(int index) {
+	ImageData frame = cache.get(index);
+	if (frame == null) {
+		frame = composite(index);
+		cache.put(index, frame);
+	}
+	return (ImageData) frame.clone();
+}
+
+ImageData composite(int index) {
+	/*
+	* Start from the nearest cached frame, unless its image restores
+	* the previous frame, which is not known.
+	*/
+	ImageData canvas = null;
+	int start = index;
+	while (start > 0) {
+		ImageData cached = cache.get(start - 1);
+		if (cached != null && images[start - 1].disposalMethod != SWT.DM_FILL_PREVIOUS) {
+			canvas = (ImageData) cached.clone();
+			dispose(canvas, images[start - 1], null);
+			break;
+		}
+		start--;
+	}
+	if (canvas == null) {
+		canvas = ImageData.internal_new(width, height, 24, PALETTE, 4, null, 0, null, new byte[width * height], -1, -1, SWT.IMAGE_UNDEFINED, 0, 0, 0, 0);
+	}
+	for (int i = start; i < index; i++) {
+		ImageData image = images[i];
+		ImageData previous = image.disposalMethod == SWT.DM_FILL_PREVIOUS ? copy(canvas, image) : null;
+		draw(canvas, image);
+		dispose(canvas, image, previous);
+	}
+	draw(canvas, images[index]);
+	canvas.delayTime = images[index].delayTime;
+	return canvas;
+}
+
+/**
+ * Answer the bounds of the image, clipped to the logical screen.
+ */
+Rectangle bounds(ImageData image) {
+	return new Rectangle(image.x, image.y, image.width, image.height).intersection(new Rectangle(0, 0, width, height));
+}
+
+/**
+ * Answer a copy of the part of the canvas that is covered by the image.
+ */
+ImageData copy(ImageData canvas, ImageData image) {
+	Rectangle bounds = bounds(image);
+	if (bounds.isEmpty()) return null;
+	return FileFormat.crop(canvas, bounds.x, bounds.y, bounds.width, bounds.height);
+}
+
+/**
+ * Apply the disposal method of the image, which has been drawn on the
+ * canvas. The previous contents are the part of the canvas that has
+ * been copied before the image was drawn.
+ */
+void dispose(ImageData canvas, ImageData image, ImageData previous) {
+	Rectangle bounds = bounds(image);
+	if (bounds.isEmpty()) return;
+	switch (image.disposalMethod) {
+		case SWT.DM_FILL_BACKGROUND:
+			for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+				Arrays.fill(canvas.data, y * canvas.bytesPerLine + bounds.x * 3, y * canvas.bytesPerLine + (bounds.x + bounds.width) * 3, (byte)0);
+				Arrays.fill(canvas.alphaData, y * width + bounds.x, y * width + bounds.x + bounds.width, (byte)0);
+			}
+			break;
+		case SWT.DM_FILL_PREVIOUS:
+			for (int y = 0; y < bounds.height; y++) {
+				System.arraycopy(previous.data, y * previous.bytesPerLine, canvas.data, (bounds.y + y) * canvas.bytesPerLine + bounds.x * 3, bounds.width * 3);
+				System.arraycopy(previous.alphaData, y * bounds.width, canvas.alphaData, (bounds.y + y) * width + bounds.x, bounds.width);
+			}
+			break;
+	}
+}
+
+/**
+ * Draw the image over the canvas.
+ */
+void draw(ImageData canvas, ImageData image) {
+	Rectangle bounds = bounds(image);
+	if (bounds.isEmpty()) return;
+	PaletteData palette = image.palette;
+	int[] colors = null;
+	if (!palette.isDirect) {
+		RGB[] rgbs = palette.getRGBs();
+		colors = new int[1 << image.depth];
+		for (int i = 0; i < rgbs.length && i < colors.length; i++) {
+			colors[i] = (rgbs[i].red << 16) | (rgbs[i].green << 8) | rgbs[i].blue;
+		}
+	}
+	ImageData mask = image.getTransparencyType() == SWT.TRANSPARENCY_MASK ? image.getTransparencyMask() : null;
+	int[] pixels = new int[bounds.width];
+	int[] maskPixels = mask != null ? new int[bounds.width] : null;
+	for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+		int imageY = y - image.y, imageX = bounds.x - image.x;
+		image.getPixels(imageX, imageY, bounds.width, pixels, 0);
+		if (mask != null) mask.getPixels(imageX, imageY, bounds.width, maskPixels, 0);
+		int dataIndex = y * canvas.bytesPerLine + bounds.x * 3;
+		int alphaIndex = y * width + bounds.x;
+		for (int i = 0; i < bounds.width; i++, dataIndex += 3, alphaIndex++) {
+			int pixel = pixels[i];
+			if (pixel == image.transparentPixel) continue;
+			if (mask != null && maskPixels[i] == 0) continue;
+			int alpha = image.alphaData != null ? image.alphaData[imageY * image.width + imageX + i] & 0xFF : image.alpha != -1 ? image.alpha : 255;
+			if (alpha == 0) continue;
+			int rgb;
+			if (colors != null) {
+				rgb = colors[pixel];
+			} else {
+				int red = pixel & palette.redMask;
+				red = (palette.redShift < 0) ? red >>> -palette.redShift : red << palette.redShift;
+				int green = pixel & palette.greenMask;
+				green = (palette.greenShift < 0) ? green >>> -palette.greenShift : green << palette.greenShift;
+				int blue = pixel & palette.blueMask;
+				blue = (palette.blueShift < 0) ? blue >>> -palette.blueShift : blue << palette.blueShift;
+				rgb = (red << 16) | (green << 8) | blue;
+			}
+			byte[] data = canvas.data;
+			if (alpha == 255) {
+				data[dataIndex] = (byte)(rgb >> 16);
+				data[dataIndex + 1] = (byte)(rgb >> 8);
+				data[dataIndex + 2] = (byte)rgb;
+				canvas.alphaData[alphaIndex] = (byte)255;
+			} else {
+				/* Source over */
+				int destAlpha = (canvas.alphaData[alphaIndex] & 0xFF) * (255 - alpha) / 255;
+				int outAlpha = alpha + destAlpha;
+				for (int c = 0; c < 3; c++) {
+					int source = (rgb >> (16 - c * 8)) & 0xFF;
+					int dest = data[dataIndex + c] & 0xFF;
+					data[dataIndex + c] = (byte)((source * alpha + dest * destAlpha) / outAlpha);
+				}
+				canvas.alphaData[alphaIndex] = (byte)outAlpha;
+			}
+		}
+	}
+}
+}
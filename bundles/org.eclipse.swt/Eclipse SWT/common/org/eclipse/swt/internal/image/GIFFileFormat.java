@@ -14,6 +14,9 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 public final class GIFFileFormat extends FileFormat {
 	String signature;
@@ -23,6 +26,13 @@ public final class GIFFileFormat extends FileFormat {
 	int transparentPixel = -1;
 	int repeatCount = 1;
 
+	/*
+	 * When the frames are decoded in parallel, the compressed data of
+	 * each frame is collected while the stream is read, and decoded by
+	 * these tasks once the trailer is reached
+	 */
+	List<FrameDecoder> decoders;
+
 	static final int GIF_APPLICATION_EXTENSION_BLOCK_ID = 0xFF;
 	static final int GIF_GRAPHICS_CONTROL_BLOCK_ID = 0xF9;
 	static final int GIF_PLAIN_TEXT_BLOCK_ID = 0x01;
@@ -59,12 +69,16 @@ public final class GIFFileFormat extends FileFormat {
 		}
 	}
 
+	@Override
+	boolean canSelectImage() {
+		return true;
+	}
+
 	/**
-	 * Load the GIF image(s) stored in the input stream.
-	 * Return an array of ImageData representing the image(s).
+	 * Read the header and the logical screen descriptor, and
+	 * return the global palette, or null if there is none.
 	 */
-	@Override
-	ImageData[] loadFromByteStream() {
+	PaletteData readHeader() {
 		byte[] signature = new byte[3];
 		byte[] versionBytes = new byte[3];
 		byte[] block = new byte[7];
@@ -75,7 +89,8 @@ public final class GIFFileFormat extends FileFormat {
 
 			inputStream.read(versionBytes);
 
-			inputStream.read(block);
+			if (inputStream.read(block) != block.length)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
 		} catch (IOException e) {
 			SWT.error(SWT.ERROR_IO, e);
 		}
@@ -100,19 +115,42 @@ public final class GIFFileFormat extends FileFormat {
 			defaultDepth = bitsPerPixel;
 		}
 		loader.backgroundPixel = backgroundPixel;
+		return palette;
+	}
 
-		ImageData[] images = new ImageData[0];
+	/**
+	 * Load the GIF image(s) stored in the input stream.
+	 * Return an array of ImageData representing the image(s).
+	 * When an image index is specified, the data of the other
+	 * images is skipped without being decoded.
+	 */
+	@Override
+	ImageData[] loadFromByteStream() {
+		PaletteData palette = readHeader();
+
+		/*
+		* The frames can only be decoded in parallel when there are no
+		* listeners, because the progress events must be sent in order.
+		*/
+		if (loader.parallel && !loader.hasListeners()) {
+			decoders = new ArrayList<>();
+		}
+		List<ImageData> images = new ArrayList<>();
+		int frame = 0;
 		int id = readID();
 		while (id != GIF_TRAILER_ID && id != -1) {
 			if (id == GIF_IMAGE_BLOCK_ID) {
-				ImageData image = readImageBlock(palette);
-				if (loader.hasListeners()) {
-					loader.notifyListeners(new ImageLoaderEvent(loader, image, 3, true));
+				if (imageIndex >= 0 && frame != imageIndex) {
+					skipImageBlock();
+				} else {
+					ImageData image = readImageBlock(palette);
+					if (loader.hasListeners()) {
+						loader.notifyListeners(new ImageLoaderEvent(loader, image, 3, true));
+					}
+					images.add(image);
+					if (imageIndex >= 0) break;
 				}
-				ImageData[] oldImages = images;
-				images = new ImageData[oldImages.length + 1];
-				System.arraycopy(oldImages, 0, images, 0, oldImages.length);
-				images[images.length - 1] = image;
+				frame++;
 			} else if (id == GIF_EXTENSION_BLOCK_ID) {
 				/* Read the extension block. Currently, only the
 				 * interesting parts of certain extensions are kept,
@@ -124,13 +162,169 @@ public final class GIFFileFormat extends FileFormat {
 			} else {
 				/* The GIF is not to spec, but try to salvage it
 				 * if we read at least one image. */
-				if (images.length > 0) break;
+				if (images.size() > 0) break;
 				SWT.error(SWT.ERROR_INVALID_IMAGE);
 			}
 			id = readID(); // block terminator (0)
 			if (id == 0) id = readID(); // next block ID (unless we just read it)
 		}
-		return images;
+		if (decoders != null) decodeFrames();
+		return images.toArray(new ImageData[images.size()]);
+	}
+
+	/**
+	 * Read the headers of the frames stored in the input stream,
+	 * skipping their palettes and image data.
+	 */
+	@Override
+	ImageHeader[] probeFromByteStream() {
+		readHeader();
+		List<ImageHeader> headers = new ArrayList<>();
+		int id = readID();
+		while (id != GIF_TRAILER_ID && id != -1) {
+			if (id == GIF_IMAGE_BLOCK_ID) {
+				headers.add(skipImageBlock());
+			} else if (id == GIF_EXTENSION_BLOCK_ID) {
+				readExtension();
+			} else {
+				if (headers.size() > 0) break;
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+			}
+			id = readID(); // block terminator (0)
+			if (id == 0) id = readID(); // next block ID (unless we just read it)
+		}
+		return headers.toArray(new ImageHeader[headers.size()]);
+	}
+
+	/**
+	 * Decode the collected frames on the common fork-join pool.
+	 * The first error that occurred is thrown again.
+	 */
+	void decodeFrames() {
+		if (decoders.size() == 1) {
+			decoders.get(0).compute();
+		} else {
+			ForkJoinTask.invokeAll(decoders);
+		}
+		for (FrameDecoder decoder : decoders) {
+			if (decoder.error != null) throw decoder.error;
+		}
+		decoders = null;
+	}
+
+	/**
+	 * Decodes the LZW data of one frame, which has been read
+	 * from the input stream, into the frame's image.
+	 */
+	static final class FrameDecoder extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final byte[] data;
+		final ImageLoader loader;
+		final ImageData image;
+		final boolean interlaced;
+		final int initialCodeSize;
+		RuntimeException error;
+
+		FrameDecoder(byte[] data, ImageLoader loader, ImageData image, boolean interlaced, int initialCodeSize) {
+			this.data = data;
+			this.loader = loader;
+			this.image = image;
+			this.interlaced = interlaced;
+			this.initialCodeSize = initialCodeSize;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				LEDataInputStream stream = new LEDataInputStream(ByteBuffer.wrap(data));
+				new LZWCodec().decode(stream, loader, image, interlaced, initialCodeSize);
+			} catch (RuntimeException e) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * Read the data sub-blocks of an image, including the block
+	 * terminator, without decoding them.
+	 */
+	byte[] readDataBlocks() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] block = new byte[255];
+		try {
+			int size;
+			do {
+				size = inputStream.read();
+				if (size < 0) break;
+				out.write(size);
+				int read = 0;
+				while (read < size) {
+					int count = inputStream.read(block, read, size - read);
+					if (count < 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+					read += count;
+				}
+				out.write(block, 0, size);
+			} while (size > 0);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Skip the image block at the current position in the input
+	 * stream, including its local palette and data sub-blocks,
+	 * and return the header of the image.
+	 */
+	ImageHeader skipImageBlock() {
+		byte[] block = new byte[9];
+		try {
+			inputStream.read(block);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+		int left = (block[0] & 0xFF) | ((block[1] & 0xFF) << 8);
+		int top = (block[2] & 0xFF) | ((block[3] & 0xFF) << 8);
+		int width = (block[4] & 0xFF) | ((block[5] & 0xFF) << 8);
+		int height = (block[6] & 0xFF) | ((block[7] & 0xFF) << 8);
+		byte bitField = block[8];
+		int depth = defaultDepth;
+		if ((bitField & 0x80) != 0) {
+			depth = (bitField & 0x7) + 1;
+			skipBytes(3 << depth);
+		}
+		// Promote depth to next highest supported value.
+		if (!(depth == 1 || depth == 4 || depth == 8)) {
+			depth = depth < 4 ? 4 : 8;
+		}
+		// Skip the initial code size and the data sub-blocks.
+		skipBytes(1);
+		int size;
+		while ((size = readID()) > 0) {
+			skipBytes(size);
+		}
+		ImageHeader header = new ImageHeader(width, height, depth, SWT.IMAGE_GIF);
+		header.x = left;
+		header.y = top;
+		return header;
+	}
+
+	/**
+	 * Skip the specified number of bytes of the input stream.
+	 */
+	void skipBytes(int count) {
+		try {
+			while (count > 0) {
+				long skipped = inputStream.skip(count);
+				if (skipped <= 0) {
+					if (inputStream.read() < 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+					skipped = 1;
+				}
+				count -= skipped;
+			}
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
 	}
 
 	/**
@@ -383,8 +577,12 @@ public final class GIFFileFormat extends FileFormat {
 			top,
 			disposalMethod,
 			delayTime);
-		LZWCodec codec = new LZWCodec();
-		codec.decode(inputStream, loader, image, interlaced, initialCodeSize);
+		if (decoders != null) {
+			decoders.add(new FrameDecoder(readDataBlocks(), loader, image, interlaced, initialCodeSize));
+		} else {
+			LZWCodec codec = new LZWCodec();
+			codec.decode(inputStream, loader, image, interlaced, initialCodeSize);
+		}
 		return image;
 	}
 
@@ -408,15 +606,230 @@ public final class GIFFileFormat extends FileFormat {
 
 	@Override
 	void unloadIntoByteStream(ImageLoader loader) {
+		ImageData[] data = loader.data;
+		for (int i = 0; i < data.length; i++) {
+			if (data[i].palette.isDirect) {
+				/*
+				* Direct color images are reduced to palettes first. The
+				* frames of an animation are drawn on the logical screen,
+				* and only the part of each frame that changes is saved.
+				*/
+				boolean multi = data.length > 1;
+				FrameCompositor compositor = new FrameCompositor(data, multi ? loader.logicalScreenWidth : 0, multi ? loader.logicalScreenHeight : 0);
+				ImageData[] images = quantizeFrames(compositor, loader);
+				unloadImages(images, compositor.width, compositor.height, loader.backgroundPixel, loader.repeatCount);
+				return;
+			}
+		}
+		unloadImages(data, loader.logicalScreenWidth, loader.logicalScreenHeight, loader.backgroundPixel, loader.repeatCount);
+	}
 
- 		/* Step 1: Acquire GIF parameters. */
+	/**
+	 * Answer the frames of the animation drawn by the compositor as
+	 * palette images, each of which covers the part of the logical screen
+	 * that differs from the screen on which it is drawn. The disposal
+	 * method of a frame restores the background when the next frame makes
+	 * some of its pixels transparent. A frame that does not change the
+	 * screen is merged with the previous one by adding up their delays.
+	 */
+	ImageData[] quantizeFrames(FrameCompositor compositor, ImageLoader loader) {
 		ImageData[] data = loader.data;
+		int width = compositor.width, height = compositor.height;
+		List<FrameQuantizer> frames = new ArrayList<>();
+		FrameQuantizer last = null;
+		/* The frames before the last one, and the screen on which the last one is drawn */
+		ImageData previous = null, screen = null;
+		Rectangle cleared = null;
+		for (int i = 0; i < data.length; i++) {
+			ImageData canvas = compositor.getFrame(i);
+			if (last == null) {
+				Rectangle bounds = data.length == 1 ? compositor.bounds(data[0]) : new Rectangle(0, 0, width, height);
+				if (bounds.isEmpty()) SWT.error(SWT.ERROR_INVALID_IMAGE);
+				last = new FrameQuantizer(canvas, bounds, data[i].delayTime, loader.dither);
+				frames.add(last);
+				previous = canvas;
+				continue;
+			}
+			/* The pixels that become transparent must be cleared by the previous frame */
+			Rectangle clear = changedBounds(previous, canvas, null, true);
+			Rectangle bounds;
+			if (clear != null) {
+				last.bounds = last.bounds.union(clear);
+				last.disposalMethod = SWT.DM_FILL_BACKGROUND;
+				bounds = changedBounds(previous, canvas, last.bounds, false);
+				if (bounds == null) bounds = new Rectangle(clear.x, clear.y, 1, 1);
+			} else {
+				last.disposalMethod = SWT.DM_FILL_NONE;
+				bounds = changedBounds(previous, canvas, null, false);
+				if (bounds == null) {
+					last.delayTime += canvas.delayTime;
+					continue;
+				}
+			}
+			last.finish(screen, cleared);
+			screen = previous;
+			cleared = clear != null ? last.bounds : null;
+			last = new FrameQuantizer(canvas, bounds, data[i].delayTime, loader.dither);
+			frames.add(last);
+			previous = canvas;
+		}
+		last.finish(screen, cleared);
+		if (loader.parallel && frames.size() > 1) {
+			ForkJoinTask.invokeAll(frames);
+		} else {
+			for (FrameQuantizer frame : frames) frame.compute();
+		}
+		/* All the frames have the same depth */
+		int depth = 1;
+		for (FrameQuantizer frame : frames) {
+			if (frame.error != null) throw frame.error;
+			int colors = frame.palette.colors.length;
+			if (colors > 16) {
+				depth = 8;
+			} else if (colors > 2) {
+				depth = Math.max(depth, 4);
+			}
+		}
+		ImageData[] images = new ImageData[frames.size()];
+		for (int i = 0; i < images.length; i++) {
+			images[i] = frames.get(i).getImage(depth);
+		}
+		return images;
+	}
+
+	/**
+	 * Answer the bounds of the pixels of the canvas that differ from the
+	 * screen before it, with the given rectangle cleared, or only of the
+	 * pixels that are transparent on the canvas and not on the screen.
+	 * Answer null when there are no such pixels.
+	 */
+	static Rectangle changedBounds(ImageData screen, ImageData canvas, Rectangle cleared, boolean transparentOnly) {
+		int width = canvas.width, height = canvas.height;
+		int x0 = width, y0 = height, x1 = -1, y1 = -1;
+		byte[] screenData = screen.data, canvasData = canvas.data;
+		byte[] screenAlpha = screen.alphaData, canvasAlpha = canvas.alphaData;
+		int bytesPerLine = canvas.bytesPerLine;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				boolean opaque = (canvasAlpha[y * width + x] & 0xFF) >= 128;
+				boolean screenOpaque = (screenAlpha[y * width + x] & 0xFF) >= 128;
+				if (cleared != null && cleared.contains(x, y)) screenOpaque = false;
+				boolean changed;
+				if (transparentOnly) {
+					changed = screenOpaque && !opaque;
+				} else if (opaque != screenOpaque) {
+					changed = true;
+				} else if (opaque) {
+					int index = y * bytesPerLine + x * 3;
+					changed = screenData[index] != canvasData[index] || screenData[index + 1] != canvasData[index + 1] || screenData[index + 2] != canvasData[index + 2];
+				} else {
+					changed = false;
+				}
+				if (changed) {
+					x0 = Math.min(x0, x);
+					x1 = Math.max(x1, x);
+					y0 = Math.min(y0, y);
+					y1 = Math.max(y1, y);
+				}
+			}
+		}
+		if (x1 == -1) return null;
+		return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+	}
+
+	/**
+	 * Reduces the colors of the part of a frame of an animation that
+	 * changes the screen to a palette.
+	 */
+	static final class FrameQuantizer extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		ImageData canvas;
+		Rectangle bounds;
+		final boolean dither;
+		int delayTime, disposalMethod;
+		int[] pixels;
+		PaletteData palette;
+		byte[] indices;
+		int transparentPixel;
+		RuntimeException error;
+
+		FrameQuantizer(ImageData canvas, Rectangle bounds, int delayTime, boolean dither) {
+			this.canvas = canvas;
+			this.bounds = bounds;
+			this.delayTime = delayTime;
+			this.dither = dither;
+		}
+
+		/**
+		 * Collect the pixels of the frame once its bounds are known. The
+		 * pixels that are the same as those of the screen on which the frame
+		 * is drawn, with the given rectangle cleared, become transparent.
+		 */
+		void finish(ImageData screen, Rectangle cleared) {
+			int width = canvas.width;
+			pixels = new int[bounds.width * bounds.height];
+			byte[] data = canvas.data, alphaData = canvas.alphaData;
+			for (int y = 0; y < bounds.height; y++) {
+				for (int x = 0; x < bounds.width; x++) {
+					int canvasX = bounds.x + x, canvasY = bounds.y + y;
+					int alphaIndex = canvasY * width + canvasX;
+					if ((alphaData[alphaIndex] & 0xFF) < 128) continue;
+					int index = canvasY * canvas.bytesPerLine + canvasX * 3;
+					if (screen != null && (screen.alphaData[alphaIndex] & 0xFF) >= 128 && (cleared == null || !cleared.contains(canvasX, canvasY))) {
+						if (screen.data[index] == data[index] && screen.data[index + 1] == data[index + 1] && screen.data[index + 2] == data[index + 2]) continue;
+					}
+					pixels[y * bounds.width + x] = 0xFF000000 | (data[index] & 0xFF) << 16 | (data[index + 1] & 0xFF) << 8 | (data[index + 2] & 0xFF);
+				}
+			}
+			/* The canvas is no longer needed */
+			canvas = null;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				ColorQuantizer quantizer = new ColorQuantizer(pixels, bounds.width, bounds.height);
+				quantizer.choosePalette(256);
+				indices = quantizer.map(dither);
+				palette = quantizer.getPalette();
+				transparentPixel = quantizer.transparentIndex;
+				pixels = null;
+			} catch (RuntimeException e) {
+				error = e;
+			}
+		}
+
+		/**
+		 * Answer the frame as an image of the given depth.
+		 */
+		ImageData getImage(int depth) {
+			ImageData image = new ImageData(bounds.width, bounds.height, depth, palette);
+			for (int y = 0; y < bounds.height; y++) {
+				image.setPixels(0, y, bounds.width, indices, y * bounds.width);
+			}
+			image.x = bounds.x;
+			image.y = bounds.y;
+			image.delayTime = delayTime;
+			image.disposalMethod = disposalMethod;
+			image.transparentPixel = transparentPixel;
+			return image;
+		}
+	}
+
+	/**
+	 * Write the given palette images, which are drawn on a logical
+	 * screen of the given size when there are several of them.
+	 */
+	void unloadImages(ImageData[] data, int logicalScreenWidth, int logicalScreenHeight, int backgroundPixel, int repeatCount) {
+
+ 		/* Step 1: Acquire GIF parameters. */
 		int frameCount = data.length;
 		boolean multi = frameCount > 1;
 		ImageData firstImage = data[0];
-		int logicalScreenWidth = multi ? loader.logicalScreenWidth : firstImage.width;
-		int logicalScreenHeight = multi ? loader.logicalScreenHeight : firstImage.height;
-		int backgroundPixel = loader.backgroundPixel;
+		if (!multi) {
+			logicalScreenWidth = firstImage.width;
+			logicalScreenHeight = firstImage.height;
+		}
 		int depth = firstImage.depth;
 		PaletteData palette = firstImage.palette;
 		RGB[] colors = palette.getRGBs();
@@ -470,7 +883,6 @@ public final class GIFFileFormat extends FileFormat {
 
 		/* Step 5: Write Application Extension if applicable. */
 		if (multi) {
-			int repeatCount = loader.repeatCount;
 			try {
 				outputStream.write(GIF_EXTENSION_BLOCK_ID);
 				outputStream.write(GIF_APPLICATION_EXTENSION_BLOCK_ID);
@@ -521,7 +933,7 @@ public final class GIFFileFormat extends FileFormat {
 
 			/* Step 9: Write the actual data for each frame. */
 			try {
-				outputStream.write(depth); // Minimum LZW Code size
+				outputStream.write(Math.max(2, depth)); // Minimum LZW Code size
 			} catch (IOException e) {
 				SWT.error(SWT.ERROR_IO, e);
 			}
@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Scales image data with an interpolating filter, without a device.
+ * <p>
+ * The image is scaled in two separable passes, first horizontally into
+ * an intermediate buffer and then vertically into the result. The result
+ * is computed in bands of rows, which are processed on the common
+ * fork-join pool when the image is large enough. A band scales only the
+ * source rows that it needs into its own buffer, whose size is bounded,
+ * so the source rows at the edges of two bands are scaled for both of
+ * them. When shrinking, the filter is
+ * widened by the scale factor so that every source pixel contributes to
+ * the result. The color channels are filtered premultiplied by alpha, so
+ * that transparent pixels do not bleed into their neighbours.
+ * </p><p>
+ * The result is a 24 bit direct image. It has alpha data when the source
+ * has any kind of transparency.
+ * </p>
+ */
+public final class ImageResampler {
+
+	/** Linear interpolation between the 2 x 2 nearest pixels */
+	public static final int BILINEAR = 1;
+	/** Cubic (Catmull-Rom) interpolation over the 4 x 4 nearest pixels */
+	public static final int BICUBIC = 2;
+	/** Lanczos windowed sinc interpolation over the 6 x 6 nearest pixels */
+	public static final int LANCZOS = 3;
+
+	/* The minimum number of result pixels to scale in parallel */
+	static final int PARALLEL_THRESHOLD = 256 * 256;
+	/* The maximum number of result rows processed by a task */
+	static final int ROWS_PER_BAND = 32;
+	/* The number of floats in the buffer of a band, unless a single row needs more */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	static final PaletteData PALETTE = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+
+private ImageResampler() {
+}
+
+/**
+ * Returns a copy of the image data scaled to the given size with the given
+ * filter. The image is scaled on the common fork-join pool when parallel
+ * is <code>true</code> and the result is large enough.
+ *
+ * @param image the image data to scale
+ * @param width the width of the result
+ * @param height the height of the result
+ * @param filter one of <code>BILINEAR</code>, <code>BICUBIC</code> or <code>LANCZOS</code>
+ * @param parallel whether the image may be scaled in parallel
+ * @return the scaled image data
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the image is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is not positive, or the filter is not valid</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the result or the buffer of one of its rows would be too large for an array</li>
+ * </ul>
+ */
+public static ImageData resample(ImageData image, int width, int height, int filter, boolean parallel) {
+	if (image == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (filter != BILINEAR && filter != BICUBIC && filter != LANCZOS) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+	/* A row of the result takes at most 4 bytes per pixel with its alpha */
+	if ((long) width * height * 4 > Integer.MAX_VALUE) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	Contributions vertical = new Contributions(image.height, height, filter);
+	if ((long) vertical.count * width * 4 > Integer.MAX_VALUE) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+	Resampler resampler = new Resampler(image, width, height, filter, vertical);
+	List<Band> bands = new ArrayList<>();
+	boolean split = parallel && (long) width * height >= PARALLEL_THRESHOLD;
+	int rowsPerBand = resampler.rowsPerBand();
+	for (int y = 0; y < height; y += rowsPerBand) {
+		bands.add(new Band(resampler, y, (int) Math.min(height, (long) y + rowsPerBand)));
+	}
+	if (split && bands.size() > 1) {
+		ForkJoinTask.invokeAll(bands);
+	} else {
+		/* The bands share one buffer */
+		float[] buffer = null;
+		for (Band band : bands) buffer = resampler.scaleBand(band.start, band.end, buffer);
+	}
+
+	ImageData result = resampler.result;
+	result.x = image.x;
+	result.y = image.y;
+	result.disposalMethod = image.disposalMethod;
+	result.delayTime = image.delayTime;
+	return result;
+}
+
+/**
+ * Answer the value of the filter kernel at the given distance from the
+ * center, in source pixels.
+ */
+static double kernel(int filter, double x) {
+	x = Math.abs(x);
+	switch (filter) {
+		case BILINEAR:
+			return x < 1 ? 1 - x : 0;
+		case BICUBIC:
+			if (x < 1) return (1.5 * x - 2.5) * x * x + 1;
+			if (x < 2) return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+			return 0;
+		case LANCZOS:
+			if (x == 0) return 1;
+			if (x >= 3) return 0;
+			double px = Math.PI * x;
+			return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+	}
+	return 0;
+}
+
+/**
+ * Answer the number of source pixels on each side of the center that
+ * contribute to the value of a pixel.
+ */
+static int support(int filter) {
+	switch (filter) {
+		case BICUBIC: return 2;
+		case LANCZOS: return 3;
+		default: return 1;
+	}
+}
+
+/**
+ * The source pixels that contribute to each pixel of a row or column of
+ * the result, and their normalized weights.
+ */
+static final class Contributions {
+	final int[] first;
+	final int count;
+	final float[] weights;
+
+	Contributions(int srcSize, int destSize, int filter) {
+		double scale = (double) destSize / srcSize;
+		double filterScale = Math.max(1, 1 / scale);
+		double support = support(filter) * filterScale;
+		count = Math.min(srcSize, (int) Math.ceil(support) * 2 + 1);
+		first = new int[destSize];
+		weights = new float[destSize * count];
+		for (int i = 0; i < destSize; i++) {
+			double center = (i + 0.5) / scale;
+			int start = (int) Math.floor(center - support + 0.5);
+			start = Math.max(0, Math.min(start, srcSize - count));
+			first[i] = start;
+			double sum = 0;
+			for (int j = 0; j < count; j++) {
+				double weight = kernel(filter, (start + j + 0.5 - center) / filterScale);
+				weights[i * count + j] = (float) weight;
+				sum += weight;
+			}
+			if (sum != 0) {
+				for (int j = 0; j < count; j++) weights[i * count + j] /= sum;
+			}
+		}
+	}
+}
+
+/**
+ * The state shared by the bands.
+ */
+static final class Resampler {
+	final ImageData image, mask, result;
+	final int[] colors;
+	final boolean hasAlpha;
+	final Contributions horizontal, vertical;
+
+	Resampler(ImageData image, int width, int height, int filter, Contributions vertical) {
+		this.image = image;
+		int transparency = image.getTransparencyType();
+		mask = transparency == SWT.TRANSPARENCY_MASK || transparency == SWT.TRANSPARENCY_PIXEL ? image.getTransparencyMask() : null;
+		hasAlpha = transparency != SWT.TRANSPARENCY_NONE;
+		PaletteData palette = image.palette;
+		if (palette.isDirect) {
+			colors = null;
+		} else {
+			RGB[] rgbs = palette.getRGBs();
+			colors = new int[1 << image.depth];
+			for (int i = 0; i < rgbs.length && i < colors.length; i++) {
+				colors[i] = (rgbs[i].red << 16) | (rgbs[i].green << 8) | rgbs[i].blue;
+			}
+		}
+		horizontal = new Contributions(image.width, width, filter);
+		this.vertical = vertical;
+		result = new ImageData(width, height, 24, PALETTE);
+		if (hasAlpha) result.alphaData = new byte[width * height];
+	}
+
+	/**
+	 * Answer the number of result rows in a band, such that the source
+	 * rows that the band needs fit in <code>BUFFER_SIZE</code> floats.
+	 */
+	int rowsPerBand() {
+		long rowSize = (long) result.width * 4;
+		double sourceRows = (double) image.height / result.height;
+		double rows = ((double) BUFFER_SIZE / rowSize - vertical.count - 1) / sourceRows + 1;
+		return (int) Math.max(1, Math.min(ROWS_PER_BAND, rows));
+	}
+
+	/**
+	 * Scale the result rows from start to end, using the given buffer for
+	 * the horizontally scaled source rows when it is large enough, and
+	 * answer the buffer that was used.
+	 */
+	float[] scaleBand(int start, int end, float[] buffer) {
+		int first = vertical.first[start];
+		int last = vertical.first[end - 1] + vertical.count;
+		int size = (last - first) * result.width * 4;
+		if (buffer == null || buffer.length < size) buffer = new float[size];
+		scaleRows(first, last, buffer);
+		scaleColumns(start, end, buffer, first);
+		return buffer;
+	}
+
+	/**
+	 * Scale the source rows from start to end horizontally into the buffer,
+	 * starting with its first element.
+	 */
+	void scaleRows(int start, int end, float[] buffer) {
+		ImageData image = this.image;
+		PaletteData palette = image.palette;
+		int srcWidth = image.width, destWidth = result.width;
+		int[] pixels = new int[srcWidth], maskPixels = mask != null ? new int[srcWidth] : null;
+		float[] row = new float[srcWidth * 4];
+		int count = horizontal.count;
+		for (int y = start; y < end; y++) {
+			image.getPixels(0, y, srcWidth, pixels, 0);
+			if (mask != null) mask.getPixels(0, y, srcWidth, maskPixels, 0);
+			for (int x = 0, i = 0; x < srcWidth; x++, i += 4) {
+				int pixel = pixels[x], rgb;
+				if (colors != null) {
+					rgb = colors[pixel];
+				} else {
+					int red = pixel & palette.redMask;
+					red = (palette.redShift < 0) ? red >>> -palette.redShift : red << palette.redShift;
+					int green = pixel & palette.greenMask;
+					green = (palette.greenShift < 0) ? green >>> -palette.greenShift : green << palette.greenShift;
+					int blue = pixel & palette.blueMask;
+					blue = (palette.blueShift < 0) ? blue >>> -palette.blueShift : blue << palette.blueShift;
+					rgb = (red << 16) | (green << 8) | blue;
+				}
+				int alpha;
+				if (mask != null) {
+					alpha = maskPixels[x] != 0 ? 255 : 0;
+				} else if (image.alphaData != null) {
+					alpha = image.alphaData[y * srcWidth + x] & 0xFF;
+				} else {
+					alpha = image.alpha != -1 ? image.alpha : 255;
+				}
+				float scale = alpha / 255f;
+				row[i] = ((rgb >> 16) & 0xFF) * scale;
+				row[i + 1] = ((rgb >> 8) & 0xFF) * scale;
+				row[i + 2] = (rgb & 0xFF) * scale;
+				row[i + 3] = alpha;
+			}
+			int offset = (y - start) * destWidth * 4;
+			for (int x = 0; x < destWidth; x++, offset += 4) {
+				float red = 0, green = 0, blue = 0, alpha = 0;
+				int w = x * count, i = horizontal.first[x] * 4;
+				for (int j = 0; j < count; j++, w++, i += 4) {
+					float weight = horizontal.weights[w];
+					red += row[i] * weight;
+					green += row[i + 1] * weight;
+					blue += row[i + 2] * weight;
+					alpha += row[i + 3] * weight;
+				}
+				buffer[offset] = red;
+				buffer[offset + 1] = green;
+				buffer[offset + 2] = blue;
+				buffer[offset + 3] = alpha;
+			}
+		}
+	}
+
+	/**
+	 * Scale the buffer, which starts with the given source row, vertically
+	 * into the result rows from start to end.
+	 */
+	void scaleColumns(int start, int end, float[] buffer, int bufferRow) {
+		int width = result.width, stride = width * 4, bytesPerLine = result.bytesPerLine;
+		byte[] data = result.data, alphaData = result.alphaData;
+		int count = vertical.count;
+		float[] sums = new float[stride];
+		for (int y = start; y < end; y++) {
+			Arrays.fill(sums, 0);
+			int w = y * count, offset = (vertical.first[y] - bufferRow) * stride;
+			for (int j = 0; j < count; j++, w++, offset += stride) {
+				float weight = vertical.weights[w];
+				if (weight == 0) continue;
+				for (int i = 0; i < stride; i++) {
+					sums[i] += buffer[offset + i] * weight;
+				}
+			}
+			int dataIndex = y * bytesPerLine, alphaIndex = y * width;
+			for (int i = 0; i < stride; i += 4, dataIndex += 3, alphaIndex++) {
+				float alpha = Math.max(0, Math.min(255, sums[i + 3]));
+				float scale = hasAlpha ? (alpha > 0 ? 255 / alpha : 0) : 1;
+				data[dataIndex] = clamp(sums[i] * scale);
+				data[dataIndex + 1] = clamp(sums[i + 1] * scale);
+				data[dataIndex + 2] = clamp(sums[i + 2] * scale);
+				if (alphaData != null) alphaData[alphaIndex] = (byte) Math.round(alpha);
+			}
+		}
+	}
+
+	static byte clamp(float value) {
+		int result = Math.round(value);
+		return (byte) (result < 0 ? 0 : result > 255 ? 255 : result);
+	}
+}
+
+/**
+ * Scales a band of result rows.
+ */
+static final class Band extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+	final Resampler resampler;
+	final int start, end;
+
+	Band(Resampler resampler, int start, int end) {
+		this.resampler = resampler;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	protected void compute() {
+		resampler.scaleBand(start, end, null);
+	}
+}
+}
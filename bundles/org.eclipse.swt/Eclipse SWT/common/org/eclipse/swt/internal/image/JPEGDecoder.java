@@ -15,6 +15,7 @@
 package org.eclipse.swt.internal.image;
 
 import java.io.*;
+import java.nio.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
@@ -685,8 +686,10 @@ public class JPEGDecoder {
 				actbl = compptr.ac_tbl_no;
 				/* Compute derived values for Huffman tables */
 				/* We may do this more than once for a table, but it's not expensive */
-				jpeg_make_d_derived_tbl(cinfo, true, dctbl, entropy.dc_derived_tbls[dctbl] = new d_derived_tbl());
-				jpeg_make_d_derived_tbl(cinfo, false, actbl, entropy.ac_derived_tbls[actbl] = new d_derived_tbl());
+				if (entropy.dc_derived_tbls[dctbl] == null) entropy.dc_derived_tbls[dctbl] = new d_derived_tbl();
+				if (entropy.ac_derived_tbls[actbl] == null) entropy.ac_derived_tbls[actbl] = new d_derived_tbl();
+				jpeg_make_d_derived_tbl(cinfo, true, dctbl, entropy.dc_derived_tbls[dctbl]);
+				jpeg_make_d_derived_tbl(cinfo, false, actbl, entropy.ac_derived_tbls[actbl]);
 				/* Initialize DC predictions to 0 */
 				entropy.saved.last_dc_val[ci] = 0;
 			}
@@ -1509,11 +1512,13 @@ public class JPEGDecoder {
 				if (is_DC_band) {
 					if (cinfo.Ah == 0) {	/* DC refinement needs no table */
 						tbl = compptr.dc_tbl_no;
-						jpeg_make_d_derived_tbl(cinfo, true, tbl, entropy.derived_tbls[tbl] = new d_derived_tbl());
+						if (entropy.derived_tbls[tbl] == null) entropy.derived_tbls[tbl] = new d_derived_tbl();
+						jpeg_make_d_derived_tbl(cinfo, true, tbl, entropy.derived_tbls[tbl]);
 					}
 				} else {
 					tbl = compptr.ac_tbl_no;
-					jpeg_make_d_derived_tbl(cinfo, false, tbl, entropy.derived_tbls[tbl] = new d_derived_tbl());
+					if (entropy.derived_tbls[tbl] == null) entropy.derived_tbls[tbl] = new d_derived_tbl();
+					jpeg_make_d_derived_tbl(cinfo, false, tbl, entropy.derived_tbls[tbl]);
 					/* remember the single active table */
 					entropy.ac_derived_tbl = entropy.derived_tbls[tbl];
 				}
@@ -1581,6 +1586,13 @@ public class JPEGDecoder {
 		 */
 		boolean component_needed;	/* do we need the value of this component? */
 
+		/* The range of DCT blocks that are needed to produce the output region
+		 * set by jpeg_set_output_region().	The inverse DCT of the other blocks
+		 * is skipped.
+		 */
+		int first_block_col, first_block_row;
+		int last_block_col = Integer.MAX_VALUE, last_block_row = Integer.MAX_VALUE;
+
 		/* These values are computed before starting a scan of the component. */
 		/* The decompressor output side may not use these variables. */
 		int MCU_width;		/* number of blocks per MCU, horizontally */
@@ -1800,20 +1812,18 @@ public class JPEGDecoder {
 				compptr = cinfo.comp_info[ci];
 				/* Select the proper IDCT routine for this component's scaling */
 				switch (compptr.DCT_scaled_size) {
-//					#ifdef IDCT_SCALING_SUPPORTED
-//					case 1:
+					case 1:
 //						method_ptr = jpeg_idct_1x1;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					case 2:
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
+					case 2:
 //						method_ptr = jpeg_idct_2x2;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					case 4:
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
+					case 4:
 //						method_ptr = jpeg_idct_4x4;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					#endif
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
 					case DCTSIZE:
 						switch (cinfo.dct_method) {
 //							#ifdef DCT_ISLOW_SUPPORTED
@@ -2043,6 +2053,8 @@ public class JPEGDecoder {
 		int bytes_in_buffer;
 		int bytes_offset;
 		boolean start_of_file;
+		boolean shared_buffer;	/* buffer is the array of the input stream */
+		DecoderContext context;	/* scratch structures, released by jpeg_destroy */
 
 		/* Basic description of image --- filled in by jpeg_read_header(). */
 		/* Application may inspect these values to decide how to process image. */
@@ -2357,6 +2369,7 @@ static void start_output_pass (jpeg_decompress_struct cinfo) {
 
 static void jpeg_create_decompress(jpeg_decompress_struct cinfo) {
 	cinfo.is_decompressor = true;
+	cinfo.context = DecoderContext.acquire();
 
 
 	/* Initialize marker processor so application can override methods
@@ -2375,87 +2388,72 @@ static void jpeg_create_decompress(jpeg_decompress_struct cinfo) {
 static void jpeg_calc_output_dimensions (jpeg_decompress_struct cinfo)
 /* Do computations that are needed before master selection phase */
 {
-//#ifdef IDCT_SCALING_SUPPORTED
-//	int ci;
-//	jpeg_component_info compptr;
-//#endif
+	int ci;
+	jpeg_component_info compptr;
 
 	/* Prevent application from calling me at wrong times */
 	if (cinfo.global_state != DSTATE_READY)
 		error();
 //		ERREXIT1(cinfo, JERR_BAD_STATE, cinfo.global_state);
 
-//#ifdef IDCT_SCALING_SUPPORTED
-//
-//	/* Compute actual output image dimensions and DCT scaling choices. */
-//	if (cinfo.scale_num * 8 <= cinfo.scale_denom) {
-//		/* Provide 1/8 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 8L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 8L);
-//		cinfo.min_DCT_scaled_size = 1;
-//	} else if (cinfo.scale_num * 4 <= cinfo.scale_denom) {
-//		/* Provide 1/4 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 4L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 4L);
-//		cinfo.min_DCT_scaled_size = 2;
-//	} else if (cinfo.scale_num * 2 <= cinfo.scale_denom) {
-//		/* Provide 1/2 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 2L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 2L);
-//		cinfo.min_DCT_scaled_size = 4;
-//	} else {
-//		/* Provide 1/1 scaling */
-//		cinfo.output_width = cinfo.image_width;
-//		cinfo.output_height = cinfo.image_height;
-//		cinfo.min_DCT_scaled_size = DCTSIZE;
-//	}
-//	/* In selecting the actual DCT scaling for each component, we try to
-//	 * scale up the chroma components via IDCT scaling rather than upsampling.
-//	 * This saves time if the upsampler gets to use 1:1 scaling.
-//	 * Note this code assumes that the supported DCT scalings are powers of 2.
-//	 */
-//	for (ci = 0; ci < cinfo.num_components; ci++) {
-//		compptr = cinfo.comp_info[ci];
-//		int ssize = cinfo.min_DCT_scaled_size;
-//		while (ssize < DCTSIZE &&
-//			(compptr.h_samp_factor * ssize * 2 <= cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size) &&
-//			(compptr.v_samp_factor * ssize * 2 <= cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size))
-//		{
-//			ssize = ssize * 2;
-//		}
-//		compptr.DCT_scaled_size = ssize;
-//	}
-//
-//	/* Recompute downsampled dimensions of components;
-//	 * application needs to know these if using raw downsampled data.
-//	 */
-//	for (ci = 0; ci < cinfo.num_components; ci++) {
-//		compptr = cinfo.comp_info[ci];
-//		/* Size in samples, after IDCT scaling */
-//		compptr.downsampled_width = (int)
-//			jdiv_round_up((long) cinfo.image_width * (long) (compptr.h_samp_factor * compptr.DCT_scaled_size),
-//				(cinfo.max_h_samp_factor * DCTSIZE));
-//		compptr.downsampled_height = (int)
-//			jdiv_round_up((long) cinfo.image_height * (long) (compptr.v_samp_factor * compptr.DCT_scaled_size),
-//				(cinfo.max_v_samp_factor * DCTSIZE));
-//	}
-//
-//#else /* !IDCT_SCALING_SUPPORTED */
-
-	/* Hardwire it to "no scaling" */
-	cinfo.output_width = cinfo.image_width;
-	cinfo.output_height = cinfo.image_height;
-	/* jdinput.c has already initialized DCT_scaled_size to DCTSIZE,
-	 * and has computed unscaled downsampled_width and downsampled_height.
+	/* Compute actual output image dimensions and DCT scaling choices. */
+	if (cinfo.scale_num * 8 <= cinfo.scale_denom) {
+		/* Provide 1/8 scaling */
+		cinfo.output_width = (int)
+			jdiv_round_up(cinfo.image_width, 8L);
+		cinfo.output_height = (int)
+			jdiv_round_up(cinfo.image_height, 8L);
+		cinfo.min_DCT_scaled_size = 1;
+	} else if (cinfo.scale_num * 4 <= cinfo.scale_denom) {
+		/* Provide 1/4 scaling */
+		cinfo.output_width = (int)
+			jdiv_round_up(cinfo.image_width, 4L);
+		cinfo.output_height = (int)
+			jdiv_round_up(cinfo.image_height, 4L);
+		cinfo.min_DCT_scaled_size = 2;
+	} else if (cinfo.scale_num * 2 <= cinfo.scale_denom) {
+		/* Provide 1/2 scaling */
+		cinfo.output_width = (int)
+			jdiv_round_up(cinfo.image_width, 2L);
+		cinfo.output_height = (int)
+			jdiv_round_up(cinfo.image_height, 2L);
+		cinfo.min_DCT_scaled_size = 4;
+	} else {
+		/* Provide 1/1 scaling */
+		cinfo.output_width = cinfo.image_width;
+		cinfo.output_height = cinfo.image_height;
+		cinfo.min_DCT_scaled_size = DCTSIZE;
+	}
+	/* In selecting the actual DCT scaling for each component, we try to
+	 * scale up the chroma components via IDCT scaling rather than upsampling.
+	 * This saves time if the upsampler gets to use 1:1 scaling.
+	 * Note this code assumes that the supported DCT scalings are powers of 2.
 	 */
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		int ssize = cinfo.min_DCT_scaled_size;
+		while (ssize < DCTSIZE &&
+			(compptr.h_samp_factor * ssize * 2 <= cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size) &&
+			(compptr.v_samp_factor * ssize * 2 <= cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size))
+		{
+			ssize = ssize * 2;
+		}
+		compptr.DCT_scaled_size = ssize;
+	}
 
-//#endif /* IDCT_SCALING_SUPPORTED */
+	/* Recompute downsampled dimensions of components;
+	 * application needs to know these if using raw downsampled data.
+	 */
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		/* Size in samples, after IDCT scaling */
+		compptr.downsampled_width = (int)
+			jdiv_round_up((long) cinfo.image_width * (long) (compptr.h_samp_factor * compptr.DCT_scaled_size),
+				(cinfo.max_h_samp_factor * DCTSIZE));
+		compptr.downsampled_height = (int)
+			jdiv_round_up((long) cinfo.image_height * (long) (compptr.v_samp_factor * compptr.DCT_scaled_size),
+				(cinfo.max_v_samp_factor * DCTSIZE));
+	}
 
 	/* Report number of components in selected colorspace. */
 	/* Probably this should be in the color conversion module... */
@@ -2514,16 +2512,20 @@ static boolean use_merged_upsample (jpeg_decompress_struct cinfo) {
 //#endif
 }
 
-static void prepare_range_limit_table (jpeg_decompress_struct cinfo)
-/* Allocate and fill in the sample_range_limit table */
-{
+/*
+ * The range-limiting table and the YCC to RGB tables depend only on
+ * constants, so they are built once and shared by all the images.
+ * They must not be written.
+ */
+static final byte[] RANGE_LIMIT_TABLE = make_range_limit_table();
+static final int[][] YCC_RGB_TABLES = make_ycc_rgb_tables();
+
+static byte[] make_range_limit_table() {
 	byte[] table;
 	int i;
 
 	table = new byte[5 * (MAXJSAMPLE+1) + CENTERJSAMPLE];
 	int offset = (MAXJSAMPLE+1);	/* allow negative subscripts of simple table */
-	cinfo.sample_range_limit_offset = offset;
-	cinfo.sample_range_limit = table;
 	/* First segment of "simple" table: limit[x] = 0 for x < 0 */
 	/* Main part of "simple" table: limit[x] = x */
 	for (i = 0; i <= MAXJSAMPLE; i++)
@@ -2533,33 +2535,49 @@ static void prepare_range_limit_table (jpeg_decompress_struct cinfo)
 	for (i = CENTERJSAMPLE; i < 2*(MAXJSAMPLE+1); i++)
 		table[i+offset] = (byte)MAXJSAMPLE;
 	/* Second half of post-IDCT table */
-	System.arraycopy(cinfo.sample_range_limit, cinfo.sample_range_limit_offset, table, offset + (4 * (MAXJSAMPLE+1) - CENTERJSAMPLE), CENTERJSAMPLE);
+	System.arraycopy(table, MAXJSAMPLE+1, table, offset + (4 * (MAXJSAMPLE+1) - CENTERJSAMPLE), CENTERJSAMPLE);
+	return table;
 }
 
-static void build_ycc_rgb_table (jpeg_decompress_struct cinfo) {
-	jpeg_color_deconverter cconvert = cinfo.cconvert;
+static void prepare_range_limit_table (jpeg_decompress_struct cinfo)
+/* Allocate and fill in the sample_range_limit table */
+{
+	cinfo.sample_range_limit_offset = (MAXJSAMPLE+1);	/* allow negative subscripts of simple table */
+	cinfo.sample_range_limit = RANGE_LIMIT_TABLE;
+}
+
+static int[][] make_ycc_rgb_tables() {
 	int i;
 	int x;
 //	SHIFT_TEMPS
 
-	cconvert.Cr_r_tab = new int[MAXJSAMPLE+1];
-	cconvert.Cb_b_tab = new int[MAXJSAMPLE+1];
-	cconvert.Cr_g_tab = new int[MAXJSAMPLE+1];
-	cconvert.Cb_g_tab = new int[MAXJSAMPLE+1];
+	int[] Cr_r_tab = new int[MAXJSAMPLE+1];
+	int[] Cb_b_tab = new int[MAXJSAMPLE+1];
+	int[] Cr_g_tab = new int[MAXJSAMPLE+1];
+	int[] Cb_g_tab = new int[MAXJSAMPLE+1];
 
 	for (i = 0, x = -CENTERJSAMPLE; i <= MAXJSAMPLE; i++, x++) {
 		/* i is the actual input pixel value, in the range 0..MAXJSAMPLE */
 		/* The Cb or Cr value we are thinking of is x = i - CENTERJSAMPLE */
 		/* Cr=>R value is nearest int to 1.40200 * x */
-		cconvert.Cr_r_tab[i] = ((int)(1.40200f * (1<<SCALEBITS) + 0.5f) * x + ONE_HALF) >> SCALEBITS;
+		Cr_r_tab[i] = ((int)(1.40200f * (1<<SCALEBITS) + 0.5f) * x + ONE_HALF) >> SCALEBITS;
 		/* Cb=>B value is nearest int to 1.77200 * x */
-		cconvert.Cb_b_tab[i] = ((int)(1.77200f * (1<<SCALEBITS) + 0.5f) * x + ONE_HALF) >> SCALEBITS;
+		Cb_b_tab[i] = ((int)(1.77200f * (1<<SCALEBITS) + 0.5f) * x + ONE_HALF) >> SCALEBITS;
 		/* Cr=>G value is scaled-up -0.71414 * x */
-		cconvert.Cr_g_tab[i] = ((int)(- (0.71414f * (1<<SCALEBITS) + 0.5f)) * x);
+		Cr_g_tab[i] = ((int)(- (0.71414f * (1<<SCALEBITS) + 0.5f)) * x);
 		/* Cb=>G value is scaled-up -0.34414 * x */
 		/* We also add in ONE_HALF so that need not do it in inner loop */
-		cconvert.Cb_g_tab[i] = ((int)(- (0.34414f* (1<<SCALEBITS) + 0.5f)) * x + ONE_HALF);
+		Cb_g_tab[i] = ((int)(- (0.34414f* (1<<SCALEBITS) + 0.5f)) * x + ONE_HALF);
 	}
+	return new int[][] {Cr_r_tab, Cb_b_tab, Cr_g_tab, Cb_g_tab};
+}
+
+static void build_ycc_rgb_table (jpeg_decompress_struct cinfo) {
+	jpeg_color_deconverter cconvert = cinfo.cconvert;
+	cconvert.Cr_r_tab = YCC_RGB_TABLES[0];
+	cconvert.Cb_b_tab = YCC_RGB_TABLES[1];
+	cconvert.Cr_g_tab = YCC_RGB_TABLES[2];
+	cconvert.Cb_g_tab = YCC_RGB_TABLES[3];
 }
 
 static void jinit_color_deconverter (jpeg_decompress_struct cinfo) {
@@ -3181,6 +3199,265 @@ static void jpeg_idct_islow (jpeg_decompress_struct cinfo, jpeg_component_info c
 	}
 }
 
+/*
+ * Restrict the inverse DCT to the blocks that contribute to the given
+ * rectangle of the output image.	The blocks next to the rectangle are
+ * included, because the upsampler reads the samples adjacent to each
+ * output pixel.	The other samples of the output are left undefined.
+ */
+static void jpeg_set_output_region (jpeg_decompress_struct cinfo, int x, int y, int width, int height) {
+	int h_scale = cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size;
+	int v_scale = cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size;
+	for (int ci = 0; ci < cinfo.num_components; ci++) {
+		jpeg_component_info compptr = cinfo.comp_info[ci];
+		compptr.first_block_col = x * compptr.h_samp_factor / h_scale - 1;
+		compptr.last_block_col = (x + width - 1) * compptr.h_samp_factor / h_scale + 1;
+		compptr.first_block_row = y * compptr.v_samp_factor / v_scale - 1;
+		compptr.last_block_row = (y + height - 1) * compptr.v_samp_factor / v_scale + 1;
+	}
+}
+
+static boolean block_needed (jpeg_component_info compptr, int block_row, int block_col) {
+	return compptr.first_block_col <= block_col && block_col <= compptr.last_block_col &&
+		compptr.first_block_row <= block_row && block_row <= compptr.last_block_row;
+}
+
+static void inverse_DCT (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	switch (compptr.DCT_scaled_size) {
+		case 1:
+			jpeg_idct_1x1(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col);
+			break;
+		case 2:
+			jpeg_idct_2x2(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col);
+			break;
+		case 4:
+			jpeg_idct_4x4(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col);
+			break;
+		default:
+			jpeg_idct_islow(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col);
+			break;
+	}
+}
+
+/*
+ * The reduced-size inverse DCTs below (jidctred.c) produce 4x4, 2x2 or 1x1
+ * output blocks directly from the 8x8 coefficients. They use the same
+ * "islow" multiplier table as jpeg_idct_islow().
+ */
+static void jpeg_idct_4x4 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	int tmp0, tmp2, tmp10, tmp12;
+	int z1, z2, z3, z4;
+	short[] inptr = coef_block;
+	int[] quantptr = compptr.dct_table;
+	int[] wsptr = cinfo.workspace;	/* buffers data between passes */
+	byte[] outptr;
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+	int ctr;
+
+	/* Pass 1: process columns from input, store into work array. */
+	for (ctr = 0; ctr < DCTSIZE; ctr++) {
+		/* Don't bother to process column 4, because second pass won't use it */
+		if (ctr == 4)
+			continue;
+		if (inptr[DCTSIZE*1+ctr] == 0 && inptr[DCTSIZE*2+ctr] == 0 &&
+			inptr[DCTSIZE*3+ctr] == 0 && inptr[DCTSIZE*5+ctr] == 0 &&
+			inptr[DCTSIZE*6+ctr] == 0 && inptr[DCTSIZE*7+ctr] == 0)
+		{
+			/* AC terms all zero; we need not examine term 4 for 4x4 output */
+			int dcval = (inptr[DCTSIZE*0+ctr] * quantptr[DCTSIZE*0+ctr]) << PASS1_BITS;
+
+			wsptr[DCTSIZE*0+ctr] = dcval;
+			wsptr[DCTSIZE*1+ctr] = dcval;
+			wsptr[DCTSIZE*2+ctr] = dcval;
+			wsptr[DCTSIZE*3+ctr] = dcval;
+			continue;
+		}
+
+		/* Even part */
+		tmp0 = (inptr[DCTSIZE*0+ctr] * quantptr[DCTSIZE*0+ctr]) << (CONST_BITS+1);
+
+		z2 = inptr[DCTSIZE*2+ctr] * quantptr[DCTSIZE*2+ctr];
+		z3 = inptr[DCTSIZE*6+ctr] * quantptr[DCTSIZE*6+ctr];
+
+		tmp2 = (z2 * 15137/*FIX_1_847759065*/) + (z3 * - 6270/*FIX_0_765366865*/);
+
+		tmp10 = tmp0 + tmp2;
+		tmp12 = tmp0 - tmp2;
+
+		/* Odd part */
+		z1 = inptr[DCTSIZE*7+ctr] * quantptr[DCTSIZE*7+ctr];
+		z2 = inptr[DCTSIZE*5+ctr] * quantptr[DCTSIZE*5+ctr];
+		z3 = inptr[DCTSIZE*3+ctr] * quantptr[DCTSIZE*3+ctr];
+		z4 = inptr[DCTSIZE*1+ctr] * quantptr[DCTSIZE*1+ctr];
+
+		tmp0 = (z1 * - 1730/*FIX_0_211164243*/) /* sqrt(2) * (c3-c1) */
+			+ (z2 * 11893/*FIX_1_451774981*/) /* sqrt(2) * (c3+c7) */
+			+ (z3 * - 17799/*FIX_2_172734803*/) /* sqrt(2) * (-c1-c5) */
+			+ (z4 * 8697/*FIX_1_061594337*/); /* sqrt(2) * (c5+c7) */
+
+		tmp2 = (z1 * - 4176/*FIX_0_509795579*/) /* sqrt(2) * (c7-c5) */
+			+ (z2 * - 4926/*FIX_0_601344887*/) /* sqrt(2) * (c5-c1) */
+			+ (z3 * 7373/*FIX_0_899976223*/) /* sqrt(2) * (c3-c7) */
+			+ (z4 * 20995/*FIX_2_562915447*/); /* sqrt(2) * (c1+c3) */
+
+		/* Final output stage */
+		wsptr[DCTSIZE*0+ctr] = ((tmp10 + tmp2) + (1 << (CONST_BITS-PASS1_BITS))) >> (CONST_BITS-PASS1_BITS+1);
+		wsptr[DCTSIZE*3+ctr] = ((tmp10 - tmp2) + (1 << (CONST_BITS-PASS1_BITS))) >> (CONST_BITS-PASS1_BITS+1);
+		wsptr[DCTSIZE*1+ctr] = ((tmp12 + tmp0) + (1 << (CONST_BITS-PASS1_BITS))) >> (CONST_BITS-PASS1_BITS+1);
+		wsptr[DCTSIZE*2+ctr] = ((tmp12 - tmp0) + (1 << (CONST_BITS-PASS1_BITS))) >> (CONST_BITS-PASS1_BITS+1);
+	}
+
+	/* Pass 2: process 4 rows from work array, store into output array. */
+	int wsptr_offset = 0;
+	for (ctr = 0; ctr < 4; ctr++) {
+		outptr = output_buf[ctr+output_buf_offset];
+		if (wsptr[1+wsptr_offset] == 0 && wsptr[2+wsptr_offset] == 0 && wsptr[3+wsptr_offset] == 0 &&
+			wsptr[5+wsptr_offset] == 0 && wsptr[6+wsptr_offset] == 0 && wsptr[7+wsptr_offset] == 0)
+		{
+			/* AC terms all zero */
+			byte dcval = range_limit[range_limit_offset + (((wsptr[0+wsptr_offset] + (1 << (PASS1_BITS+2))) >> (PASS1_BITS+3)) & RANGE_MASK)];
+
+			outptr[0+output_col] = dcval;
+			outptr[1+output_col] = dcval;
+			outptr[2+output_col] = dcval;
+			outptr[3+output_col] = dcval;
+
+			wsptr_offset += DCTSIZE;	/* advance pointer to next row */
+			continue;
+		}
+
+		/* Even part */
+		tmp0 = wsptr[0+wsptr_offset] << (CONST_BITS+1);
+
+		tmp2 = (wsptr[2+wsptr_offset] * 15137/*FIX_1_847759065*/) + (wsptr[6+wsptr_offset] * - 6270/*FIX_0_765366865*/);
+
+		tmp10 = tmp0 + tmp2;
+		tmp12 = tmp0 - tmp2;
+
+		/* Odd part */
+		z1 = wsptr[7+wsptr_offset];
+		z2 = wsptr[5+wsptr_offset];
+		z3 = wsptr[3+wsptr_offset];
+		z4 = wsptr[1+wsptr_offset];
+
+		tmp0 = (z1 * - 1730/*FIX_0_211164243*/) + (z2 * 11893/*FIX_1_451774981*/)
+			+ (z3 * - 17799/*FIX_2_172734803*/) + (z4 * 8697/*FIX_1_061594337*/);
+
+		tmp2 = (z1 * - 4176/*FIX_0_509795579*/) + (z2 * - 4926/*FIX_0_601344887*/)
+			+ (z3 * 7373/*FIX_0_899976223*/) + (z4 * 20995/*FIX_2_562915447*/);
+
+		/* Final output stage */
+		int shift = CONST_BITS+PASS1_BITS+3+1;
+		outptr[0+output_col] = range_limit[range_limit_offset + ((((tmp10 + tmp2) + (1 << (shift-1))) >> shift) & RANGE_MASK)];
+		outptr[3+output_col] = range_limit[range_limit_offset + ((((tmp10 - tmp2) + (1 << (shift-1))) >> shift) & RANGE_MASK)];
+		outptr[1+output_col] = range_limit[range_limit_offset + ((((tmp12 + tmp0) + (1 << (shift-1))) >> shift) & RANGE_MASK)];
+		outptr[2+output_col] = range_limit[range_limit_offset + ((((tmp12 - tmp0) + (1 << (shift-1))) >> shift) & RANGE_MASK)];
+
+		wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+	}
+}
+
+static void jpeg_idct_2x2 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	int tmp0, tmp10, z1;
+	short[] inptr = coef_block;
+	int[] quantptr = compptr.dct_table;
+	int[] wsptr = cinfo.workspace;	/* buffers data between passes */
+	byte[] outptr;
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+	int ctr;
+
+	/* Pass 1: process columns from input, store into work array. */
+	for (ctr = 0; ctr < DCTSIZE; ctr++) {
+		/* Don't bother to process columns 2,4,6 */
+		if (ctr == 2 || ctr == 4 || ctr == 6)
+			continue;
+		if (inptr[DCTSIZE*1+ctr] == 0 && inptr[DCTSIZE*3+ctr] == 0 &&
+			inptr[DCTSIZE*5+ctr] == 0 && inptr[DCTSIZE*7+ctr] == 0)
+		{
+			/* AC terms all zero; we need not examine terms 2,4,6 for 2x2 output */
+			int dcval = (inptr[DCTSIZE*0+ctr] * quantptr[DCTSIZE*0+ctr]) << PASS1_BITS;
+
+			wsptr[DCTSIZE*0+ctr] = dcval;
+			wsptr[DCTSIZE*1+ctr] = dcval;
+			continue;
+		}
+
+		/* Even part */
+		tmp10 = (inptr[DCTSIZE*0+ctr] * quantptr[DCTSIZE*0+ctr]) << (CONST_BITS+2);
+
+		/* Odd part */
+		z1 = inptr[DCTSIZE*7+ctr] * quantptr[DCTSIZE*7+ctr];
+		tmp0 = z1 * - 5906/*FIX_0_720959822*/; /* sqrt(2) * (c7-c5+c3-c1) */
+		z1 = inptr[DCTSIZE*5+ctr] * quantptr[DCTSIZE*5+ctr];
+		tmp0 += z1 * 6967/*FIX_0_850430095*/; /* sqrt(2) * (-c1+c3+c5+c7) */
+		z1 = inptr[DCTSIZE*3+ctr] * quantptr[DCTSIZE*3+ctr];
+		tmp0 += z1 * - 10426/*FIX_1_272758580*/; /* sqrt(2) * (-c1+c3-c5-c7) */
+		z1 = inptr[DCTSIZE*1+ctr] * quantptr[DCTSIZE*1+ctr];
+		tmp0 += z1 * 29692/*FIX_3_624509785*/; /* sqrt(2) * (c1+c3+c5+c7) */
+
+		/* Final output stage */
+		wsptr[DCTSIZE*0+ctr] = ((tmp10 + tmp0) + (1 << (CONST_BITS-PASS1_BITS+1))) >> (CONST_BITS-PASS1_BITS+2);
+		wsptr[DCTSIZE*1+ctr] = ((tmp10 - tmp0) + (1 << (CONST_BITS-PASS1_BITS+1))) >> (CONST_BITS-PASS1_BITS+2);
+	}
+
+	/* Pass 2: process 2 rows from work array, store into output array. */
+	int wsptr_offset = 0;
+	for (ctr = 0; ctr < 2; ctr++) {
+		outptr = output_buf[ctr+output_buf_offset];
+		if (wsptr[1+wsptr_offset] == 0 && wsptr[3+wsptr_offset] == 0 &&
+			wsptr[5+wsptr_offset] == 0 && wsptr[7+wsptr_offset] == 0)
+		{
+			/* AC terms all zero */
+			byte dcval = range_limit[range_limit_offset + (((wsptr[0+wsptr_offset] + (1 << (PASS1_BITS+2))) >> (PASS1_BITS+3)) & RANGE_MASK)];
+
+			outptr[0+output_col] = dcval;
+			outptr[1+output_col] = dcval;
+
+			wsptr_offset += DCTSIZE;	/* advance pointer to next row */
+			continue;
+		}
+
+		/* Even part */
+		tmp10 = wsptr[0+wsptr_offset] << (CONST_BITS+2);
+
+		/* Odd part */
+		tmp0 = (wsptr[7+wsptr_offset] * - 5906/*FIX_0_720959822*/)
+			+ (wsptr[5+wsptr_offset] * 6967/*FIX_0_850430095*/)
+			+ (wsptr[3+wsptr_offset] * - 10426/*FIX_1_272758580*/)
+			+ (wsptr[1+wsptr_offset] * 29692/*FIX_3_624509785*/);
+
+		/* Final output stage */
+		int shift = CONST_BITS+PASS1_BITS+3+2;
+		outptr[0+output_col] = range_limit[range_limit_offset + ((((tmp10 + tmp0) + (1 << (shift-1))) >> shift) & RANGE_MASK)];
+		outptr[1+output_col] = range_limit[range_limit_offset + ((((tmp10 - tmp0) + (1 << (shift-1))) >> shift) & RANGE_MASK)];
+
+		wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+	}
+}
+
+static void jpeg_idct_1x1 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	/* We hardly need an inverse DCT routine for this: just take the
+	 * average pixel value, which is one-eighth of the DC coefficient.
+	 */
+	int dcval = coef_block[0] * compptr.dct_table[0];
+	dcval = (dcval + (1 << 2)) >> 3;
+	output_buf[output_buf_offset][output_col] = cinfo.sample_range_limit[cinfo.sample_range_limit_offset + CENTERJSAMPLE + (dcval & RANGE_MASK)];
+}
+
 static void upsample (jpeg_decompress_struct cinfo,
 	byte[][][] input_buf, int[] input_buf_offset, int[] in_row_group_ctr,
 	int in_row_groups_avail,
@@ -3801,8 +4078,10 @@ static int decompress_onepass (jpeg_decompress_struct cinfo, byte[][][] output_b
 				for (yindex = 0; yindex < compptr.MCU_height; yindex++) {
 					if (cinfo.input_iMCU_row < last_iMCU_row ||	yoffset+yindex < compptr.last_row_height) {
 						output_col = start_col;
+						int block_row = cinfo.input_iMCU_row * compptr.v_samp_factor + yoffset + yindex;
 						for (xindex = 0; xindex < useful_width; xindex++) {
-							jpeg_idct_islow(cinfo, compptr, coef.MCU_buffer[blkn+xindex], output_ptr, output_ptr_offset, output_col);
+							if (block_needed(compptr, block_row, MCU_col_num * compptr.MCU_width + xindex))
+								inverse_DCT(cinfo, compptr, coef.MCU_buffer[blkn+xindex], output_ptr, output_ptr_offset, output_col);
 							output_col += compptr.DCT_scaled_size;
 						}
 					}
@@ -4021,7 +4300,8 @@ static int decompress_smooth_data (jpeg_decompress_struct cinfo, byte[][][] outp
 					workspace[2] = (short) pred;
 				}
 				/* OK, do the IDCT */
-				jpeg_idct_islow(cinfo, compptr, workspace, output_ptr, output_ptr_offset, output_col);
+				if (block_needed(compptr, cinfo.output_iMCU_row * compptr.v_samp_factor + block_row, block_num))
+					inverse_DCT(cinfo, compptr, workspace, output_ptr, output_ptr_offset, output_col);
 				/* Advance for next column */
 				DC1 = DC2; DC2 = DC3;
 				DC4 = DC5; DC5 = DC6;
@@ -4085,7 +4365,8 @@ static int decompress_data (jpeg_decompress_struct cinfo, byte[][][] output_buf,
 			int buffer_ptr_offset = 0;
 			output_col = 0;
 			for (block_num = 0; block_num < compptr.width_in_blocks; block_num++) {
-				jpeg_idct_islow(cinfo, compptr, buffer_ptr[buffer_ptr_offset], output_ptr, output_ptr_offset, output_col);
+				if (block_needed(compptr, cinfo.output_iMCU_row * compptr.v_samp_factor + block_row, block_num))
+					inverse_DCT(cinfo, compptr, buffer_ptr[buffer_ptr_offset], output_ptr, output_ptr_offset, output_col);
 
 				buffer_ptr_offset++;
 				output_col += compptr.DCT_scaled_size;
@@ -5358,6 +5639,8 @@ static void jpeg_destroy (jpeg_decompress_struct cinfo) {
 //	if (cinfo.mem != NULL)
 //		(*cinfo.mem.self_destruct) (cinfo);
 //	cinfo.mem = NULL;		/* be safe if jpeg_destroy is called twice */
+	if (cinfo.context != null) cinfo.context.release();
+	cinfo.context = null;		/* be safe if jpeg_destroy is called twice */
 	cinfo.global_state = 0;	/* mark it destroyed */
 }
 
@@ -5546,10 +5829,51 @@ static int consume_input (jpeg_decompress_struct cinfo) {
 	return 0;
 }
 
+/**
+ * Answer the input buffer of the context of the decompressor.
+ */
+static byte[] get_input_buffer(jpeg_decompress_struct cinfo) {
+	DecoderContext context = cinfo.context;
+	if (context.jpegInput == null) context.jpegInput = new byte[INPUT_BUFFER_SIZE];
+	return context.jpegInput;
+}
+
 static boolean fill_input_buffer(jpeg_decompress_struct cinfo) {
 	try {
 		InputStream inputStream = cinfo.inputStream;
-		int nbytes = inputStream.read(cinfo.buffer);
+		/*
+		* When the whole stream is in a byte array, the remaining bytes are
+		* decoded straight from that array instead of being copied into the
+		* buffer. The array must not be written, so the fake EOI marker at
+		* the end of the stream goes into a buffer of our own.
+		*/
+		if (cinfo.shared_buffer) {
+			cinfo.buffer = get_input_buffer(cinfo);
+			cinfo.shared_buffer = false;
+		} else if (inputStream instanceof LEDataInputStream) {
+			LEDataInputStream stream = (LEDataInputStream) inputStream;
+			ByteBuffer source = stream.source;
+			if (source != null && source.hasArray() && source.hasRemaining()) {
+				cinfo.buffer = source.array();
+				cinfo.bytes_offset = source.arrayOffset() + source.position();
+				cinfo.bytes_in_buffer = source.arrayOffset() + source.limit();
+				cinfo.start_of_file = false;
+				cinfo.shared_buffer = true;
+				stream.skip(source.remaining());
+				return true;
+			}
+		}
+		/*
+		* Use the bytes that have arrived without waiting for a full buffer,
+		* so that a progressive scan is displayed as soon as its last byte
+		* is read from a slow stream.
+		*/
+		int nbytes;
+		if (inputStream instanceof LEDataInputStream) {
+			nbytes = ((LEDataInputStream) inputStream).readAvailable(cinfo.buffer, 0, cinfo.buffer.length);
+		} else {
+			nbytes = inputStream.read(cinfo.buffer);
+		}
 		if (nbytes <= 0) {
 			if (cinfo.start_of_file)	/* Treat empty input file as fatal error */
 				error();
@@ -5959,8 +6283,13 @@ static void jpeg_make_d_derived_tbl (jpeg_decompress_struct cinfo, boolean isDC,
 	JHUFF_TBL htbl;
 	int p, i = 0, l, si, numsymbols;
 	int lookbits, ctr;
-	byte[] huffsize = new byte[257];
-	int[] huffcode = new int[257];
+	DecoderContext context = cinfo.context;
+	if (context.huffsize == null) {
+		context.huffsize = new byte[257];
+		context.huffcode = new int[257];
+	}
+	byte[] huffsize = context.huffsize;
+	int[] huffcode = context.huffcode;
 	int code;
 
 	/* Note that huffsize[] and huffcode[] are filled in code-length order,
@@ -6224,7 +6553,7 @@ static void default_decompress_parms (jpeg_decompress_struct cinfo) {
 }
 
 static void init_source(jpeg_decompress_struct cinfo) {
-	cinfo.buffer = new byte[INPUT_BUFFER_SIZE];
+	cinfo.buffer = get_input_buffer(cinfo);
 	cinfo.bytes_in_buffer = 0;
 	cinfo.bytes_offset = 0;
 	cinfo.start_of_file = true;
@@ -6306,31 +6635,213 @@ static boolean isFileFormat(LEDataInputStream stream) {
 	}
 }
 
-static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader) {
+/**
+ * Read the scanlines that cover the given region of the image, which is
+ * in the coordinates of the full size image, and answer the part of
+ * them that is inside the region. The remaining scanlines are not decoded.
+ */
+static ImageData loadRegion(jpeg_decompress_struct cinfo, Rectangle bounds, PaletteData palette, byte[][] buffer) {
+	int denom = DCTSIZE / cinfo.min_DCT_scaled_size;
+	int x = bounds.x / denom, y = bounds.y / denom;
+	int width = Math.min(cinfo.output_width, (bounds.x + bounds.width + denom - 1) / denom) - x;
+	int height = Math.min(cinfo.output_height, (bounds.y + bounds.height + denom - 1) / denom) - y;
+	jpeg_set_output_region(cinfo, x, y, width, height);
+	int scanlinePad = 4;
+	int components = cinfo.out_color_components;
+	int bytesPerLine = (((width * components * 8 + 7) / 8) + (scanlinePad - 1)) / scanlinePad * scanlinePad;
+	byte[] data = new byte[bytesPerLine * height];
+	while (cinfo.output_scanline < y) {
+		jpeg_read_scanlines(cinfo, buffer, 1);
+	}
+	for (int row = 0; row < height; row++) {
+		jpeg_read_scanlines(cinfo, buffer, 1);
+		System.arraycopy(buffer[0], x * components, data, row * bytesPerLine, width * components);
+	}
+	return ImageData.internal_new(
+			width, height, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
+			0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
+}
+
+/**
+ * Answer the largest IDCT reduction (1, 2, 4 or 8) that still produces an
+ * image at least as large as the target size. A target dimension that is
+ * not positive does not constrain the reduction.
+ */
+static int scale_denom(int width, int height, int targetWidth, int targetHeight) {
+	if (targetWidth <= 0 && targetHeight <= 0) return 1;
+	int denom = 8;
+	while (denom > 1) {
+		if ((width + denom - 1) / denom >= targetWidth && (height + denom - 1) / denom >= targetHeight) break;
+		denom /= 2;
+	}
+	return denom;
+}
+
+/**
+ * Read the markers of the JPEG image in the input stream up to the first
+ * scan, and answer the size of the image and the depth it is decoded to.
+ */
+static ImageHeader probe(InputStream inputStream) {
 	jpeg_decompress_struct cinfo = new jpeg_decompress_struct();
 	cinfo.inputStream = inputStream;
 	jpeg_create_decompress(cinfo);
 	jpeg_read_header(cinfo, true);
-	cinfo.buffered_image = cinfo.progressive_mode && loader.hasListeners();
-	jpeg_start_decompress(cinfo);
-	PaletteData palette = null;
+	int depth = cinfo.out_color_space == JCS_GRAYSCALE ? 8 : 24;
+	ImageHeader header = new ImageHeader(cinfo.image_width, cinfo.image_height, depth, SWT.IMAGE_JPEG);
+	jpeg_destroy_decompress(cinfo);
+	return header;
+}
+
+static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader) {
+	return loadFromByteStream(inputStream, loader, 0, null);
+}
+
+/**
+ * Answer the palette of the images decoded with the output color space
+ * of the decompressor.
+ */
+static PaletteData getPalette(jpeg_decompress_struct cinfo) {
 	switch (cinfo.out_color_space) {
 		case JCS_RGB:
-			palette = new PaletteData(0xFF, 0xFF00, 0xFF0000);
-			break;
+			return new PaletteData(0xFF, 0xFF00, 0xFF0000);
 		case JCS_GRAYSCALE:
 			RGB[] colors = new RGB[256];
 			for (int i = 0; i < colors.length; i++) {
 				colors[i] = new RGB(i, i, i);
 			}
-			palette = new PaletteData(colors);
-			break;
+			return new PaletteData(colors);
 		default:
 			error();
 	}
+	return null;
+}
+
+/**
+ * Decode the JPEG image in the input stream at the given scale, and store
+ * <code>count</code> of its scanlines, starting with scanline <code>skip</code>,
+ * in the rows of the image from row <code>y</code> on. The image has the
+ * layout of the images returned by <code>loadFromByteStream</code>, which
+ * is 32-bit when it has a direct palette of 32-bit pixels. Decoding stops
+ * after the last stored scanline.
+ */
+static void decodeRows(InputStream inputStream, int scale_denom, ImageData image, int skip, int count, int y) {
+	jpeg_decompress_struct cinfo = new jpeg_decompress_struct();
+	cinfo.inputStream = inputStream;
+	jpeg_create_decompress(cinfo);
+	jpeg_read_header(cinfo, true);
+	cinfo.scale_denom = scale_denom;
+	jpeg_start_decompress(cinfo);
+	int row_stride = (((cinfo.output_width * cinfo.out_color_components * 8 + 7) / 8) + 3) / 4 * 4;
+	byte[][] buffer = new byte[1][row_stride];
+	while (cinfo.output_scanline < skip) {
+		jpeg_read_scanlines(cinfo, buffer, 1);
+	}
+	byte[] data = image.data;
+	int width = image.width, bytesPerLine = image.bytesPerLine;
+	if (image.depth == 32) {
+		PaletteData palette = image.palette;
+		int or = FileFormat.getByteOffset(palette.redMask);
+		int og = FileFormat.getByteOffset(palette.greenMask);
+		int ob = FileFormat.getByteOffset(palette.blueMask);
+		for (int row = 0; row < count; row++) {
+			jpeg_read_scanlines(cinfo, buffer, 1);
+			byte[] scanline = buffer[0];
+			int offset = (y + row) * bytesPerLine;
+			for (int x = 0, index = 0; x < width; x++, index += 3, offset += 4) {
+				data[offset + ob] = scanline[index];
+				data[offset + og] = scanline[index + 1];
+				data[offset + or] = scanline[index + 2];
+			}
+		}
+	} else {
+		for (int row = 0; row < count; row++) {
+			jpeg_read_scanlines(cinfo, buffer, 1);
+			System.arraycopy(buffer[0], 0, data, (y + row) * bytesPerLine, row_stride);
+		}
+	}
+	jpeg_destroy_decompress(cinfo);
+}
+
+/**
+ * Decode the JPEG image in the input stream. If <code>bandHeight</code> is
+ * positive, the scanlines are delivered to the loader's listeners in bands
+ * of at most that many rows as soon as they are decoded, and an empty array
+ * is returned.
+ * <p>
+ * If the file format has a source region, only that part of the image is
+ * returned. The inverse DCT is skipped for the blocks outside the region
+ * and decoding stops after the last row of the region.
+ * </p>
+ */
+static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader, int bandHeight, FileFormat format) {
+	jpeg_decompress_struct cinfo = new jpeg_decompress_struct();
+	cinfo.inputStream = inputStream;
+	jpeg_create_decompress(cinfo);
+	jpeg_read_header(cinfo, true);
+	Rectangle bounds = format != null ? format.clipRegion(cinfo.image_width, cinfo.image_height) : null;
+	if (bounds != null) {
+		cinfo.scale_denom = scale_denom(bounds.width, bounds.height, loader.targetWidth, loader.targetHeight);
+	} else {
+		cinfo.scale_denom = scale_denom(cinfo.image_width, cinfo.image_height, loader.targetWidth, loader.targetHeight);
+	}
+	cinfo.buffered_image = cinfo.progressive_mode && loader.hasListeners() && bandHeight == 0 && bounds == null;
+	jpeg_start_decompress(cinfo);
+	PaletteData palette = getPalette(cinfo);
 	int scanlinePad = 4;
 	int row_stride = (((cinfo.output_width * cinfo.out_color_components * 8 + 7) / 8) + (scanlinePad - 1)) / scanlinePad * scanlinePad;
 	byte[][] buffer = new byte[1][row_stride];
+	if (bandHeight > 0) {
+		FileFormat.startBands(loader, cinfo.output_width, cinfo.output_height);
+		int bandIndex = 0;
+		while (cinfo.output_scanline < cinfo.output_height) {
+			int bandY = cinfo.output_scanline;
+			int rows = Math.min(bandHeight, cinfo.output_height - bandY);
+			byte[] data = new byte[row_stride * rows];
+			for (int row = 0; row < rows; row++) {
+				jpeg_read_scanlines(cinfo, buffer, 1);
+				System.arraycopy(buffer[0], 0, data, row_stride * row, row_stride);
+			}
+			ImageData band = ImageData.internal_new(
+					cinfo.output_width, rows, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
+					0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, bandY, 0, 0);
+			FileFormat.fireBand(loader, band, bandIndex++, cinfo.output_scanline >= cinfo.output_height);
+		}
+		jpeg_finish_decompress(cinfo);
+		jpeg_destroy_decompress(cinfo);
+		return new ImageData[0];
+	}
+	if (bounds != null) {
+		ImageData imageData = loadRegion(cinfo, bounds, palette, buffer);
+		jpeg_destroy_decompress(cinfo);
+		return new ImageData[]{imageData};
+	}
+	/*
+	* When the caller prefers a 32-bit layout for direct color images,
+	* the scanlines are stored in that layout while they are read.
+	*/
+	PaletteData directPalette = format != null && palette.isDirect && !cinfo.buffered_image ? format.directPalette : null;
+	if (directPalette != null) {
+		int width = cinfo.output_width, height = cinfo.output_height;
+		byte[] data = new byte[width * 4 * height];
+		int or = FileFormat.getByteOffset(directPalette.redMask);
+		int og = FileFormat.getByteOffset(directPalette.greenMask);
+		int ob = FileFormat.getByteOffset(directPalette.blueMask);
+		while (cinfo.output_scanline < height) {
+			int offset = width * 4 * cinfo.output_scanline;
+			jpeg_read_scanlines(cinfo, buffer, 1);
+			byte[] scanline = buffer[0];
+			for (int x = 0, index = 0; x < width; x++, index += 3, offset += 4) {
+				data[offset + ob] = scanline[index];
+				data[offset + og] = scanline[index + 1];
+				data[offset + or] = scanline[index + 2];
+			}
+		}
+		jpeg_finish_decompress(cinfo);
+		jpeg_destroy_decompress(cinfo);
+		return new ImageData[]{ImageData.internal_new(
+			width, height, 32, directPalette, 4, data,
+			0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0)};
+	}
 	byte[] data = new byte[row_stride * cinfo.output_height];
 	ImageData imageData = ImageData.internal_new(
 			cinfo.output_width, cinfo.output_height, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
@@ -18,6 +18,7 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.nio.*;
 
 public final class JPEGFileFormat extends FileFormat {
 	int restartInterval;
@@ -1383,11 +1384,78 @@ boolean isZeroInRow(int[] dataUnit, int rIndex) {
 			&& dataUnit[rIndex + 5] == 0 && dataUnit[rIndex + 6] == 0
 			&& dataUnit[rIndex + 7] == 0;
 }
+@Override
+boolean canStreamBands() {
+	return System.getProperty("org.eclipse.swt.internal.image.JPEGFileFormat_3.2") == null;
+}
+@Override
+boolean canDecodeRegion() {
+	return canStreamBands();
+}
+/**
+ * Answer the size and depth of the image, as read from the markers
+ * that precede the first scan. The compressed data is not read.
+ */
+@Override
+ImageHeader[] probeFromByteStream() {
+	return new ImageHeader[] {JPEGDecoder.probe(inputStream)};
+}
+
+/**
+ * Decode the image in bands on several threads when it is a baseline
+ * image with restart markers, and answer it. Otherwise answer null, and
+ * replace the input stream with one that reads the same bytes again.
+ */
+ImageData loadRestartBands() {
+	byte[] bytes;
+	int offset, length;
+	try {
+		ByteBuffer source = inputStream.source;
+		if (source != null && source.hasArray()) {
+			bytes = source.array();
+			offset = source.arrayOffset() + source.position();
+			length = source.remaining();
+		} else if (source != null) {
+			bytes = new byte[source.remaining()];
+			source.duplicate().get(bytes);
+			offset = 0;
+			length = bytes.length;
+		} else {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = inputStream.read(buffer, 0, buffer.length)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			bytes = out.toByteArray();
+			offset = 0;
+			length = bytes.length;
+		}
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+		return null;
+	}
+	ImageData image = JPEGRestartDecoder.load(bytes, offset, offset + length, loader, this);
+	if (image == null && inputStream.source == null) {
+		inputStream = new LEDataInputStream(ByteBuffer.wrap(bytes, offset, length));
+	}
+	return image;
+}
+
 @Override
 ImageData[] loadFromByteStream() {
 	//TEMPORARY CODE
 	if (System.getProperty("org.eclipse.swt.internal.image.JPEGFileFormat_3.2") == null) {
-		return JPEGDecoder.loadFromByteStream(inputStream, loader);
+		/*
+		* Reading a whole stream before decoding would delay the
+		* previews of a progressive image until its last byte.
+		*/
+		boolean incremental = loader.hasListeners() && inputStream.source == null;
+		if (loader.parallel && bandHeight == 0 && region == null && !incremental) {
+			ImageData image = loadRestartBands();
+			if (image != null) return new ImageData[] {image};
+		}
+		return JPEGDecoder.loadFromByteStream(inputStream, loader, bandHeight, this);
 	}
 	JPEGStartOfImage soi = new JPEGStartOfImage(inputStream);
 	if (!soi.verify()) SWT.error(SWT.ERROR_INVALID_IMAGE);
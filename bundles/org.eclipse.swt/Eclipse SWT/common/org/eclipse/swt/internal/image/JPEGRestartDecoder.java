@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Decodes a baseline JPEG image that contains restart markers in
+ * horizontal bands on the common fork-join pool.
+ * <p>
+ * The entropy coded data restarts at every restart marker, so the
+ * data between two markers can be decoded without the data before it.
+ * The image is split at the rows of MCUs that start at a restart marker,
+ * and each band is decoded from a stream made of the tables of the file
+ * followed by the data of the band. One group of MCU rows above and
+ * below each band is decoded as well and discarded, so that the
+ * upsampled chroma at the edges of the band is the same as when the
+ * image is decoded in one piece.
+ * </p>
+ */
+final class JPEGRestartDecoder {
+	final byte[] data;
+	final int start, end;
+
+	/* frame and scan */
+	int frameOffset, scanOffset, eoiOffset;
+	int width, height, components;
+	int mcuWidth, mcuHeight, mcusPerRow, mcuRows;
+	int restartInterval;
+	int[] restarts;
+	int restartCount;
+
+	/*
+	 * Images that are smaller than this number of pixels are
+	 * decoded on one thread.
+	 */
+	static final int MIN_PIXELS = 256 * 256;
+
+JPEGRestartDecoder(byte[] data, int start, int end) {
+	this.data = data;
+	this.start = start;
+	this.end = end;
+}
+
+/**
+ * Decode the JPEG image in the given bytes in parallel, and answer it,
+ * or answer null when the image is not a baseline image with restart
+ * markers that can be split into at least two bands, in which case the
+ * image must be decoded sequentially.
+ */
+static ImageData load(byte[] data, int start, int end, ImageLoader loader, FileFormat format) {
+	return load(data, start, end, loader, format, Math.max(2, ForkJoinPool.getCommonPoolParallelism()));
+}
+
+static ImageData load(byte[] data, int start, int end, ImageLoader loader, FileFormat format, int bandCount) {
+	JPEGRestartDecoder decoder = new JPEGRestartDecoder(data, start, end);
+	if (!decoder.parse()) return null;
+	if (decoder.width * decoder.height < MIN_PIXELS) return null;
+	return decoder.decode(loader, format, bandCount);
+}
+
+int u8(int offset) {
+	return data[offset] & 0xFF;
+}
+
+int u16(int offset) {
+	return (u8(offset) << 8) | u8(offset + 1);
+}
+
+/**
+ * Read the markers up to the start of the scan, and find the restart
+ * markers in the entropy coded data. Answer whether the image can be
+ * decoded in bands.
+ */
+boolean parse() {
+	int p = start;
+	if (end - p < 4 || u8(p) != 0xFF || u8(p + 1) != 0xD8) return false;
+	p += 2;
+	int hMax = 1, vMax = 1;
+	frameOffset = -1;
+	while (scanOffset == 0) {
+		if (p >= end || u8(p) != 0xFF) return false;
+		while (p < end && u8(p) == 0xFF) p++;
+		if (p + 3 > end) return false;
+		int marker = u8(p++);
+		int length = u16(p);
+		if (length < 2 || p + length > end) return false;
+		switch (marker) {
+			case 0xC0:
+			case 0xC1:
+				if (frameOffset != -1 || length < 8 || u8(p + 2) != 8) return false;
+				frameOffset = p;
+				height = u16(p + 3);
+				width = u16(p + 5);
+				components = u8(p + 7);
+				if (height == 0 || width == 0) return false;
+				if (components != 1 && components != 3) return false;
+				if (length != 8 + components * 3) return false;
+				for (int i = 0; i < components; i++) {
+					int factors = u8(p + 9 + i * 3);
+					int h = factors >> 4, v = factors & 0xF;
+					if (h < 1 || h > 4 || v < 1 || v > 4) return false;
+					hMax = Math.max(hMax, h);
+					vMax = Math.max(vMax, v);
+				}
+				break;
+			case 0xDD:
+				if (length != 4) return false;
+				restartInterval = u16(p + 2);
+				break;
+			case 0xDA:
+				if (frameOffset == -1 || u8(p + 2) != components) return false;
+				scanOffset = p + length;
+				break;
+			case 0xC4:
+			case 0xDB:
+			case 0xFE:
+				break;
+			default:
+				/* Other frame types, DNL and unexpected markers */
+				if (marker < 0xE0 || marker > 0xEF) return false;
+		}
+		p += length;
+	}
+	if (restartInterval == 0) return false;
+	if (components == 1) {
+		/* A single component scan is not interleaved */
+		mcuWidth = mcuHeight = 8;
+	} else {
+		mcuWidth = 8 * hMax;
+		mcuHeight = 8 * vMax;
+	}
+	mcusPerRow = (width + mcuWidth - 1) / mcuWidth;
+	mcuRows = (height + mcuHeight - 1) / mcuHeight;
+	long segments = ((long) mcusPerRow * mcuRows + restartInterval - 1) / restartInterval;
+	if (segments < 2 || segments > Integer.MAX_VALUE) return false;
+	restarts = new int[(int) segments - 1];
+	return findRestarts();
+}
+
+/**
+ * Find the restart markers in the entropy coded data, which must be
+ * numbered in sequence and followed by the end of the image.
+ */
+boolean findRestarts() {
+	byte[] data = this.data;
+	int q = scanOffset, limit = end - 1;
+	while (q < limit) {
+		if (data[q] != (byte) 0xFF) {
+			q++;
+			continue;
+		}
+		int code = data[q + 1] & 0xFF;
+		if (code == 0) {
+			q += 2;
+		} else if (code == 0xFF) {
+			q++;
+		} else if (code >= 0xD0 && code <= 0xD7) {
+			if (restartCount == restarts.length) return false;
+			if (code - 0xD0 != (restartCount & 7)) return false;
+			restarts[restartCount++] = q;
+			q += 2;
+		} else if (code == 0xD9) {
+			eoiOffset = q;
+			return restartCount == restarts.length;
+		} else {
+			return false;
+		}
+	}
+	return false;
+}
+
+/**
+ * Answer the offset of the entropy coded data of the given segment.
+ */
+int segmentStart(int segment) {
+	return segment == 0 ? scanOffset : restarts[segment - 1] + 2;
+}
+
+/**
+ * Answer the offset that follows the entropy coded data of the given segment.
+ */
+int segmentEnd(int segment) {
+	return segment == restarts.length ? eoiOffset : restarts[segment];
+}
+
+/**
+ * Answer a stream with the image made of the given rows of MCUs,
+ * which start and end at restart markers, or at the end of the image.
+ */
+InputStream bandStream(int firstRow, int lastRow) {
+	int firstSegment = (int) ((long) firstRow * mcusPerRow / restartInterval);
+	int lastSegment = lastRow == mcuRows ? restarts.length : (int) ((long) lastRow * mcusPerRow / restartInterval) - 1;
+	int headerLength = scanOffset - start;
+	int dataStart = segmentStart(firstSegment), dataEnd = segmentEnd(lastSegment);
+	byte[] band = new byte[headerLength + dataEnd - dataStart + 2];
+	System.arraycopy(data, start, band, 0, headerLength);
+	System.arraycopy(data, dataStart, band, headerLength, dataEnd - dataStart);
+	int bandHeight = lastRow == mcuRows ? height - firstRow * mcuHeight : (lastRow - firstRow) * mcuHeight;
+	int heightOffset = frameOffset + 3 - start;
+	band[heightOffset] = (byte) (bandHeight >> 8);
+	band[heightOffset + 1] = (byte) bandHeight;
+	for (int segment = firstSegment + 1; segment <= lastSegment; segment++) {
+		band[headerLength + restarts[segment - 1] - dataStart + 1] = (byte) (0xD0 + ((segment - firstSegment - 1) & 7));
+	}
+	band[band.length - 2] = (byte) 0xFF;
+	band[band.length - 1] = (byte) 0xD9;
+	return new ByteArrayInputStream(band);
+}
+
+/**
+ * Decode the image in at most the given number of bands.
+ */
+ImageData decode(ImageLoader loader, FileFormat format, int bandCount) {
+	/*
+	* The bands start at rows of MCUs that start at a restart marker.
+	* These rows are found every group of rows.
+	*/
+	int a = restartInterval, b = mcusPerRow;
+	while (b != 0) {
+		int t = a % b;
+		a = b;
+		b = t;
+	}
+	int group = restartInterval / a;
+	int groups = (mcuRows + group - 1) / group;
+	if (groups < 2) return null;
+	bandCount = Math.min(bandCount, groups);
+	if (bandCount < 2) return null;
+
+	int scale_denom = JPEGDecoder.scale_denom(width, height, loader.targetWidth, loader.targetHeight);
+	int outputWidth = (width + scale_denom - 1) / scale_denom;
+	int outputHeight = (height + scale_denom - 1) / scale_denom;
+	int rowHeight = mcuHeight / scale_denom;
+	PaletteData palette;
+	if (components == 1) {
+		RGB[] colors = new RGB[256];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = new RGB(i, i, i);
+		}
+		palette = new PaletteData(colors);
+	} else {
+		palette = new PaletteData(0xFF, 0xFF00, 0xFF0000);
+	}
+	ImageData image;
+	PaletteData directPalette = format != null && palette.isDirect ? format.directPalette : null;
+	if (directPalette != null) {
+		image = ImageData.internal_new(
+			outputWidth, outputHeight, 32, directPalette, 4, new byte[outputWidth * 4 * outputHeight],
+			0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
+	} else {
+		int depth = palette.isDirect ? 24 : 8;
+		int row_stride = ((outputWidth * depth / 8) + 3) / 4 * 4;
+		image = ImageData.internal_new(
+			outputWidth, outputHeight, depth, palette, 4, new byte[row_stride * outputHeight],
+			0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
+	}
+
+	Band[] bands = new Band[bandCount];
+	for (int i = 0; i < bandCount; i++) {
+		int firstRow = (int) ((long) groups * i / bandCount) * group;
+		int lastRow = Math.min(mcuRows, (int) ((long) groups * (i + 1) / bandCount) * group);
+		int contextFirst = Math.max(0, firstRow - group);
+		int contextLast = Math.min(mcuRows, lastRow + group);
+		int y = firstRow * rowHeight;
+		int count = lastRow == mcuRows ? outputHeight - y : (lastRow - firstRow) * rowHeight;
+		bands[i] = new Band(this, image, scale_denom, contextFirst, contextLast, (firstRow - contextFirst) * rowHeight, count, y);
+	}
+	ForkJoinTask.invokeAll(bands);
+	for (Band band : bands) {
+		if (band.error != null) throw band.error;
+	}
+	return image;
+}
+
+/**
+ * Decodes the rows of one band into the image.
+ */
+static final class Band extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	final JPEGRestartDecoder decoder;
+	final ImageData image;
+	final int scale_denom, firstRow, lastRow, skip, count, y;
+	RuntimeException error;
+
+	Band(JPEGRestartDecoder decoder, ImageData image, int scale_denom, int firstRow, int lastRow, int skip, int count, int y) {
+		this.decoder = decoder;
+		this.image = image;
+		this.scale_denom = scale_denom;
+		this.firstRow = firstRow;
+		this.lastRow = lastRow;
+		this.skip = skip;
+		this.count = count;
+		this.y = y;
+	}
+
+	@Override
+	protected void compute() {
+		try {
+			InputStream stream = decoder.bandStream(firstRow, lastRow);
+			JPEGDecoder.decodeRows(stream, scale_denom, image, skip, count, y);
+		} catch (RuntimeException e) {
+			error = e;
+		}
+	}
+}
+}
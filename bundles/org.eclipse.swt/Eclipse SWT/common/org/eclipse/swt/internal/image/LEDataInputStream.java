@@ -12,11 +12,27 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
+import java.nio.*;
 
 final class LEDataInputStream extends InputStream {
 	int position;
 	InputStream in;
 
+	/*
+	 * The bytes of the stream when they are all in memory, for example
+	 * in a mapped file, or null. The bytes are then read straight from
+	 * this buffer, whose position is the position of the stream, and
+	 * pushing bytes back moves its position back.
+	 */
+	ByteBuffer source;
+
+	/*
+	 * The number of bytes that the last read from the source asked for
+	 * but did not get because the end was reached. Pushing the bytes of
+	 * that read back only moves back over the bytes that were read.
+	 */
+	int shortfall;
+
 	/**
 	 * The byte array containing the bytes to read.
 	 */
@@ -43,8 +59,17 @@ final class LEDataInputStream extends InputStream {
 		else throw new IllegalArgumentException();
 	}
 
+	/**
+	 * Create a stream that reads the remaining bytes of the given buffer.
+	 * The position of the buffer is not changed.
+	 */
+	public LEDataInputStream(ByteBuffer buffer) {
+		source = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
 	@Override
 	public void close() throws IOException {
+		source = null;
 		buf = null;
 		if (in != null) {
 			in.close();
@@ -56,14 +81,40 @@ final class LEDataInputStream extends InputStream {
 	 * Answer how many bytes were read.
 	 */
 	public int getPosition() {
+		if (source != null) return source.position();
 		return position;
 	}
 
+	/**
+	 * Move to the given position, which can be before the current one,
+	 * in a stream whose bytes are all in memory.
+	 */
+	void seek(int pos) throws IOException {
+		if (source == null || pos < 0 || pos > source.limit()) throw new IOException();
+		source.position(pos);
+		shortfall = 0;
+	}
+
+	/**
+	 * Skip over the given number of bytes without copying them when
+	 * they are all in memory.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		if (source == null) return super.skip(n);
+		if (n <= 0) return 0;
+		int count = (int) Math.min(n, source.remaining());
+		source.position(source.position() + count);
+		shortfall = 0;
+		return count;
+	}
+
 	/**
 	 * Answers how many bytes are available for reading without blocking
 	 */
 	@Override
 	public int available() throws IOException {
+		if (source != null) return source.remaining();
 		if (buf == null) throw new IOException();
 		return (buf.length - pos) + in.available();
 	}
@@ -73,6 +124,10 @@ final class LEDataInputStream extends InputStream {
 	 */
 	@Override
 	public int read() throws IOException {
+		if (source != null) {
+			shortfall = source.hasRemaining() ? 0 : 1;
+			return shortfall == 0 ? source.get() & 0xFF : -1;
+		}
 		if (buf == null) throw new IOException();
 		if (pos < buf.length) {
 			position++;
@@ -89,6 +144,14 @@ final class LEDataInputStream extends InputStream {
 	 */
 	@Override
 	public int read(byte b[], int off, int len) throws IOException {
+		if (source != null) {
+			int count = Math.min(len, source.remaining());
+			shortfall = len - count;
+			if (len == 0) return 0;
+			if (count == 0) return -1;
+			source.get(b, off, count);
+			return count;
+		}
 		int read = 0, count;
 		while (read != len && (count = readData(b, off, len - read)) != -1) {
 			off += count;
@@ -99,6 +162,20 @@ final class LEDataInputStream extends InputStream {
 		return read;
 	}
 
+	/**
+	 * Reads at most <code>len</code> bytes with at most one read of the
+	 * target stream, so that the bytes that have arrived can be used
+	 * without waiting for the rest. Answer the number of bytes read or
+	 * -1 at the end of the stream.
+	 */
+	int readAvailable(byte b[], int off, int len) throws IOException {
+		if (source != null) return read(b, off, len);
+		if (len == 0) return 0;
+		int count = readData(b, off, len);
+		if (count > 0) position += count;
+		return count;
+	}
+
 	/**
  	 * Reads at most <code>length</code> bytes from this LEDataInputStream and
  	 * stores them in byte array <code>buffer</code> starting at <code>offset</code>.
@@ -150,6 +227,10 @@ final class LEDataInputStream extends InputStream {
 	 * four bytes of the input stream.
 	 */
 	public int readInt() throws IOException {
+		if (source != null && source.remaining() >= 4) {
+			shortfall = 0;
+			return source.getInt();
+		}
 		byte[] buf = new byte[4];
 		read(buf);
 		return ((buf[3] & 0xFF) << 24) |
@@ -163,6 +244,10 @@ final class LEDataInputStream extends InputStream {
 	 * two bytes of the input stream.
 	 */
 	public short readShort() throws IOException {
+		if (source != null && source.remaining() >= 2) {
+			shortfall = 0;
+			return source.getShort();
+		}
 		byte[] buf = new byte[2];
 		read(buf);
 		return (short)(((buf[1] & 0xFF) << 8) | (buf[0] & 0xFF));
@@ -174,14 +259,27 @@ final class LEDataInputStream extends InputStream {
 	 * The bytes are pushed so that they would be read back b[0], b[1], etc.
 	 * If the push back buffer cannot handle the bytes copied from <code>b</code>,
 	 * an IOException will be thrown and no byte will be pushed back.
+	 * </p><p>
+	 * When the bytes of the stream are all in memory, the position is moved
+	 * back instead, so only the bytes that were read can be pushed back.
+	 * After a short read at the end of the stream, the bytes that the read
+	 * did not get are not pushed back.
 	 * </p>
 	 *
 	 * @param b the byte array containing bytes to push back into the stream
 	 *
-	 * @exception 	java.io.IOException if the pushback buffer is too small
+	 * @exception 	java.io.IOException if the pushback buffer is too small,
+	 * or if the bytes would be pushed back before the start of the stream
 	 */
 	public void unread(byte[] b) throws IOException {
 		int length = b.length;
+		if (source != null) {
+			int count = Math.max(0, length - shortfall);
+			if (count > source.position()) throw new IOException();
+			source.position(source.position() - count);
+			shortfall = 0;
+			return;
+		}
 		if (length > pos) throw new IOException();
 		position -= length;
 		pos -= length;
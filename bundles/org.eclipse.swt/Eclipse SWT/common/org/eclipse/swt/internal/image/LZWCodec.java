@@ -11,6 +11,8 @@
 package org.eclipse.swt.internal.image;
 
 
+import java.util.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 
@@ -111,8 +113,13 @@ public void decode(LEDataInputStream inputStream, ImageLoader loader, ImageData
 	this.image = image;
 	this.interlaced = interlaced;
 	this.bitsPerPixel = depth;
-	initializeForDecoding();
-	decode();
+	DecoderContext context = DecoderContext.acquire();
+	try {
+		initializeForDecoding(context);
+		decode();
+	} finally {
+		context.release();
+	}
 }
 /**
  * Encode the image.
@@ -217,9 +224,9 @@ int encodeLoop() {
 }
 /**
  * Initialize the receiver for decoding the given
- * byte array.
+ * byte array, with the tables of the given context.
  */
-void initializeForDecoding() {
+void initializeForDecoding(DecoderContext context) {
 	pass = 1;
 	line = 0;
 	codeSize = bitsPerPixel + 1;
@@ -231,10 +238,20 @@ void initializeForDecoding() {
 	blockSize = bitsLeft = 0;
 	blockIndex = 0;
 	codeMask = MASK_TABLE[codeSize - 1];
-	stack = new int[4096];
-	suffix = new int[4096];
-	prefix = new int[4096];
-	block = new byte[256];
+	if (context.lzwStack == null) {
+		context.lzwStack = new int[4096];
+		context.lzwSuffix = new int[4096];
+		context.lzwPrefix = new int[4096];
+		context.lzwBlock = new byte[256];
+	} else {
+		/* Corrupt data may read entries that were never written */
+		Arrays.fill(context.lzwSuffix, 0);
+		Arrays.fill(context.lzwPrefix, 0);
+	}
+	stack = context.lzwStack;
+	suffix = context.lzwSuffix;
+	prefix = context.lzwPrefix;
+	block = context.lzwBlock;
 	imageWidth = image.width;
 	imageHeight = image.height;
 }
@@ -244,7 +261,8 @@ void initializeForDecoding() {
  */
 void initializeForEncoding() {
 	interlaced = false;
-	bitsPerPixel = image.depth;
+	/* The minimum code size of GIF is 2, even for 1-bit images */
+	bitsPerPixel = Math.max(2, image.depth);
 	codeSize = bitsPerPixel + 1;
 	topSlot = 1 << codeSize;
 	clearCode = 1 << bitsPerPixel;
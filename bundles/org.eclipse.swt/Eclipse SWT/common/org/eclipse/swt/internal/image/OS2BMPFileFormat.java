@@ -65,6 +65,24 @@ int[] loadFileHeader() {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
 	return header;
 }
+/**
+ * Answer the size and depth of the image, as read from the
+ * info header. The palette and the pixels are not read.
+ */
+@Override
+ImageHeader[] probeFromByteStream() {
+	loadFileHeader();
+	byte[] infoHeader = new byte[BMPHeaderFixedSize];
+	try {
+		inputStream.read(infoHeader);
+	} catch (Exception e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8);
+	int height = (infoHeader[6] & 0xFF) | ((infoHeader[7] & 0xFF) << 8);
+	int bitCount = (infoHeader[10] & 0xFF) | ((infoHeader[11] & 0xFF) << 8);
+	return new ImageHeader[] {new ImageHeader(width, height, bitCount, SWT.IMAGE_OS2_BMP)};
+}
 @Override
 ImageData[] loadFromByteStream() {
 	int[] fileHeader = loadFileHeader();
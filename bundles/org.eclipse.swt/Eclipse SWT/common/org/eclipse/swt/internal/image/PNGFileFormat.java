@@ -12,7 +12,6 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
-import java.util.zip.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
@@ -28,6 +27,9 @@ public final class PNGFileFormat extends FileFormat {
 	byte headerByte1;
 	byte headerByte2;
 	int adler;
+	Rectangle bounds;
+	boolean pixelDataRead;
+	boolean direct;
 
 /**
  * Skip over signature data. This has already been
@@ -37,6 +39,21 @@ void readSignature() throws IOException {
 	byte[] signature = new byte[SIGNATURE_LENGTH];
 	inputStream.read(signature);
 }
+/**
+ * Answer the size and depth of the image, as read from the
+ * IHDR chunk. The rest of the stream is not read.
+ */
+@Override
+ImageHeader[] probeFromByteStream() {
+	try {
+		readSignature();
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	PngChunkReader chunkReader = new PngChunkReader(inputStream);
+	PngIhdrChunk header = chunkReader.getIhdrChunk();
+	return new ImageHeader[] {new ImageHeader(header.getWidth(), header.getHeight(), header.getSwtBitsPerPixel(), SWT.IMAGE_PNG)};
+}
 /**
  * Load the PNG image from the byte stream.
  */
@@ -48,12 +65,34 @@ ImageData[] loadFromByteStream() {
 		headerChunk = chunkReader.getIhdrChunk();
 		int width = headerChunk.getWidth(), height = headerChunk.getHeight();
 		if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
-		int imageSize = getAlignedBytesPerRow() * height;
+		/*
+		* When streaming a non-interlaced image, only the first band is
+		* allocated here. It collects the palette and transparency until
+		* the pixel data is read.
+		*/
+		boolean streaming = isStreamingBands();
+		int rows = streaming ? Math.min(bandHeight, height) : height;
+		/*
+		* When decoding a region of a non-interlaced image, only the rows
+		* of the region are stored and inflating stops after the last one.
+		*/
+		bounds = clipRegion(width, height);
+		boolean interlaced = headerChunk.getInterlaceMethod() != PngIhdrChunk.INTERLACE_METHOD_NONE;
+		if (bounds != null && !interlaced) rows = bounds.height;
+		/*
+		* When the caller prefers a 32-bit layout for direct color images,
+		* the rows of complete 8-bit RGB and RGBA images are converted to
+		* that layout while they are read.
+		*/
+		int colorType = headerChunk.getColorType();
+		direct = directPalette != null && bandHeight == 0 && bounds == null && !interlaced && headerChunk.getBitDepth() == 8 &&
+			(colorType == PngIhdrChunk.COLOR_TYPE_RGB || colorType == PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA);
+		int imageSize = direct ? width * 4 * rows : getAlignedBytesPerRow() * rows;
 		data = new byte[imageSize];
 		imageData = ImageData.internal_new(
 			width,
-			height,
-			headerChunk.getSwtBitsPerPixel(),
+			rows,
+			direct ? 32 : headerChunk.getSwtBitsPerPixel(),
 			new PaletteData(0, 0, 0),
 			4,
 			data,
@@ -69,14 +108,29 @@ ImageData[] loadFromByteStream() {
 			0);
 
 		if (headerChunk.usesDirectColor()) {
-			imageData.palette = headerChunk.getPaletteData();
+			imageData.palette = direct ? directPalette : headerChunk.getPaletteData();
 		}
 
 		// Read and process chunks until the IEND chunk is encountered.
 		while (chunkReader.hasMoreChunks()) {
 			readNextChunk(chunkReader);
+			if (bounds != null && pixelDataRead) break;
 		}
 
+		if (bandHeight > 0) {
+			if (!streaming) {
+				startBands(loader, width, height);
+				fireBands(imageData);
+			}
+			return new ImageData[0];
+		}
+		if (bounds != null) {
+			imageData = crop(imageData, bounds.x, interlaced ? bounds.y : 0, bounds.width, bounds.height);
+		}
+		if (direct && imageData.transparentPixel != -1) {
+			RGB rgb = headerChunk.getPaletteData().getRGB(imageData.transparentPixel);
+			imageData.transparentPixel = directPalette.getPixel(rgb);
+		}
 		return new ImageData[] {imageData};
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
@@ -134,6 +188,7 @@ void readNextChunk(PngChunkReader chunkReader) throws IOException {
 				// go through all the image's IDAT chunks.
 				PngIdatChunk dataChunk = (PngIdatChunk) chunk;
 				readPixelData(dataChunk, chunkReader);
+				pixelDataRead = true;
 			}
 			break;
 		default:
@@ -144,6 +199,22 @@ void readNextChunk(PngChunkReader chunkReader) throws IOException {
 	}
 }
 @Override
+boolean canStreamBands() {
+	return true;
+}
+@Override
+boolean canDecodeRegion() {
+	return true;
+}
+/**
+ * Answer whether the scanlines are delivered in bands while they
+ * are decoded. Interlaced images need all rows for the later passes,
+ * so they are decoded completely and cut into bands afterwards.
+ */
+boolean isStreamingBands() {
+	return bandHeight > 0 && headerChunk.getInterlaceMethod() == PngIhdrChunk.INTERLACE_METHOD_NONE;
+}
+@Override
 void unloadIntoByteStream(ImageLoader loader) {
 	PngEncoder encoder = new PngEncoder(loader);
 	encoder.encode(outputStream);
@@ -309,25 +380,33 @@ void readPixelData(PngIdatChunk chunk, PngChunkReader chunkReader) throws IOExce
 	InputStream stream = new PngInputStream(chunk, chunkReader);
 	//TEMPORARY CODE
 	boolean use3_2 = System.getProperty("org.eclipse.swt.internal.image.PNGFileFormat_3.2") != null;
-	InputStream inflaterStream = use3_2 ? null : new BufferedInputStream(new InflaterInputStream(stream));
-	if (inflaterStream != null) {
-		stream = inflaterStream;
-	} else {
-		stream = new PngDecodingDataStream(stream);
-	}
-	int interlaceMethod = headerChunk.getInterlaceMethod();
-	if (interlaceMethod == PngIhdrChunk.INTERLACE_METHOD_NONE) {
-		readNonInterlacedImage(stream);
-	} else {
-		readInterlacedImage(stream);
+	DecoderContext context = use3_2 ? null : DecoderContext.acquire();
+	try {
+		if (context != null) {
+			stream = context.inflate(stream);
+		} else {
+			stream = new PngDecodingDataStream(stream);
+		}
+		int interlaceMethod = headerChunk.getInterlaceMethod();
+		if (interlaceMethod == PngIhdrChunk.INTERLACE_METHOD_NONE) {
+			readNonInterlacedImage(stream);
+		} else {
+			readInterlacedImage(stream);
+		}
+		/*
+		* InflaterInputStream does not consume all bytes in the stream
+		* when it is closed. This may leave unread IDAT chunks. The fix
+		* is to read all available bytes before closing it. This is not
+		* needed when only a region is decoded, because the remaining chunks
+		* are not read.
+		*/
+		if (bounds == null) {
+			while (stream.available() > 0) stream.read();
+		}
+		stream.close();
+	} finally {
+		if (context != null) context.release();
 	}
-	/*
-	* InflaterInputStream does not consume all bytes in the stream
-	* when it is closed. This may leave unread IDAT chunks. The fix
-	* is to read all available bytes before closing it.
-	*/
-	while (stream.available() > 0) stream.read();
-	stream.close();
 }
 /**
  * Answer the number of bytes in a word-aligned row of pixel data.
@@ -456,7 +535,7 @@ void readInterlacedImage(InputStream inputStream) throws IOException {
  * loading, false if there are more frames to come.
  */
 void fireInterlacedFrameEvent(int frameCount) {
-	if (loader.hasListeners()) {
+	if (bandHeight == 0 && loader.hasListeners()) {
 		ImageData image = (ImageData) imageData.clone();
 		boolean finalFrame = frameCount == 6;
 		loader.notifyListeners(new ImageLoaderEvent(loader, image, frameCount, finalFrame));
@@ -468,6 +547,10 @@ void fireInterlacedFrameEvent(int frameCount) {
  * Update the imageData to reflect the new data.
  */
 void readNonInterlacedImage(InputStream inputStream) throws IOException {
+	if (isStreamingBands()) {
+		readNonInterlacedBands(inputStream);
+		return;
+	}
 	int dataOffset = 0;
 	int alignedBytesPerRow = getAlignedBytesPerRow();
 	int bytesPerRow = getBytesPerRow();
@@ -475,7 +558,8 @@ void readNonInterlacedImage(InputStream inputStream) throws IOException {
 	byte[] row2 = new byte[bytesPerRow];
 	byte[] currentRow = row1;
 	byte[] lastRow = row2;
-	int height = headerChunk.getHeight();
+	int firstRow = bounds != null ? bounds.y : 0;
+	int height = bounds != null ? bounds.y + bounds.height : headerChunk.getHeight();
 	for (int row = 0; row < height; row++) {
 		byte filterType = (byte)inputStream.read();
 		int read = 0;
@@ -483,12 +567,97 @@ void readNonInterlacedImage(InputStream inputStream) throws IOException {
 			read += inputStream.read(currentRow, read, bytesPerRow - read);
 		}
 		filterRow(currentRow, lastRow, filterType);
-		System.arraycopy(currentRow, 0, data, dataOffset, bytesPerRow);
-		dataOffset += alignedBytesPerRow;
+		if (direct) {
+			setDirectPixels(currentRow, row);
+		} else if (row >= firstRow) {
+			System.arraycopy(currentRow, 0, data, dataOffset, bytesPerRow);
+			dataOffset += alignedBytesPerRow;
+		}
 		currentRow = (currentRow == row1) ? row2 : row1;
 		lastRow = (lastRow == row1) ? row2 : row1;
 	}
-	setImageDataValues(data, imageData);
+	if (!direct) setImageDataValues(data, imageData);
+}
+/**
+ * Store an 8-bit RGB or RGBA row in the 32-bit layout of the
+ * direct palette requested by the caller.
+ */
+void setDirectPixels(byte[] row, int y) {
+	int width = imageData.width;
+	int or = getByteOffset(directPalette.redMask);
+	int og = getByteOffset(directPalette.greenMask);
+	int ob = getByteOffset(directPalette.blueMask);
+	int destIndex = y * imageData.bytesPerLine;
+	if (headerChunk.getColorType() == PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA) {
+		if (imageData.alphaData == null) imageData.alphaData = new byte[width * imageData.height];
+		byte[] alphaData = imageData.alphaData;
+		for (int x = 0, srcIndex = 0, alphaIndex = y * width; x < width; x++, srcIndex += 4, destIndex += 4) {
+			data[destIndex + or] = row[srcIndex];
+			data[destIndex + og] = row[srcIndex + 1];
+			data[destIndex + ob] = row[srcIndex + 2];
+			alphaData[alphaIndex++] = row[srcIndex + 3];
+		}
+	} else {
+		for (int x = 0, srcIndex = 0; x < width; x++, srcIndex += 3, destIndex += 4) {
+			data[destIndex + or] = row[srcIndex];
+			data[destIndex + og] = row[srcIndex + 1];
+			data[destIndex + ob] = row[srcIndex + 2];
+		}
+	}
+}
+/**
+ * Read the pixel data for a non-interlaced image from the
+ * data stream and deliver it to the loader's listeners in
+ * bands. Only one band of pixels is held at a time.
+ */
+void readNonInterlacedBands(InputStream inputStream) throws IOException {
+	int alignedBytesPerRow = getAlignedBytesPerRow();
+	int bytesPerRow = getBytesPerRow();
+	byte[] row1 = new byte[bytesPerRow];
+	byte[] row2 = new byte[bytesPerRow];
+	byte[] currentRow = row1;
+	byte[] lastRow = row2;
+	int width = headerChunk.getWidth();
+	int height = headerChunk.getHeight();
+	startBands(loader, width, height);
+	int bandIndex = 0;
+	for (int bandY = 0; bandY < height; bandY += bandHeight) {
+		int rows = Math.min(bandHeight, height - bandY);
+		byte[] bandData = bandIndex == 0 ? data : new byte[alignedBytesPerRow * rows];
+		int dataOffset = 0;
+		for (int row = 0; row < rows; row++) {
+			byte filterType = (byte)inputStream.read();
+			int read = 0;
+			while (read != bytesPerRow) {
+				read += inputStream.read(currentRow, read, bytesPerRow - read);
+			}
+			filterRow(currentRow, lastRow, filterType);
+			System.arraycopy(currentRow, 0, bandData, dataOffset, bytesPerRow);
+			dataOffset += alignedBytesPerRow;
+			currentRow = (currentRow == row1) ? row2 : row1;
+			lastRow = (lastRow == row1) ? row2 : row1;
+		}
+		ImageData band = ImageData.internal_new(
+			width,
+			rows,
+			imageData.depth,
+			imageData.palette,
+			4,
+			bandData,
+			0,
+			null,
+			null,
+			-1,
+			imageData.transparentPixel,
+			SWT.IMAGE_PNG,
+			0,
+			bandY,
+			0,
+			0);
+		setImageDataValues(bandData, band);
+		fireBand(loader, band, bandIndex++, bandY + rows == height);
+	}
+	data = null;
 }
 /**
  * SWT does not support 16-bit depth color formats.
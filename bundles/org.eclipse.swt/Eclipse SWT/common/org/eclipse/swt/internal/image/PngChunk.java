@@ -12,6 +12,7 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
+import java.util.zip.*;
 
 import org.eclipse.swt.*;
 
@@ -41,21 +42,6 @@ class PngChunk extends Object {
 	static final byte[] TYPE_IEND = {(byte) 'I', (byte) 'E', (byte) 'N', (byte) 'D'};
 	static final byte[] TYPE_tRNS = {(byte) 't', (byte) 'R', (byte) 'N', (byte) 'S'};
 
-	static final int[] CRC_TABLE;
-	static {
-		CRC_TABLE = new int[256];
-		for (int i = 0; i < 256; i++) {
-			CRC_TABLE[i] = i;
-			for (int j = 0; j < 8; j++) {
-				if ((CRC_TABLE[i] & 0x1) == 0) {
-					CRC_TABLE[i] = (CRC_TABLE[i] >> 1) & 0x7FFFFFFF;
-				} else {
-					CRC_TABLE[i] = 0xEDB88320 ^ ((CRC_TABLE[i] >> 1) & 0x7FFFFFFF);
-				}
-			}
-		}
-	}
-
 	int length;
 
 /**
@@ -253,14 +239,10 @@ boolean checkCRC() {
  * Answer the CRC value of chunk's data.
  */
 int computeCRC() {
-	int crc = 0xFFFFFFFF;
-	int start = TYPE_OFFSET;
-	int stop = DATA_OFFSET + getLength();
-	for (int i = start; i < stop; i++) {
-		int index = (crc ^ reference[i]) & 0xFF;
-		crc =  CRC_TABLE[index] ^ ((crc >> 8) & 0x00FFFFFF);
-	}
-	return ~crc;
+	/* The CRC of a chunk is the CRC-32 of zlib */
+	CRC32 crc = new CRC32();
+	crc.update(reference, TYPE_OFFSET, DATA_OFFSET + getLength() - TYPE_OFFSET);
+	return (int) crc.getValue();
 }
 
 boolean typeMatchesArray(byte[] array) {
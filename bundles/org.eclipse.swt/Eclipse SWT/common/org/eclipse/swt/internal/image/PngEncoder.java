@@ -11,6 +11,9 @@
 package org.eclipse.swt.internal.image;
 
 import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import org.eclipse.swt.*;
@@ -30,6 +33,11 @@ final class PngEncoder extends Object {
 	static final int BEST_COMPRESSION = 9;
 	static final int DEFAULT_COMPRESSION = -1;
 
+	/* The number of uncompressed bytes in a segment when compressing in parallel */
+	static final int SEGMENT_SIZE = 128 * 1024;
+	/* The size of the deflate window */
+	static final int DICTIONARY_SIZE = 32 * 1024;
+
 	ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
 	PngChunk chunk;
 
@@ -43,6 +51,13 @@ final class PngEncoder extends Object {
 	int filterMethod = 0;
 	int interlaceMethod = 0;
 
+	/*
+	* The offsets of the red, green and blue bytes in the pixels of a
+	* 24 or 32-bit image whose masks select whole bytes, and the size
+	* of the pixels, or -1 when the rows are built from the pixel values.
+	*/
+	int redOffset = -1, greenOffset = -1, blueOffset = -1, pixelSize = -1;
+
 public PngEncoder(ImageLoader loader) {
 
 	this.loader = loader;
@@ -67,6 +82,34 @@ public PngEncoder(ImageLoader loader) {
 
 	if (!(colorType == 2 || colorType == 3 || colorType == 6)) SWT.error(SWT.ERROR_INVALID_IMAGE);
 
+	if (colorType != 3 && (data.depth == 24 || data.depth == 32)) {
+		PaletteData palette = data.palette;
+		int size = data.depth / 8;
+		int red = getByteOffset(palette.redMask, size);
+		int green = getByteOffset(palette.greenMask, size);
+		int blue = getByteOffset(palette.blueMask, size);
+		if (red != -1 && green != -1 && blue != -1) {
+			redOffset = red;
+			greenOffset = green;
+			blueOffset = blue;
+			pixelSize = size;
+		}
+	}
+
+}
+
+/**
+ * Answer the offset of the byte selected by the mask in a pixel of the
+ * given size, or -1 if the mask does not select exactly one byte. The
+ * pixels of 24 and 32-bit images are stored with the most significant
+ * byte first.
+ */
+static int getByteOffset(int mask, int pixelSize) {
+
+	int shift = Integer.numberOfTrailingZeros(mask);
+	if (shift % 8 != 0 || shift / 8 >= pixelSize || mask >>> shift != 0xFF) return -1;
+	return pixelSize - 1 - shift / 8;
+
 }
 
 void writeShort(ByteArrayOutputStream baos, int theShort) {
@@ -232,106 +275,436 @@ void writeTransparency() {
 
 void writeImageData() throws IOException {
 
-	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
-	OutputStream os = null;
+	int level;
 	switch (loader.compression) {
 	case 0:
-		os = new DeflaterOutputStream(baos, new Deflater(NO_COMPRESSION));
+		level = NO_COMPRESSION;
 		break;
 	case 1:
-		os = new DeflaterOutputStream(baos, new Deflater(BEST_SPEED));
+		level = BEST_SPEED;
 		break;
 	case 3:
-		os = new DeflaterOutputStream(baos, new Deflater(BEST_COMPRESSION));
+		level = BEST_COMPRESSION;
 		break;
 	default:
-		os = new DeflaterOutputStream(baos, new Deflater(DEFAULT_COMPRESSION));
+		level = DEFAULT_COMPRESSION;
 		break;
 	}
 
+	/*
+	* Filtering only helps the compression of true color images. The
+	* PNG specification recommends no filtering for palette images.
+	*/
+	boolean adaptive = level != NO_COMPRESSION && colorType != 3;
+
+	int rowsPerSegment = Math.max(1, SEGMENT_SIZE / (getBytesPerRow() + 1));
+	if (loader.parallel && height > rowsPerSegment) {
+		writeChunk(TAG_IDAT, deflateSegments(level, adaptive, rowsPerSegment));
+		return;
+	}
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+	OutputStream os = new DeflaterOutputStream(baos, new Deflater(level));
+
+	writeRows(os, 0, 0, height, adaptive);
+
+	os.flush();
+	os.close();
+
+	byte[] compressed = baos.toByteArray();
+	if (os == baos) {
+		/* Use PngDeflater for J2ME. */
+		PngDeflater deflater = new PngDeflater();
+		compressed = deflater.deflate(compressed);
+	}
+
+	writeChunk(TAG_IDAT, compressed);
+
+}
+
+int getBytesPerPixel() {
+
+	switch (colorType) {
+		case 3: return 1;
+		case 6: return 4;
+		default: return 3;
+	}
+
+}
+
+int getBytesPerRow() {
+
+	return width * getBytesPerPixel();
+
+}
+
+/**
+ * Write the filtered rows from <code>start</code> to <code>end</code> to
+ * the stream, preceded by their filter type. The rows from <code>first</code>
+ * to <code>start</code> are only read, to initialize the filter.
+ */
+void writeRows(OutputStream os, int first, int start, int end, boolean adaptive) throws IOException {
+
+	int bytesPerRow = getBytesPerRow();
+	byte[] row = new byte[bytesPerRow];
+	byte[] prior = new byte[bytesPerRow];
+	byte[][] filtered = adaptive ? new byte[5][bytesPerRow] : null;
+	int[] pixels = colorType != 3 && pixelSize == -1 ? new int[width] : null;
+	byte[] alphas = colorType == 6 && pixelSize == -1 ? new byte[width] : null;
+	byte[] scanline = pixelSize != -1 ? new byte[width * pixelSize] : null;
+
+	if (adaptive && first > 0) {
+		getRow(first - 1, prior, pixels, alphas, scanline);
+	}
+
+	for (int y = first; y < end; y++) {
+
+		getRow(y, row, pixels, alphas, scanline);
+
+		if (y >= start) {
+
+			if (adaptive) {
+				int filter = filterRow(row, prior, filtered);
+				os.write(filter);
+				os.write(filtered[filter]);
+			}
+			else {
+				os.write(0);
+				os.write(row);
+			}
+
+		}
+
+		byte[] temp = prior;
+		prior = row;
+		row = temp;
+
+	}
+
+}
+
+/**
+ * Get the unfiltered bytes of a row of the image.
+ */
+void getRow(int y, byte[] row, int[] pixels, byte[] alphas, byte[] scanline) {
+
 	if (colorType == 3) {
 
-		byte[] lineData = new byte[width];
+		if (data.depth == 8) {
+			getScanline(y, row, width);
+		}
+		else {
+			data.getPixels(0, y, width, row, 0);
+		}
+		return;
+
+	}
+
+	if (pixelSize != -1) {
+
+		getDirectRow(y, row, scanline);
+		return;
+
+	}
+
+	int redMask = data.palette.redMask;
+	int redShift = data.palette.redShift;
+	int greenMask = data.palette.greenMask;
+	int greenShift = data.palette.greenShift;
+	int blueShift = data.palette.blueShift;
+	int blueMask = data.palette.blueMask;
 
-		for (int y = 0; y < height; y++) {
+	data.getPixels(0, y, width, pixels, 0);
+
+	if (colorType == 6) {
+		data.getAlphas(0, y, width, alphas, 0);
+	}
 
-			int filter = 0;
-			os.write(filter);
+	int offset = 0;
+	for (int x = 0; x < width; x++) {
 
-			data.getPixels(0, y, width, lineData, 0);
+		int pixel = pixels[x];
 
-			os.write(lineData);
+		int r = pixel & redMask;
+		row[offset++] = (byte) ((redShift < 0) ? r >>> -redShift
+				: r << redShift);
+		int g = pixel & greenMask;
+		row[offset++] = (byte) ((greenShift < 0) ? g >>> -greenShift
+				: g << greenShift);
+		int b = pixel & blueMask;
+		row[offset++] = (byte) ((blueShift < 0) ? b >>> -blueShift
+				: b << blueShift);
 
+		if (colorType == 6) {
+			row[offset++] = alphas[x];
 		}
 
 	}
 
+}
+
+/**
+ * Copy the first <code>length</code> bytes of scanline <code>y</code>
+ * of the image data, from its data or from its buffer.
+ */
+void getScanline(int y, byte[] scanline, int length) {
+
+	int index = y * data.bytesPerLine;
+	if (data.buffer != null) {
+		ByteBuffer source = data.buffer.duplicate();
+		source.position(index);
+		source.get(scanline, 0, length);
+	}
 	else {
+		System.arraycopy(data.data, index, scanline, 0, length);
+	}
 
-		int[] lineData = new int[width];
-		byte[] alphaData = null;
-		if (colorType == 6) {
-			alphaData = new byte[width];
+}
+
+/**
+ * Get the unfiltered bytes of a row of a 24 or 32-bit image whose masks
+ * select whole bytes, by moving the bytes of the scanline instead of
+ * decoding each pixel. Rows that are already in RGB order are copied.
+ */
+void getDirectRow(int y, byte[] row, byte[] scanline) {
+
+	int red = redOffset, green = greenOffset, blue = blueOffset, size = pixelSize;
+
+	if (colorType == 2 && size == 3 && red == 0 && green == 1 && blue == 2) {
+		getScanline(y, row, width * 3);
+		return;
+	}
+
+	getScanline(y, scanline, scanline.length);
+
+	if (colorType == 6) {
+		byte[] alphaData = data.alphaData;
+		int alphaIndex = y * width;
+		for (int index = 0, offset = 0; index < scanline.length; index += size) {
+			row[offset] = scanline[index + red];
+			row[offset + 1] = scanline[index + green];
+			row[offset + 2] = scanline[index + blue];
+			row[offset + 3] = alphaData[alphaIndex++];
+			offset += 4;
+		}
+	}
+	else {
+		for (int index = 0, offset = 0; index < scanline.length; index += size) {
+			row[offset] = scanline[index + red];
+			row[offset + 1] = scanline[index + green];
+			row[offset + 2] = scanline[index + blue];
+			offset += 3;
 		}
+	}
 
-		int redMask = data.palette.redMask;
-		int redShift = data.palette.redShift;
-		int greenMask = data.palette.greenMask;
-		int greenShift = data.palette.greenShift;
-		int blueShift = data.palette.blueShift;
-		int blueMask = data.palette.blueMask;
+}
 
-		byte[] lineBytes = new byte[width * (colorType == 6 ? 4 : 3)];
+/**
+ * Apply the five PNG filters to the row, and answer the filter type
+ * that gives the smallest sum of absolute values, which is the
+ * heuristic recommended by the PNG specification.
+ */
+int filterRow(byte[] row, byte[] prior, byte[][] filtered) {
 
-		for (int y = 0; y < height; y++) {
+	int bpp = getBytesPerPixel();
+	byte[] none = filtered[0], sub = filtered[1], up = filtered[2], average = filtered[3], paeth = filtered[4];
+	int[] sums = new int[5];
 
-			int filter = 0;
-			os.write(filter);
+	/* The bytes of the first pixel have no left neighbours */
+	int count = Math.min(bpp, row.length);
+	for (int i = 0; i < count; i++) {
 
-			data.getPixels(0, y, width, lineData, 0);
+		int x = row[i] & 0xFF;
+		int b = prior[i] & 0xFF;
 
-			if (colorType == 6) {
-				data.getAlphas(0, y, width, alphaData, 0);
-			}
+		none[i] = (byte) x;
+		sub[i] = (byte) x;
+		up[i] = (byte) (x - b);
+		average[i] = (byte) (x - (b >> 1));
+		paeth[i] = (byte) (x - b);
 
-			int offset = 0;
-			for (int x = 0; x < lineData.length; x++) {
+		sums[0] += Math.abs(none[i]);
+		sums[1] += Math.abs(sub[i]);
+		sums[2] += Math.abs(up[i]);
+		sums[3] += Math.abs(average[i]);
+		sums[4] += Math.abs(paeth[i]);
 
-				int pixel = lineData[x];
+	}
 
-				int r = pixel & redMask;
-				lineBytes[offset++] = (byte) ((redShift < 0) ? r >>> -redShift
-						: r << redShift);
-				int g = pixel & greenMask;
-				lineBytes[offset++] = (byte) ((greenShift < 0) ? g >>> -greenShift
-						: g << greenShift);
-				int b = pixel & blueMask;
-				lineBytes[offset++] = (byte) ((blueShift < 0) ? b >>> -blueShift
-						: b << blueShift);
+	int sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
+	for (int i = count; i < row.length; i++) {
+
+		int x = row[i] & 0xFF;
+		int a = row[i - bpp] & 0xFF;
+		int b = prior[i] & 0xFF;
+		int c = prior[i - bpp] & 0xFF;
+
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		int predictor = (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+
+		byte n = (byte) x, s = (byte) (x - a), u = (byte) (x - b);
+		byte v = (byte) (x - ((a + b) >> 1)), t = (byte) (x - predictor);
+		none[i] = n;
+		sub[i] = s;
+		up[i] = u;
+		average[i] = v;
+		paeth[i] = t;
+
+		sumNone += Math.abs(n);
+		sumSub += Math.abs(s);
+		sumUp += Math.abs(u);
+		sumAverage += Math.abs(v);
+		sumPaeth += Math.abs(t);
 
-				if (colorType == 6) {
-					lineBytes[offset++] = alphaData[x];
-				}
+	}
+	sums[0] += sumNone;
+	sums[1] += sumSub;
+	sums[2] += sumUp;
+	sums[3] += sumAverage;
+	sums[4] += sumPaeth;
+
+	int filter = 0;
+	for (int i = 1; i < sums.length; i++) {
+		if (sums[i] < sums[filter]) filter = i;
+	}
+	return filter;
 
-			}
+}
 
-			os.write(lineBytes);
+/**
+ * Compress the image data in segments of rows on the common fork-join
+ * pool, and join the segments into a single zlib stream.
+ * <p>
+ * Each segment is compressed into raw deflate blocks, ending with a sync
+ * flush so that the next segment starts on a byte boundary, except for the
+ * last segment which ends the stream. The filtered bytes that precede a
+ * segment are used as the deflate dictionary, so that the segments can
+ * refer to the data of the previous segment, and the compression ratio is
+ * close to the one of a single stream.
+ * </p>
+ */
+byte[] deflateSegments(int level, boolean adaptive, int rowsPerSegment) throws IOException {
+
+	List<Segment> segments = new ArrayList<>();
+	int dictionaryRows = (DICTIONARY_SIZE + getBytesPerRow()) / (getBytesPerRow() + 1);
+	for (int y = 0; y < height; y += rowsPerSegment) {
+		int end = Math.min(height, y + rowsPerSegment);
+		segments.add(new Segment(this, Math.max(0, y - dictionaryRows), y, end, level, adaptive, end == height));
+	}
+	ForkJoinTask.invokeAll(segments);
 
-		}
+	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
 
+	/* zlib header with the compression level */
+	baos.write(0x78);
+	switch (level) {
+		case NO_COMPRESSION:
+		case BEST_SPEED: baos.write(0x01); break;
+		case BEST_COMPRESSION: baos.write(0xDA); break;
+		default: baos.write(0x9C); break;
 	}
 
-	os.flush();
-	os.close();
+	int adler = 1;
+	for (Segment segment : segments) {
+		if (segment.error != null) throw segment.error;
+		baos.write(segment.compressed);
+		adler = combineAdler32(adler, segment.adler, segment.length);
+	}
+	writeInt(baos, adler);
 
-	byte[] compressed = baos.toByteArray();
-	if (os == baos) {
-		/* Use PngDeflater for J2ME. */
-		PngDeflater deflater = new PngDeflater();
-		compressed = deflater.deflate(compressed);
+	return baos.toByteArray();
+
+}
+
+/**
+ * Answer the Adler-32 checksum of two consecutive blocks of data,
+ * given the checksum of each block and the length of the second one.
+ */
+static int combineAdler32(int adler1, int adler2, long length2) {
+
+	final long BASE = 65521;
+	long remainder = length2 % BASE;
+	long sum1 = adler1 & 0xFFFF;
+	long sum2 = (remainder * sum1) % BASE;
+	sum1 += (adler2 & 0xFFFF) + BASE - 1;
+	sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + BASE - remainder;
+	if (sum1 >= BASE) sum1 -= BASE;
+	if (sum1 >= BASE) sum1 -= BASE;
+	if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+	if (sum2 >= BASE) sum2 -= BASE;
+	return (int) (sum1 | (sum2 << 16));
+
+}
+
+/**
+ * Filters and compresses a segment of rows of the image.
+ */
+static final class Segment extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+	final PngEncoder encoder;
+	final int first, start, end, level;
+	final boolean adaptive, last;
+	byte[] compressed;
+	int adler, length;
+	RuntimeException error;
+
+	Segment(PngEncoder encoder, int first, int start, int end, int level, boolean adaptive, boolean last) {
+		this.encoder = encoder;
+		this.first = first;
+		this.start = start;
+		this.end = end;
+		this.level = level;
+		this.adaptive = adaptive;
+		this.last = last;
 	}
 
-	writeChunk(TAG_IDAT, compressed);
+	@Override
+	protected void compute() {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			ByteArrayOutputStream input = new ByteArrayOutputStream(encoder.getBytesPerRow() * (end - first) + (end - first));
+			encoder.writeRows(input, first, first, start, adaptive);
+			byte[] dictionary = input.toByteArray();
+			input.reset();
+			encoder.writeRows(input, start, start, end, adaptive);
+			byte[] data = input.toByteArray();
+
+			Adler32 checksum = new Adler32();
+			checksum.update(data, 0, data.length);
+			adler = (int) checksum.getValue();
+			length = data.length;
+
+			if (dictionary.length > 0) {
+				int dictionaryLength = Math.min(dictionary.length, DICTIONARY_SIZE);
+				deflater.setDictionary(dictionary, dictionary.length - dictionaryLength, dictionaryLength);
+			}
+			deflater.setInput(data);
+			if (last) deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 64);
+			byte[] buffer = new byte[8192];
+			while (true) {
+				if (last) {
+					output.write(buffer, 0, deflater.deflate(buffer));
+					if (deflater.finished()) break;
+				} else {
+					int count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					output.write(buffer, 0, count);
+					if (count < buffer.length) break;
+				}
+			}
+			compressed = output.toByteArray();
+		} catch (IOException e) {
+			error = new SWTException(SWT.ERROR_IO, e.getMessage());
+		} catch (RuntimeException e) {
+			error = e;
+		} finally {
+			deflater.end();
+		}
+	}
 
 }
 
@@ -14,13 +14,16 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.util.zip.*;
 
 final class TIFFDirectory {
 
 	TIFFRandomFileAccess file;
 	boolean isLittleEndian;
 	ImageLoader loader;
+	FileFormat format;
 	int depth;
+	int bandHeight;
 
 	/* Directory fields */
 	int subfileType;
@@ -35,6 +38,11 @@ final class TIFFDirectory {
 	int[] stripByteCounts;
 	int t4Options;
 	int colorMapOffset;
+	int predictor;
+	int tileWidth;
+	int tileLength;
+	int[] tileOffsets;
+	int[] tileByteCounts;
 
 	/* Encoder fields */
 	ImageData image;
@@ -63,7 +71,12 @@ final class TIFFDirectory {
 	static final short TAG_ResolutionUnit = 296;
 	static final short TAG_Software = 305;
 	static final short TAG_DateTime = 306;
+	static final short TAG_Predictor = 317;
 	static final short TAG_ColorMap = 320;
+	static final short TAG_TileWidth = 322;
+	static final short TAG_TileLength = 323;
+	static final short TAG_TileOffsets = 324;
+	static final short TAG_TileByteCounts = 325;
 
 	static final int TYPE_BYTE = 1;
 	static final int TYPE_ASCII = 2;
@@ -81,7 +94,15 @@ final class TIFFDirectory {
 	/* Different compression schemes */
 	static final int COMPRESSION_NONE = 1;
 	static final int COMPRESSION_CCITT_3_1 = 2;
+	static final int COMPRESSION_CCITT_T4 = 3;
+	static final int COMPRESSION_LZW = 5;
+	static final int COMPRESSION_DEFLATE = 8;
 	static final int COMPRESSION_PACKBITS = 32773;
+	static final int COMPRESSION_DEFLATE_OLD = 32946;
+
+	/* Predictors */
+	static final int PREDICTOR_NONE = 1;
+	static final int PREDICTOR_HORIZONTAL = 2;
 
 	static final int IFD_ENTRY_SIZE = 12;
 
@@ -91,8 +112,19 @@ public TIFFDirectory(TIFFRandomFileAccess file, boolean isLittleEndian, ImageLoa
 	this.loader = loader;
 }
 
+public TIFFDirectory(TIFFRandomFileAccess file, boolean isLittleEndian, FileFormat format) {
+	this(file, isLittleEndian, format.loader);
+	this.format = format;
+	this.bandHeight = format.bandHeight;
+}
+
 public TIFFDirectory(ImageData image) {
+	this(image, COMPRESSION_NONE);
+}
+
+public TIFFDirectory(ImageData image, int compression) {
 	this.image = image;
+	this.compression = compression;
 }
 
 /* PackBits decoder */
@@ -151,35 +183,71 @@ void getEntryValue(int type, byte[] buffer, int index, int[] values) throws IOEx
 
 void decodePixels(ImageData image) throws IOException {
 	/* Each row is byte aligned */
-	byte[] imageData = new byte[(imageWidth * depth + 7) / 8 * imageLength];
+	int bytesPerRow = (imageWidth * depth + 7) / 8;
+	byte[] imageData = new byte[bytesPerRow * imageLength];
 	image.data = imageData;
-	int destIndex = 0;
-	int length = stripOffsets.length;
-	for (int i = 0; i < length; i++) {
-		/* Read a strip */
-		byte[] data = new byte[stripByteCounts[i]];
-		file.seek(stripOffsets[i]);
-		file.read(data);
-		if (compression == COMPRESSION_NONE) {
-			System.arraycopy(data, 0, imageData, destIndex, data.length);
-			destIndex += data.length;
-		} else if (compression == COMPRESSION_PACKBITS) {
-			destIndex += decodePackBits(data, imageData, destIndex);
-		} else if (compression == COMPRESSION_CCITT_3_1 || compression == 3) {
-			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
-			int nRows = rowsPerStrip;
-			if (i == length -1) {
-				int n = imageLength % rowsPerStrip;
-				if (n != 0) nRows = n;
-			}
-			destIndex += codec.decode(data, imageData, destIndex, imageWidth, nRows);
-		}
+	int rows = chunkRows();
+	int length = chunkCount();
+	for (int i = 0, y = 0; i < length && y < imageLength; i++, y += rows) {
+		int nRows = Math.min(rows, imageLength - y);
+		decodeChunk(i, imageData, y * bytesPerRow, bytesPerRow, nRows, 0, imageWidth);
 		if (loader.hasListeners()) {
 			loader.notifyListeners(new ImageLoaderEvent(loader, image, i, i == length - 1));
 		}
 	}
 }
 
+/*
+ * Decode the strips, or rows of tiles, one after the other and deliver the
+ * scanlines to the loader's listeners in bands, holding at most one strip
+ * and one band at a time. Bytes of the file that precede the remaining
+ * strips and the next directory are released once they are no longer needed.
+ */
+void decodeBands(PaletteData palette, int nextIFDOffset) throws IOException {
+	int bytesPerRow = (imageWidth * depth + 7) / 8;
+	FileFormat.startBands(loader, imageWidth, imageLength);
+	byte[] band = null;
+	int bandY = 0, bandRows = 0, bandIndex = 0;
+	int rows = chunkRows();
+	int length = chunkCount();
+	int y = 0;
+	for (int i = 0; i < length && y < imageLength; i++) {
+		int nRows = Math.min(rows, imageLength - y);
+		byte[] strip = new byte[bytesPerRow * nRows];
+		decodeChunk(i, strip, 0, bytesPerRow, nRows, 0, imageWidth);
+		releaseStrips(i + 1, length, nextIFDOffset);
+		for (int row = 0; row < nRows; row++, y++) {
+			if (band == null) {
+				bandY = y;
+				bandRows = Math.min(bandHeight, imageLength - y);
+				band = new byte[bytesPerRow * bandRows];
+			}
+			System.arraycopy(strip, row * bytesPerRow, band, (y - bandY) * bytesPerRow, bytesPerRow);
+			if (y - bandY + 1 == bandRows) {
+				ImageData image = ImageData.internal_new(
+						imageWidth,
+						bandRows,
+						depth,
+						palette,
+						1,
+						band,
+						0,
+						null,
+						null,
+						-1,
+						-1,
+						SWT.IMAGE_TIFF,
+						0,
+						bandY,
+						0,
+						0);
+				FileFormat.fireBand(loader, image, bandIndex++, bandY + bandRows == imageLength);
+				band = null;
+			}
+		}
+	}
+}
+
 PaletteData getColorMap() throws IOException {
 	int numColors = 1 << bitsPerSample[0];
 	/* R, G, B entries are 16 bit wide (2 bytes) */
@@ -413,6 +481,29 @@ void parseEntries(byte[] buffer) throws IOException {
 				/* Ignored */
 				break;
 			}
+			case TAG_Predictor: {
+				predictor = getEntryValue(type, buffer, offset);
+				break;
+			}
+			case TAG_TileWidth: {
+				tileWidth = getEntryValue(type, buffer, offset);
+				break;
+			}
+			case TAG_TileLength: {
+				tileLength = getEntryValue(type, buffer, offset);
+				break;
+			}
+			case TAG_TileOffsets: {
+				if (type != TYPE_LONG && type != TYPE_SHORT) SWT.error(SWT.ERROR_INVALID_IMAGE);
+				tileOffsets = new int[count];
+				getEntryValue(type, buffer, offset, tileOffsets);
+				break;
+			}
+			case TAG_TileByteCounts: {
+				tileByteCounts = new int[count];
+				getEntryValue(type, buffer, offset, tileByteCounts);
+				break;
+			}
 			case TAG_ColorMap: {
 				if (type != TYPE_SHORT) SWT.error(SWT.ERROR_INVALID_IMAGE);
 				/* Get the offset of the colorMap (use TYPE_LONG) */
@@ -423,7 +514,212 @@ void parseEntries(byte[] buffer) throws IOException {
 	}
 }
 
-public ImageData read(int [] nextIFDOffset) throws IOException {
+/*
+ * Answer the number of rows of each strip, or of each row of tiles.
+ */
+int chunkRows() {
+	return tileOffsets != null ? tileLength : rowsPerStrip;
+}
+
+/*
+ * Answer the number of strips, or of rows of tiles.
+ */
+int chunkCount() {
+	return tileOffsets != null ? (imageLength + tileLength - 1) / tileLength : stripOffsets.length;
+}
+
+/*
+ * Read and decode the strip, or the row of tiles, with the given index
+ * into dest, starting at offset, as byte aligned rows. Only the tiles
+ * that intersect the given range of columns are read.
+ */
+void decodeChunk(int index, byte[] dest, int offset, int bytesPerRow, int nRows, int x, int width) throws IOException {
+	if (tileOffsets == null) {
+		decodeData(readData(stripOffsets[index], stripByteCounts[index]), dest, offset, bytesPerRow, nRows, imageWidth);
+		return;
+	}
+	int tilesAcross = (imageWidth + tileWidth - 1) / tileWidth;
+	int tileBytesPerRow = (tileWidth * depth + 7) / 8;
+	byte[] tile = new byte[tileBytesPerRow * tileLength];
+	int firstTile = x / tileWidth, lastTile = (x + width - 1) / tileWidth;
+	for (int column = firstTile; column <= lastTile; column++) {
+		int tileIndex = index * tilesAcross + column;
+		if (tileIndex >= tileOffsets.length) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		/* Tiles are always complete, even at the right and bottom edges */
+		decodeData(readData(tileOffsets[tileIndex], tileByteCounts[tileIndex]), tile, 0, tileBytesPerRow, tileLength, tileWidth);
+		int tileX = column * tileWidth;
+		/* The tile width is a multiple of 16, so tiles start on a byte boundary */
+		int destX = tileX * depth / 8;
+		int count = Math.min(tileBytesPerRow, bytesPerRow - destX);
+		for (int row = 0; row < nRows; row++) {
+			System.arraycopy(tile, row * tileBytesPerRow, dest, offset + row * bytesPerRow + destX, count);
+		}
+	}
+}
+
+byte[] readData(int offset, int count) throws IOException {
+	byte[] data = new byte[count];
+	file.seek(offset);
+	file.read(data);
+	return data;
+}
+
+/*
+ * Decompress the data of a strip or a tile into dest, starting at offset,
+ * and undo the prediction of the rows.
+ */
+void decodeData(byte[] data, byte[] dest, int offset, int bytesPerRow, int nRows, int width) throws IOException {
+	int length = bytesPerRow * nRows;
+	switch (compression) {
+		case COMPRESSION_NONE:
+			System.arraycopy(data, 0, dest, offset, Math.min(data.length, length));
+			break;
+		case COMPRESSION_PACKBITS:
+			decodePackBits(data, dest, offset);
+			break;
+		case COMPRESSION_CCITT_3_1:
+		case COMPRESSION_CCITT_T4: {
+			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
+			codec.decode(data, dest, offset, width, nRows);
+			break;
+		}
+		case COMPRESSION_LZW: {
+			TIFFLZWCodec codec = new TIFFLZWCodec();
+			codec.decode(data, dest, offset, length);
+			break;
+		}
+		case COMPRESSION_DEFLATE:
+		case COMPRESSION_DEFLATE_OLD: {
+			Inflater inflater = new Inflater();
+			inflater.setInput(data);
+			try {
+				int count = 0;
+				while (count < length && !inflater.finished() && !inflater.needsInput()) {
+					int n = inflater.inflate(dest, offset + count, length - count);
+					if (n == 0 && inflater.needsDictionary()) SWT.error(SWT.ERROR_INVALID_IMAGE);
+					count += n;
+				}
+			} catch (DataFormatException e) {
+				SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+			} finally {
+				inflater.end();
+			}
+			break;
+		}
+		default:
+			SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	}
+	if (predictor == PREDICTOR_HORIZONTAL) {
+		/* Each sample is the difference with the same sample of the previous pixel */
+		for (int row = 0; row < nRows; row++) {
+			int start = offset + row * bytesPerRow;
+			int end = start + bytesPerRow;
+			for (int i = start + samplesPerPixel; i < end; i++) {
+				dest[i] += dest[i - samplesPerPixel];
+			}
+		}
+	}
+}
+
+/*
+ * Apply the horizontal predictor to the given rows, in place.
+ */
+static void predict(byte[] data, int offset, int bytesPerRow, int nRows, int samplesPerPixel) {
+	for (int row = 0; row < nRows; row++) {
+		int start = offset + row * bytesPerRow;
+		for (int i = start + bytesPerRow - 1; i >= start + samplesPerPixel; i--) {
+			data[i] -= data[i - samplesPerPixel];
+		}
+	}
+}
+
+/*
+ * Release the cached bytes of the file that have been read and precede the
+ * strips in the given range of indices and the next directory. The bytes
+ * that have not been read are kept, since other pages may still need them.
+ */
+void releaseStrips(int start, int end, int nextIFDOffset) {
+	int release = nextIFDOffset != 0 ? nextIFDOffset : Integer.MAX_VALUE;
+	int[] offsets = stripOffsets;
+	if (tileOffsets != null) {
+		/* The indices are those of the rows of tiles */
+		int tilesAcross = (imageWidth + tileWidth - 1) / tileWidth;
+		offsets = tileOffsets;
+		start *= tilesAcross;
+		end = Math.min(offsets.length, end * tilesAcross);
+	}
+	for (int j = start; j < end; j++) release = Math.min(release, offsets[j]);
+	if (release != Integer.MAX_VALUE) file.release(release);
+}
+
+/*
+ * Decode only the strips, or tiles, that intersect the given region and
+ * answer the part of the image that is inside the region. The other strips
+ * and tiles are skipped without being read into memory.
+ */
+ImageData decodeRegion(PaletteData palette, Rectangle region, int nextIFDOffset) throws IOException {
+	int bytesPerRow = (imageWidth * depth + 7) / 8;
+	byte[] data = new byte[bytesPerRow * region.height];
+	int rows = chunkRows();
+	int first = region.y / rows;
+	int last = Math.min(chunkCount() - 1, (region.y + region.height - 1) / rows);
+	for (int i = first; i <= last; i++) {
+		int stripY = i * rows;
+		int nRows = Math.min(rows, imageLength - stripY);
+		releaseStrips(i, last + 1, nextIFDOffset);
+		byte[] strip = new byte[bytesPerRow * nRows];
+		decodeChunk(i, strip, 0, bytesPerRow, nRows, region.x, region.width);
+		int startY = Math.max(stripY, region.y);
+		int endY = Math.min(stripY + nRows, region.y + region.height);
+		System.arraycopy(strip, (startY - stripY) * bytesPerRow, data, (startY - region.y) * bytesPerRow, (endY - startY) * bytesPerRow);
+	}
+	ImageData image = ImageData.internal_new(
+			imageWidth,
+			region.height,
+			depth,
+			palette,
+			1,
+			data,
+			0,
+			null,
+			null,
+			-1,
+			-1,
+			SWT.IMAGE_TIFF,
+			0,
+			0,
+			0,
+			0);
+	return FileFormat.crop(image, region.x, 0, region.width, region.height);
+}
+
+/**
+ * Read the entries of the image file directory at the current position
+ * of the file, and answer the size and depth of the image.
+ */
+public ImageHeader readHeader(int [] nextIFDOffset) throws IOException {
+	readEntries(nextIFDOffset);
+	int depth = 0;
+	switch (photometricInterpretation) {
+		case 0:
+		case 1:
+			depth = bitsPerSample[0];
+			break;
+		case 2:
+			if (colorMapOffset != NO_VALUE) SWT.error(SWT.ERROR_INVALID_IMAGE);
+			depth = bitsPerSample[0] + bitsPerSample[1] + bitsPerSample[2];
+			break;
+		case 3:
+			if (colorMapOffset == NO_VALUE) SWT.error(SWT.ERROR_INVALID_IMAGE);
+			depth = bitsPerSample[0];
+			break;
+		default:
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+	}
+	return new ImageHeader(imageWidth, imageLength, depth, SWT.IMAGE_TIFF);
+}
+
+void readEntries(int [] nextIFDOffset) throws IOException {
 	/* Set TIFF default values */
 	bitsPerSample = new int[] {1};
 	colorMapOffset = NO_VALUE;
@@ -435,6 +731,9 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 	samplesPerPixel = 1;
 	stripByteCounts = null;
 	stripOffsets = null;
+	predictor = PREDICTOR_NONE;
+	tileWidth = tileLength = 0;
+	tileOffsets = tileByteCounts = null;
 
 	byte[] buffer = new byte[2];
 	file.read(buffer);
@@ -445,6 +744,10 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 	file.read(buffer2);
 	nextIFDOffset[0] = toInt(buffer2, 0, TYPE_LONG);
 	parseEntries(buffer);
+}
+
+public ImageData read(int [] nextIFDOffset) throws IOException {
+	readEntries(nextIFDOffset);
 
 	PaletteData palette = null;
 	depth = 0;
@@ -475,6 +778,29 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 			SWT.error(SWT.ERROR_INVALID_IMAGE);
 		}
 	}
+	if (tileOffsets != null) {
+		if (tileWidth <= 0 || tileLength <= 0 || tileByteCounts == null || tileByteCounts.length < tileOffsets.length) {
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+		}
+		/* Tiles must start on a byte boundary */
+		if (tileWidth * depth % 8 != 0) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	} else if (stripOffsets == null || stripByteCounts == null || stripByteCounts.length < stripOffsets.length) {
+		SWT.error(SWT.ERROR_INVALID_IMAGE);
+	}
+	if (predictor == PREDICTOR_HORIZONTAL) {
+		/* Only 8-bit samples can be predicted */
+		for (int i = 0; i < bitsPerSample.length; i++) {
+			if (bitsPerSample[i] != 8) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+		}
+	} else if (predictor != PREDICTOR_NONE) {
+		SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	}
+	if (bandHeight > 0) {
+		decodeBands(palette, nextIFDOffset[0]);
+		return null;
+	}
+	Rectangle region = format != null ? format.clipRegion(imageWidth, imageLength) : null;
+	if (region != null) return decodeRegion(palette, region, nextIFDOffset[0]);
 
 	ImageData image = ImageData.internal_new(
 			imageWidth,
@@ -522,7 +848,10 @@ void write(int photometricInterpretation) throws IOException {
 	int imageLength = image.height;
 	int rowByteSize = image.bytesPerLine;
 
+	/* The rows of RGB images are predicted before they are compressed */
+	boolean isPredicted = isRGB && compression != COMPRESSION_NONE;
 	int numberEntries = isBiLevel ? 9 : 11;
+	if (isPredicted) numberEntries++;
 	int lengthDirectory = 2 + 12 * numberEntries + 4;
 	/* Offset following the header and the directory */
 	int nextOffset = 8 + lengthDirectory;
@@ -550,6 +879,10 @@ void write(int photometricInterpretation) throws IOException {
 	int nbrRowsPerStrip = formatStrips(rowByteSize, imageLength, data, 8192, nextOffset, extraBytes, strips);
 	int[] stripOffsets = strips[0];
 	int[] stripByteCounts = strips[1];
+	byte[][] encodedStrips = null;
+	if (compression != COMPRESSION_NONE) {
+		encodedStrips = encodeStrips(data, rowByteSize * nbrRowsPerStrip, rowByteSize, stripOffsets, stripByteCounts, isPredicted);
+	}
 
 	int bitsPerSampleOffset = NO_VALUE;
 	if (isRGB) {
@@ -582,7 +915,7 @@ void write(int photometricInterpretation) throws IOException {
 	writeEntry(TAG_ImageLength, TYPE_LONG, 1, imageLength);
 	if (isColorMap) writeEntry(TAG_BitsPerSample, TYPE_SHORT, 1, image.depth);
 	if (isRGB) writeEntry(TAG_BitsPerSample, TYPE_SHORT, 3, bitsPerSampleOffset);
-	writeEntry(TAG_Compression, TYPE_SHORT, 1, COMPRESSION_NONE);
+	writeEntry(TAG_Compression, TYPE_SHORT, 1, compression);
 	writeEntry(TAG_PhotometricInterpretation, TYPE_SHORT, 1, photometricInterpretation);
 	writeEntry(TAG_StripOffsets, TYPE_LONG, cnt, cnt > 1 ? stripOffsetsOffset : stripOffsets[0]);
 	if (isRGB) writeEntry(TAG_SamplesPerPixel, TYPE_SHORT, 1, 3);
@@ -590,6 +923,7 @@ void write(int photometricInterpretation) throws IOException {
 	writeEntry(TAG_StripByteCounts, TYPE_LONG, cnt, cnt > 1 ? stripByteCountsOffset : stripByteCounts[0]);
 	writeEntry(TAG_XResolution, TYPE_RATIONAL, 1, xResolutionOffset);
 	writeEntry(TAG_YResolution, TYPE_RATIONAL, 1, yResolutionOffset);
+	if (isPredicted) writeEntry(TAG_Predictor, TYPE_SHORT, 1, PREDICTOR_HORIZONTAL);
 	if (isColorMap) writeEntry(TAG_ColorMap, TYPE_SHORT, colorMap.length, colorMapOffset);
 	/* Offset of next IFD (0 for last IFD) */
 	out.writeInt(0);
@@ -611,7 +945,52 @@ void write(int photometricInterpretation) throws IOException {
 	if (isColorMap) for (int i = 0; i < colorMap.length; i++) out.writeShort(colorMap[i]);
 
 	/* Image Data */
-	out.write(data);
+	if (encodedStrips != null) {
+		for (int i = 0; i < encodedStrips.length; i++) out.write(encodedStrips[i]);
+	} else {
+		out.write(data);
+	}
+}
+
+/*
+ * Compress the strips of the image, and update the strip byte counts
+ * and the offsets, which follow each other, to those of the compressed
+ * strips.
+ */
+byte[][] encodeStrips(byte[] data, int stripByteSize, int rowByteSize, int[] stripOffsets, int[] stripByteCounts, boolean isPredicted) {
+	int count = stripOffsets.length;
+	byte[][] encodedStrips = new byte[count][];
+	int offset = stripOffsets[0];
+	for (int i = 0; i < count; i++) {
+		byte[] strip = data;
+		int start = i * stripByteSize;
+		int length = stripByteCounts[i];
+		if (isPredicted) {
+			strip = new byte[length];
+			System.arraycopy(data, start, strip, 0, length);
+			predict(strip, 0, rowByteSize, length / rowByteSize, 3);
+			start = 0;
+		}
+		if (compression == COMPRESSION_LZW) {
+			encodedStrips[i] = new TIFFLZWCodec().encode(strip, start, length);
+		} else {
+			Deflater deflater = new Deflater();
+			deflater.setInput(strip, start, length);
+			deflater.finish();
+			ByteArrayOutputStream stream = new ByteArrayOutputStream(length / 2 + 64);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				stream.write(buffer, 0, n);
+			}
+			deflater.end();
+			encodedStrips[i] = stream.toByteArray();
+		}
+		stripOffsets[i] = offset;
+		stripByteCounts[i] = encodedStrips[i].length;
+		offset += stripByteCounts[i];
+	}
+	return encodedStrips;
 }
 
 void writeEntry(short tag, int type, int count, int value) throws IOException {
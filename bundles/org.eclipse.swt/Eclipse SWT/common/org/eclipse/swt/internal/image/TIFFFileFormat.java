@@ -18,6 +18,7 @@ import java.io.*;
 /**
  * Baseline TIFF decoder revision 6.0
  * Extension T4-encoding CCITT T.4 1D
+ * Extensions LZW and Deflate compression, horizontal predictor and tiles
  */
 public final class TIFFFileFormat extends FileFormat {
 
@@ -38,6 +39,52 @@ boolean isFileFormat(LEDataInputStream stream) {
 	}
 }
 
+@Override
+boolean canStreamBands() {
+	return true;
+}
+
+@Override
+boolean canDecodeRegion() {
+	return true;
+}
+
+/**
+ * Answer the sizes and depths of the images, as read from the image
+ * file directories. The strips of the images are not read.
+ */
+@Override
+ImageHeader[] probeFromByteStream() {
+	byte[] header = new byte[8];
+	ImageHeader[] headers = new ImageHeader[0];
+	TIFFRandomFileAccess file = new TIFFRandomFileAccess(inputStream);
+	try {
+		file.read(header);
+		if (header[0] != header[1]) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
+			!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+		}
+		boolean isLittleEndian = header[0] == 0x49;
+		int offset = isLittleEndian ?
+			(header[4] & 0xFF) | ((header[5] & 0xFF) << 8) | ((header[6] & 0xFF) << 16) | ((header[7] & 0xFF) << 24) :
+			(header[7] & 0xFF) | ((header[6] & 0xFF) << 8) | ((header[5] & 0xFF) << 16) | ((header[4] & 0xFF) << 24);
+		while (offset != 0) {
+			file.seek(offset);
+			TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, this);
+			int [] nextIFDOffset = new int[1];
+			ImageHeader[] oldHeaders = headers;
+			headers = new ImageHeader[oldHeaders.length + 1];
+			System.arraycopy(oldHeaders, 0, headers, 0, oldHeaders.length);
+			headers[headers.length - 1] = directory.readHeader(nextIFDOffset);
+			offset = nextIFDOffset[0];
+		}
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	return headers;
+}
+
 @Override
 ImageData[] loadFromByteStream() {
 	byte[] header = new byte[8];
@@ -57,10 +104,12 @@ ImageData[] loadFromByteStream() {
 			(header[7] & 0xFF) | ((header[6] & 0xFF) << 8) | ((header[5] & 0xFF) << 16) | ((header[4] & 0xFF) << 24);
 		while (offset != 0) {
 			file.seek(offset);
-			TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, loader);
+			TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, this);
 			int [] nextIFDOffset = new int[1];
 			ImageData image = directory.read(nextIFDOffset);
 			offset = nextIFDOffset[0];
+			/* The bands of the image have already been delivered */
+			if (image == null) continue;
 			ImageData[] oldImages = images;
 			images = new ImageData[oldImages.length + 1];
 			System.arraycopy(oldImages, 0, images, 0, oldImages.length);
@@ -77,7 +126,11 @@ void unloadIntoByteStream(ImageLoader loader) {
 	/* We do not currently support writing multi-page tiff,
 	 * so we use the first image data in the loader's array. */
 	ImageData image = loader.data[0];
-	TIFFDirectory directory = new TIFFDirectory(image);
+	int compression = TIFFDirectory.COMPRESSION_NONE;
+	if (loader.compression == TIFFDirectory.COMPRESSION_LZW || loader.compression == TIFFDirectory.COMPRESSION_DEFLATE) {
+		compression = loader.compression;
+	}
+	TIFFDirectory directory = new TIFFDirectory(image, compression);
 	try {
 		directory.writeToStream(outputStream);
 	} catch (IOException e) {
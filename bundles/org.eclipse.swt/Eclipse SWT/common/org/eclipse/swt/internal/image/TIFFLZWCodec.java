@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+import java.util.*;
+
+/*
+* Encoder and decoder for
+* - LZW compression (TIFF compression type 5)
+*
+* Unlike in GIF files, the codes are packed with the most significant
+* bit first, and the code size grows one code early: after code 510,
+* 1022 and 2046 are added to the table. The encoder writes a clear code
+* before the table is full.
+*/
+final class TIFFLZWCodec {
+	static final int CLEAR_CODE = 256;
+	static final int EOI_CODE = 257;
+	static final int FIRST_CODE = 258;
+	static final int MIN_CODE_SIZE = 9;
+	static final int MAX_CODE_SIZE = 12;
+	static final int TABLE_SIZE = 1 << MAX_CODE_SIZE;
+
+	/* Size of the hash table of the encoder, a power of 2 */
+	static final int HASH_SIZE = 1 << 14;
+
+/**
+ * Decode the LZW data in src into dest, starting at offset, and answer
+ * the number of bytes decoded. At most length bytes are decoded, and
+ * decoding stops at the end of information code or at the end of the
+ * data, whichever comes first.
+ */
+int decode(byte[] src, byte[] dest, int offset, int length) {
+	int[] prefix = new int[TABLE_SIZE];
+	int[] lengths = new int[TABLE_SIZE];
+	byte[] suffix = new byte[TABLE_SIZE];
+	byte[] first = new byte[TABLE_SIZE];
+	for (int i = 0; i < 256; i++) {
+		suffix[i] = first[i] = (byte) i;
+		lengths[i] = 1;
+	}
+	int end = offset + length;
+	int destIndex = offset;
+	int srcIndex = 0;
+	int bitBuffer = 0, bitCount = 0;
+	int codeSize = MIN_CODE_SIZE, nextCode = FIRST_CODE, oldCode = -1;
+	while (destIndex < end) {
+		while (bitCount < codeSize) {
+			if (srcIndex >= src.length) return destIndex - offset;
+			bitBuffer = (bitBuffer << 8) | (src[srcIndex++] & 0xFF);
+			bitCount += 8;
+		}
+		bitCount -= codeSize;
+		int code = (bitBuffer >>> bitCount) & ((1 << codeSize) - 1);
+		if (code == EOI_CODE) break;
+		if (code == CLEAR_CODE) {
+			codeSize = MIN_CODE_SIZE;
+			nextCode = FIRST_CODE;
+			oldCode = -1;
+			continue;
+		}
+		if (oldCode == -1) {
+			/* The first code after a clear code is a single byte */
+			if (code > 255) break;
+			dest[destIndex++] = (byte) code;
+			oldCode = code;
+			continue;
+		}
+		if (code > nextCode || (code == nextCode && nextCode == TABLE_SIZE)) break;
+		if (nextCode < TABLE_SIZE) {
+			/* The new entry is the previous string and the first byte of this one */
+			prefix[nextCode] = oldCode;
+			suffix[nextCode] = code == nextCode ? first[oldCode] : first[code];
+			first[nextCode] = first[oldCode];
+			lengths[nextCode] = lengths[oldCode] + 1;
+			nextCode++;
+			if (nextCode == (1 << codeSize) - 1 && codeSize < MAX_CODE_SIZE) codeSize++;
+		}
+		/* Write the string backwards, dropping the bytes that do not fit */
+		int stringLength = lengths[code];
+		int index = destIndex + stringLength - 1;
+		int c = code;
+		while (index >= end) {
+			c = prefix[c];
+			index--;
+		}
+		while (index >= destIndex) {
+			dest[index--] = suffix[c];
+			c = prefix[c];
+		}
+		destIndex = Math.min(end, destIndex + stringLength);
+		oldCode = code;
+	}
+	return destIndex - offset;
+}
+
+/**
+ * Encode the given bytes of data and answer the LZW data, which
+ * starts with a clear code and ends with an end of information code.
+ */
+byte[] encode(byte[] data, int offset, int length) {
+	/* At most one code of 12 bits for each byte, and the clear codes */
+	byte[] out = new byte[length + length / 2 + length / 1024 + 16];
+	int outIndex = 0;
+	int bitBuffer = 0, bitCount = 0;
+	int[] keys = new int[HASH_SIZE];
+	short[] codes = new short[HASH_SIZE];
+	Arrays.fill(keys, -1);
+	int codeSize = MIN_CODE_SIZE, nextCode = FIRST_CODE;
+
+	/* Clear code */
+	bitBuffer = CLEAR_CODE;
+	bitCount = codeSize;
+	if (length > 0) {
+		int end = offset + length;
+		int code = data[offset] & 0xFF;
+		for (int i = offset + 1; i < end; i++) {
+			int c = data[i] & 0xFF;
+			int key = (code << 8) | c;
+			int hash = (key * 0x9E3779B1) >>> (32 - 14);
+			while (keys[hash] != -1 && keys[hash] != key) {
+				hash = (hash + 1) & (HASH_SIZE - 1);
+			}
+			if (keys[hash] == key) {
+				code = codes[hash];
+				continue;
+			}
+			/* Write the code of the longest string in the table */
+			bitBuffer = (bitBuffer << codeSize) | code;
+			bitCount += codeSize;
+			while (bitCount >= 8) {
+				bitCount -= 8;
+				out[outIndex++] = (byte) (bitBuffer >>> bitCount);
+			}
+			keys[hash] = key;
+			codes[hash] = (short) nextCode++;
+			if (nextCode == TABLE_SIZE - 2) {
+				/* The table is full, start again with a clear code */
+				bitBuffer = (bitBuffer << codeSize) | CLEAR_CODE;
+				bitCount += codeSize;
+				Arrays.fill(keys, -1);
+				codeSize = MIN_CODE_SIZE;
+				nextCode = FIRST_CODE;
+			} else if (nextCode > (1 << codeSize) - 1) {
+				codeSize++;
+			}
+			code = c;
+		}
+		bitBuffer = (bitBuffer << codeSize) | code;
+		bitCount += codeSize;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			out[outIndex++] = (byte) (bitBuffer >>> bitCount);
+		}
+		/* The decoder adds an entry for the last code before reading the end code */
+		nextCode++;
+		if (nextCode == TABLE_SIZE - 2) {
+			bitBuffer = (bitBuffer << codeSize) | CLEAR_CODE;
+			bitCount += codeSize;
+			codeSize = MIN_CODE_SIZE;
+		} else if (nextCode > (1 << codeSize) - 1) {
+			codeSize++;
+		}
+	}
+	bitBuffer = (bitBuffer << codeSize) | EOI_CODE;
+	bitCount += codeSize;
+	while (bitCount >= 8) {
+		bitCount -= 8;
+		out[outIndex++] = (byte) (bitBuffer >>> bitCount);
+	}
+	if (bitCount > 0) out[outIndex++] = (byte) (bitBuffer << (8 - bitCount));
+	return Arrays.copyOf(out, outIndex);
+}
+
+}
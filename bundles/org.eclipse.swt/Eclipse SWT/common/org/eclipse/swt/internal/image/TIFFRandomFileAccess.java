@@ -29,6 +29,12 @@ public TIFFRandomFileAccess(LEDataInputStream stream) {
 
 void seek(int pos) throws IOException {
 	if (pos == current) return;
+	/* When the bytes are all in memory they are read in place, in any order */
+	if (inputStream.source != null) {
+		inputStream.seek(pos);
+		current = pos;
+		return;
+	}
 	if (pos < start) throw new IOException();
 	current = pos;
 	if (current > next) {
@@ -52,8 +58,28 @@ void seek(int pos) throws IOException {
 	}
 }
 
+/**
+ * Discard the cached chunks that lie entirely before the given position.
+ * Seeking before the start of the first remaining chunk is no longer
+ * possible afterwards. Bytes that have not been read yet are kept, since
+ * a later seek cannot skip them without knowing that they are not needed.
+ */
+void release(int pos) {
+	int limit = Math.min(pos, current) / CHUNK_SIZE;
+	for (int i = start / CHUNK_SIZE; i < limit && i < buffers.length; i++) {
+		buffers[i] = null;
+	}
+	start = Math.max(start, limit * CHUNK_SIZE);
+}
+
 void read(byte b[]) throws IOException {
 	int size = b.length;
+	if (inputStream.source != null) {
+		inputStream.seek(current);
+		inputStream.read(b);
+		current += size;
+		return;
+	}
 	int nCached = Math.min(size, next - current);
 	int nMissing = size - next + current;
 	int destNext = 0;
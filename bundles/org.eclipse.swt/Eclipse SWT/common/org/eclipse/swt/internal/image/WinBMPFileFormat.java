@@ -484,6 +484,27 @@ int[] loadFileHeader() {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
 	return header;
 }
+/**
+ * Answer the size and depth of the image, as read from the
+ * info header. The palette and the pixels are not read.
+ */
+@Override
+ImageHeader[] probeFromByteStream() {
+	loadFileHeader();
+	byte[] infoHeader = new byte[BMPHeaderFixedSize];
+	try {
+		inputStream.read(infoHeader);
+	} catch (Exception e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
+	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	if (height < 0) height = -height;
+	int bitCount = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
+	int compression = (infoHeader[16] & 0xFF) | ((infoHeader[17] & 0xFF) << 8) | ((infoHeader[18] & 0xFF) << 16) | ((infoHeader[19] & 0xFF) << 24);
+	int type = (compression == 1 /*BMP_RLE8_COMPRESSION*/) || (compression == 2 /*BMP_RLE4_COMPRESSION*/) ? SWT.IMAGE_BMP_RLE : SWT.IMAGE_BMP;
+	return new ImageHeader[] {new ImageHeader(width, height, bitCount, type)};
+}
 @Override
 ImageData[] loadFromByteStream() {
 	int[] fileHeader = loadFileHeader();
@@ -507,13 +528,17 @@ ImageData[] loadFromByteStream() {
 			SWT.error(SWT.ERROR_IO, e);
 		}
 	}
+	if (bandHeight > 0 && (this.compression == 0 || this.compression == 3)) {
+		loadBands(infoHeader, palette);
+		return new ImageData[0];
+	}
 	byte[] data = loadData(infoHeader);
 	this.importantColors = (infoHeader[36] & 0xFF) | ((infoHeader[37] & 0xFF) << 8) | ((infoHeader[38] & 0xFF) << 16) | ((infoHeader[39] & 0xFF) << 24);
 	int xPelsPerMeter = (infoHeader[24] & 0xFF) | ((infoHeader[25] & 0xFF) << 8) | ((infoHeader[26] & 0xFF) << 16) | ((infoHeader[27] & 0xFF) << 24);
 	int yPelsPerMeter = (infoHeader[28] & 0xFF) | ((infoHeader[29] & 0xFF) << 8) | ((infoHeader[30] & 0xFF) << 16) | ((infoHeader[31] & 0xFF) << 24);
 	this.pelsPerMeter = new Point(xPelsPerMeter, yPelsPerMeter);
 	int type = (this.compression == 1 /*BMP_RLE8_COMPRESSION*/) || (this.compression == 2 /*BMP_RLE4_COMPRESSION*/) ? SWT.IMAGE_BMP_RLE : SWT.IMAGE_BMP;
-	return new ImageData[] {
+	ImageData[] images = new ImageData[] {
 		ImageData.internal_new(
 			width,
 			height,
@@ -532,6 +557,60 @@ ImageData[] loadFromByteStream() {
 			0,
 			0)
 	};
+	if (bandHeight > 0) {
+		startBands(loader, width, height);
+		fireBands(images[0]);
+		return new ImageData[0];
+	}
+	return images;
+}
+/**
+ * Read the uncompressed scanlines of the image and deliver them to the
+ * loader's listeners in bands. Scanlines are stored bottom-up, so the
+ * bands are sent from the bottom of the image to the top.
+ */
+void loadBands(byte[] infoHeader, PaletteData palette) {
+	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
+	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	if (height < 0) height = -height;
+	int bitCount = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
+	int stride = (width * bitCount + 7) / 8;
+	stride = (stride + 3) / 4 * 4; // Round up to 4 byte multiple
+	startBands(loader, width, height);
+	int bandIndex = 0;
+	for (int bottom = height; bottom > 0; bottom -= bandHeight) {
+		int rows = Math.min(bandHeight, bottom);
+		byte[] data = new byte[stride * rows];
+		try {
+			if (inputStream.read(data) != data.length)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+		flipScanLines(data, stride, rows);
+		ImageData band = ImageData.internal_new(
+			width,
+			rows,
+			bitCount,
+			palette,
+			4,
+			data,
+			0,
+			null,
+			null,
+			-1,
+			-1,
+			SWT.IMAGE_BMP,
+			0,
+			bottom - rows,
+			0,
+			0);
+		fireBand(loader, band, bandIndex++, bottom - rows == 0);
+	}
+}
+@Override
+boolean canStreamBands() {
+	return true;
 }
 PaletteData loadPalette(byte[] infoHeader) {
 	int depth = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
@@ -113,15 +113,48 @@ int loadFileHeader(LEDataInputStream byteStream, boolean hasHeader) {
 	return numIcons;
 }
 @Override
+boolean canSelectImage() {
+	return true;
+}
+@Override
 ImageData[] loadFromByteStream() {
 	int numIcons = loadFileHeader(inputStream);
 	int[][] headers = loadIconHeaders(numIcons);
+	if (imageIndex >= 0) {
+		if (imageIndex >= numIcons) return new ImageData[0];
+		int[] iconHeader = headers[imageIndex];
+		skipTo(iconHeader[6]);
+		return new ImageData[] {loadIcon(iconHeader)};
+	}
 	ImageData[] icons = new ImageData[headers.length];
 	for (int i = 0; i < icons.length; i++) {
 		icons[i] = loadIcon(headers[i]);
 	}
 	return icons;
 }
+/**
+ * Answer the sizes and depths of the icons, as recorded in the
+ * icon directory. The icons themselves are not read.
+ */
+@Override
+ImageHeader[] probeFromByteStream() {
+	int numIcons = loadFileHeader(inputStream);
+	int[][] headers = loadIconHeaders(numIcons);
+	ImageHeader[] result = new ImageHeader[numIcons];
+	for (int i = 0; i < numIcons; i++) {
+		int[] iconHeader = headers[i];
+		/* A width or height of 0 represents 256 */
+		int width = iconHeader[0] == 0 ? 256 : iconHeader[0];
+		int height = iconHeader[1] == 0 ? 256 : iconHeader[1];
+		int depth = iconHeader[4];
+		if (depth == 0) {
+			int numColors = iconHeader[2] & 0xFF;
+			depth = numColors == 2 ? 1 : numColors == 16 ? 4 : 8;
+		}
+		result[i] = new ImageHeader(width, height, depth, SWT.IMAGE_ICO);
+	}
+	return result;
+}
 /**
  * Load one icon from the byte stream.
  */
@@ -191,15 +224,7 @@ byte[] loadInfoHeader(int[] iconHeader) {
 	if ((numColors != 2) && (numColors != 8) && (numColors != 16) &&
 		(numColors != 32) && (numColors != 256))
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
-	if (inputStream.getPosition() < iconHeader[6]) {
-		// Seek to the specified offset
-		try {
-			inputStream.skip(iconHeader[6] - inputStream.getPosition());
-		} catch (IOException e) {
-			SWT.error(SWT.ERROR_IO, e);
-			return null;
-		}
-	}
+	skipTo(iconHeader[6]);
 	byte[] infoHeader = new byte[WinBMPFileFormat.BMPHeaderFixedSize];
 	try {
 		inputStream.read(infoHeader);
@@ -228,6 +253,19 @@ byte[] loadInfoHeader(int[] iconHeader) {
 	infoHeader[11] = (byte)((height >> 24) & 0xFF);
 	return infoHeader;
 }
+/**
+ * Skip the bytes of the input stream that precede the specified offset.
+ */
+void skipTo(int offset) {
+	if (inputStream.getPosition() < offset) {
+		// Seek to the specified offset
+		try {
+			inputStream.skip(offset - inputStream.getPosition());
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+	}
+}
 /**
  * Unload a single icon
  */
@@ -22,6 +22,7 @@ class RunnableLock {
 	Runnable runnable;
 	Thread thread;
 	Throwable throwable;
+	Object key;
 
 RunnableLock (Runnable runnable) {
 	this.runnable = runnable;
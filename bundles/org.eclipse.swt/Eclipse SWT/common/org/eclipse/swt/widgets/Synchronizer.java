@@ -10,8 +10,11 @@
  *******************************************************************************/
 package org.eclipse.swt.widgets;
 
+import java.util.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.internal.*;
 
 /**
  * Instances of this class provide synchronization support
@@ -33,12 +36,13 @@ import org.eclipse.swt.graphics.*;
  */
 public class Synchronizer {
 	Display display;
-	int messageCount;
-	RunnableLock [] messages;
-	Object messageLock = new Object ();
+	/* Added to by any thread, removed from by the user-interface thread only */
+	SingleConsumerQueue<RunnableLock> messages = new SingleConsumerQueue<> ();
 	Thread syncThread;
-	static final int GROW_SIZE = 4;
-	static final int MESSAGE_LIMIT = 64;
+
+	/* The messages with a key that have not started to run, guarded by the map */
+	final HashMap<Object, RunnableLock> pendingMessages = new HashMap<> ();
+	long mergedCount, executedCount;
 
 	//TEMPORARY CODE
 	static final boolean IS_COCOA = "cocoa".equals (SWT.getPlatform ());
@@ -55,66 +59,58 @@ public Synchronizer (Display display) {
 
 /**
  * Removes all pending events from the receiver and inserts them into the beginning of the given
- * synchronizer's queue
+ * synchronizer's queue. Must be called from the user-interface thread, after the
+ * receiver has stopped receiving events.
  *
  * @param toReceiveTheEvents the synchronizer that will receive the events
  */
 void moveAllEventsTo (Synchronizer toReceiveTheEvents) {
-	RunnableLock[] oldMessages;
-	int oldMessageCount;
-	synchronized (messageLock) {
-		oldMessages = messages;
-		messages = null;
-		oldMessageCount = messageCount;
-		messageCount = 0;
+	RunnableLock[] oldMessages = new RunnableLock [Math.max (messages.size (), 4)];
+	int oldMessageCount = 0;
+	/*
+	* A message that another thread is adding is counted before it can be
+	* removed. Wait for it to be linked rather than leave it behind, where
+	* it would never run and a thread in syncExec would wait forever.
+	*/
+	while (messages.size () != 0) {
+		RunnableLock lock = removeFirst ();
+		if (lock == null) {
+			Thread.yield ();
+			continue;
+		}
+		if (oldMessageCount == oldMessages.length) {
+			oldMessages = Arrays.copyOf (oldMessages, oldMessageCount * 2);
+		}
+		oldMessages [oldMessageCount++] = lock;
+	}
+	HashMap<Object, RunnableLock> oldPendingMessages;
+	synchronized (pendingMessages) {
+		oldPendingMessages = new HashMap<> (pendingMessages);
+		pendingMessages.clear ();
+	}
+	/* A newer message with the same key may already be pending in the other synchronizer */
+	synchronized (toReceiveTheEvents.pendingMessages) {
+		for (Map.Entry<Object, RunnableLock> entry : oldPendingMessages.entrySet ()) {
+			toReceiveTheEvents.pendingMessages.putIfAbsent (entry.getKey (), entry.getValue ());
+		}
 	}
 	toReceiveTheEvents.addFirst(oldMessages, oldMessageCount);
 }
 
 /**
  * Adds the given events to the beginning of the message queue, to
- * be processed in order.
+ * be processed in order. Must be called from the user-interface thread.
  *
  * @param toAdd events to add. Permits null if and only if numToAdd is 0.
  * @param numToAdd number of events to add from the beginning of the given array.
  */
 void addFirst (RunnableLock[] toAdd, int numToAdd) {
-	if (numToAdd <= 0) {
-		return;
-	}
-	boolean wake = false;
-	synchronized (messageLock) {
-		int nextSize = messageCount + Math.max(numToAdd, GROW_SIZE);
-		if (messages == null)
-			messages = new RunnableLock[nextSize];
-		if (messages.length < messageCount + numToAdd) {
-			RunnableLock[] newMessages = new RunnableLock[nextSize];
-			System.arraycopy(messages, 0, newMessages, numToAdd, messageCount);
-			messages = newMessages;
-		} else {
-			System.arraycopy(messages, 0, messages, numToAdd, messageCount);
-		}
-		System.arraycopy(toAdd, 0, messages, 0, numToAdd);
-		wake = (messageCount == 0);
-		messageCount += numToAdd;
-	}
-	if (wake)
+	if (messages.addFirst (toAdd, numToAdd))
 		display.wakeThread();
 }
 
 void addLast (RunnableLock lock) {
-	boolean wake = false;
-	synchronized (messageLock) {
-		if (messages == null) messages = new RunnableLock [GROW_SIZE];
-		if (messageCount == messages.length) {
-			RunnableLock[] newMessages = new RunnableLock [messageCount + GROW_SIZE];
-			System.arraycopy (messages, 0, newMessages, 0, messageCount);
-			messages = newMessages;
-		}
-		messages [messageCount++] = lock;
-		wake = messageCount == 1;
-	}
-	if (wake) display.wakeThread ();
+	if (messages.add (lock)) display.wakeThread ();
 }
 
 /**
@@ -139,30 +135,97 @@ protected void asyncExec (Runnable runnable) {
 	addLast (new RunnableLock (runnable));
 }
 
-int getMessageCount () {
-	synchronized (messageLock) {
-		return messageCount;
+/**
+ * Causes the <code>run()</code> method of the runnable to
+ * be invoked by the user-interface thread at the next
+ * reasonable opportunity, unless a runnable with the same
+ * key is still waiting to be run. In that case, the given
+ * runnable replaces the waiting runnable, and is run instead
+ * of it at its place in the queue. The caller of this method
+ * continues to run in parallel, and is not notified when the
+ * runnable has completed.
+ *
+ * @param key the key of the runnable, compared with <code>equals()</code>
+ * @param runnable code to run on the user-interface thread.
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the key is null</li>
+ * </ul>
+ *
+ * @see #asyncExec(Runnable)
+ * @see #getMergedCount()
+ *
+ * @since 3.107
+ */
+protected void asyncExec (Object key, Runnable runnable) {
+	if (key == null) SWT.error (SWT.ERROR_NULL_ARGUMENT);
+	RunnableLock lock;
+	synchronized (pendingMessages) {
+		lock = pendingMessages.get (key);
+		if (lock != null) {
+			lock.runnable = runnable;
+			mergedCount++;
+			return;
+		}
+		lock = new RunnableLock (runnable);
+		lock.key = key;
+		pendingMessages.put (key, lock);
+	}
+	addLast (lock);
+}
+
+/**
+ * Returns the number of runnables with a key that replaced a runnable
+ * with the same key that was waiting to be run, and therefore did not
+ * cause another runnable to be run.
+ *
+ * @return the number of merged runnables
+ *
+ * @see #asyncExec(Object, Runnable)
+ *
+ * @since 3.107
+ */
+public long getMergedCount () {
+	synchronized (pendingMessages) {
+		return mergedCount;
 	}
 }
 
+/**
+ * Returns the number of runnables with a key that have been run.
+ *
+ * @return the number of executed runnables with a key
+ *
+ * @see #asyncExec(Object, Runnable)
+ *
+ * @since 3.107
+ */
+public long getExecutedCount () {
+	synchronized (pendingMessages) {
+		return executedCount;
+	}
+}
+
+/*
+ * The count includes the messages that other threads are adding, which
+ * removeFirst may not answer yet. The display does not sleep while the
+ * count is not zero, so these messages are run as soon as they are added.
+ */
+int getMessageCount () {
+	return messages.size ();
+}
+
 void releaseSynchronizer () {
 	display = null;
 	messages = null;
-	messageLock = null;
+	synchronized (pendingMessages) {
+		pendingMessages.clear ();
+	}
 	syncThread = null;
 }
 
 RunnableLock removeFirst () {
-	synchronized (messageLock) {
-		if (messageCount == 0) return null;
-		RunnableLock lock = messages [0];
-		System.arraycopy (messages, 1, messages, 0, --messageCount);
-		messages [messageCount] = null;
-		if (messageCount == 0) {
-			if (messages.length > MESSAGE_LIMIT) messages = null;
-		}
-		return lock;
-	}
+	return messages.poll ();
 }
 
 boolean runAsyncMessages () {
@@ -172,29 +235,54 @@ boolean runAsyncMessages () {
 boolean runAsyncMessages (boolean all) {
 	boolean run = false;
 	do {
-		RunnableLock lock = removeFirst ();
-		if (lock == null) return run;
+		if (!runAsyncMessage ()) return run;
 		run = true;
-		synchronized (lock) {
-			syncThread = lock.thread;
-			display.sendPreEvent(SWT.None);
-			try {
-				lock.run (display);
-			} catch (Throwable t) {
-				lock.throwable = t;
-				SWT.error (SWT.ERROR_FAILED_EXEC, t);
-			} finally {
-				if (display != null && !display.isDisposed()) {
-					display.sendPostEvent(SWT.None);
-				}
-				syncThread = null;
-				lock.notifyAll ();
-			}
-		}
 	} while (all);
 	return run;
 }
 
+/*
+ * Runs the pending messages until there are none left, or until the
+ * given deadline of System.nanoTime() has passed. The first message is
+ * always run, so a deadline in the past runs one message.
+ */
+boolean runAsyncMessagesUntil (long deadline) {
+	if (!runAsyncMessage ()) return false;
+	while (display != null && System.nanoTime () - deadline < 0) {
+		if (!runAsyncMessage ()) break;
+	}
+	return true;
+}
+
+boolean runAsyncMessage () {
+	RunnableLock lock = removeFirst ();
+	if (lock == null) return false;
+	if (lock.key != null) {
+		/* Runnables with the same key that are added from now on are run again */
+		synchronized (pendingMessages) {
+			pendingMessages.remove (lock.key, lock);
+			executedCount++;
+		}
+	}
+	synchronized (lock) {
+		syncThread = lock.thread;
+		display.sendPreEvent(SWT.None);
+		try {
+			lock.run (display);
+		} catch (Throwable t) {
+			lock.throwable = t;
+			SWT.error (SWT.ERROR_FAILED_EXEC, t);
+		} finally {
+			if (display != null && !display.isDisposed()) {
+				display.sendPostEvent(SWT.None);
+			}
+			syncThread = null;
+			lock.notifyAll ();
+		}
+	}
+	return true;
+}
+
 /**
  * Causes the <code>run()</code> method of the runnable to
  * be invoked by the user-interface thread at the next
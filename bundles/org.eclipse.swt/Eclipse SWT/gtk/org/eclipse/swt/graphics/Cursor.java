@@ -221,6 +221,9 @@ public Cursor(Device device, ImageData source, ImageData mask, int hotspotX, int
 		if (!(source.getTransparencyType() == SWT.TRANSPARENCY_MASK)) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 		mask = source.getTransparencyMask();
 	}
+	/* The pixels of the image data must be on the heap */
+	if (source.buffer != null) source = source.getBand(0, source.height);
+	if (mask.buffer != null) mask = mask.getBand(0, mask.height);
 	/* Check the bounds. Mask must be the same size as source */
 	if (mask.width != source.width || mask.height != source.height) {
 		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
@@ -302,6 +305,8 @@ public Cursor(Device device, ImageData source, ImageData mask, int hotspotX, int
 public Cursor(Device device, ImageData source, int hotspotX, int hotspotY) {
 	super(device);
 	if (source == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	/* The pixels of the image data must be on the heap */
+	if (source.buffer != null) source = source.getBand(0, source.height);
 	if (hotspotX >= source.width || hotspotX < 0 ||
 		hotspotY >= source.height || hotspotY < 0) {
 		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
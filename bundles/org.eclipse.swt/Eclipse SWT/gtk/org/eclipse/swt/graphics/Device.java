@@ -93,6 +93,9 @@ public abstract class Device implements Drawable {
 	/* System Font */
 	Font systemFont;
 
+	/* Shared images */
+	ImagePool imagePool;
+
 	/* Device dpi */
 	Point dpi;
 
@@ -854,6 +857,10 @@ static synchronized void register (Device device) {
  * @see #destroy
  */
 protected void release () {
+	/* Dispose the shared images */
+	if (imagePool != null) imagePool.dispose();
+	imagePool = null;
+
 	if (shellHandle != 0) GTK.gtk_widget_destroy(shellHandle);
 	shellHandle = 0;
 
@@ -161,6 +161,9 @@ public final class Image extends Resource implements Drawable {
 	 */
 	static final int DEFAULT_SCANLINE_PAD = 4;
 
+	/* The number of bytes converted at a time for image data whose pixels are in a buffer */
+	static final int BAND_SIZE = 1 << 20;
+
 	/**
 	 * ImageFileNameProvider to provide file names at various Zoom levels
 	 */
@@ -507,7 +510,12 @@ public Image(Device device, ImageData source, ImageData mask) {
 	source = DPIUtil.autoScaleUp (device, source);
 	mask = DPIUtil.autoScaleUp (device, mask);
 	mask = ImageData.convertMask (mask);
-	ImageData image = new ImageData(source.width, source.height, source.depth, source.palette, source.scanlinePad, source.data);
+	ImageData image;
+	if (source.buffer != null) {
+		image = new ImageData(source.width, source.height, source.depth, source.palette, source.scanlinePad, source.buffer, 0);
+	} else {
+		image = new ImageData(source.width, source.height, source.depth, source.palette, source.scanlinePad, source.data);
+	}
 	image.maskPad = mask.scanlinePad;
 	image.maskData = mask.data;
 	init(image);
@@ -569,10 +577,10 @@ public Image(Device device, ImageData source, ImageData mask) {
  */
 public Image(Device device, InputStream stream) {
 	super(device);
-	ImageData data = new ImageData(stream);
+	ImageData data = load(stream);
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
 	data = DPIUtil.autoScaleUp (device, data);
-	init(data);
+	init(data, true);
 	init();
 }
 
@@ -612,10 +620,8 @@ public Image(Device device, String filename) {
 	super(device);
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 
-	ImageData data = new ImageData(filename);
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
-	data = DPIUtil.autoScaleUp (device, data);
-	init(data);
+	init(filename, 100, currentDeviceZoom);
 	init();
 }
 
@@ -657,13 +663,10 @@ public Image(Device device, ImageFileNameProvider imageFileNameProvider) {
 	if (found[0]) {
 		initNative (filename);
 		if (this.pixmap == 0 && this.surface == 0) {
-			ImageData data = new ImageData(filename);
-			init(data);
+			init(filename, currentDeviceZoom, currentDeviceZoom);
 		}
 	} else {
-		ImageData imageData = new ImageData (filename);
-		ImageData resizedData = DPIUtil.autoScaleUp (device, imageData);
-		init(resizedData);
+		init(filename, 100, currentDeviceZoom);
 	}
 	init ();
 }
@@ -701,14 +704,7 @@ public Image(Device device, ImageDataProvider imageDataProvider) {
 	super(device);
 	this.imageDataProvider = imageDataProvider;
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
-	boolean[] found = new boolean[1];
-	ImageData data =  DPIUtil.validateAndGetImageDataAtZoom(imageDataProvider, currentDeviceZoom, found);
-	if (found[0]) {
-		init (data);
-	} else {
-		ImageData resizedData = DPIUtil.autoScaleUp (device, data);
-		init (resizedData);
-	}
+	init (getImageData(imageDataProvider, currentDeviceZoom));
 	init ();
 }
 
@@ -731,8 +727,7 @@ boolean refreshImageForZoom () {
 				destroy ();
 				initNative(filename);
 				if (this.pixmap == 0 && this.surface == 0) {
-					ImageData data = new ImageData(filename);
-					init(data);
+					init(filename, deviceZoomLevel, deviceZoomLevel);
 				}
 				init ();
 				refreshed = true;
@@ -740,9 +735,7 @@ boolean refreshImageForZoom () {
 			if (!found[0]) {
 				/* Release current native resources */
 				destroy ();
-				ImageData imageData = new ImageData (filename);
-				ImageData resizedData = DPIUtil.autoScaleUp (device, imageData);
-				init(resizedData);
+				init(filename, 100, deviceZoomLevel);
 				init ();
 				refreshed = true;
 			}
@@ -751,24 +744,12 @@ boolean refreshImageForZoom () {
 	} else if (imageDataProvider != null) {
 		int deviceZoomLevel = deviceZoom;
 		if (deviceZoomLevel != currentDeviceZoom) {
-			boolean[] found = new boolean[1];
-			ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, deviceZoomLevel, found);
-			/* Avoid re-creating the fall-back image, when current zoom is already 100% */
-			if (found[0] || currentDeviceZoom != 100) {
-				/* Release current native resources */
-				destroy ();
-				init(data);
-				init();
-				refreshed = true;
-			}
-			if (!found[0]) {
-				/* Release current native resources */
-				destroy ();
-				ImageData resizedData = DPIUtil.autoScaleImageData(device, data, deviceZoomLevel, 100);
-				init(resizedData);
-				init();
-				refreshed = true;
-			}
+			ImageData data = getImageData(imageDataProvider, deviceZoomLevel);
+			/* Release current native resources */
+			destroy ();
+			init(data);
+			init();
+			refreshed = true;
 			currentDeviceZoom = deviceZoomLevel;
 		}
 	} else {
@@ -1271,17 +1252,16 @@ public ImageData getImageData (int zoom) {
 	if (zoom == currentDeviceZoom) {
 		return getImageDataAtCurrentZoom();
 	} else if (imageDataProvider != null) {
-		boolean[] found = new boolean[1];
-		ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, zoom, found);
-		// exact image found
-		if (found[0]) {
-			return data;
-		}
-		// AutoScale the image at 100% zoom
-		return DPIUtil.autoScaleUp (device, data);
+		ImageData data = getImageData(imageDataProvider, zoom);
+		return ImageDataCache.getDefault() != null ? (ImageData) data.clone() : data;
 	} else if (imageFileNameProvider != null) {
 		boolean[] found = new boolean[1];
 		String fileName = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, zoom, found);
+		ImageDataCache cache = ImageDataCache.getDefault();
+		if (cache != null) {
+			// exact image found, or the image at 100% zoom auto-scaled
+			return (ImageData) getImageData(cache, fileName, found[0] ? zoom : 100, zoom).clone();
+		}
 		// exact image found
 		if (found[0]) {
 			return new ImageData (fileName);
@@ -1386,7 +1366,92 @@ void init(int width, int height) {
 	this.height = height;
 }
 
+/**
+ * Answer the palette of a 32-bit image whose pixels have the
+ * byte layout of a Cairo ARGB32 or RGB24 image surface.
+ */
+static PaletteData getSurfacePalette() {
+	if (OS.BIG_ENDIAN) {
+		return new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	}
+	return new PaletteData(0xFF00, 0xFF0000, 0xFF000000);
+}
+
+/**
+ * Load the first image of the stream. True color images are
+ * decoded into the pixel layout of a Cairo image surface when
+ * the file format supports it, so that <code>init()</code> does
+ * not need to convert them.
+ */
+static ImageData load(InputStream stream) {
+	ImageData[] data = ImageDataLoader.load(stream, getSurfacePalette());
+	if (data.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	return data[0];
+}
+
+static ImageData load(String filename) {
+	ImageData[] data = ImageDataLoader.load(filename, getSurfacePalette());
+	if (data.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	return data[0];
+}
+
+/**
+ * Answer the image data of the file at the given zoom, scaled from
+ * the zoom of the file, from the cache when it has it. The answer is
+ * shared with the cache and must not be modified.
+ */
+ImageData getImageData(ImageDataCache cache, String filename, int fileZoom, int zoom) {
+	ImageData data = cache.get(filename, fileZoom, zoom);
+	if (data == null) {
+		data = DPIUtil.autoScaleImageData(device, load(filename), zoom, fileZoom);
+		cache.put(filename, fileZoom, zoom, data);
+	}
+	return data;
+}
+
+/**
+ * Answer the image data of the provider at the given zoom, scaled from
+ * the image data at 100% zoom when the provider has none at that zoom.
+ * When there is a default image data cache, the answer comes from the
+ * cache and must not be modified.
+ */
+ImageData getImageData(ImageDataProvider provider, int zoom) {
+	ImageDataCache cache = ImageDataCache.getDefault();
+	ImageData data = cache != null ? cache.get(provider, zoom, zoom) : null;
+	if (data == null) {
+		boolean[] found = new boolean[1];
+		data = DPIUtil.validateAndGetImageDataAtZoom(provider, zoom, found);
+		if (!found[0]) data = DPIUtil.autoScaleImageData(device, data, zoom, 100);
+		if (cache != null) cache.put(provider, zoom, zoom, data);
+	}
+	return data;
+}
+
+/**
+ * Initialize the receiver from the image file, scaled from the zoom
+ * of the file to the given zoom. When there is a default image data
+ * cache, the scaled image data is kept in the cache.
+ */
+void init(String filename, int fileZoom, int zoom) {
+	ImageDataCache cache = ImageDataCache.getDefault();
+	if (cache != null) {
+		init(getImageData(cache, filename, fileZoom, zoom), false);
+	} else {
+		init(DPIUtil.autoScaleImageData(device, load(filename), zoom, fileZoom), true);
+	}
+}
+
 void init(ImageData image) {
+	init(image, false);
+}
+
+/**
+ * Create the surface of the receiver from the image data. When
+ * <code>adopt</code> is true, the image data is not used after
+ * this call, and its pixels and alpha data are used in place
+ * rather than copied.
+ */
+void init(ImageData image, boolean adopt) {
 	if (image == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	int width = this.width = image.width;
 	int height = this.height = image.height;
@@ -1400,6 +1465,61 @@ void init(ImageData image) {
 	if (surface == 0) SWT.error(SWT.ERROR_NO_HANDLES);
 	int stride = Cairo.cairo_image_surface_get_stride(surface);
 	long /*int*/ data = Cairo.cairo_image_surface_get_data(surface);
+	boolean isIcon = image.getTransparencyType() == SWT.TRANSPARENCY_MASK;
+	this.type = isIcon ? SWT.ICON : SWT.BITMAP;
+	if (isIcon || image.transparentPixel != -1) {
+		if (image.transparentPixel != -1) {
+			RGB rgb = null;
+			if (palette.isDirect) {
+				rgb = palette.getRGB(image.transparentPixel);
+			} else {
+				if (image.transparentPixel < palette.colors.length) {
+					rgb = palette.getRGB(image.transparentPixel);
+				}
+			}
+			if (rgb != null) {
+				transparentPixel = rgb.red << 16 | rgb.green << 8 | rgb.blue;
+			}
+		}
+	} else {
+		this.alpha = image.alpha;
+		if (image.alpha == -1 && image.alphaData != null) {
+			if (adopt) {
+				this.alphaData = image.alphaData;
+			} else {
+				this.alphaData = new byte[image.alphaData.length];
+				System.arraycopy(image.alphaData, 0, this.alphaData, 0, alphaData.length);
+			}
+		}
+	}
+	if (image.buffer != null) {
+		/*
+		* The pixels are not on the Java heap. Convert them in bands
+		* of rows, so that they are never copied to the heap as a whole.
+		*/
+		int rows = Math.max(1, BAND_SIZE / stride);
+		for (int y = 0; y < height; y += rows) {
+			ImageData band = image.getBand(y, Math.min(rows, height - y));
+			byte[] buffer = getSurfaceData(band, stride, true);
+			C.memmove(data + y * stride, buffer, stride * band.height);
+		}
+	} else {
+		byte[] buffer = getSurfaceData(image, stride, adopt);
+		C.memmove(data, buffer, stride * height);
+	}
+	Cairo.cairo_surface_mark_dirty(surface);
+}
+
+/**
+ * Answer the pixels of the image data in the layout of the surface,
+ * with the alpha, mask or transparent pixel applied. When
+ * <code>adopt</code> is true, the pixels of the image data are
+ * modified in place if they already have the layout of the surface.
+ */
+static byte[] getSurfaceData(ImageData image, int stride, boolean adopt) {
+	int width = image.width, height = image.height;
+	PaletteData palette = image.palette;
+	boolean hasAlpha = image.transparentPixel != -1 || image.alpha != -1 || image.maskData != null || image.alphaData != null;
 	int oa = 0, or = 0, og = 0, ob = 0;
 	int redMask, greenMask, blueMask, destDepth = 32, destOrder;
 	if (OS.BIG_ENDIAN) {
@@ -1415,8 +1535,18 @@ void init(ImageData image) {
 		blueMask = 0xFF;
 		destOrder = ImageData.LSB_FIRST;
 	}
+	/*
+	* The pixels are used as they are when they have the layout of the
+	* surface. They are modified when the alpha is applied, in which case
+	* they are copied unless the image data is adopted.
+	*/
+	PaletteData surfacePalette = getSurfacePalette();
+	boolean surfaceLayout = palette.isDirect && image.depth == destDepth && stride == image.bytesPerLine &&
+		palette.redMask == surfacePalette.redMask && palette.greenMask == surfacePalette.greenMask && palette.blueMask == surfacePalette.blueMask;
 	byte[] buffer = image.data;
-	if (!palette.isDirect || image.depth != destDepth || stride != image.bytesPerLine || palette.redMask != redMask || palette.greenMask != greenMask || palette.blueMask != blueMask || destOrder != image.getByteOrder()) {
+	if (surfaceLayout) {
+		if (hasAlpha && !adopt) buffer = image.data.clone();
+	} else {
 		buffer = new byte[stride * height];
 		if (palette.isDirect) {
 			ImageData.blit(ImageData.BLIT_SRC,
@@ -1444,22 +1574,7 @@ void init(ImageData image) {
 				false, false);
 		}
 	}
-	boolean isIcon = image.getTransparencyType() == SWT.TRANSPARENCY_MASK;
-	this.type = isIcon ? SWT.ICON : SWT.BITMAP;
-	if (isIcon || image.transparentPixel != -1) {
-		if (image.transparentPixel != -1) {
-			RGB rgb = null;
-			if (palette.isDirect) {
-				rgb = palette.getRGB(image.transparentPixel);
-			} else {
-				if (image.transparentPixel < palette.colors.length) {
-					rgb = palette.getRGB(image.transparentPixel);
-				}
-			}
-			if (rgb != null) {
-				transparentPixel = rgb.red << 16 | rgb.green << 8 | rgb.blue;
-			}
-		}
+	if (image.getTransparencyType() == SWT.TRANSPARENCY_MASK || image.transparentPixel != -1) {
 		ImageData mask = image.getTransparencyMask();
 		for (int y = 0, offset = 0; y < height; y++) {
 			for (int x=0; x<width; x++, offset += 4) {
@@ -1477,50 +1592,42 @@ void init(ImageData image) {
 				buffer[offset + ob] = (byte)b;
 			}
 		}
-	} else {
-		this.alpha = image.alpha;
-		if (image.alpha == -1 && image.alphaData != null) {
-			this.alphaData = new byte[image.alphaData.length];
-			System.arraycopy(image.alphaData, 0, this.alphaData, 0, alphaData.length);
-		}
-		if (this.alpha != -1) {
-			for (int y = 0, offset = 0; y < height; y++) {
-				for (int x=0; x<width; x++, offset += 4) {
-					int alpha = this.alpha;
-					/* pre-multiplied alpha */
-					int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
-					r = (r + (r >> 8)) >> 8;
-					int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
-					g = (g + (g >> 8)) >> 8;
-					int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
-					b = (b + (b >> 8)) >> 8;
-					buffer[offset + oa] = (byte)alpha;
-					buffer[offset + or] = (byte)r;
-					buffer[offset + og] = (byte)g;
-					buffer[offset + ob] = (byte)b;
-				}
+	} else if (image.alpha != -1) {
+		for (int y = 0, offset = 0; y < height; y++) {
+			for (int x=0; x<width; x++, offset += 4) {
+				int alpha = image.alpha;
+				/* pre-multiplied alpha */
+				int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
+				r = (r + (r >> 8)) >> 8;
+				int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
+				g = (g + (g >> 8)) >> 8;
+				int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
+				b = (b + (b >> 8)) >> 8;
+				buffer[offset + oa] = (byte)alpha;
+				buffer[offset + or] = (byte)r;
+				buffer[offset + og] = (byte)g;
+				buffer[offset + ob] = (byte)b;
 			}
-		} else if (this.alphaData != null) {
-			for (int y = 0, offset = 0; y < height; y++) {
-				for (int x=0; x<width; x++, offset += 4) {
-					int alpha = alphaData [y*width+x] & 0xFF;
-					/* pre-multiplied alpha */
-					int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
-					r = (r + (r >> 8)) >> 8;
-					int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
-					g = (g + (g >> 8)) >> 8;
-					int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
-					b = (b + (b >> 8)) >> 8;
-					buffer[offset + oa] = (byte)alpha;
-					buffer[offset + or] = (byte)r;
-					buffer[offset + og] = (byte)g;
-					buffer[offset + ob] = (byte)b;
-				}
+		}
+	} else if (image.alphaData != null) {
+		for (int y = 0, offset = 0; y < height; y++) {
+			for (int x=0; x<width; x++, offset += 4) {
+				int alpha = image.alphaData [y*width+x] & 0xFF;
+				/* pre-multiplied alpha */
+				int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
+				r = (r + (r >> 8)) >> 8;
+				int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
+				g = (g + (g >> 8)) >> 8;
+				int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
+				b = (b + (b >> 8)) >> 8;
+				buffer[offset + oa] = (byte)alpha;
+				buffer[offset + or] = (byte)r;
+				buffer[offset + og] = (byte)g;
+				buffer[offset + ob] = (byte)b;
 			}
 		}
 	}
-	C.memmove(data, buffer, stride * height);
-	Cairo.cairo_surface_mark_dirty(surface);
+	return buffer;
 }
 
 /**
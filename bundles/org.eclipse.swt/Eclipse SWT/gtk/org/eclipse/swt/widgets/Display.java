@@ -111,6 +111,7 @@ public class Display extends Device {
 	Widget [] gdkEventWidgets;
 	int [] dispatchEvents;
 	Event [] eventQueue;
+	int eventStart, eventCount;
 	long /*int*/ fds;
 	int allocated_nfds;
 	boolean wake;
@@ -183,9 +184,11 @@ public class Display extends Device {
 	Tray tray;
 	TrayItem currentTrayItem;
 
-	/* Timers */
-	int [] timerIds;
-	Runnable [] timerList;
+	/* Timers, run by a single GLib timeout at the deadline of the next timer */
+	TimerWheel timers;
+	long timerOrigin = System.nanoTime ();
+	long timerDeadline = Long.MAX_VALUE;
+	int timerId;
 	Callback timerCallback;
 	long /*int*/ timerProc;
 	Callback windowTimerCallback;
@@ -224,6 +227,15 @@ public class Display extends Device {
 	Object idleLock = new Object();
 	boolean idleNeeded;
 
+	/*
+	* The time in nanoseconds for which the pending async messages are run
+	* in one go, or 0 to run one message at a time. A budget lets a large
+	* backlog of messages clear in a few iterations of the main loop, while
+	* input and paint events are still handled between the batches.
+	*/
+	long asyncExecTimeBudget;
+	static final String ASYNC_EXEC_TIME_BUDGET_KEY = "org.eclipse.swt.internal.gtk.asyncExecTimeBudget"; //$NON-NLS-1$
+
 	/* GtkTreeView callbacks */
 	long /*int*/ cellDataProc;
 	Callback cellDataCallback;
@@ -844,6 +856,58 @@ public void asyncExec (Runnable runnable) {
 	}
 }
 
+/**
+ * Causes the <code>run()</code> method of the runnable to
+ * be invoked by the user-interface thread at the next
+ * reasonable opportunity, unless a runnable with the same
+ * key is still waiting to be run. In that case, the given
+ * runnable replaces the waiting runnable, which is not run,
+ * and is run instead of it at its place in the queue. The
+ * caller of this method continues to run in parallel, and is
+ * not notified when the runnable has completed.
+ * <p>
+ * This is useful when many updates of the same thing are posted
+ * faster than the user-interface thread runs them, and only the
+ * latest one matters. Keys are compared with <code>equals()</code>.
+ * The synchronizer of the receiver counts the merged and the
+ * executed runnables.
+ * </p><p>
+ * Note that at the time the runnable is invoked, widgets
+ * that have the receiver as their display may have been
+ * disposed. Therefore, it is necessary to check for this
+ * case inside the runnable before accessing the widget.
+ * </p>
+ *
+ * @param key the key of the runnable
+ * @param runnable code to run on the user-interface thread
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the key or the runnable is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the receiver has been disposed</li>
+ * </ul>
+ *
+ * @see #asyncExec(Runnable)
+ * @see Synchronizer#getMergedCount()
+ * @see Synchronizer#getExecutedCount()
+ *
+ * @since 3.107
+ */
+public void asyncExec (Object key, Runnable runnable) {
+	if (key == null || runnable == null) error (SWT.ERROR_NULL_ARGUMENT);
+	synchronized (Device.class) {
+		if (isDisposed ()) error (SWT.ERROR_DEVICE_DISPOSED);
+		synchronized (idleLock) {
+			if (idleNeeded && idleHandle == 0) {
+	 			//NOTE: calling unlocked function in OS
+				idleHandle = OS._g_idle_add (idleProc, 0);
+			}
+		}
+		synchronizer.asyncExec (key, runnable);
+	}
+}
+
 /**
  * Causes the system hardware to emit a short sound
  * (if it supports this capability).
@@ -1836,6 +1900,9 @@ public Object getData (String key) {
 	if (key.equals (GET_EMISSION_PROC_KEY)) {
 		return new LONG (emissionProc);
 	}
+	if (key.equals (ASYNC_EXEC_TIME_BUDGET_KEY)) {
+		return asyncExecTimeBudget != 0 ? Integer.valueOf ((int) (asyncExecTimeBudget / 1000000)) : null;
+	}
 	if (keys == null) return null;
 	for (int i=0; i<keys.length; i++) {
 		if (keys [i].equals (key)) return values [i];
@@ -4428,18 +4495,18 @@ void postEvent (Event event) {
 	* need to be synchronized.
 	*/
 	if (eventQueue == null) eventQueue = new Event [4];
-	int index = 0;
 	int length = eventQueue.length;
-	while (index < length) {
-		if (eventQueue [index] == null) break;
-		index++;
-	}
-	if (index == length) {
-		Event [] newQueue = new Event [length + 4];
-		System.arraycopy (eventQueue, 0, newQueue, 0, length);
+	if (eventCount == length) {
+		/* The queue is circular, unwrap the events when it grows */
+		Event [] newQueue = new Event [length * 2];
+		System.arraycopy (eventQueue, eventStart, newQueue, 0, length - eventStart);
+		System.arraycopy (eventQueue, 0, newQueue, length - eventStart, eventStart);
 		eventQueue = newQueue;
+		eventStart = 0;
+		length *= 2;
 	}
-	eventQueue [index] = event;
+	eventQueue [(eventStart + eventCount) & (length - 1)] = event;
+	eventCount++;
 }
 
 void putGdkEvents () {
@@ -4646,13 +4713,9 @@ void releaseDisplay () {
 	if (shellMapProcClosure != 0) OS.g_closure_unref (shellMapProcClosure);
 
 	/* Dispose the timer callback */
-	if (timerIds != null) {
-		for (int i=0; i<timerIds.length; i++) {
-			if (timerIds [i] != 0) OS.g_source_remove (timerIds [i]);
-		}
-	}
-	timerIds = null;
-	timerList = null;
+	if (timerId != 0) OS.g_source_remove (timerId);
+	timerId = 0;
+	timers = null;
 	timerProc = 0;
 	timerCallback.dispose ();
 	timerCallback = null;
@@ -4895,6 +4958,9 @@ Widget removeWidget (long /*int*/ handle) {
 }
 
 boolean runAsyncMessages (boolean all) {
+	if (!all && asyncExecTimeBudget != 0) {
+		return synchronizer.runAsyncMessagesUntil (System.nanoTime () + asyncExecTimeBudget);
+	}
 	return synchronizer.runAsyncMessages (all);
 }
 
@@ -4908,11 +4974,11 @@ boolean runDeferredEvents () {
 	while (eventQueue != null) {
 
 		/* Take an event off the queue */
-		Event event = eventQueue [0];
-		if (event == null) break;
-		int length = eventQueue.length;
-		System.arraycopy (eventQueue, 1, eventQueue, 0, --length);
-		eventQueue [length] = null;
+		if (eventCount == 0) break;
+		Event event = eventQueue [eventStart];
+		eventQueue [eventStart] = null;
+		eventStart = (eventStart + 1) & (eventQueue.length - 1);
+		eventCount--;
 
 		/* Run the event */
 		Widget widget = event.widget;
@@ -4933,6 +4999,7 @@ boolean runDeferredEvents () {
 
 	/* Clear the queue */
 	eventQueue = null;
+	eventStart = eventCount = 0;
 	return run;
 }
 
@@ -5178,6 +5245,13 @@ public void setData (String key, Object value) {
 		removeIdleProc ();
 		return;
 	}
+	if (key.equals (ASYNC_EXEC_TIME_BUDGET_KEY)) {
+		if (value == null || value instanceof Integer) {
+			int milliseconds = value != null ? ((Integer) value).intValue () : 0;
+			asyncExecTimeBudget = Math.max (0, milliseconds) * 1000000L;
+			return;
+		}
+	}
 
 	/* Remove the key/value pair */
 	if (value == null) {
@@ -5525,57 +5599,74 @@ public boolean sleep () {
 public void timerExec (int milliseconds, Runnable runnable) {
 	checkDevice ();
 	if (runnable == null) error (SWT.ERROR_NULL_ARGUMENT);
-	if (timerList == null) timerList = new Runnable [4];
-	if (timerIds == null) timerIds = new int [4];
-	int index = 0;
-	while (index < timerList.length) {
-		if (timerList [index] == runnable) break;
-		index++;
+	if (milliseconds < 0) {
+		if (timers != null && timers.cancel (runnable) && timers.isEmpty ()) setTimer (Long.MAX_VALUE);
+		return;
 	}
-	if (index != timerList.length) {
-		OS.g_source_remove (timerIds [index]);
-		timerList [index] = null;
-		timerIds [index] = 0;
-		if (milliseconds < 0) return;
-	} else {
-		if (milliseconds < 0) return;
-		index = 0;
-		while (index < timerList.length) {
-			if (timerList [index] == null) break;
-			index++;
-		}
-		if (index == timerList.length) {
-			Runnable [] newTimerList = new Runnable [timerList.length + 4];
-			System.arraycopy (timerList, 0, newTimerList, 0, timerList.length);
-			timerList = newTimerList;
-			int [] newTimerIds = new int [timerIds.length + 4];
-			System.arraycopy (timerIds, 0, newTimerIds, 0, timerIds.length);
-			timerIds = newTimerIds;
+	long time = timerTime ();
+	if (timers == null) timers = new TimerWheel (time);
+	long deadline = timers.schedule (runnable, time + milliseconds);
+	if (deadline < timerDeadline) setTimer (deadline);
+}
+
+/*
+ * Answer the time of the timers, in milliseconds since the display was created.
+ */
+long timerTime () {
+	return (System.nanoTime () - timerOrigin) / 1000000;
+}
+
+/*
+ * Run timerProc at the given time of the timers, or never when the time
+ * is Long.MAX_VALUE, replacing the GLib timeout of the previous time.
+ */
+void setTimer (long deadline) {
+	if (timerId != 0) OS.g_source_remove (timerId);
+	timerId = 0;
+	timerDeadline = Long.MAX_VALUE;
+	if (deadline == Long.MAX_VALUE) return;
+	long delay = Math.max (0, deadline - timerTime ());
+	timerId = OS.g_timeout_add ((int) Math.min (delay, Integer.MAX_VALUE), timerProc, 0);
+	if (timerId != 0) timerDeadline = deadline;
+}
+
+long /*int*/ timerProc (long /*int*/ data) {
+	if (timers == null) return 0;
+	/*
+	* GLib may run the timeout in the millisecond before the deadline,
+	* as its clock is not read at the same moment as the clock of the
+	* timers. Run the timers up to the deadline in that case.
+	*/
+	long time = timerTime ();
+	if (timerDeadline != Long.MAX_VALUE) time = Math.max (time, timerDeadline);
+	timerId = 0;
+	timerDeadline = Long.MAX_VALUE;
+	timers.advance (time);
+	/*
+	* Run all the timers that are due. Timers that are scheduled by the
+	* runnables are never due before the next call.
+	*/
+	Runnable runnable;
+	while (timers != null && (runnable = timers.poll ()) != null) {
+		/*
+		* Keep the timeout armed for the other timers while the runnable
+		* runs, so that they still run when it runs a nested event loop,
+		* such as a modal dialog.
+		*/
+		long next = timers.nextTime ();
+		if (next < timerDeadline) setTimer (next);
+		try {
+			runnable.run ();
+		} catch (RuntimeException exception) {
+			runtimeExceptionHandler.accept (exception);
+		} catch (Error exception) {
+			errorHandler.accept (exception);
 		}
 	}
-	int timerId = OS.g_timeout_add (milliseconds, timerProc, index);
-	if (timerId != 0) {
-		timerIds [index] = timerId;
-		timerList [index] = runnable;
-	}
-}
-
-long /*int*/ timerProc (long /*int*/ i) {
-	if (timerList == null) return 0;
-	int index = (int)/*64*/i;
-	if (0 <= index && index < timerList.length) {
-		Runnable runnable = timerList [index];
-		timerList [index] = null;
-		timerIds [index] = 0;
-		if (runnable != null) {
-			try {
-				runnable.run ();
-			} catch (RuntimeException exception) {
-				runtimeExceptionHandler.accept (exception);
-			} catch (Error exception) {
-				errorHandler.accept (exception);
-			}
-		}
+	/* Move the timeout to the next timer, it may still be armed for a timer that has run */
+	if (timers != null) {
+		long next = timers.nextTime ();
+		if (next != timerDeadline) setTimer (next);
 	}
 	return 0;
 }
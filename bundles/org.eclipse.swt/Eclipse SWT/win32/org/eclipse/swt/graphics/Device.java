@@ -52,6 +52,9 @@ public abstract class Device implements Drawable {
 	/* System Font */
 	Font systemFont;
 
+	/* Shared images */
+	ImagePool imagePool;
+
 	/* Font Enumeration */
 	int nFonts = 256;
 	LOGFONT [] logFonts;
@@ -939,6 +942,10 @@ void printErrors () {
  * @see #destroy
  */
 protected void release () {
+	/* Dispose the shared images */
+	if (imagePool != null) imagePool.dispose();
+	imagePool = null;
+
 	if (gdipToken != null) {
 		if (fontCollection != 0) {
 			Gdip.PrivateFontCollection_delete(fontCollection);
@@ -634,8 +634,7 @@ public Image (Device device, String filename) {
 	super(device);
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	currentDeviceZoom = DPIUtil.getDeviceZoom ();
-	ImageData data = DPIUtil.autoScaleUp(device, new ImageData(filename));
-	init(data);
+	init(getImageData(filename, 100, currentDeviceZoom));
 	init();
 }
 
@@ -676,10 +675,9 @@ public Image(Device device, ImageFileNameProvider imageFileNameProvider) {
 	String fileName = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, currentDeviceZoom, found);
 	if (found[0]) {
 		initNative (fileName);
-		if (this.handle == 0) init(new ImageData (fileName));
+		if (this.handle == 0) init(getImageData(fileName, currentDeviceZoom, currentDeviceZoom));
 	} else {
-		ImageData resizedData = DPIUtil.autoScaleUp (device, new ImageData (fileName));
-		init(resizedData);
+		init(getImageData(fileName, 100, currentDeviceZoom));
 	}
 	init();
 }
@@ -717,14 +715,7 @@ public Image(Device device, ImageDataProvider imageDataProvider) {
 	super(device);
 	this.imageDataProvider = imageDataProvider;
 	currentDeviceZoom = DPIUtil.getDeviceZoom ();
-	boolean[] found = new boolean[1];
-	ImageData data =  DPIUtil.validateAndGetImageDataAtZoom(imageDataProvider, currentDeviceZoom, found);
-	if (found[0]) {
-		init(data);
-	} else {
-		ImageData resizedData = DPIUtil.autoScaleUp(device, data);
-		init (resizedData);
-	}
+	init(getImageData(imageDataProvider, currentDeviceZoom));
 	init();
 }
 
@@ -745,15 +736,14 @@ boolean refreshImageForZoom () {
 				/* Release current native resources */
 				destroy ();
 				initNative(filename);
-				if (this.handle == 0) init(new ImageData (filename));
+				if (this.handle == 0) init(getImageData(filename, deviceZoomLevel, deviceZoomLevel));
 				init();
 				refreshed = true;
 			}
 			if (!found[0]) {
 				/* Release current native resources */
 				destroy ();
-				ImageData resizedData = DPIUtil.autoScaleUp (device, new ImageData (filename));
-				init(resizedData);
+				init(getImageData(filename, 100, deviceZoomLevel));
 				init ();
 				refreshed = true;
 			}
@@ -761,24 +751,12 @@ boolean refreshImageForZoom () {
 		}
 	} else if (imageDataProvider != null) {
 		if (deviceZoomLevel != currentDeviceZoom) {
-			boolean[] found = new boolean[1];
-			ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, deviceZoomLevel, found);
-			/* Avoid re-creating the fall-back image, when current zoom is already 100% */
-			if (found[0] || currentDeviceZoom != 100) {
-				/* Release current native resources */
-				destroy ();
-				init(data);
-				init();
-				refreshed = true;
-			}
-			if (!found[0]) {
-				/* Release current native resources */
-				destroy ();
-				ImageData resizedData = DPIUtil.autoScaleUp (device, data);
-				init(resizedData);
-				init();
-				refreshed = true;
-			}
+			ImageData data = getImageData(imageDataProvider, deviceZoomLevel);
+			/* Release current native resources */
+			destroy ();
+			init(data);
+			init();
+			refreshed = true;
 			currentDeviceZoom = deviceZoomLevel;
 		}
 	} else {
@@ -795,6 +773,39 @@ boolean refreshImageForZoom () {
 	return refreshed;
 }
 
+/**
+ * Answer the image data of the file at the given zoom, scaled from
+ * the zoom of the file. When there is a default image data cache, the
+ * answer comes from the cache and must not be modified.
+ */
+ImageData getImageData(String filename, int fileZoom, int zoom) {
+	ImageDataCache cache = ImageDataCache.getDefault();
+	ImageData data = cache != null ? cache.get(filename, fileZoom, zoom) : null;
+	if (data == null) {
+		data = DPIUtil.autoScaleImageData(device, new ImageData(filename), zoom, fileZoom);
+		if (cache != null) cache.put(filename, fileZoom, zoom, data);
+	}
+	return data;
+}
+
+/**
+ * Answer the image data of the provider at the given zoom, scaled from
+ * the image data at 100% zoom when the provider has none at that zoom.
+ * When there is a default image data cache, the answer comes from the
+ * cache and must not be modified.
+ */
+ImageData getImageData(ImageDataProvider provider, int zoom) {
+	ImageDataCache cache = ImageDataCache.getDefault();
+	ImageData data = cache != null ? cache.get(provider, zoom, zoom) : null;
+	if (data == null) {
+		boolean[] found = new boolean[1];
+		data = DPIUtil.validateAndGetImageDataAtZoom(provider, zoom, found);
+		if (!found[0]) data = DPIUtil.autoScaleImageData(device, data, zoom, 100);
+		if (cache != null) cache.put(provider, zoom, zoom, data);
+	}
+	return data;
+}
+
 void initNative(String filename) {
 	boolean gdip = true;
 	try {
@@ -1362,23 +1373,14 @@ public ImageData getImageData (int zoom) {
 	if (zoom == currentDeviceZoom) {
 		return getImageDataAtCurrentZoom();
 	} else if (imageDataProvider != null) {
-		boolean[] found = new boolean[1];
-		ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, zoom, found);
-		// exact image found
-		if (found[0]) {
-			return data;
-		}
-		// AutoScale the image at 100% zoom
-		return DPIUtil.autoScaleUp (device, data);
+		ImageData data = getImageData(imageDataProvider, zoom);
+		return ImageDataCache.getDefault() != null ? (ImageData) data.clone() : data;
 	} else if (imageFileNameProvider != null) {
 		boolean[] found = new boolean[1];
 		String fileName = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, zoom, found);
-		// exact image found
-		if (found[0]) {
-			return new ImageData (fileName);
-		}
-		// AutoScale the image at 100% zoom
-		return DPIUtil.autoScaleUp (device, new ImageData (fileName));
+		// exact image found, or the image at 100% zoom auto-scaled
+		ImageData data = getImageData(fileName, found[0] ? zoom : 100, zoom);
+		return ImageDataCache.getDefault() != null ? (ImageData) data.clone() : data;
 	} else {
 		return DPIUtil.autoScaleImageData (device, getImageDataAtCurrentZoom (), zoom, currentDeviceZoom);
 	}
@@ -1733,6 +1735,8 @@ static long /*int*/ createDIB(int width, int height, int depth) {
 }
 
 static long /*int*/ [] init(Device device, Image image, ImageData i) {
+	/* The pixels of the image data must be on the heap */
+	if (i.buffer != null) i = i.getBand(0, i.height);
 	/* Windows does not support 2-bit images. Convert to 4-bit image. */
 	if (i.depth == 2) {
 		ImageData img = new ImageData(i.width, i.height, 4, i.palette);
@@ -1906,6 +1910,8 @@ static long /*int*/ [] init(Device device, Image image, ImageData i) {
 }
 
 static long /*int*/ [] init(Device device, Image image, ImageData source, ImageData mask) {
+	/* The pixels of the image data must be on the heap */
+	if (source.buffer != null) source = source.getBand(0, source.height);
 	/* Create a temporary image and locate the black pixel */
 	ImageData imageData;
 	int blackIndex = 0;
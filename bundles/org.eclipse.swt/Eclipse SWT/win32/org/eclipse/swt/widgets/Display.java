@@ -118,6 +118,7 @@ public class Display extends Device {
 
 	/* Windows and Events */
 	Event [] eventQueue;
+	int eventStart, eventCount;
 	Callback windowCallback;
 	long /*int*/ windowProc;
 	int threadId;
@@ -688,6 +689,52 @@ public void asyncExec (Runnable runnable) {
 	}
 }
 
+/**
+ * Causes the <code>run()</code> method of the runnable to
+ * be invoked by the user-interface thread at the next
+ * reasonable opportunity, unless a runnable with the same
+ * key is still waiting to be run. In that case, the given
+ * runnable replaces the waiting runnable, which is not run,
+ * and is run instead of it at its place in the queue. The
+ * caller of this method continues to run in parallel, and is
+ * not notified when the runnable has completed.
+ * <p>
+ * This is useful when many updates of the same thing are posted
+ * faster than the user-interface thread runs them, and only the
+ * latest one matters. Keys are compared with <code>equals()</code>.
+ * The synchronizer of the receiver counts the merged and the
+ * executed runnables.
+ * </p><p>
+ * Note that at the time the runnable is invoked, widgets
+ * that have the receiver as their display may have been
+ * disposed. Therefore, it is necessary to check for this
+ * case inside the runnable before accessing the widget.
+ * </p>
+ *
+ * @param key the key of the runnable
+ * @param runnable code to run on the user-interface thread
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the key or the runnable is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the receiver has been disposed</li>
+ * </ul>
+ *
+ * @see #asyncExec(Runnable)
+ * @see Synchronizer#getMergedCount()
+ * @see Synchronizer#getExecutedCount()
+ *
+ * @since 3.107
+ */
+public void asyncExec (Object key, Runnable runnable) {
+	if (key == null || runnable == null) error (SWT.ERROR_NULL_ARGUMENT);
+	synchronized (Device.class) {
+		if (isDisposed ()) error (SWT.ERROR_DEVICE_DISPOSED);
+		synchronizer.asyncExec (key, runnable);
+	}
+}
+
 /**
  * Causes the system hardware to emit a short sound
  * (if it supports this capability).
@@ -3494,18 +3541,18 @@ void postEvent (Event event) {
 	* need to be synchronized.
 	*/
 	if (eventQueue == null) eventQueue = new Event [4];
-	int index = 0;
 	int length = eventQueue.length;
-	while (index < length) {
-		if (eventQueue [index] == null) break;
-		index++;
-	}
-	if (index == length) {
-		Event [] newQueue = new Event [length + 4];
-		System.arraycopy (eventQueue, 0, newQueue, 0, length);
+	if (eventCount == length) {
+		/* The queue is circular, unwrap the events when it grows */
+		Event [] newQueue = new Event [length * 2];
+		System.arraycopy (eventQueue, eventStart, newQueue, 0, length - eventStart);
+		System.arraycopy (eventQueue, 0, newQueue, length - eventStart, eventStart);
 		eventQueue = newQueue;
+		eventStart = 0;
+		length *= 2;
 	}
-	eventQueue [index] = event;
+	eventQueue [(eventStart + eventCount) & (length - 1)] = event;
+	eventCount++;
 }
 
 /**
@@ -3932,11 +3979,11 @@ boolean runDeferredEvents () {
 	while (eventQueue != null) {
 
 		/* Take an event off the queue */
-		Event event = eventQueue [0];
-		if (event == null) break;
-		int length = eventQueue.length;
-		System.arraycopy (eventQueue, 1, eventQueue, 0, --length);
-		eventQueue [length] = null;
+		if (eventCount == 0) break;
+		Event event = eventQueue [eventStart];
+		eventQueue [eventStart] = null;
+		eventStart = (eventStart + 1) & (eventQueue.length - 1);
+		eventCount--;
 
 		/* Run the event */
 		Widget widget = event.widget;
@@ -3957,6 +4004,7 @@ boolean runDeferredEvents () {
 
 	/* Clear the queue */
 	eventQueue = null;
+	eventStart = eventCount = 0;
 	return run;
 }
 
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of decoding an animated GIF of <code>frames</code> images, sequentially
+ * and with <code>ImageLoader.parallel</code>, and of playing the decoded
+ * animation once through <code>ImageLoader.getCompositedFrame()</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GIFAnimationBenchmark {
+
+	@Param({"8", "64", "256"})
+	public int frames;
+
+	@Param({"320", "1024"})
+	public int size;
+
+	byte[] encoded;
+	ImageLoader player;
+
+@Setup
+public void setup() {
+	ImageData[] images = new ImageData[frames];
+	for (int i = 0; i < frames; i++) {
+		ImageData image = ImageSamples.create(size, size, 8);
+		image.disposalMethod = i % 3 == 0 ? SWT.DM_FILL_BACKGROUND : SWT.DM_FILL_NONE;
+		image.delayTime = 5;
+		images[i] = image;
+	}
+	ImageLoader loader = new ImageLoader();
+	loader.data = images;
+	loader.logicalScreenWidth = size;
+	loader.logicalScreenHeight = size;
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	loader.save(stream, SWT.IMAGE_GIF);
+	encoded = stream.toByteArray();
+	player = new ImageLoader();
+	player.load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public ImageData[] sequentialDecode() {
+	return new ImageLoader().load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public ImageData[] parallelDecode() {
+	ImageLoader loader = new ImageLoader();
+	loader.parallel = true;
+	return loader.load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public ImageData play() {
+	ImageData frame = null;
+	for (int i = 0; i < frames; i++) {
+		frame = player.getCompositedFrame(i);
+	}
+	return frame;
+}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Decode and encode cost of every codec over a sweep of image sizes and bit
+ * depths. The images are synthesized once per trial by {@link ImageSamples},
+ * so the sweep is not limited by the sample images in the test bundle.
+ * <p>
+ * The <code>image</code> parameter is <code>format-depth</code>; only the
+ * combinations that the respective encoder can write are listed. Use
+ * <code>-p size=4096</code> to add larger sizes and <code>-prof gc</code> to
+ * measure the allocation per image.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageCodecSweepBenchmark {
+
+	@Param({
+		"png-8", "png-24", "png-32",
+		"jpeg-24",
+		"gif-8",
+		"bmp-8", "bmp-24", "bmp-32",
+		"tiff-8", "tiff-24"
+	})
+	public String image;
+
+	@Param({"64", "512", "2048"})
+	public int size;
+
+	ImageData source;
+	byte[] encoded;
+	int format;
+
+@Setup
+public void setup() {
+	int separator = image.indexOf('-');
+	format = ImageSamples.format(image.substring(0, separator));
+	int depth = Integer.parseInt(image.substring(separator + 1));
+	source = ImageSamples.create(size, size, depth);
+	encoded = ImageSamples.encode(source, format);
+}
+
+@Benchmark
+public ImageData[] decode() {
+	return new ImageLoader().load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public int encode() {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {source};
+	ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length + 1024);
+	loader.save(out, format);
+	return out.size();
+}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of the pixel conversions done by <code>ImageData.blit</code> when an
+ * <code>Image</code> is created from, or converted to, an
+ * <code>ImageData</code>: 32 bit to 24 bit direct, 8 bit palette to 32 bit
+ * direct, merging a separate alpha channel into the destination, and a
+ * straight copy. The package private <code>blit</code> methods are called
+ * through reflection, which is negligible next to a <code>size</code> x
+ * <code>size</code> conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageDataBlitBenchmark {
+
+	@Param({"256", "1024", "2048"})
+	public int size;
+
+	/* Mirrors ImageData */
+	static final int BLIT_SRC = 1;
+	static final int BLIT_ALPHA = 2;
+	static final int ALPHA_OPAQUE = 255;
+	static final int ALPHA_CHANNEL_SEPARATE = -1;
+	static final int MSB_FIRST = 1;
+	static final int LSB_FIRST = 0;
+
+	Method directBlit, paletteBlit;
+	byte[] source32, source8, alpha, dest24, dest32;
+	byte[] reds, greens, blues;
+
+@Setup
+public void setup() throws Exception {
+	Class<?> clazz = ImageData.class;
+	directBlit = clazz.getDeclaredMethod("blit", int.class,
+		byte[].class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class,
+		int.class, byte[].class, int.class, int.class, int.class,
+		byte[].class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class,
+		boolean.class, boolean.class);
+	directBlit.setAccessible(true);
+	paletteBlit = clazz.getDeclaredMethod("blit", int.class,
+		byte[].class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, byte[].class, byte[].class, byte[].class,
+		int.class, byte[].class, int.class, int.class, int.class,
+		byte[].class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class,
+		boolean.class, boolean.class);
+	paletteBlit.setAccessible(true);
+	Random random = new Random(0);
+	source32 = new byte[size * size * 4];
+	source8 = new byte[size * size];
+	alpha = new byte[size * size];
+	random.nextBytes(source32);
+	random.nextBytes(source8);
+	random.nextBytes(alpha);
+	dest24 = new byte[size * size * 3];
+	dest32 = new byte[size * size * 4];
+	reds = new byte[256];
+	greens = new byte[256];
+	blues = new byte[256];
+	random.nextBytes(reds);
+	random.nextBytes(greens);
+	random.nextBytes(blues);
+}
+
+@Benchmark
+public byte[] direct32To24() throws Exception {
+	directBlit.invoke(null, BLIT_SRC,
+		source32, 32, size * 4, MSB_FIRST, 0, 0, size, size, 0xFF00, 0xFF0000, 0xFF000000,
+		ALPHA_OPAQUE, null, 0, 0, 0,
+		dest24, 24, size * 3, MSB_FIRST, 0, 0, size, size, 0xFF0000, 0xFF00, 0xFF,
+		false, false);
+	return dest24;
+}
+
+@Benchmark
+public byte[] palette8To32() throws Exception {
+	paletteBlit.invoke(null, BLIT_SRC,
+		source8, 8, size, MSB_FIRST, 0, 0, size, size, reds, greens, blues,
+		ALPHA_OPAQUE, null, 0, 0, 0,
+		dest32, 32, size * 4, LSB_FIRST, 0, 0, size, size, 0xFF0000, 0xFF00, 0xFF,
+		false, false);
+	return dest32;
+}
+
+@Benchmark
+public byte[] alphaMerge() throws Exception {
+	directBlit.invoke(null, BLIT_SRC | BLIT_ALPHA,
+		source32, 32, size * 4, MSB_FIRST, 0, 0, size, size, 0xFF00, 0xFF0000, 0xFF000000,
+		ALPHA_CHANNEL_SEPARATE, alpha, size, 0, 0,
+		dest32, 32, size * 4, LSB_FIRST, 0, 0, size, size, 0xFF0000, 0xFF00, 0xFF,
+		false, false);
+	return dest32;
+}
+
+@Benchmark
+public byte[] copy32() throws Exception {
+	directBlit.invoke(null, BLIT_SRC,
+		source32, 32, size * 4, MSB_FIRST, 0, 0, size, size, 0xFF00, 0xFF0000, 0xFF000000,
+		ALPHA_OPAQUE, null, 0, 0, 0,
+		dest32, 32, size * 4, MSB_FIRST, 0, 0, size, size, 0xFF00, 0xFF0000, 0xFF000000,
+		false, false);
+	return dest32;
+}
+}
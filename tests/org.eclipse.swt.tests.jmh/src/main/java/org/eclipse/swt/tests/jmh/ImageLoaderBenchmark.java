@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Decode and encode throughput of <code>ImageLoader</code> on the sample
+ * images used by the JUnit tests. The images are small icons, so this
+ * mostly measures per-image overhead (format detection, header parsing,
+ * table setup). Run with <code>-prof gc</code> to get the allocation per
+ * image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageLoaderBenchmark {
+
+	@Param({
+		"folder.bmp", "target.bmp",
+		"folder.gif", "target.gif",
+		"folder.jpg", "target.jpg",
+		"folder.png", "target.png", "transparent.png", "collapseall@2x.png"
+	})
+	public String name;
+
+	byte[] bytes;
+	ImageLoader encoder;
+	int format;
+
+@Setup
+public void setup() throws IOException {
+	bytes = ImageSamples.read(name);
+	format = ImageSamples.format(name.substring(name.lastIndexOf('.') + 1));
+	encoder = new ImageLoader();
+	encoder.data = new ImageLoader().load(new ByteArrayInputStream(bytes));
+}
+
+@Benchmark
+public ImageData[] load() {
+	return new ImageLoader().load(new ByteArrayInputStream(bytes));
+}
+
+@Benchmark
+public int save() {
+	ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 2);
+	encoder.save(out, format);
+	return out.size();
+}
+}
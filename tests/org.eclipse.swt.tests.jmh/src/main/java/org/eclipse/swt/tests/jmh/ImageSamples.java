@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Sources of image data for the benchmarks: the sample images shipped with
+ * org.eclipse.swt.tests (copied to <code>data/</code> on the class path) and
+ * synthetic images of arbitrary size and depth. Nothing in here requires a
+ * <code>Display</code>.
+ */
+public final class ImageSamples {
+
+private ImageSamples() {
+}
+
+/**
+ * Returns the raw bytes of the named sample image.
+ */
+public static byte[] read(String name) throws IOException {
+	try (InputStream in = ImageSamples.class.getResourceAsStream("/data/" + name)) {
+		if (in == null) throw new FileNotFoundException(name);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+		return out.toByteArray();
+	}
+}
+
+/**
+ * Decodes the given bytes and returns the first image.
+ */
+public static ImageData decode(byte[] bytes) {
+	return new ImageLoader().load(new ByteArrayInputStream(bytes))[0];
+}
+
+/**
+ * Encodes the given image in the given <code>SWT.IMAGE_*</code> format.
+ */
+public static byte[] encode(ImageData image, int format) {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {image};
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	loader.save(out, format);
+	return out.toByteArray();
+}
+
+/**
+ * Maps a file extension or format name to its <code>SWT.IMAGE_*</code> constant.
+ */
+public static int format(String name) {
+	switch (name.toLowerCase(Locale.ROOT)) {
+		case "bmp": return SWT.IMAGE_BMP;
+		case "gif": return SWT.IMAGE_GIF;
+		case "ico": return SWT.IMAGE_ICO;
+		case "jpg":
+		case "jpeg": return SWT.IMAGE_JPEG;
+		case "png": return SWT.IMAGE_PNG;
+		case "tif":
+		case "tiff": return SWT.IMAGE_TIFF;
+	}
+	throw new IllegalArgumentException(name);
+}
+
+/**
+ * Creates a deterministic image of the given size and depth. The content is
+ * a mix of smooth gradients and noise so that the compressed size is
+ * representative of screenshots and photos rather than of flat fills.
+ * <p>
+ * Supported depths are 8 (256 colour palette), 24 (RGB) and 32 (RGB with an
+ * alpha channel). Rows are byte aligned, which every encoder accepts.
+ * </p>
+ */
+public static ImageData create(int width, int height, int depth) {
+	PaletteData palette;
+	switch (depth) {
+		case 8: {
+			RGB[] rgbs = new RGB[256];
+			for (int i = 0; i < rgbs.length; i++) {
+				rgbs[i] = new RGB((i & 0xE0), (i & 0x1C) << 3, (i & 0x03) << 6);
+			}
+			palette = new PaletteData(rgbs);
+			break;
+		}
+		case 24: palette = new PaletteData(0xFF0000, 0xFF00, 0xFF); break;
+		case 32: palette = new PaletteData(0xFF00, 0xFF0000, 0xFF000000); break;
+		default: throw new IllegalArgumentException("depth " + depth);
+	}
+	ImageData image = new ImageData(width, height, depth, palette, 1, new byte[((width * depth + 7) / 8) * height]);
+	Random random = new Random(width * 31L + height * 17L + depth);
+	int[] row = new int[width];
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int noise = random.nextInt(16);
+			int r = (x * 255 / Math.max(1, width - 1) + noise) & 0xFF;
+			int g = (y * 255 / Math.max(1, height - 1) + noise) & 0xFF;
+			int b = ((x ^ y) + noise) & 0xFF;
+			if (depth == 8) {
+				row[x] = (r & 0xE0) | ((g >> 3) & 0x1C) | (b >> 6);
+			} else {
+				row[x] = palette.getPixel(new RGB(r, g, b));
+			}
+		}
+		image.setPixels(0, y, width, row, 0);
+	}
+	if (depth == 32) {
+		byte[] alphaData = new byte[width * height];
+		for (int y = 0, i = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, i++) {
+				alphaData[i] = (byte) (255 - (x * 255 / Math.max(1, width - 1)) / 2);
+			}
+		}
+		image.alphaData = alphaData;
+	}
+	return image;
+}
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of producing a JPEG thumbnail of <code>thumbnail</code> pixels from a
+ * <code>size</code> x <code>size</code> image, either by decoding the full image
+ * and scaling it with <code>ImageData.scaledTo()</code>, or by setting the
+ * <code>ImageLoader</code> target size hint so that the decoder reduces the
+ * image in the DCT domain before the final <code>scaledTo()</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JPEGThumbnailBenchmark {
+
+	@Param({"2048", "4096"})
+	public int size;
+
+	@Param({"128", "256", "1024"})
+	public int thumbnail;
+
+	byte[] encoded;
+
+@Setup
+public void setup() {
+	encoded = ImageSamples.encode(ImageSamples.create(size, size, 24), SWT.IMAGE_JPEG);
+}
+
+@Benchmark
+public ImageData fullDecode() {
+	ImageData data = new ImageLoader().load(new ByteArrayInputStream(encoded))[0];
+	return data.scaledTo(thumbnail, thumbnail);
+}
+
+@Benchmark
+public ImageData targetSize() {
+	ImageLoader loader = new ImageLoader();
+	loader.targetWidth = thumbnail;
+	loader.targetHeight = thumbnail;
+	ImageData data = loader.load(new ByteArrayInputStream(encoded))[0];
+	return data.scaledTo(thumbnail, thumbnail);
+}
+}
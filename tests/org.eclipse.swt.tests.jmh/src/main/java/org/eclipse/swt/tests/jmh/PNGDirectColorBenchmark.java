@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of saving a direct color image as PNG for each pixel layout, with
+ * the same colors in every layout. The rows of the layouts whose masks
+ * select whole bytes are built from the scanlines of the image, the
+ * <code>shifted</code> layout has 10-bit channels that are not byte
+ * aligned and takes the path that decodes every pixel, as all layouts
+ * did before. Compression levels 0 and 1 show the cost of building and
+ * filtering the rows rather than the cost of deflate.
+ * <p>
+ * To compare with an older tree, run the benchmark in both trees with
+ * <code>-rf json</code> and compare the results.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PNGDirectColorBenchmark {
+
+	@Param({"rgb-24", "bgr-24", "rgb-32", "bgra-32", "bgra-32-alpha", "bgra-32-buffer", "shifted-32"})
+	public String layout;
+
+	@Param({"1024", "3840"})
+	public int size;
+
+	@Param({"0", "1"})
+	public int compression;
+
+	ImageData source;
+
+@Setup
+public void setup() {
+	PaletteData palette;
+	int depth;
+	switch (layout) {
+		case "rgb-24": palette = new PaletteData(0xFF0000, 0xFF00, 0xFF); depth = 24; break;
+		case "bgr-24": palette = new PaletteData(0xFF, 0xFF00, 0xFF0000); depth = 24; break;
+		case "rgb-32": palette = new PaletteData(0xFF0000, 0xFF00, 0xFF); depth = 32; break;
+		case "shifted-32": palette = new PaletteData(0x3FF00000, 0xFFC00, 0x3FF); depth = 32; break;
+		default: palette = new PaletteData(0xFF00, 0xFF0000, 0xFF000000); depth = 32; break;
+	}
+	ImageData sample = ImageSamples.create(size, size, 24);
+	ImageData image = new ImageData(size, size, depth, palette);
+	int[] pixels = new int[size];
+	for (int y = 0; y < size; y++) {
+		sample.getPixels(0, y, size, pixels, 0);
+		for (int x = 0; x < size; x++) {
+			pixels[x] = palette.getPixel(sample.palette.getRGB(pixels[x]));
+		}
+		image.setPixels(0, y, size, pixels, 0);
+	}
+	if (layout.endsWith("-alpha")) {
+		image.alphaData = new byte[size * size];
+		for (int i = 0; i < image.alphaData.length; i++) {
+			image.alphaData[i] = (byte) (255 - (i % size) * 255 / size / 2);
+		}
+	}
+	if (layout.endsWith("-buffer")) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(image.data.length);
+		buffer.put(image.data);
+		image = new ImageData(size, size, depth, palette, image.scanlinePad, buffer, 0);
+	}
+	source = image;
+}
+
+@Benchmark
+public int encode() {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {source};
+	loader.compression = compression;
+	ByteArrayOutputStream out = new ByteArrayOutputStream(size * size * 4);
+	loader.save(out, SWT.IMAGE_PNG);
+	return out.size();
+}
+}
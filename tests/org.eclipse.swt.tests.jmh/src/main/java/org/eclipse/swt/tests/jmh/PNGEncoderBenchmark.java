@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of saving a <code>size</code> x <code>size</code> PNG image at each
+ * <code>ImageLoader.compression</code> level, on a single thread and with
+ * <code>ImageLoader.parallel</code>. The encoded size is reported through
+ * the return value, use <code>-prof gc</code> to see the allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PNGEncoderBenchmark {
+
+	@Param({"24", "32"})
+	public int depth;
+
+	@Param({"1024", "4096"})
+	public int size;
+
+	@Param({"1", "2", "3"})
+	public int compression;
+
+	ImageData source;
+
+@Setup
+public void setup() {
+	source = ImageSamples.create(size, size, depth);
+}
+
+int encode(boolean parallel) {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {source};
+	loader.compression = compression;
+	loader.parallel = parallel;
+	ByteArrayOutputStream out = new ByteArrayOutputStream(size * size);
+	loader.save(out, SWT.IMAGE_PNG);
+	return out.size();
+}
+
+@Benchmark
+public int singleThread() {
+	return encode(false);
+}
+
+@Benchmark
+public int parallel() {
+	return encode(true);
+}
+}
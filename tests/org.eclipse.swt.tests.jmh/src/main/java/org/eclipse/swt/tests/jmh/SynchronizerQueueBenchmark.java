@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.jmh;
+
+import java.util.concurrent.*;
+
+import org.eclipse.swt.internal.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of passing asynchronous messages from producer threads to the
+ * user-interface thread through the message queue of <code>Synchronizer</code>.
+ * In each invocation, the producers add {@value #MESSAGES} messages between
+ * them while the benchmark thread, which plays the user-interface thread,
+ * removes them, so the result is the time per message with the given number
+ * of producers competing for the queue.
+ * <p>
+ * The <code>lock-free</code> queue is the <code>SingleConsumerQueue</code>
+ * used by <code>Synchronizer</code>. The <code>locked-array</code> queue is
+ * the queue that <code>Synchronizer</code> used before: an array guarded by
+ * a monitor, which grows by 4 elements and is shifted on every removal.
+ * The lock on <code>Device.class</code> that <code>Display.asyncExec</code>
+ * takes around adding a message is not included.
+ * </p><p>
+ * Results with more producers than processors mostly measure the scheduler.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SynchronizerQueueBenchmark {
+
+	/** The number of messages in an invocation, divisible by every producer count */
+	public static final int MESSAGES = 10240;
+
+	@Param({"lock-free", "locked-array"})
+	public String queue;
+
+	@Param({"1", "4", "16", "64"})
+	public int producers;
+
+	MessageQueue messages;
+	CyclicBarrier start;
+	Thread[] threads;
+
+	interface MessageQueue {
+		void add(Object message);
+		Object poll();
+	}
+
+	static final class LockFreeQueue implements MessageQueue {
+		final SingleConsumerQueue<Object> queue = new SingleConsumerQueue<>();
+
+		@Override
+		public void add(Object message) {
+			queue.add(message);
+		}
+
+		@Override
+		public Object poll() {
+			return queue.poll();
+		}
+	}
+
+	static final class LockedArrayQueue implements MessageQueue {
+		final Object lock = new Object();
+		Object[] messages;
+		int messageCount;
+
+		@Override
+		public void add(Object message) {
+			synchronized (lock) {
+				if (messages == null) messages = new Object[4];
+				if (messageCount == messages.length) {
+					Object[] newMessages = new Object[messageCount + 4];
+					System.arraycopy(messages, 0, newMessages, 0, messageCount);
+					messages = newMessages;
+				}
+				messages[messageCount++] = message;
+			}
+		}
+
+		@Override
+		public Object poll() {
+			synchronized (lock) {
+				if (messageCount == 0) return null;
+				Object message = messages[0];
+				System.arraycopy(messages, 1, messages, 0, --messageCount);
+				messages[messageCount] = null;
+				if (messageCount == 0 && messages.length > 64) messages = null;
+				return message;
+			}
+		}
+	}
+
+@Setup
+public void setup() {
+	messages = queue.equals("lock-free") ? new LockFreeQueue() : new LockedArrayQueue();
+	start = new CyclicBarrier(producers + 1);
+	threads = new Thread[producers];
+	final int count = MESSAGES / producers;
+	for (int i = 0; i < producers; i++) {
+		threads[i] = new Thread(() -> {
+			Object message = new Object();
+			try {
+				while (true) {
+					start.await();
+					for (int j = 0; j < count; j++) {
+						messages.add(message);
+					}
+				}
+			} catch (InterruptedException | BrokenBarrierException e) {
+				/* The trial is over */
+			}
+		}, "Producer " + i);
+		threads[i].setDaemon(true);
+		threads[i].start();
+	}
+}
+
+@TearDown
+public void tearDown() throws InterruptedException {
+	for (Thread thread : threads) {
+		thread.interrupt();
+	}
+	for (Thread thread : threads) {
+		thread.join();
+	}
+}
+
+@Benchmark
+@OperationsPerInvocation(MESSAGES)
+public int transfer() throws InterruptedException, BrokenBarrierException {
+	start.await();
+	int received = 0;
+	while (received < MESSAGES) {
+		if (messages.poll() != null) {
+			received++;
+		} else {
+			Thread.yield();
+		}
+	}
+	return received;
+}
+}
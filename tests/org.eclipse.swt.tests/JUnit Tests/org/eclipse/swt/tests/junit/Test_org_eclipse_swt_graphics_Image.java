@@ -31,8 +31,10 @@ import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageDataCache;
 import org.eclipse.swt.graphics.ImageDataProvider;
 import org.eclipse.swt.graphics.ImageFileNameProvider;
+import org.eclipse.swt.graphics.ImagePool;
 import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Rectangle;
@@ -592,6 +594,143 @@ public void test_ConstructorLorg_eclipse_swt_graphics_Device_ImageDataProvider()
 	image.dispose();
 }
 
+@Test
+public void test_imageDataCache() {
+	try {
+		new ImageDataCache(-1);
+		fail("No exception thrown for negative maximum size");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for negative maximum size", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+	ImageDataCache cache = new ImageDataCache(1 << 20);
+	ImageDataCache.setDefault(cache);
+	try {
+		int[] calls = new int[1];
+		ImageDataProvider provider = zoom -> {
+			calls[0]++;
+			return imageDataProvider.getImageData(zoom);
+		};
+		for (int i = 0; i < 5; i++) {
+			new Image(display, provider).dispose();
+		}
+		int callsPerImage = calls[0];
+		assertTrue(callsPerImage > 0);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(4, cache.getHitCount());
+		assertTrue(cache.getSize() > 0 && cache.getSize() <= cache.getMaximumSize());
+
+		/* image data at another zoom is copied from the cache */
+		Image image = new Image(display, provider);
+		long misses = cache.getMissCount();
+		ImageData data = image.getImageData(200);
+		ImageData cached = image.getImageData(200);
+		image.dispose();
+		assertTrue(data != cached);
+		assertEquals(data.width, cached.width);
+		assertEquals(data.height, cached.height);
+		if (DPIUtil.getDeviceZoom() != 200) assertEquals(misses + 1, cache.getMissCount());
+
+		/* invalidated image data is obtained from the provider again */
+		calls[0] = 0;
+		cache.invalidate(provider);
+		new Image(display, provider).dispose();
+		assertEquals(callsPerImage, calls[0]);
+
+		/* image files are cached by file name */
+		long hits = cache.getHitCount();
+		for (int i = 0; i < 3; i++) {
+			new Image(display, getPath("collapseall.png")).dispose();
+		}
+		assertEquals(hits + 2, cache.getHitCount());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.getSize());
+	} finally {
+		ImageDataCache.setDefault(null);
+	}
+
+	/* image data larger than the cache is not kept */
+	cache = new ImageDataCache(0);
+	ImageDataCache.setDefault(cache);
+	try {
+		new Image(display, imageDataProvider).dispose();
+		new Image(display, imageDataProvider).dispose();
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.getSize());
+	} finally {
+		ImageDataCache.setDefault(null);
+	}
+}
+
+@Test
+public void test_imagePool() {
+	ImagePool pool = ImagePool.getPool(display);
+	assertTrue(pool == ImagePool.getPool(display));
+	try {
+		pool.acquire((String) null);
+		fail("No exception thrown for file name == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for file name == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	pool.evictUnused();
+	int count = pool.getImageCount();
+	long footprint = pool.getFootprint();
+
+	/* the users of a source share one image */
+	String fileName = getPath("collapseall.png");
+	Image image1 = pool.acquire(fileName);
+	Image image2 = pool.acquire(fileName);
+	assertTrue(image1 == image2);
+	assertEquals(2, pool.getReferenceCount(image1));
+	Image image3 = pool.acquireData(imageDataProvider);
+	Image image4 = pool.acquireFile(imageFileNameProvider);
+	assertTrue(image3 != image1 && image4 != image1 && image3 != image4);
+	assertTrue(image3 == pool.acquireData(imageDataProvider));
+	assertEquals(count + 3, pool.getImageCount());
+	assertTrue(pool.getFootprint() > footprint);
+
+	/* images with users are not evicted */
+	pool.release(image1);
+	pool.evictUnused();
+	assertFalse(image1.isDisposed());
+	assertEquals(1, pool.getReferenceCount(image1));
+	pool.release(image2);
+	assertFalse(image1.isDisposed());
+	assertEquals(0, pool.getReferenceCount(image1));
+	try {
+		pool.release(image1);
+		fail("No exception thrown for image without users");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for image without users", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+
+	/* an image without users is reused until it is evicted */
+	assertTrue(image1 == pool.acquire(fileName));
+	pool.release(image1);
+	pool.evictUnused();
+	assertTrue(image1.isDisposed());
+	assertFalse(image3.isDisposed());
+
+	/* images that are not from the pool cannot be released */
+	Image image = new Image(display, fileName);
+	try {
+		pool.release(image);
+		fail("No exception thrown for image not from the pool");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for image not from the pool", SWT.ERROR_INVALID_ARGUMENT, e);
+	} finally {
+		image.dispose();
+	}
+
+	pool.release(image3);
+	pool.release(image3);
+	pool.release(image4);
+	pool.evictUnused();
+	assertTrue(image3.isDisposed() && image4.isDisposed());
+	assertEquals(count, pool.getImageCount());
+}
+
 @Test
 public void test_equalsLjava_lang_Object() {
 	Image image = null;
@@ -22,6 +22,7 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -29,6 +30,7 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.internal.image.ImageResampler;
 import org.eclipse.swt.widgets.Display;
 import org.junit.Before;
 import org.junit.Test;
@@ -149,6 +151,54 @@ public void test_ConstructorIIILorg_eclipse_swt_graphics_PaletteDataI$B() {
 	}
 }
 
+@Test
+public void test_ConstructorIIILorg_eclipse_swt_graphics_PaletteDataILjava_nio_ByteBufferI() {
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	try {
+		new ImageData(2, 2, 24, palette, 4, null, 0);
+		fail("No exception thrown for buffer == null");
+	} catch (IllegalArgumentException e) {
+	}
+
+	try {
+		new ImageData(2, 2, 24, palette, 4, ByteBuffer.allocateDirect(15), 0);
+		fail("No exception thrown for buffer too small");
+	} catch (IllegalArgumentException e) {
+	}
+
+	try {
+		new ImageData(2, 2, 24, palette, 4, ByteBuffer.allocateDirect(16), 1);
+		fail("No exception thrown for buffer too small after offset");
+	} catch (IllegalArgumentException e) {
+	}
+
+	ByteBuffer buffer = ByteBuffer.allocateDirect(20);
+	buffer.put(4, (byte) 0x12);
+	buffer.put(5, (byte) 0x34);
+	buffer.put(6, (byte) 0x56);
+	imageData = new ImageData(2, 2, 24, palette, 4, buffer, 4);
+	assertNull(":a:", imageData.data);
+	assertEquals(":b:", 8, imageData.bytesPerLine);
+	assertEquals(":c:", 0x123456, imageData.getPixel(0, 0));
+
+	/* The pixels are stored in the shared buffer */
+	imageData.setPixel(1, 1, 0xABCDEF);
+	assertEquals(":d:", (byte) 0xAB, buffer.get(4 + 8 + 3));
+	int[] pixels = new int[4];
+	imageData.getPixels(0, 0, 4, pixels, 0);
+	assertArrayEquals(":e:", new int[] {0x123456, 0, 0, 0xABCDEF}, pixels);
+
+	ImageData scaled = imageData.scaledTo(-4, 4);
+	assertNotNull(":f:", scaled.buffer);
+	assertEquals(":g:", 0x123456, scaled.getPixel(3, 0));
+	assertEquals(":h:", 0xABCDEF, scaled.getPixel(0, 3));
+
+	ImageData clone = (ImageData) imageData.clone();
+	assertNotNull(":i:", clone.buffer);
+	clone.setPixel(0, 0, 0);
+	assertEquals(":j:", 0x123456, imageData.getPixel(0, 0));
+}
+
 @Test
 public void test_ConstructorLjava_io_InputStream() {
 		try (InputStream stream = null){
@@ -776,6 +826,51 @@ public void test_scaledToII() {
 	assertArrayEquals(":d:", expectedPixelData, scaledPixelData);
 }
 
+@Test
+public void test_resample() {
+	imageData = new ImageData(5, 3, 24, new PaletteData(0xFF, 0xFF00, 0xFF0000));
+	for (int y = 0; y < 3; y++) {
+		for (int x = 0; x < 5; x++) imageData.setPixel(x, y, 0x204080);
+	}
+	int[] filters = {ImageResampler.BILINEAR, ImageResampler.BICUBIC, ImageResampler.LANCZOS};
+	for (int filter : filters) {
+		ImageData scaled = ImageResampler.resample(imageData, 12, 2, filter, false);
+		assertEquals(":a:", 12, scaled.width);
+		assertEquals(":b:", 2, scaled.height);
+		assertNull(":c:", scaled.alphaData);
+		for (int x = 0; x < 12; x++) {
+			assertEquals(":d:", new RGB(0x80, 0x40, 0x20), scaled.palette.getRGB(scaled.getPixel(x, 1)));
+		}
+	}
+
+	/* Transparent pixels do not darken the opaque pixels next to them */
+	imageData = new ImageData(4, 4, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	imageData.alphaData = new byte[16];
+	for (int y = 0; y < 4; y++) {
+		imageData.setPixel(0, y, 0xFF0000);
+		imageData.setPixel(1, y, 0xFF0000);
+		imageData.alphaData[y * 4] = imageData.alphaData[y * 4 + 1] = (byte) 0xFF;
+	}
+	ImageData scaled = ImageResampler.resample(imageData, 8, 8, ImageResampler.BILINEAR, false);
+	assertNotNull(":e:", scaled.alphaData);
+	assertEquals(":f:", 255, scaled.getAlpha(0, 4));
+	assertEquals(":g:", 0, scaled.getAlpha(7, 4));
+	for (int x = 0; x < 8; x++) {
+		if (scaled.getAlpha(x, 4) != 0) assertEquals(":h:", new RGB(255, 0, 0), scaled.palette.getRGB(scaled.getPixel(x, 4)));
+	}
+
+	try {
+		ImageResampler.resample(imageData, 0, 1, ImageResampler.BILINEAR, false);
+		fail("No exception thrown for width == 0");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		ImageResampler.resample(imageData, 100000, 100000, ImageResampler.BILINEAR, false);
+		fail("No exception thrown for a result too large for an array");
+	} catch (IllegalArgumentException e) {
+	}
+}
+
 @Test
 public void test_setAlphaIII() {
 	int value;
@@ -12,18 +12,33 @@
 package org.eclipse.swt.tests.junit;
 
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageHeader;
 import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.swt.graphics.ImageLoaderEvent;
 import org.eclipse.swt.graphics.ImageLoaderListener;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
 import org.junit.Test;
 
 /**
@@ -73,6 +88,64 @@ public void test_addImageLoaderListenerLorg_eclipse_swt_graphics_ImageLoaderList
 	assertFalse(":f:", loader.hasListeners());
 }
 
+@Test
+public void test_getCompositedFrameI() {
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.getCompositedFrame(0);
+		fail("No exception thrown for getCompositedFrame without images");
+	} catch (IllegalArgumentException e) {
+	}
+	PaletteData palette = new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 0, 0), new RGB(0, 0, 255)});
+	int[] disposalMethods = {SWT.DM_FILL_NONE, SWT.DM_FILL_PREVIOUS, SWT.DM_FILL_BACKGROUND, SWT.DM_FILL_NONE};
+	ImageData[] images = new ImageData[disposalMethods.length];
+	for (int i = 0; i < images.length; i++) {
+		images[i] = new ImageData(2, 2, 2, palette);
+		images[i].x = i;
+		images[i].disposalMethod = disposalMethods[i];
+		images[i].transparentPixel = 0;
+		images[i].setPixel(0, 0, 1);
+		images[i].setPixel(1, 1, 2);
+	}
+	loader.data = images;
+	loader.logicalScreenWidth = 6;
+	loader.logicalScreenHeight = 2;
+	try {
+		loader.getCompositedFrame(images.length);
+		fail("No exception thrown for getCompositedFrame index out of range");
+	} catch (IllegalArgumentException e) {
+	}
+	/* each row lists the red (R), blue (B) and transparent (-) pixels of a frame */
+	String[][] expected = {
+		{"R-----", "-B----"},
+		{"RR----", "-BB---"},
+		{"R-R---", "-B-B--"},
+		{"R--R--", "-B--B-"},
+	};
+	/* composite out of order, to exercise the cache */
+	int[] order = {3, 0, 1, 2, 3, 2};
+	for (int index : order) {
+		ImageData frame = loader.getCompositedFrame(index);
+		assertEquals(6, frame.width);
+		assertEquals(2, frame.height);
+		for (int y = 0; y < frame.height; y++) {
+			for (int x = 0; x < frame.width; x++) {
+				char c = expected[index][y].charAt(x);
+				assertEquals("frame " + index, c == '-' ? 0 : 255, frame.getAlpha(x, y));
+				if (c != '-') {
+					assertEquals("frame " + index, c == 'R' ? new RGB(255, 0, 0) : new RGB(0, 0, 255), frame.palette.getRGB(frame.getPixel(x, y)));
+				}
+			}
+		}
+	}
+	/* replacing an image discards the cached frames */
+	loader.data = images.clone();
+	loader.data[0] = (ImageData) images[0].clone();
+	loader.data[0].setPixel(0, 0, 2);
+	ImageData frame = loader.getCompositedFrame(3);
+	assertEquals(new RGB(0, 0, 255), frame.palette.getRGB(frame.getPixel(0, 0)));
+}
+
 @Test
 public void test_loadLjava_io_InputStream() {
 		ImageLoader loader = new ImageLoader();
@@ -99,6 +172,451 @@ public void test_loadLjava_io_InputStream() {
 		}
 }
 
+@Test
+public void test_loadBandsLjava_io_InputStreamI() {
+	ImageLoader loader = new ImageLoader();
+	try (InputStream stream = null) {
+		loader.loadBands(stream, 8);
+		fail("No exception thrown for loadBands inputStream == null");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		loader.loadBands(stream, 0);
+		fail("No exception thrown for loadBands bandHeight == 0");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+
+	List<ImageLoaderEvent> events = new ArrayList<>();
+	loader.addImageLoaderListener(events::add);
+	String[] fileNames = {"target.png", "interlaced_target.png", "target.jpg", "target.bmp", "target.gif"};
+	for (String fileName : fileNames) {
+		ImageData image;
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+			image = new ImageLoader().load(stream)[0];
+		} catch (IOException e) {
+			fail(e.getMessage());
+			return;
+		}
+		events.clear();
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+			loader.loadBands(stream, 5);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(fileName, image.width, loader.logicalScreenWidth);
+		assertEquals(fileName, image.height, loader.logicalScreenHeight);
+		assertEquals(fileName, (image.height + 4) / 5, events.size());
+		int rows = 0;
+		for (ImageLoaderEvent event : events) {
+			ImageData band = event.imageData;
+			assertEquals(fileName, image.width, band.width);
+			assertTrue(fileName, band.height <= 5);
+			for (int y = 0; y < band.height; y++) {
+				for (int x = 0; x < band.width; x++) {
+					assertEquals(fileName, image.palette.getRGB(image.getPixel(x, band.y + y)), band.palette.getRGB(band.getPixel(x, y)));
+				}
+			}
+			rows += band.height;
+		}
+		assertEquals(fileName, image.height, rows);
+		assertTrue(fileName, events.get(events.size() - 1).endOfImage);
+	}
+	assertTrue(loader.data == null);
+}
+
+@Test
+public void test_loadBandsLjava_io_InputStreamI_multiPageTiff() throws IOException {
+	/* the strips of each page come before its directory, as most writers lay them out */
+	int width = 200, height = 200, pages = 2;
+	byte[] tiff = createTiff(width, height, pages, 50);
+	ImageLoader loader = new ImageLoader();
+	List<ImageLoaderEvent> events = new ArrayList<>();
+	loader.addImageLoaderListener(events::add);
+	loader.loadBands(new ByteArrayInputStream(tiff), 64);
+	assertEquals(pages * ((height + 63) / 64), events.size());
+	int index = 0;
+	for (int page = 0; page < pages; page++) {
+		int rows = 0;
+		while (rows < height) {
+			ImageLoaderEvent event = events.get(index++);
+			ImageData band = event.imageData;
+			assertEquals(rows, band.y);
+			for (int y = 0; y < band.height; y++) {
+				for (int x = 0; x < width; x++) {
+					int value = tiffPixel(x, rows + y, page);
+					assertEquals("page " + page, new RGB(value, value, value), band.palette.getRGB(band.getPixel(x, y)));
+				}
+			}
+			rows += band.height;
+			assertEquals(rows == height, event.endOfImage);
+		}
+	}
+}
+
+/*
+ * Answer an uncompressed little endian 8-bit grayscale TIFF file with the
+ * given number of pages, where the strips of each page are followed by its
+ * directory.
+ */
+private static byte[] createTiff(int width, int height, int pages, int rowsPerStrip) {
+	int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+	int entries = 8;
+	int ifdSize = 2 + entries * 12 + 4 + strips * 8;
+	ByteBuffer buffer = ByteBuffer.allocate(8 + pages * (width * height + ifdSize)).order(ByteOrder.LITTLE_ENDIAN);
+	buffer.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8 + width * height);
+	for (int page = 0; page < pages; page++) {
+		int stripsOffset = buffer.position();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				buffer.put((byte) tiffPixel(x, y, page));
+			}
+		}
+		int ifdOffset = buffer.position();
+		int arrays = ifdOffset + 2 + entries * 12 + 4;
+		buffer.putShort((short) entries);
+		putTiffEntry(buffer, 256, 3, 1, width); // ImageWidth
+		putTiffEntry(buffer, 257, 3, 1, height); // ImageLength
+		putTiffEntry(buffer, 258, 3, 1, 8); // BitsPerSample
+		putTiffEntry(buffer, 259, 3, 1, 1); // Compression, none
+		putTiffEntry(buffer, 262, 3, 1, 1); // PhotometricInterpretation, black is zero
+		putTiffEntry(buffer, 273, 4, strips, arrays); // StripOffsets
+		putTiffEntry(buffer, 278, 3, 1, rowsPerStrip); // RowsPerStrip
+		putTiffEntry(buffer, 279, 4, strips, arrays + strips * 4); // StripByteCounts
+		buffer.putInt(page + 1 < pages ? ifdOffset + ifdSize + width * height : 0);
+		for (int i = 0; i < strips; i++) {
+			buffer.putInt(stripsOffset + i * rowsPerStrip * width);
+		}
+		for (int i = 0; i < strips; i++) {
+			buffer.putInt(Math.min(rowsPerStrip, height - i * rowsPerStrip) * width);
+		}
+	}
+	return buffer.array();
+}
+
+private static void putTiffEntry(ByteBuffer buffer, int tag, int type, int count, int value) {
+	buffer.putShort((short) tag).putShort((short) type).putInt(count);
+	if (type == 3 && count == 1) {
+		buffer.putShort((short) value).putShort((short) 0);
+	} else {
+		buffer.putInt(value);
+	}
+}
+
+private static int tiffPixel(int x, int y, int page) {
+	return (x + y * 3 + page * 50) & 0xFF;
+}
+
+@Test
+public void test_loadLjava_io_InputStream_targetSize() throws IOException {
+	// target.jpg is 24x24, so the hint selects a 1/1, 1/2, 1/4 or 1/8 reduction
+	int[][] expected = {{0, 0, 24}, {13, 0, 24}, {12, 0, 12}, {0, 12, 12}, {7, 0, 12}, {6, 6, 6}, {0, 5, 6}, {3, 0, 3}, {1, 1, 3}};
+	ImageLoader loader = new ImageLoader();
+	for (int[] test : expected) {
+		loader.targetWidth = test[0];
+		loader.targetHeight = test[1];
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+			ImageData image = loader.load(stream)[0];
+			assertEquals(test[2], image.width);
+			assertEquals(test[2], image.height);
+		}
+		assertEquals(test[0], loader.targetWidth);
+		assertEquals(test[1], loader.targetHeight);
+	}
+
+	// formats that cannot reduce while decoding ignore the hint
+	loader.targetWidth = loader.targetHeight = 3;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		ImageData image = loader.load(stream)[0];
+		assertEquals(24, image.width);
+		assertEquals(24, image.height);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_sourceRegion() throws IOException {
+	ImageLoader loader = new ImageLoader();
+	loader.sourceRegion = new Rectangle(0, 0, 0, 10);
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		loader.load(stream);
+		fail("No exception thrown for empty source region");
+	} catch (IllegalArgumentException e) {
+	}
+	loader.sourceRegion = new Rectangle(100, 0, 10, 10);
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+		loader.load(stream);
+		fail("No exception thrown for source region outside the image");
+	} catch (IllegalArgumentException e) {
+	}
+
+	String[] fileNames = {"target.png", "interlaced_target.png", "target.jpg", "target.bmp", "target.gif"};
+	Rectangle[] regions = {new Rectangle(0, 0, 24, 24), new Rectangle(5, 3, 7, 11), new Rectangle(20, 17, 10, 10)};
+	for (String fileName : fileNames) {
+		ImageData full;
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+			full = new ImageLoader().load(stream)[0];
+		}
+		for (Rectangle region : regions) {
+			loader.sourceRegion = region;
+			ImageData image;
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+				image = loader.load(stream)[0];
+			}
+			Rectangle bounds = region.intersection(new Rectangle(0, 0, full.width, full.height));
+			assertEquals(fileName, bounds.width, image.width);
+			assertEquals(fileName, bounds.height, image.height);
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					assertEquals(fileName, full.palette.getRGB(full.getPixel(bounds.x + x, bounds.y + y)), image.palette.getRGB(image.getPixel(x, y)));
+					assertEquals(fileName, full.getAlpha(bounds.x + x, bounds.y + y), image.getAlpha(x, y));
+				}
+			}
+		}
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_parallel() {
+	PaletteData palette = new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 0, 0), new RGB(0, 0, 255)});
+	ImageData[] images = new ImageData[5];
+	for (int i = 0; i < images.length; i++) {
+		images[i] = new ImageData(20 + i, 10 + i, 4, palette);
+		for (int y = 0; y < images[i].height; y++) {
+			for (int x = 0; x < images[i].width; x++) {
+				images[i].setPixel(x, y, (x + y + i) % 3);
+			}
+		}
+	}
+	ImageLoader saver = new ImageLoader();
+	saver.data = images;
+	saver.logicalScreenWidth = 30;
+	saver.logicalScreenHeight = 20;
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	saver.save(stream, SWT.IMAGE_GIF);
+	ImageLoader loader = new ImageLoader();
+	loader.parallel = true;
+	ImageData[] loaded = loader.load(new ByteArrayInputStream(stream.toByteArray()));
+	assertEquals(images.length, loaded.length);
+	for (int i = 0; i < images.length; i++) {
+		assertEquals(images[i].width, loaded[i].width);
+		assertEquals(images[i].height, loaded[i].height);
+		for (int y = 0; y < images[i].height; y++) {
+			for (int x = 0; x < images[i].width; x++) {
+				assertEquals(images[i].getPixel(x, y), loaded[i].getPixel(x, y));
+			}
+		}
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_parallelJpeg() throws IOException {
+	/* restart.jpg has restart markers, so its rows can be decoded in bands */
+	for (int targetWidth : new int[] {0, 160}) {
+		ImageData[] images = new ImageData[2];
+		for (int i = 0; i < images.length; i++) {
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream("restart.jpg")) {
+				ImageLoader loader = new ImageLoader();
+				loader.parallel = i == 1;
+				loader.targetWidth = targetWidth;
+				images[i] = loader.load(stream)[0];
+			}
+		}
+		assertEquals(images[0].width, images[1].width);
+		assertEquals(images[0].height, images[1].height);
+		assertEquals(images[0].depth, images[1].depth);
+		assertArrayEquals(images[0].data, images[1].data);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_progressiveJpeg() throws IOException {
+	/* progressive.jpg has 10 scans, the first of which ends at byte 1587 of 7917 */
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("progressive.jpg")) {
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = stream.read(buffer)) > 0) bytes.write(buffer, 0, count);
+	}
+	for (boolean parallel : new boolean[] {false, true}) {
+		/* a slow stream, which delivers 256 bytes at a time */
+		int[] position = new int[1];
+		InputStream stream = new ByteArrayInputStream(bytes.toByteArray()) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int count = super.read(b, off, Math.min(len, 256));
+				if (count > 0) position[0] += count;
+				return count;
+			}
+		};
+		List<ImageLoaderEvent> events = new ArrayList<>();
+		List<Integer> positions = new ArrayList<>();
+		ImageLoader loader = new ImageLoader();
+		loader.parallel = parallel;
+		loader.addImageLoaderListener(e -> {
+			events.add(e);
+			positions.add(position[0]);
+		});
+		ImageData image = loader.load(stream)[0];
+		assertEquals(10, events.size());
+		assertTrue("first preview after " + positions.get(0) + " bytes", positions.get(0) < bytes.size() / 2);
+		for (int i = 0; i < events.size(); i++) {
+			ImageLoaderEvent event = events.get(i);
+			assertEquals(i, event.incrementCount);
+			assertEquals(i == events.size() - 1, event.endOfImage);
+			assertEquals(image.width, event.imageData.width);
+			assertEquals(image.height, event.imageData.height);
+		}
+		assertArrayEquals(image.data, events.get(events.size() - 1).imageData.data);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_nestedLoads() throws IOException {
+	/* The decoders reuse their tables, loading other images from a listener must not disturb them */
+	String[] fileNames = {"target.gif", "target.png", "target.jpg", "progressive.jpg"};
+	ImageData[] expected = new ImageData[fileNames.length];
+	for (int i = 0; i < fileNames.length; i++) {
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileNames[i])) {
+			expected[i] = new ImageLoader().load(stream)[0];
+		}
+	}
+	List<String> failures = new ArrayList<>();
+	ImageLoader loader = new ImageLoader();
+	loader.addImageLoaderListener(e -> {
+		for (int i = 0; i < fileNames.length; i++) {
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileNames[i])) {
+				ImageData image = new ImageLoader().load(stream)[0];
+				if (!Arrays.equals(expected[i].data, image.data)) failures.add(fileNames[i]);
+			} catch (IOException ex) {
+				failures.add(ex.toString());
+			}
+		}
+	});
+	ImageData image;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("progressive.jpg")) {
+		image = loader.load(stream)[0];
+	}
+	assertEquals(Arrays.asList(), failures);
+	assertArrayEquals(expected[3].data, image.data);
+}
+
+@Test
+public void test_loadLjava_io_InputStreamI() {
+	PaletteData palette = new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 0, 0), new RGB(0, 0, 255)});
+	ImageData[] images = new ImageData[3];
+	for (int i = 0; i < images.length; i++) {
+		images[i] = new ImageData(20 + i, 10 + i, 4, palette);
+		images[i].x = i;
+		images[i].delayTime = 10 * i;
+		for (int y = 0; y < images[i].height; y++) {
+			for (int x = 0; x < images[i].width; x++) {
+				images[i].setPixel(x, y, (x * y + i) % 3);
+			}
+		}
+	}
+	ImageLoader saver = new ImageLoader();
+	saver.data = images;
+	saver.logicalScreenWidth = 30;
+	saver.logicalScreenHeight = 20;
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	saver.save(stream, SWT.IMAGE_GIF);
+	byte[] bytes = stream.toByteArray();
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.load((InputStream) null, 0);
+		fail("No exception thrown for load inputStream == null");
+	} catch (IllegalArgumentException e) {
+	}
+	for (int index : new int[] {-1, images.length}) {
+		try {
+			loader.load(new ByteArrayInputStream(bytes), index);
+			fail("No exception thrown for load index out of range");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	for (int i = images.length - 1; i >= 0; i--) {
+		ImageData[] loaded = loader.load(new ByteArrayInputStream(bytes), i);
+		assertEquals(1, loaded.length);
+		assertTrue(loaded == loader.data);
+		assertEquals(30, loader.logicalScreenWidth);
+		assertEquals(images[i].width, loaded[0].width);
+		assertEquals(images[i].height, loaded[0].height);
+		assertEquals(images[i].x, loaded[0].x);
+		assertEquals(images[i].delayTime, loaded[0].delayTime);
+		for (int y = 0; y < images[i].height; y++) {
+			for (int x = 0; x < images[i].width; x++) {
+				assertEquals(images[i].getPixel(x, y), loaded[0].getPixel(x, y));
+			}
+		}
+	}
+	/* formats that cannot skip images select the image after decoding */
+	try (InputStream in = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		ImageData[] loaded = loader.load(in, 0);
+		assertEquals(1, loaded.length);
+	} catch (IOException e) {
+		fail(e.getMessage());
+	}
+}
+
+@Test
+public void test_probeLjava_io_InputStream() {
+	ImageLoader loader = new ImageLoader();
+	try {
+		loader.probe((InputStream) null);
+		fail("No exception thrown for probe inputStream == null");
+	} catch (IllegalArgumentException e) {
+	}
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("empty.txt")) {
+		loader.probe(stream);
+		fail("No exception thrown for probe from invalid inputStream");
+	} catch (IOException|SWTException e) {
+	}
+	for (String fileName : SwtTestUtil.imageFilenames) {
+		for (String format : SwtTestUtil.imageFormats) {
+			ImageData[] images;
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName + "." + format)) {
+				images = new ImageLoader().load(stream);
+			} catch (IOException e) {
+				fail(e.getMessage());
+				return;
+			}
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName + "." + format)) {
+				ImageHeader[] headers = loader.probe(stream);
+				assertEquals(fileName + "." + format, images.length, headers.length);
+				for (int i = 0; i < images.length; i++) {
+					assertEquals(fileName + "." + format, images[i].width, headers[i].width);
+					assertEquals(fileName + "." + format, images[i].height, headers[i].height);
+					assertEquals(fileName + "." + format, images[i].depth, headers[i].depth);
+					assertEquals(fileName + "." + format, images[i].type, headers[i].type);
+				}
+				assertTrue(loader.data == null);
+			} catch (IOException e) {
+				fail(e.getMessage());
+			}
+		}
+	}
+	/* the frames of an animated GIF are counted without being decoded */
+	PaletteData palette = new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)});
+	ImageData[] images = {new ImageData(8, 4, 1, palette), new ImageData(3, 2, 1, palette)};
+	images[1].x = 5;
+	images[1].y = 2;
+	ImageLoader saver = new ImageLoader();
+	saver.data = images;
+	saver.logicalScreenWidth = 8;
+	saver.logicalScreenHeight = 4;
+	saver.repeatCount = 0;
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	saver.save(stream, SWT.IMAGE_GIF);
+	ImageHeader[] headers = loader.probe(new ByteArrayInputStream(stream.toByteArray()));
+	assertEquals(2, headers.length);
+	assertEquals(8, loader.logicalScreenWidth);
+	assertEquals(4, loader.logicalScreenHeight);
+	assertEquals(0, loader.repeatCount);
+	assertEquals(3, headers[1].width);
+	assertEquals(2, headers[1].height);
+	assertEquals(5, headers[1].x);
+	assertEquals(2, headers[1].y);
+}
+
 @Test
 public void test_loadLjava_lang_String() {
 	ImageLoader loader = new ImageLoader();
@@ -108,6 +626,44 @@ public void test_loadLjava_lang_String() {
 		fail("No exception thrown for load filename == null");
 	} catch (IllegalArgumentException e) {
 	}
+	try {
+		loader.load(new File(System.getProperty("java.io.tmpdir"), "nonexistent.png").getPath());
+		fail("No exception thrown for load from missing file");
+	} catch (SWTException e) {
+		assertEquals(SWT.ERROR_IO, e.code);
+	}
+}
+
+@Test
+public void test_loadLjava_lang_String_largeFile() throws IOException {
+	/* small files are read into memory and large files are mapped */
+	for (int size : new int[] {32, 800}) {
+		ImageData image = new ImageData(size, size, 24, new PaletteData(0xFF, 0xFF00, 0xFF0000));
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				image.setPixel(x, y, (x * 31 + y * 17) * 2557);
+			}
+		}
+		int[] formats = {SWT.IMAGE_BMP, SWT.IMAGE_PNG, SWT.IMAGE_JPEG};
+		for (int format : formats) {
+			ImageLoader saver = new ImageLoader();
+			saver.data = new ImageData[] {image};
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			saver.save(out, format);
+			File file = File.createTempFile("swt", null);
+			try {
+				saver.save(file.getPath(), format);
+				ImageData expected = new ImageLoader().load(new ByteArrayInputStream(out.toByteArray()))[0];
+				ImageData loaded = new ImageLoader().load(file.getPath())[0];
+				assertEquals(expected.width, loaded.width);
+				assertEquals(expected.depth, loaded.depth);
+				assertTrue("format " + format + ", size " + size, Arrays.equals(expected.data, loaded.data));
+				assertEquals(size, new ImageLoader().probe(file.getPath())[0].width);
+			} finally {
+				file.delete();
+			}
+		}
+	}
 }
 
 @Test
@@ -157,6 +713,204 @@ public void test_saveLjava_io_OutputStreamI() {
 	}
 }
 
+@Test
+public void test_saveLjava_io_OutputStreamI_png() {
+	ImageData image = new ImageData(300, 600, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	image.alphaData = new byte[image.width * image.height];
+	for (int y = 0; y < image.height; y++) {
+		for (int x = 0; x < image.width; x++) {
+			image.setPixel(x, y, (x * 0x10101 + y * 0x30201 + (x * y) % 7) & 0xFFFFFF);
+			image.setAlpha(x, y, (x + 3 * y) & 0xFF);
+		}
+	}
+	int[] compressions = {0, 1, 2, 3};
+	for (boolean parallel : new boolean[] {false, true}) {
+		for (int compression : compressions) {
+			ImageLoader loader = new ImageLoader();
+			loader.data = new ImageData[] {image};
+			loader.compression = compression;
+			loader.parallel = parallel;
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			loader.save(stream, SWT.IMAGE_PNG);
+			ImageData loaded = new ImageLoader().load(new ByteArrayInputStream(stream.toByteArray()))[0];
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					String message = "parallel " + parallel + ", compression " + compression;
+					assertEquals(message, image.palette.getRGB(image.getPixel(x, y)), loaded.palette.getRGB(loaded.getPixel(x, y)));
+					assertEquals(message, image.getAlpha(x, y), loaded.getAlpha(x, y));
+				}
+			}
+		}
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_pngDirectPalettes() {
+	/* RGB and BGR with 24 and 32 bits, and masks that do not select whole bytes */
+	PaletteData[] palettes = {
+		new PaletteData(0xFF0000, 0xFF00, 0xFF),
+		new PaletteData(0xFF, 0xFF00, 0xFF0000),
+		new PaletteData(0xFF0000, 0xFF00, 0xFF),
+		new PaletteData(0xFF00, 0xFF0000, 0xFF000000),
+		new PaletteData(0x3FF00000, 0xFFC00, 0x3FF)
+	};
+	int[] depths = {24, 24, 32, 32, 32};
+	for (int i = 0; i < palettes.length; i++) {
+		PaletteData palette = palettes[i];
+		ImageData image = new ImageData(77, 50, depths[i], palette);
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				image.setPixel(x, y, palette.getPixel(new RGB(x * 3, y * 5, (x * y) & 0xFF)));
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(image.data.length);
+		buffer.put(image.data);
+		ImageData bufferImage = new ImageData(image.width, image.height, image.depth, palette, image.scanlinePad, buffer, 0);
+		for (boolean alpha : new boolean[] {false, true}) {
+			byte[] alphaData = null;
+			if (alpha) {
+				alphaData = new byte[image.width * image.height];
+				for (int j = 0; j < alphaData.length; j++) alphaData[j] = (byte) (j * 7);
+			}
+			for (ImageData source : new ImageData[] {image, bufferImage}) {
+				source.alphaData = alphaData;
+				ImageLoader loader = new ImageLoader();
+				loader.data = new ImageData[] {source};
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				loader.save(stream, SWT.IMAGE_PNG);
+				ImageData loaded = new ImageLoader().load(new ByteArrayInputStream(stream.toByteArray()))[0];
+				String message = "palette " + i + ", alpha " + alpha + ", buffer " + (source.buffer != null);
+				for (int y = 0; y < image.height; y++) {
+					for (int x = 0; x < image.width; x++) {
+						assertEquals(message, palette.getRGB(image.getPixel(x, y)), loaded.palette.getRGB(loaded.getPixel(x, y)));
+						assertEquals(message, alpha ? alphaData[y * image.width + x] & 0xFF : 255, loaded.getAlpha(x, y));
+					}
+				}
+			}
+		}
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_tiff() {
+	RGB[] colors = new RGB[256];
+	for (int i = 0; i < colors.length; i++) {
+		colors[i] = new RGB(i, 255 - i, (i * 7) & 0xFF);
+	}
+	ImageData[] images = {
+		new ImageData(300, 200, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF)),
+		new ImageData(300, 200, 8, new PaletteData(colors))
+	};
+	for (ImageData image : images) {
+		image.scanlinePad = 1;
+		image.bytesPerLine = image.width * image.depth / 8;
+		image.data = new byte[image.bytesPerLine * image.height];
+		int mask = (1 << image.depth) - 1;
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				image.setPixel(x, y, (x * 0x10101 + y * 0x30201 + (x * y) % 7) & mask);
+			}
+		}
+		/* 1 is uncompressed, 5 is LZW and 8 is Deflate */
+		int[] compressions = {1, 5, 8};
+		int uncompressedSize = 0;
+		for (int compression : compressions) {
+			ImageLoader loader = new ImageLoader();
+			loader.data = new ImageData[] {image};
+			loader.compression = compression;
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			loader.save(stream, SWT.IMAGE_TIFF);
+			String message = "depth " + image.depth + ", compression " + compression;
+			if (compression == 1) {
+				uncompressedSize = stream.size();
+			} else {
+				assertTrue(message, stream.size() < uncompressedSize);
+			}
+			ImageData loaded = new ImageLoader().load(new ByteArrayInputStream(stream.toByteArray()))[0];
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					assertEquals(message, image.palette.getRGB(image.getPixel(x, y)), loaded.palette.getRGB(loaded.getPixel(x, y)));
+				}
+			}
+		}
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_gif() {
+	/* a moving square over a gradient of 100 colors, with a transparent corner */
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	ImageData[] images = new ImageData[6];
+	for (int i = 0; i < images.length; i++) {
+		ImageData image = new ImageData(40, 30, 32, palette);
+		image.alphaData = new byte[image.width * image.height];
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				boolean square = x >= i * 4 && x < i * 4 + 10 && y >= 10 && y < 20;
+				image.setPixel(x, y, square ? 0xFF0000 : (x / 4 * 20) << 8 | y / 3 * 20);
+				image.alphaData[y * image.width + x] = (byte) (x + y < 5 ? 0 : 255);
+			}
+		}
+		image.delayTime = 10;
+		images[i] = image;
+	}
+	/* the third frame repeats the second */
+	images[2] = (ImageData) images[1].clone();
+	for (boolean parallel : new boolean[] {false, true}) {
+		ImageLoader loader = new ImageLoader();
+		loader.data = images;
+		loader.parallel = parallel;
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		loader.save(stream, SWT.IMAGE_GIF);
+		ImageLoader loaded = new ImageLoader();
+		loaded.load(new ByteArrayInputStream(stream.toByteArray()));
+		/* the repeated frame is merged into the previous one */
+		assertEquals(images.length - 1, loaded.data.length);
+		assertEquals(20, loaded.data[1].delayTime);
+		for (int i = 1; i < loaded.data.length; i++) {
+			assertTrue(loaded.data[i].width * loaded.data[i].height < 40 * 30);
+		}
+		for (int i = 0; i < loaded.data.length; i++) {
+			ImageData image = images[i < 2 ? i : i + 1];
+			ImageData frame = loaded.getCompositedFrame(i);
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					String message = "frame " + i + " at " + x + ", " + y;
+					assertEquals(message, image.getAlpha(x, y), frame.getAlpha(x, y));
+					if (image.getAlpha(x, y) != 0) {
+						assertEquals(message, image.palette.getRGB(image.getPixel(x, y)), frame.palette.getRGB(frame.getPixel(x, y)));
+					}
+				}
+			}
+		}
+	}
+	/* more colors than a palette holds, reduced with and without dithering */
+	ImageData image = new ImageData(64, 64, 24, palette);
+	for (int y = 0; y < image.height; y++) {
+		for (int x = 0; x < image.width; x++) {
+			image.setPixel(x, y, x * 4 << 16 | y * 4 << 8 | (x + y) * 2);
+		}
+	}
+	for (boolean dither : new boolean[] {false, true}) {
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] {image};
+		loader.dither = dither;
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		loader.save(stream, SWT.IMAGE_GIF);
+		ImageData frame = new ImageLoader().load(new ByteArrayInputStream(stream.toByteArray()))[0];
+		assertEquals(8, frame.depth);
+		long error = 0;
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				RGB expected = image.palette.getRGB(image.getPixel(x, y));
+				RGB actual = frame.palette.getRGB(frame.getPixel(x, y));
+				error += Math.abs(expected.red - actual.red) + Math.abs(expected.green - actual.green) + Math.abs(expected.blue - actual.blue);
+			}
+		}
+		assertTrue("dither " + dither + ", average error " + error / (64 * 64), error < 64 * 64 * 24);
+	}
+}
+
 @Test
 public void test_saveLjava_lang_StringI() {
 	ImageLoader loader = new ImageLoader();
@@ -19,7 +19,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.swt.SWT;
@@ -155,6 +160,91 @@ public void test_asyncExecLjava_lang_Runnable() {
 	}
 }
 
+@Test
+public void test_asyncExecLjava_lang_ObjectLjava_lang_Runnable() {
+	final Display display = new Display();
+	try {
+		try {
+			display.asyncExec(null, () -> {});
+			fail("No exception thrown for asyncExec with null key");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for asyncExec with null key", SWT.ERROR_NULL_ARGUMENT, e);
+		}
+		try {
+			display.asyncExec("key", null);
+			fail("No exception thrown for asyncExec with null runnable");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for asyncExec with null runnable", SWT.ERROR_NULL_ARGUMENT, e);
+		}
+
+		Synchronizer synchronizer = display.getSynchronizer();
+		long merged = synchronizer.getMergedCount(), executed = synchronizer.getExecutedCount();
+		final int[] runs = new int[2], last = new int[1];
+		for (int i = 1; i <= 100; i++) {
+			final int value = i;
+			display.asyncExec("first", () -> {
+				runs[0]++;
+				last[0] = value;
+			});
+			display.asyncExec("second", () -> runs[1]++);
+		}
+		while (display.readAndDispatch()) {}
+		assertEquals(1, runs[0]);
+		assertEquals(1, runs[1]);
+		assertEquals(100, last[0]);
+		assertEquals(198, synchronizer.getMergedCount() - merged);
+		assertEquals(2, synchronizer.getExecutedCount() - executed);
+
+		/* A runnable that is added after the last one ran is run again */
+		display.asyncExec("first", () -> runs[0]++);
+		while (display.readAndDispatch()) {}
+		assertEquals(2, runs[0]);
+	} finally {
+		display.dispose();
+	}
+}
+
+@Test
+public void test_asyncExecLjava_lang_Runnable_timeBudget() {
+	assumeTrue("The time budget of async messages is only implemented on GTK", SwtTestUtil.isGTK);
+	final String key = "org.eclipse.swt.internal.gtk.asyncExecTimeBudget";
+	final Display display = new Display();
+	try {
+		while (display.readAndDispatch()) {}
+
+		/* With a budget, one call runs the pending messages until the budget is spent */
+		display.setData(key, Integer.valueOf(1000));
+		assertEquals(Integer.valueOf(1000), display.getData(key));
+		assertTrue(maxAsyncRunsPerCall(display, 100) > 1);
+
+		/* Without a budget, one call runs one message */
+		display.setData(key, null);
+		assertNull(display.getData(key));
+		assertEquals(1, maxAsyncRunsPerCall(display, 100));
+	} finally {
+		display.dispose();
+	}
+}
+
+/*
+ * Queues the given number of async messages, runs them all, and answers
+ * the largest number of them that were run by one call to readAndDispatch.
+ */
+private int maxAsyncRunsPerCall(Display display, int count) {
+	final int[] runs = new int[1];
+	for (int i = 0; i < count; i++) {
+		display.asyncExec(() -> runs[0]++);
+	}
+	int max = 0, total = 0;
+	while (total < count) {
+		runs[0] = 0;
+		if (!display.readAndDispatch() && runs[0] == 0) fail("Async messages were not run");
+		max = Math.max(max, runs[0]);
+		total += runs[0];
+	}
+	return max;
+}
+
 @Test
 public void test_asyncExecLjava_lang_Runnable_dispose() {
 	final Display display = new Display();
@@ -171,6 +261,39 @@ public void test_asyncExecLjava_lang_Runnable_dispose() {
 	}
 }
 
+@Test
+public void test_asyncExecLjava_lang_Runnable_manyThreads() throws InterruptedException {
+	final Display display = new Display();
+	try {
+		final int threadCount = 8, messageCount = 1000;
+		final int[] next = new int[threadCount];
+		final boolean[] outOfOrder = new boolean[1];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			final int thread = i;
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < messageCount; j++) {
+					final int message = j;
+					display.asyncExec(() -> {
+						if (next[thread]++ != message) outOfOrder[0] = true;
+					});
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		while (display.readAndDispatch()) {}
+		assertFalse(outOfOrder[0]);
+		for (int i = 0; i < threadCount; i++) {
+			assertEquals(messageCount, next[i]);
+		}
+	} finally {
+		display.dispose();
+	}
+}
+
 @Test
 public void test_beep() {
 	Display display = new Display();
@@ -1112,6 +1235,69 @@ public void test_readAndDispatch() {
 	//    test_postLorg_eclipse_swt_widgets_Event()
 }
 
+@Test
+public void test_readAndDispatch_deferredEventsReentrant() throws ReflectiveOperationException {
+	final Display display = new Display();
+	try {
+		final Shell shell = new Shell(display);
+		final Method postEvent = Display.class.getDeclaredMethod("postEvent", Event.class);
+		final Method runDeferredEvents = Display.class.getDeclaredMethod("runDeferredEvents");
+		postEvent.setAccessible(true);
+		runDeferredEvents.setAccessible(true);
+		final int total = 60;
+		final int[] posted = new int[1];
+		final List<Integer> delivered = new ArrayList<>();
+		shell.addListener(SWT.Modify, event -> {
+			delivered.add(Integer.valueOf(event.detail));
+			/*
+			* Each event posts two more while the queue is drained, so the
+			* queue wraps around its end and then grows while wrapped.
+			*/
+			for (int i = 0; i < 2 && posted[0] < total; i++) {
+				postDeferredEvent(postEvent, shell, posted[0]++);
+			}
+			/* Some events drain the rest of the queue in a nested event loop */
+			if (event.detail % 7 == 3) {
+				display.readAndDispatch();
+				invoke(runDeferredEvents, display);
+			}
+		});
+		while (posted[0] < 3) {
+			postDeferredEvent(postEvent, shell, posted[0]++);
+		}
+		invoke(runDeferredEvents, display);
+		while (display.readAndDispatch()) {}
+
+		/* Every event is delivered once, in the order in which it was posted */
+		assertEquals(total, delivered.size());
+		for (int i = 0; i < total; i++) {
+			assertEquals(Integer.valueOf(i), delivered.get(i));
+		}
+	} finally {
+		display.dispose();
+	}
+}
+
+private static void postDeferredEvent(Method postEvent, Shell shell, int detail) {
+	Event event = new Event();
+	event.type = SWT.Modify;
+	event.display = shell.getDisplay();
+	event.widget = shell;
+	event.detail = detail;
+	invoke(postEvent, shell.getDisplay(), event);
+}
+
+private static Object invoke(Method method, Object target, Object... arguments) {
+	try {
+		return method.invoke(target, arguments);
+	} catch (InvocationTargetException e) {
+		if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+		throw new RuntimeException(e.getCause());
+	} catch (IllegalAccessException e) {
+		throw new RuntimeException(e);
+	}
+}
+
 @Test
 public void test_removeFilterILorg_eclipse_swt_widgets_Listener() {
 	final int CLOSE_CALLBACK = 0;
@@ -1419,6 +1605,72 @@ public void test_timerExecILjava_lang_Runnable() {
 	}
 }
 
+@Test
+public void test_timerExecILjava_lang_Runnable_rescheduleAndCancel() {
+	final Display display = new Display();
+	try {
+		final int[] runs = new int[3];
+		final boolean[] done = new boolean[1];
+		Runnable rescheduled = () -> runs[0]++;
+		Runnable cancelled = () -> runs[1]++;
+		Runnable repeated = new Runnable() {
+			@Override
+			public void run() {
+				if (++runs[2] < 5) display.timerExec(0, this);
+			}
+		};
+		display.timerExec(60000, rescheduled);
+		display.timerExec(10, rescheduled);
+		display.timerExec(10, cancelled);
+		display.timerExec(-1, cancelled);
+		display.timerExec(0, repeated);
+		display.timerExec(200, () -> done[0] = true);
+		while (!done[0]) {
+			if (!display.readAndDispatch()) display.sleep();
+		}
+		assertEquals(1, runs[0]);
+		assertEquals(0, runs[1]);
+		assertEquals(5, runs[2]);
+	} finally {
+		display.dispose();
+	}
+}
+
+@Test
+public void test_timerExecILjava_lang_Runnable_nestedEventLoop() throws InterruptedException {
+	final Display display = new Display();
+	try {
+		final boolean[] otherRan = new boolean[2];
+		final boolean[] nestedDone = new boolean[1];
+		/* The timers run while the first one runs a nested event loop */
+		display.timerExec(10, () -> {
+			long end = System.currentTimeMillis() + 5000;
+			/* Do not sleep, a missing timeout would make the test hang instead of fail */
+			while (!(otherRan[0] && otherRan[1]) && System.currentTimeMillis() < end) {
+				if (!display.readAndDispatch()) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+			nestedDone[0] = true;
+		});
+		display.timerExec(10, () -> otherRan[0] = true);
+		display.timerExec(50, () -> otherRan[1] = true);
+		long end = System.currentTimeMillis() + 10000;
+		while (!nestedDone[0] && System.currentTimeMillis() < end) {
+			if (!display.readAndDispatch()) Thread.sleep(1);
+		}
+		assertTrue(nestedDone[0]);
+		assertTrue("timer due in the same batch did not run in the nested loop", otherRan[0]);
+		assertTrue("later timer did not run in the nested loop", otherRan[1]);
+	} finally {
+		display.dispose();
+	}
+}
+
 @Test
 public void test_update() {
 	Display display = new Display();